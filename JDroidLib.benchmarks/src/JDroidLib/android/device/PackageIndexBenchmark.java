@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package JDroidLib.android.device;
+
+import eu.beatsleigher.jdroidlib.benchmarks.Recordings;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Class PackageIndexBenchmark
+ * Measures how fast {@link PackageIndex} indexes the recorded output of the package manager.
+ * @author Simon
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PackageIndexBenchmark {
+    
+    private String packagesOutput;
+    private String permissionGroupsOutput;
+    
+    @Setup
+    public void setUp() throws Exception {
+        packagesOutput = Recordings.read("pm-list-packages");
+        permissionGroupsOutput = Recordings.read("pm-list-permission-groups");
+    }
+    
+    @Benchmark
+    public String[] parsePackages() throws Exception { return PackageIndex.parse(packagesOutput, PackageIndex.Section.PACKAGES.getPrefix()); }
+    
+    @Benchmark
+    public String[] parsePermissionGroups() throws Exception { return PackageIndex.parse(permissionGroupsOutput, PackageIndex.Section.PERMISSION_GROUPS.getPrefix()); }
+    
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package JDroidLib.android.device;
+
+import eu.beatsleigher.jdroidlib.benchmarks.Recordings;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Class ParserBenchmark
+ * Measures the parsers turning the recorded output of {@code dumpsys battery} and {@code dumpsys cpuinfo} into {@link Battery} and {@link CPU} information.
+ * No commands are executed; the parsers are fed the recordings directly.
+ * @author Simon
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+    
+    private String batteryOutput;
+    private String cpuOutput;
+    private CPU cpu;
+    
+    @Setup
+    public void setUp() throws Exception {
+        batteryOutput = Recordings.read("dumpsys-battery");
+        cpuOutput = Recordings.read("dumpsys-cpuinfo");
+        cpu = new CPU(null, null, cpuOutput);
+    }
+    
+    @Benchmark
+    public BatterySnapshot parseBattery() throws Exception { return BatterySnapshot.parse(batteryOutput); }
+    
+    @Benchmark
+    public CPU parseCPU() throws Exception {
+        cpu.parse(cpuOutput);
+        return cpu;
+    }
+    
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package JDroidLib.enums;
+
+import eu.beatsleigher.jdroidlib.benchmarks.Recordings;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Class DeviceStateBenchmark
+ * Measures {@link DeviceState#getState(String)} for every state listed in the recorded output of {@code adb devices}.
+ * @author Simon
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeviceStateBenchmark {
+    
+    private String[] states;
+    
+    @Setup
+    public void setUp() throws Exception {
+        List<String> _states = new ArrayList<>();
+        for (String _line : Recordings.read("devices").split("\n"))
+            if (_line.contains("\t"))
+                _states.add(_line.substring(_line.indexOf('\t') + 1));
+        states = _states.toArray(new String[_states.size()]);
+    }
+    
+    @Benchmark
+    public void getState(Blackhole blackhole) {
+        for (String _state : states)
+            blackhole.consume(DeviceState.getState(_state));
+    }
+    
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.android;
+
+import eu.beatsleigher.jdroidlib.android.device.Device;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Class AdbCommandBenchmark
+ * Measures how fast {@link AdbCommand} builds the argument vector and command line handed to the ADB executable.
+ * Every command executed by JDroidLib passes through here at least once.
+ * The command line is cached per command, so the {@code form*} benchmarks measure building a fresh command from its template.
+ * @author Simon
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AdbCommandBenchmark {
+    
+    private AdbCommand noDeviceCommand;
+    private AdbCommand deviceCommand;
+    private AdbCommand shellCommand;
+    private AndroidController controller;
+    private Device device;
+    
+    @Setup
+    public void setUp() throws Exception {
+        controller = AndroidController.getInstance();
+        device = new Device(controller, "0123456789ABCDEF");
+        
+        noDeviceCommand = controller.formAdbCommandNoDevice("devices", "-l");
+        deviceCommand = controller.formAdbCommand(device, "install", "-r", "-d", "/tmp/app-release.apk");
+        shellCommand = controller.formAdbShellCommand(device, false, "pm", "list", "packages", "-f");
+    }
+    
+    @Benchmark
+    public List<String> getCommandsNoDevice() { return noDeviceCommand.getCommands(); }
+    
+    @Benchmark
+    public List<String> getCommandsDevice() { return deviceCommand.getCommands(); }
+    
+    @Benchmark
+    public List<String> getCommandsShell() { return shellCommand.getCommands(); }
+    
+    @Benchmark
+    public String getCommandShell() { return shellCommand.getCommand(); }
+    
+    @Benchmark
+    public List<String> formShellCommands() throws Exception { return controller.formAdbShellCommand(device, false, "pm", "list", "packages", "-f").getCommands(); }
+    
+    @Benchmark
+    public String formShellCommand() throws Exception { return controller.formAdbShellCommand(device, false, "pm", "list", "packages", "-f").getCommand(); }
+    
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+/**
+ * Class Recordings
+ * Gives the benchmarks access to the device output recorded in the {@code recordings} directory.
+ * The same recordings are replayed by the fake {@code adb} executable, so parsers and command execution are measured against identical input.
+ * @author Simon
+ */
+public final class Recordings {
+    
+    /**
+     * The system property pointing to the recordings directory.
+     * Set by the {@code bench} target; defaults to {@code recordings} in the working directory.
+     */
+    public static final String RECORDINGS_DIR_PROPERTY = "jdroidlib.benchmarks.recordings";
+    
+    private Recordings() {}
+    
+    /**
+     * Reads a recording.
+     * @param name The name of the recording, without the {@code .txt} extension (e.g. {@code dumpsys-battery}).
+     * @return The recorded output.
+     * @throws IOException If the recording cannot be read.
+     */
+    public static String read(String name) throws IOException {
+        Path _recording = Paths.get(System.getProperty(RECORDINGS_DIR_PROPERTY, "recordings"), name + ".txt");
+        return new String(Files.readAllBytes(_recording), StandardCharsets.UTF_8);
+    }
+    
+}
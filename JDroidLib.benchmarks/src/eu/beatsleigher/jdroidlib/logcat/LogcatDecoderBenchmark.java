@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.logcat;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Class LogcatDecoderBenchmark
+ * Measures decoding 1000 entries of {@code logcat -B} output, with and without retaining them in a {@link LogBuffer}.
+ * The output is read in 4 KiB chunks, so entries regularly span two chunks.
+ * @author Simon
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LogcatDecoderBenchmark {
+    
+    private static final int ENTRIES = 1000;
+    private static final int CHUNK_SIZE = 4096;
+    
+    private byte[] output;
+    private LogcatDecoder decoder;
+    private LogBuffer buffer;
+    
+    @Setup
+    public void setUp() {
+        ByteBuffer _output = ByteBuffer.allocate(ENTRIES * 256).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < ENTRIES; i++) {
+            byte[] _tag = ("Tag" + i % 16).getBytes(StandardCharsets.UTF_8);
+            byte[] _message = String.format("Message %d of the benchmark, as long as a typical log line", i).getBytes(StandardCharsets.UTF_8);
+            int _payloadLength = 1 + _tag.length + 1 + _message.length + 1;
+            // logger_entry v4: payload length, header size, pid, tid, seconds, nanoseconds, buffer ID, uid.
+            _output.putShort((short)_payloadLength).putShort((short)28).putInt(1000 + i % 8).putInt(2000 + i % 32)
+                   .putInt(1500000000 + i / 100).putInt(i % 100 * 10000000).putInt(LogEntry.BUFFER_MAIN).putInt(10000)
+                   .put((byte)4).put(_tag).put((byte)0).put(_message).put((byte)0);
+        }
+        output = new byte[_output.position()];
+        _output.flip();
+        _output.get(output);
+        
+        decoder = new LogcatDecoder();
+        buffer = new LogBuffer(LogBuffer.MIN_CAPACITY);
+    }
+    
+    @Benchmark
+    public void decode(Blackhole blackhole) throws Exception {
+        for (int i = 0; i < output.length; i += CHUNK_SIZE)
+            decoder.decode(output, i, Math.min(CHUNK_SIZE, output.length - i), (_entry) -> blackhole.consume(_entry.getTimestampNanos()));
+    }
+    
+    @Benchmark
+    public void decodeAndRetain() throws Exception {
+        for (int i = 0; i < output.length; i += CHUNK_SIZE)
+            decoder.decode(output, i, Math.min(CHUNK_SIZE, output.length - i), buffer::append);
+    }
+    
+}
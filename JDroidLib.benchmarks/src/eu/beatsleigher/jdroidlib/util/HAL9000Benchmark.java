@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.util;
+
+import eu.beatsleigher.jdroidlib.android.AdbCommand;
+import eu.beatsleigher.jdroidlib.android.AndroidController;
+import eu.beatsleigher.jdroidlib.android.device.Device;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Class HAL9000Benchmark
+ * Measures the round-trip of {@link HAL9000#executeReturnOutput(eu.beatsleigher.jdroidlib.android.Command)}:
+ * starting the ADB executable, reading its output and waiting for it to exit.
+ * The {@code bench} target puts the fake {@code adb} executable first on the {@code PATH}, which replays recorded output of different sizes.
+ * @author Simon
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HAL9000Benchmark {
+    
+    /** The shell command to execute; each one is backed by a recording. */
+    @Param({ "dumpsys battery", "dumpsys cpuinfo", "pm list packages" })
+    public String shellCommandLine;
+    
+    private HAL9000 hal;
+    private AdbCommand command;
+    
+    @Setup
+    public void setUp() throws Exception {
+        AndroidController _controller = AndroidController.getInstance();
+        String[] _args = shellCommandLine.split(" ");
+        
+        hal = HAL9000.getInstance();
+        command = _controller.formAdbShellCommand(new Device(_controller, "0123456789ABCDEF"), false, _args[0], Arrays.copyOfRange(_args, 1, _args.length));
+    }
+    
+    @Benchmark
+    public String executeReturnOutput() throws Exception { return hal.executeReturnOutput(command); }
+    
+}
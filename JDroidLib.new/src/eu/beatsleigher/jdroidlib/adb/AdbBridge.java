@@ -0,0 +1,443 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.adb;
+
+import eu.beatsleigher.jdroidlib.android.OutputChunkConsumer;
+import eu.beatsleigher.jdroidlib.exception.AdbProtocolException;
+import java.io.*;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * AdbBridge
+ * A pure-Java client for the ADB server's wire protocol.
+ * 
+ * Instead of spawning an ADB process for every command, this class connects to the ADB server (by default listening on localhost:5037)
+ * and sends the requests the ADB executable would otherwise send on our behalf.
+ * The server itself must still be started, which is done via the ADB executable.
+ * @author Simon
+ */
+public class AdbBridge {
+    
+    /** The default host the ADB server listens on. */
+    public static final String DEFAULT_HOST = "127.0.0.1";
+    /** The default port the ADB server listens on. */
+    public static final int DEFAULT_PORT = 5037;
+    /** The default connection timeout in milliseconds. */
+    public static final int DEFAULT_CONNECT_TIMEOUT = 2000;
+    /** The size of the buffer used to stream a command's output. */
+    static final int STREAM_BUFFER_SIZE = 8192;
+    /** The maximum length of an echoed exit value, including line terminators. */
+    private static final int MAX_EXIT_VALUE_LENGTH = 8;
+    
+    private final String host;
+    private final int port;
+    private final String exitValueMarker;
+    private int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    private int readTimeout = 0;
+    
+    /**
+     * Creates a new instance of this class, which connects to the ADB server on the default host and port.
+     */
+    public AdbBridge() { this(DEFAULT_HOST, DEFAULT_PORT); }
+    
+    /**
+     * Creates a new instance of this class, which connects to the ADB server on the given host and port.
+     * @param host The host the ADB server is listening on.
+     * @param port The port the ADB server is listening on.
+     */
+    public AdbBridge(String host, int port) {
+        if (host == null || host.isEmpty())
+            throw new IllegalArgumentException("Host must not be null or empty!");
+        if (port <= 0 || port > 0xFFFF)
+            throw new IllegalArgumentException(String.format("Invalid port: %d", port));
+        this.host = host;
+        this.port = port;
+        this.exitValueMarker = String.format("JDROIDLIB_EXIT_%08x:", new Random().nextInt());
+    }
+    
+    //<editor-fold defaultstate="collapsed" desc="Getter and Setter Methods">
+    /**
+     * Gets the host the ADB server is expected to listen on.
+     * @return The host of the ADB server.
+     */
+    public String getHost() { return host; }
+    
+    /**
+     * Gets the port the ADB server is expected to listen on.
+     * @return The port of the ADB server.
+     */
+    public int getPort() { return port; }
+    
+    /**
+     * Sets the timeout for establishing connections to the ADB server.
+     * @param connectTimeout The timeout in milliseconds ({@code 0} for none).
+     * @return This instance.
+     */
+    public AdbBridge withConnectTimeout(int connectTimeout) { this.connectTimeout = connectTimeout; return this; }
+    
+    /**
+     * Sets the timeout for reading data from the ADB server.
+     * @param readTimeout The timeout in milliseconds ({@code 0} for none).
+     * @return This instance.
+     */
+    public AdbBridge withReadTimeout(int readTimeout) { this.readTimeout = readTimeout; return this; }
+    //</editor-fold>
+    
+    //<editor-fold defaultstate="collapsed" desc="Host Services">
+    /**
+     * Gets the version of the running ADB server.
+     * @return The internal version number of the ADB server.
+     * @throws IOException If the server cannot be reached, or responds with invalid data.
+     */
+    public int getServerVersion() throws IOException {
+        try (AdbConnection connection = openConnection()) {
+            connection.sendRequest("host:version");
+            String version = connection.readHexPrefixedString();
+            try {
+                return Integer.parseInt(version, 16);
+            } catch (NumberFormatException ex) {
+                throw new AdbProtocolException(String.format("Invalid server version \"%s\"!", version));
+            }
+        }
+    }
+    
+    /**
+     * Gets a value indicating whether an ADB server is accepting connections on the configured host and port.
+     * @return {@code true} if the server responded to a version request, {@code false} if not.
+     */
+    public boolean isServerAvailable() {
+        try {
+            getServerVersion();
+            return true;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+    
+    /**
+     * Gets the raw device list from the ADB server.
+     * The list contains one device per line, in the format {@code serial\tstate}.
+     * @return The list of devices known to the ADB server.
+     * @throws IOException If an IO error occurs, or the server refuses the request.
+     */
+    public String getDeviceList() throws IOException {
+        return getDeviceList(null);
+    }
+    
+    /**
+     * Gets the raw device list from the ADB server.
+     * The list contains one device per line, in the format {@code serial\tstate}.
+     * @param onConnect Called with the connection carrying the request. May be {@code null}.
+     * @return The list of devices known to the ADB server.
+     * @throws IOException If an IO error occurs, or the server refuses the request.
+     */
+    public String getDeviceList(Consumer<Closeable> onConnect) throws IOException {
+        try (AdbConnection connection = openConnection()) {
+            if (onConnect != null)
+                onConnect.accept(connection);
+            connection.sendRequest("host:devices");
+            return connection.readHexPrefixedString();
+        }
+    }
+    //</editor-fold>
+    
+    //<editor-fold defaultstate="collapsed" desc="Device Services">
+    /**
+     * Executes a shell command on the device with the given serial number and returns its output.
+     * @param serial The serial number of the device.
+     * @param command The command line to execute in the device's shell.
+     * @return The output of the command.
+     * @throws IOException If an IO error occurs, or the server refuses the request.
+     */
+    public String executeShell(String serial, String command) throws IOException {
+        return executeShell(serial, command, null);
+    }
+    
+    /**
+     * Executes a shell command on the device with the given serial number and returns its output.
+     * @param serial The serial number of the device.
+     * @param command The command line to execute in the device's shell.
+     * @param onConnect Called with the connection carrying the command, so it can be closed if the command is aborted. May be {@code null}.
+     * @return The output of the command.
+     * @throws IOException If an IO error occurs, or the server refuses the request.
+     */
+    public String executeShell(String serial, String command, Consumer<Closeable> onConnect) throws IOException {
+        try (AdbConnection connection = openService(serial, "shell:" + command)) {
+            if (onConnect != null)
+                onConnect.accept(connection);
+            return connection.readToEnd();
+        }
+    }
+    
+    /**
+     * Executes a shell command on the device with the given serial number and returns its exit value.
+     * The legacy shell service does not report exit values, so the exit value is echoed by the shell after the command has finished.
+     * @param serial The serial number of the device.
+     * @param command The command line to execute in the device's shell.
+     * @return The exit value of the command.
+     * @throws IOException If an IO error occurs, or the exit value could not be determined.
+     */
+    public int executeShellReturnExitValue(String serial, String command) throws IOException {
+        return executeShellReturnExitValue(serial, command, null);
+    }
+    
+    /**
+     * Executes a shell command on the device with the given serial number and returns its exit value.
+     * The legacy shell service does not report exit values, so the exit value is echoed by the shell after the command has finished.
+     * @param serial The serial number of the device.
+     * @param command The command line to execute in the device's shell.
+     * @param onConnect Called with the connection carrying the command, so it can be closed if the command is aborted. May be {@code null}.
+     * @return The exit value of the command.
+     * @throws IOException If an IO error occurs, or the exit value could not be determined.
+     */
+    public int executeShellReturnExitValue(String serial, String command, Consumer<Closeable> onConnect) throws IOException {
+        return executeShellStreamChunks(serial, command, (buffer, offset, length) -> { }, onConnect);
+    }
+    
+    /**
+     * Executes a shell command on the device with the given serial number and passes its output to a consumer, line by line.
+     * The output is not accumulated; the consumer is called on the calling thread and, while it is busy, no further output is read from the device.
+     * @param serial The serial number of the device.
+     * @param command The command line to execute in the device's shell.
+     * @param lineConsumer The consumer receiving every line of output (without line terminators).
+     * @param onConnect Called with the connection carrying the command, so it can be closed if the command is aborted. May be {@code null}.
+     * @return The exit value of the command.
+     * @throws IOException If an IO error occurs, or the exit value could not be determined.
+     */
+    public int executeShellStreamLines(String serial, String command, Consumer<String> lineConsumer, Consumer<Closeable> onConnect) throws IOException {
+        try (AdbConnection connection = openService(serial, createExitValueService(command))) {
+            if (onConnect != null)
+                onConnect.accept(connection);
+            
+            BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), AdbConnection.PROTOCOL_CHARSET), STREAM_BUFFER_SIZE);
+            String exitValue = null, inLine;
+            while ((inLine = reader.readLine()) != null) {
+                int markerIndex = inLine.lastIndexOf(exitValueMarker);
+                if (markerIndex == -1) {
+                    lineConsumer.accept(inLine);
+                    continue;
+                }
+                // Output without a trailing newline ends up on the same line as the marker.
+                if (markerIndex > 0)
+                    lineConsumer.accept(inLine.substring(0, markerIndex));
+                exitValue = inLine.substring(markerIndex + exitValueMarker.length());
+            }
+            return parseExitValue(command, exitValue);
+        }
+    }
+    
+    /**
+     * Executes a shell command on the device with the given serial number and passes its raw output to a consumer, chunk by chunk.
+     * The output is not accumulated; the consumer is called on the calling thread and, while it is busy, no further output is read from the device.
+     * @param serial The serial number of the device.
+     * @param command The command line to execute in the device's shell.
+     * @param chunkConsumer The consumer receiving the output.
+     * @param onConnect Called with the connection carrying the command, so it can be closed if the command is aborted. May be {@code null}.
+     * @return The exit value of the command.
+     * @throws IOException If an IO error occurs, or the exit value could not be determined.
+     */
+    public int executeShellStreamChunks(String serial, String command, OutputChunkConsumer chunkConsumer, Consumer<Closeable> onConnect) throws IOException {
+        try (AdbConnection connection = openService(serial, createExitValueService(command))) {
+            if (onConnect != null)
+                onConnect.accept(connection);
+            
+            // The last bytes read may belong to the exit value marker, so they are held back until the next read or the end of the stream.
+            byte[] marker = exitValueMarker.getBytes(AdbConnection.PROTOCOL_CHARSET);
+            int holdBack = marker.length + MAX_EXIT_VALUE_LENGTH;
+            byte[] buffer = new byte[STREAM_BUFFER_SIZE + holdBack];
+            InputStream inStream = connection.getInputStream();
+            int pending = 0, read;
+            
+            while ((read = inStream.read(buffer, pending, STREAM_BUFFER_SIZE)) != -1) {
+                pending += read;
+                int releasable = pending - holdBack;
+                if (releasable > 0) {
+                    chunkConsumer.onChunk(buffer, 0, releasable);
+                    System.arraycopy(buffer, releasable, buffer, 0, holdBack);
+                    pending = holdBack;
+                }
+            }
+            
+            int markerIndex = lastIndexOf(buffer, pending, marker);
+            if (markerIndex == -1) {
+                if (pending > 0)
+                    chunkConsumer.onChunk(buffer, 0, pending);
+                return parseExitValue(command, null);
+            }
+            if (markerIndex > 0)
+                chunkConsumer.onChunk(buffer, 0, markerIndex);
+            int valueOffset = markerIndex + marker.length;
+            return parseExitValue(command, new String(buffer, valueOffset, pending - valueOffset, AdbConnection.PROTOCOL_CHARSET));
+        }
+    }
+    
+    /**
+     * Executes a command on the device with the given serial number via the {@code exec:} service and passes its raw output to a consumer, chunk by chunk.
+     * Unlike the shell service, the exec service never allocates a terminal, so binary output (such as {@code logcat -B}) is passed on unaltered.
+     * The service reports no exit value; the method returns once the command has exited and the device has closed the connection.
+     * @param serial The serial number of the device.
+     * @param command The command line to execute.
+     * @param chunkConsumer The consumer receiving the output.
+     * @param onConnect Called with the connection carrying the command, so it can be closed if the command is aborted. May be {@code null}.
+     * @throws IOException If an IO error occurs, or the device refuses the service.
+     */
+    public void executeExecStreamChunks(String serial, String command, OutputChunkConsumer chunkConsumer, Consumer<Closeable> onConnect) throws IOException {
+        try (AdbConnection connection = openService(serial, "exec:" + command)) {
+            if (onConnect != null)
+                onConnect.accept(connection);
+            
+            byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+            InputStream inStream = connection.getInputStream();
+            int read;
+            while ((read = inStream.read(buffer)) != -1)
+                chunkConsumer.onChunk(buffer, 0, read);
+        }
+    }
+    
+    /**
+     * Opens a connection to the sync service of the device with the given serial number.
+     * The connection can be used for any number of file transfers and must be closed when it is no longer needed.
+     * @param serial The serial number of the device.
+     * @return A new sync connection.
+     * @throws IOException If an IO error occurs, or the device refuses the service.
+     */
+    public SyncConnection openSync(String serial) throws IOException {
+        return new SyncConnection(openService(serial, "sync:"));
+    }
+    
+    /**
+     * Opens an interactive shell on the device with the given serial number.
+     * @param serial The serial number of the device.
+     * @return A new shell connection.
+     * @throws IOException If an IO error occurs, or the device refuses the service.
+     */
+    public ShellConnection openShell(String serial) throws IOException {
+        return new ShellConnection(openService(serial, "shell:"));
+    }
+    
+    /**
+     * Gets the amount of data the server has sent over a connection passed to an {@code onConnect} callback,
+     * since the server acknowledged the connection's last request.
+     * For shell commands, this is the raw output of the command (including the echoed exit value, if any), as read so far.
+     * @param connection The connection passed to the callback.
+     * @return The amount of data read, in bytes, or {@code 0} if the connection was not opened by an {@link AdbBridge}.
+     */
+    public static long getBytesRead(Closeable connection) {
+        return connection instanceof AdbConnection ? ((AdbConnection)connection).getBytesRead() : 0;
+    }
+    
+    /**
+     * Creates the shell service executing a command and echoing its exit value.
+     * The command is run in a group terminated by a line break, so commands ending in {@code &} or a comment don't swallow the echo.
+     * @param command The command line to execute in the device's shell.
+     * @return The service to request.
+     */
+    private String createExitValueService(String command) {
+        return String.format("shell:{ %s\n}; echo %s$?", command, exitValueMarker);
+    }
+    
+    /**
+     * Parses the exit value echoed after a shell command.
+     * @param command The command the exit value belongs to.
+     * @param exitValue The echoed exit value, or {@code null} if the marker was not found.
+     * @return The exit value.
+     * @throws AdbProtocolException If the exit value is missing or invalid.
+     */
+    private int parseExitValue(String command, String exitValue) throws AdbProtocolException {
+        if (exitValue == null)
+            throw new AdbProtocolException(String.format("Could not determine exit value of \"%s\"!", command));
+        
+        try {
+            return Integer.parseInt(exitValue.trim());
+        } catch (NumberFormatException ex) {
+            throw new AdbProtocolException(String.format("Invalid exit value \"%s\"!", exitValue.trim()));
+        }
+    }
+    
+    /**
+     * Finds the last occurrence of a byte sequence in a buffer.
+     * @param buffer The buffer to search.
+     * @param length The number of valid bytes in the buffer.
+     * @param sequence The sequence to find.
+     * @return The index of the last occurrence, or -1 if the sequence was not found.
+     */
+    private static int lastIndexOf(byte[] buffer, int length, byte[] sequence) {
+        outer:
+        for (int i = length - sequence.length; i >= 0; i--) {
+            for (int j = 0; j < sequence.length; j++)
+                if (buffer[i + j] != sequence[j])
+                    continue outer;
+            return i;
+        }
+        return -1;
+    }
+    //</editor-fold>
+    
+    //<editor-fold defaultstate="collapsed" desc="Connection Management">
+    /**
+     * Opens a new connection to the ADB server.
+     * @return A new connection.
+     * @throws IOException If the connection could not be established.
+     */
+    AdbConnection openConnection() throws IOException {
+        return new AdbConnection(host, port, connectTimeout, readTimeout);
+    }
+    
+    /**
+     * Opens a new connection to the ADB server and switches it to the transport of the device with the given serial.
+     * Any request sent over the returned connection is forwarded to the device's ADB daemon.
+     * @param serial The serial number of the device.
+     * @return A new connection, bound to the device.
+     * @throws IOException If an IO error occurs, or the device is not known to the server.
+     */
+    AdbConnection openTransport(String serial) throws IOException {
+        if (serial == null || serial.isEmpty())
+            throw new IllegalArgumentException("Serial must not be null or empty!");
+        
+        AdbConnection connection = openConnection();
+        try {
+            connection.sendRequest("host:transport:" + serial);
+            return connection;
+        } catch (IOException ex) {
+            connection.close();
+            throw ex;
+        }
+    }
+    
+    /**
+     * Opens a service on the device with the given serial number.
+     * @param serial The serial number of the device.
+     * @param service The service to open (e.g. {@code shell:ls}).
+     * @return A new connection, carrying the service's data.
+     * @throws IOException If an IO error occurs, or the device refuses the service.
+     */
+    AdbConnection openService(String serial, String service) throws IOException {
+        AdbConnection connection = openTransport(serial);
+        try {
+            connection.sendRequest(service);
+            return connection;
+        } catch (IOException ex) {
+            connection.close();
+            throw ex;
+        }
+    }
+    //</editor-fold>
+    
+}
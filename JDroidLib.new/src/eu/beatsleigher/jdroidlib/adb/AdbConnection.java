@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.adb;
+
+import eu.beatsleigher.jdroidlib.exception.AdbProtocolException;
+import java.io.*;
+import java.net.*;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.*;
+
+/**
+ * AdbConnection
+ * Represents a single TCP connection to the ADB server.
+ * 
+ * Every request sent to the ADB server is prefixed with its length, encoded as four hexadecimal ASCII characters.
+ * The server answers every request with either {@code OKAY} or {@code FAIL}, followed by a length-prefixed error message in the latter case.
+ * Once a service (such as {@code shell:}) has been acknowledged, the connection carries the raw data of that service.
+ * @author Simon
+ */
+class AdbConnection implements Closeable {
+    
+    /** The charset used for requests and status messages. */
+    static final Charset PROTOCOL_CHARSET = StandardCharsets.UTF_8;
+    /** The maximum length of a single request. */
+    static final int MAX_REQUEST_LENGTH = 0xFFFF;
+    
+    private static final String STATUS_OKAY = "OKAY";
+    private static final String STATUS_FAIL = "FAIL";
+    
+    private final Socket socket;
+    private final DataInputStream input;
+    private final OutputStream output;
+    private long bytesRead;
+    
+    /**
+     * Opens a new connection to the ADB server.
+     * @param host The host the ADB server is listening on.
+     * @param port The port the ADB server is listening on.
+     * @param connectTimeout The connection timeout in milliseconds ({@code 0} for none).
+     * @param readTimeout The read timeout in milliseconds ({@code 0} for none).
+     * @throws IOException If the connection could not be established.
+     */
+    AdbConnection(String host, int port, int connectTimeout, int readTimeout) throws IOException {
+        // The socket is backed by a channel, so services moving bulk data (such as sync:) can bypass the streams.
+        socket = SocketChannel.open().socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(readTimeout);
+            socket.connect(new InetSocketAddress(host, port), connectTimeout);
+            input = new DataInputStream(new CountingInputStream(new BufferedInputStream(socket.getInputStream())));
+            output = new BufferedOutputStream(socket.getOutputStream());
+        } catch (IOException ex) {
+            socket.close();
+            throw ex;
+        }
+    }
+    
+    /**
+     * Sends a request to the ADB server and waits for the server to acknowledge it.
+     * @param request The request to send (e.g. {@code host:version}).
+     * @throws IOException If an IO error occurs, or the server refuses the request.
+     */
+    void sendRequest(String request) throws IOException {
+        byte[] payload = request.getBytes(PROTOCOL_CHARSET);
+        if (payload.length > MAX_REQUEST_LENGTH)
+            throw new AdbProtocolException(String.format("Request is too long (%d bytes)!", payload.length));
+        
+        output.write(String.format("%04x", payload.length).getBytes(PROTOCOL_CHARSET));
+        output.write(payload);
+        output.flush();
+        readStatus(request);
+    }
+    
+    /**
+     * Reads the status the server responded with.
+     * @param request The request the status belongs to, for error reporting.
+     * @throws IOException If an IO error occurs, or the server responded with {@code FAIL}.
+     */
+    private void readStatus(String request) throws IOException {
+        String status = readString(4);
+        if (STATUS_OKAY.equals(status)) {
+            bytesRead = 0;
+            return;
+        }
+        if (STATUS_FAIL.equals(status))
+            throw new AdbProtocolException(String.format("ADB server refused request \"%s\": %s", request, readHexPrefixedString()));
+        throw new AdbProtocolException(String.format("Unexpected response to request \"%s\": %s", request, status));
+    }
+    
+    /**
+     * Reads a length, encoded as four hexadecimal ASCII characters.
+     * @return The decoded length.
+     * @throws IOException If an IO error occurs, or the length could not be decoded.
+     */
+    int readHexLength() throws IOException {
+        String hex = readString(4);
+        try {
+            return Integer.parseInt(hex, 16);
+        } catch (NumberFormatException ex) {
+            throw new AdbProtocolException(String.format("Invalid length prefix \"%s\"!", hex));
+        }
+    }
+    
+    /**
+     * Reads a string that is prefixed with its length, encoded as four hexadecimal ASCII characters.
+     * @return The string read from the connection.
+     * @throws IOException If an IO error occurs.
+     */
+    String readHexPrefixedString() throws IOException {
+        return readString(readHexLength());
+    }
+    
+    /**
+     * Reads a fixed amount of bytes from the connection and decodes them as a string.
+     * @param length The amount of bytes to read.
+     * @return The decoded string.
+     * @throws IOException If an IO error occurs, or the connection is closed prematurely.
+     */
+    String readString(int length) throws IOException {
+        byte[] buffer = new byte[length];
+        input.readFully(buffer);
+        return new String(buffer, PROTOCOL_CHARSET);
+    }
+    
+    /**
+     * Reads everything the server sends, until the connection is closed by the server.
+     * @return The decoded data.
+     * @throws IOException If an IO error occurs.
+     */
+    String readToEnd() throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int read;
+        while ((read = input.read(chunk)) != -1)
+            buffer.write(chunk, 0, read);
+        return new String(buffer.toByteArray(), PROTOCOL_CHARSET);
+    }
+    
+    /**
+     * Gets the amount of data read from the connection since the server acknowledged the last request.
+     * @return The amount of data read, in bytes.
+     */
+    long getBytesRead() { return bytesRead; }
+    
+    /**
+     * Gets the stream to read raw service data from.
+     * @return The connection's input stream.
+     */
+    DataInputStream getInputStream() { return input; }
+    
+    /**
+     * Gets the stream to write raw service data to.
+     * @return The connection's (buffered) output stream.
+     */
+    OutputStream getOutputStream() { return output; }
+    
+    /**
+     * Gets the socket underlying this connection.
+     * @return The connection's socket.
+     */
+    Socket getSocket() { return socket; }
+    
+    /**
+     * Gets the channel underlying this connection.
+     * The channel bypasses the connection's buffered streams; it must only be used once the output stream has been flushed
+     * and the server has no unread data pending in the input stream's buffer.
+     * @return The connection's channel.
+     */
+    SocketChannel getChannel() { return socket.getChannel(); }
+    
+    /**
+     * Closes this connection.
+     * @throws IOException If an IO error occurs.
+     */
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+    
+    /**
+     * Input stream counting the bytes read from the connection.
+     */
+    private class CountingInputStream extends FilterInputStream {
+        
+        CountingInputStream(InputStream inStream) {
+            super(inStream);
+        }
+        
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+            if (read != -1)
+                bytesRead++;
+            return read;
+        }
+        
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0)
+                bytesRead += read;
+            return read;
+        }
+        
+        @Override
+        public long skip(long length) throws IOException {
+            long skipped = super.skip(length);
+            bytesRead += skipped;
+            return skipped;
+        }
+        
+    }
+    
+}
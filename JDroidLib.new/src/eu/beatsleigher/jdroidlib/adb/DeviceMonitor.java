@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.adb;
+
+import eu.beatsleigher.jdroidlib.android.device.DeviceState;
+import eu.beatsleigher.jdroidlib.events.DeviceStateChangedEvent;
+import eu.beatsleigher.jdroidlib.events.DeviceStateChangedEventListener;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * DeviceMonitor
+ * Keeps track of the devices known to the ADB server.
+ * 
+ * The monitor subscribes once to the server's {@code host:track-devices} service, which pushes the complete device list whenever it changes.
+ * The latest list is kept in memory, so lookups neither block nor spawn a process.
+ * Whenever a device is attached, detached or changes its state, the registered {@link DeviceStateChangedEventListener}s are notified.
+ * If the connection to the server is lost, all devices are reported as detached and the monitor reconnects until it is stopped.
+ * @author Simon
+ */
+public class DeviceMonitor {
+    
+    /** The time to wait between two connection attempts, in milliseconds. */
+    public static final long RECONNECT_DELAY = 1000;
+    
+    private final AdbBridge bridge;
+    private final Map<String, DeviceState> deviceStates = new ConcurrentHashMap<>();
+    private final List<DeviceStateChangedEventListener> listeners = new CopyOnWriteArrayList<>();
+    private final Object _lock = new Object();
+    private volatile CountDownLatch initialListReceived = new CountDownLatch(1);
+    private volatile Thread monitorThread;
+    private AdbConnection connection;
+    
+    /**
+     * Creates a new instance of this class.
+     * The monitor does not connect to the server until {@link #start()} is called.
+     * @param bridge The bridge to the ADB server.
+     */
+    public DeviceMonitor(AdbBridge bridge) {
+        if (bridge == null)
+            throw new IllegalArgumentException("Bridge must not be null!");
+        this.bridge = bridge;
+    }
+    
+    //<editor-fold defaultstate="collapsed" desc="Lifecycle">
+    /**
+     * Starts monitoring the ADB server.
+     * Calling this method on a running monitor has no effect.
+     */
+    public void start() {
+        synchronized (_lock) {
+            if (monitorThread != null)
+                return;
+            initialListReceived = new CountDownLatch(1);
+            monitorThread = new Thread(this::run, "JDroidLib-DeviceMonitor");
+            monitorThread.setDaemon(true);
+            monitorThread.start();
+        }
+    }
+    
+    /**
+     * Stops monitoring the ADB server and closes the connection to it.
+     * The device table is cleared without notifying listeners.
+     */
+    public void stop() {
+        synchronized (_lock) {
+            if (monitorThread == null)
+                return;
+            closeConnection(connection);
+            monitorThread.interrupt();
+            monitorThread = null; // Tells the old thread to leave the device table alone, even if it's still running.
+            deviceStates.clear();
+        }
+    }
+    
+    /**
+     * Gets a value indicating whether this monitor is running.
+     * @return {@code true} if the monitor has been started and not yet stopped.
+     */
+    public boolean isRunning() { return monitorThread != null; }
+    
+    /**
+     * Waits until the monitor has received the first device list from the server.
+     * @param timeout The maximum time to wait.
+     * @param timeUnit The unit of the timeout.
+     * @return {@code true} if the device list was received, {@code false} if the timeout elapsed first.
+     * @throws InterruptedException If the current thread is interrupted while waiting.
+     */
+    public boolean awaitDeviceList(long timeout, TimeUnit timeUnit) throws InterruptedException {
+        return initialListReceived.await(timeout, timeUnit);
+    }
+    //</editor-fold>
+    
+    //<editor-fold defaultstate="collapsed" desc="Lookups">
+    /**
+     * Gets a snapshot of all devices currently known to the ADB server, and their states.
+     * @return An unmodifiable map of serial numbers to device states.
+     */
+    public Map<String, DeviceState> getDeviceStates() { return Collections.unmodifiableMap(new HashMap<>(deviceStates)); }
+    
+    /**
+     * Gets the serial numbers of all devices currently known to the ADB server.
+     * @return An unmodifiable set of serial numbers.
+     */
+    public Set<String> getSerials() { return Collections.unmodifiableSet(new HashSet<>(deviceStates.keySet())); }
+    
+    /**
+     * Gets the current state of a device.
+     * @param serial The serial number of the device.
+     * @return The state of the device, or {@code null} if the device is not attached.
+     */
+    public DeviceState getState(String serial) { return deviceStates.get(serial); }
+    //</editor-fold>
+    
+    //<editor-fold defaultstate="collapsed" desc="Event Stuff">
+    /**
+     * Adds a new event listener to this class.
+     * @param listener The {@link DeviceStateChangedEventListener} to add.
+     * @return A value indicating whether the addition was successful or not.
+     */
+    public boolean addDeviceStateChangedEventListener(DeviceStateChangedEventListener listener) {
+        return listeners.add(listener);
+    }
+    
+    /**
+     * Removes an event listener from this class.
+     * @param listener The {@link DeviceStateChangedEventListener} to remove.
+     * @return A value indicating whether the removal was successful or not.
+     */
+    public boolean removeDeviceStateChangedEventListener(DeviceStateChangedEventListener listener) {
+        return listeners.remove(listener);
+    }
+    
+    private void fireDeviceStateChanged(String serial, DeviceState previousState, DeviceState newState) {
+        if (listeners.isEmpty())
+            return;
+        DeviceStateChangedEvent evt = new DeviceStateChangedEvent(this, serial, previousState, newState);
+        for (DeviceStateChangedEventListener listener : listeners)
+            listener.onDeviceStateChanged(evt);
+    }
+    //</editor-fold>
+    
+    //<editor-fold defaultstate="collapsed" desc="Monitoring">
+    /**
+     * The monitor loop.
+     * Connects to the server, processes the pushed device lists and reconnects if the connection is lost.
+     * The loop only runs while its thread is the current monitor thread, so a thread left over from a previous {@link #start()}
+     * exits without touching the device table of the next one.
+     */
+    private void run() {
+        Thread _self = Thread.currentThread();
+        while (monitorThread == _self) {
+            AdbConnection _connection = null;
+            try {
+                _connection = bridge.openConnection();
+                synchronized (_lock) {
+                    if (monitorThread != _self) {
+                        _connection.close();
+                        return;
+                    }
+                    connection = _connection;
+                }
+                _connection.getSocket().setSoTimeout(0); // Updates only arrive when something changes.
+                _connection.sendRequest("host:track-devices");
+                while (monitorThread == _self)
+                    updateDeviceStates(_self, _connection.readHexPrefixedString());
+            } catch (IOException ex) {
+                // The server went away (or hasn't been started yet). Without a server, there are no devices.
+            } finally {
+                closeConnection(_connection);
+            }
+            
+            updateDeviceStates(_self, "");
+            try {
+                Thread.sleep(RECONNECT_DELAY);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Updates the device table with a device list pushed by the server and notifies listeners of all changes.
+     * Nothing is updated if the calling thread is no longer the monitor thread.
+     * @param owner The monitor thread that received the device list.
+     * @param deviceList The raw device list, one {@code serial\tstate} pair per line.
+     */
+    private void updateDeviceStates(Thread owner, String deviceList) {
+        Map<String, DeviceState> _newStates = parseDeviceList(deviceList);
+        
+        synchronized (_lock) {
+            if (monitorThread != owner)
+                return;
+            applyDeviceStates(_newStates);
+        }
+    }
+    
+    private void applyDeviceStates(Map<String, DeviceState> newStates) {
+        for (Iterator<Map.Entry<String, DeviceState>> it = deviceStates.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<String, DeviceState> entry = it.next();
+            if (!newStates.containsKey(entry.getKey())) {
+                it.remove();
+                fireDeviceStateChanged(entry.getKey(), entry.getValue(), null);
+            }
+        }
+        for (Map.Entry<String, DeviceState> entry : newStates.entrySet()) {
+            DeviceState previousState = deviceStates.put(entry.getKey(), entry.getValue());
+            if (previousState != entry.getValue())
+                fireDeviceStateChanged(entry.getKey(), previousState, entry.getValue());
+        }
+        initialListReceived.countDown();
+    }
+    
+    /**
+     * Parses a device list, as sent by the ADB server.
+     * @param deviceList The raw device list, one {@code serial\tstate} pair per line.
+     * @return A map of serial numbers to device states.
+     */
+    static Map<String, DeviceState> parseDeviceList(String deviceList) {
+        Map<String, DeviceState> states = new LinkedHashMap<>();
+        for (String _line : deviceList.split("\n")) {
+            int separator = _line.indexOf('\t');
+            if (separator <= 0)
+                continue;
+            states.put(_line.substring(0, separator), DeviceState.fromString(_line.substring(separator + 1)));
+        }
+        return states;
+    }
+    
+    /**
+     * Closes a connection to the server and forgets it, if it is the monitor's current connection.
+     * @param _connection The connection to close; may be {@code null}.
+     */
+    private void closeConnection(AdbConnection _connection) {
+        if (_connection == null)
+            return;
+        synchronized (_lock) {
+            if (connection == _connection)
+                connection = null;
+        }
+        try {
+            _connection.close();
+        } catch (IOException ex) { /* Nothing we can do about this. */ }
+    }
+    //</editor-fold>
+    
+}
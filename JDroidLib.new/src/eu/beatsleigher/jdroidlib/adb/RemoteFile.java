@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.adb;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RemoteFile
+ * Contains the information the ADB sync service reports for a file on a device.
+ * Instances of this class are immutable.
+ * @author Simon
+ */
+public final class RemoteFile {
+    
+    private static final int S_IFMT = 0170000;
+    private static final int S_IFDIR = 0040000;
+    private static final int S_IFREG = 0100000;
+    private static final int S_IFLNK = 0120000;
+    
+    private final String path;
+    private final int mode;
+    private final long size;
+    private final long lastModified;
+    
+    /**
+     * Creates a new instance of this class.
+     * @param path The path (or, for directory listings, the name) of the file.
+     * @param mode The file's mode, as reported by {@code stat}.
+     * @param size The file's size in bytes.
+     * @param lastModified The time of the last modification, in seconds since the epoch.
+     */
+    RemoteFile(String path, int mode, long size, long lastModified) {
+        this.path = path;
+        this.mode = mode;
+        this.size = size;
+        this.lastModified = lastModified;
+    }
+    
+    /**
+     * Gets the path of the file.
+     * For files returned by {@link SyncConnection#list(java.lang.String)}, this is the name of the file within the listed directory.
+     * @return The path or name of the file.
+     */
+    public String getPath() { return path; }
+    
+    /**
+     * Gets the mode of the file, including its type and permission bits.
+     * @return The file's mode.
+     */
+    public int getMode() { return mode; }
+    
+    /**
+     * Gets the permission bits of the file.
+     * @return The file's permissions (e.g. {@code 0644}).
+     */
+    public int getPermissions() { return mode & 07777; }
+    
+    /**
+     * Gets the size of the file.
+     * @return The file's size in bytes.
+     */
+    public long getSize() { return size; }
+    
+    /**
+     * Gets the time of the file's last modification.
+     * @param timeUnit The unit of time to return.
+     * @return The time since the epoch.
+     */
+    public long getLastModified(TimeUnit timeUnit) { return timeUnit.convert(lastModified, TimeUnit.SECONDS); }
+    
+    /**
+     * Gets a value indicating whether the file exists.
+     * The sync service reports a mode of zero for files that do not exist or cannot be accessed.
+     * @return {@code true} if the file exists.
+     */
+    public boolean exists() { return mode != 0; }
+    
+    /**
+     * Gets a value indicating whether the file is a directory.
+     * @return {@code true} if the file is a directory.
+     */
+    public boolean isDirectory() { return (mode & S_IFMT) == S_IFDIR; }
+    
+    /**
+     * Gets a value indicating whether the file is a regular file.
+     * @return {@code true} if the file is a regular file.
+     */
+    public boolean isRegularFile() { return (mode & S_IFMT) == S_IFREG; }
+    
+    /**
+     * Gets a value indicating whether the file is a symbolic link.
+     * @return {@code true} if the file is a symbolic link.
+     */
+    public boolean isSymbolicLink() { return (mode & S_IFMT) == S_IFLNK; }
+    
+    @Override
+    public String toString() {
+        return String.format("%s (mode %06o, %d bytes)", path, mode, size);
+    }
+    
+}
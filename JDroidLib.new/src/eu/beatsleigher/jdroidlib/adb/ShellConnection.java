@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.adb;
+
+import java.io.*;
+
+/**
+ * ShellConnection
+ * A connection to an interactive shell on a device.
+ * Everything written to the output stream is passed to the shell's input; the input stream carries the shell's output.
+ * Instances of this class are obtained via {@link AdbBridge#openShell(java.lang.String)}.
+ * @author Simon
+ */
+public class ShellConnection implements Closeable {
+    
+    private final AdbConnection connection;
+    
+    /**
+     * Creates a new instance of this class.
+     * @param connection A connection on which the {@code shell:} service has been acknowledged.
+     */
+    ShellConnection(AdbConnection connection) {
+        this.connection = connection;
+    }
+    
+    /**
+     * Gets the stream carrying the shell's output.
+     * @return The shell's output.
+     */
+    public InputStream getInputStream() { return connection.getInputStream(); }
+    
+    /**
+     * Gets the stream to write the shell's input to.
+     * The stream is buffered and must be flushed for the input to reach the shell.
+     * @return The shell's input.
+     */
+    public OutputStream getOutputStream() { return connection.getOutputStream(); }
+    
+    /**
+     * Gets a value indicating whether the connection is still open.
+     * A connection closed by the device is only detected once it is read from or written to.
+     * @return {@code true} if the connection has not been closed.
+     */
+    public boolean isOpen() { return !connection.getSocket().isClosed(); }
+    
+    /**
+     * Closes the connection, which terminates the shell.
+     * @throws IOException If an IO error occurs.
+     */
+    @Override
+    public void close() throws IOException {
+        connection.close();
+    }
+    
+}
@@ -0,0 +1,346 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.adb;
+
+import eu.beatsleigher.jdroidlib.events.FileTransferProgressEvent;
+import eu.beatsleigher.jdroidlib.events.FileTransferProgressEventListener;
+import eu.beatsleigher.jdroidlib.exception.AdbProtocolException;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SyncConnection
+ * A connection to the sync service of a device's ADB daemon, used to transfer files to and from the device.
+ * 
+ * The sync protocol consists of little-endian, 8-byte headers (a four-character request id and a length), followed by the request's data.
+ * File data is moved between the socket and {@link java.nio.channels.FileChannel}s through a direct buffer
+ * (or {@link java.nio.channels.FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)} when pushing),
+ * so it is never copied onto the Java heap.
+ * 
+ * A connection handles one request at a time and is not thread-safe, but it can be reused for any number of transfers.
+ * Progress listeners are called on the transferring thread, between two chunks; a slow listener slows down the transfer.
+ * Instances of this class are obtained via {@link AdbBridge#openSync(java.lang.String)}.
+ * @author Simon
+ */
+public class SyncConnection implements Closeable {
+    
+    /** The default mode of files pushed to a device. */
+    public static final int DEFAULT_FILE_MODE = 0644;
+    /** The maximum amount of data sent in a single DATA packet. */
+    static final int MAX_DATA_LENGTH = 64 * 1024;
+    /** The maximum length of a path accepted by the sync service. */
+    static final int MAX_PATH_LENGTH = 1024;
+    /** The maximum amount of pushes sent before their results are read. */
+    static final int MAX_PIPELINED_PUSHES = 64;
+    
+    private static final int ID_STAT = id("STAT");
+    private static final int ID_LIST = id("LIST");
+    private static final int ID_DENT = id("DENT");
+    private static final int ID_SEND = id("SEND");
+    private static final int ID_RECV = id("RECV");
+    private static final int ID_DATA = id("DATA");
+    private static final int ID_DONE = id("DONE");
+    private static final int ID_OKAY = id("OKAY");
+    private static final int ID_FAIL = id("FAIL");
+    private static final int ID_QUIT = id("QUIT");
+    
+    private final AdbConnection connection;
+    private final SocketChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_DATA_LENGTH + 8).order(ByteOrder.LITTLE_ENDIAN);
+    
+    /**
+     * Creates a new instance of this class.
+     * @param connection A connection on which the {@code sync:} service has been acknowledged.
+     */
+    SyncConnection(AdbConnection connection) {
+        this.connection = connection;
+        this.channel = connection.getChannel();
+    }
+    
+    //<editor-fold defaultstate="collapsed" desc="Requests">
+    /**
+     * Gets the information on a file on the device.
+     * @param remotePath The path of the file on the device.
+     * @return The file's information. If the file does not exist, {@link RemoteFile#exists()} returns {@code false}.
+     * @throws IOException If an IO error occurs.
+     */
+    public RemoteFile stat(String remotePath) throws IOException {
+        sendRequest(ID_STAT, remotePath);
+        read(16);
+        if (buffer.getInt() != ID_STAT)
+            throw new AdbProtocolException(String.format("Unexpected response to STAT of \"%s\"!", remotePath));
+        return new RemoteFile(remotePath, buffer.getInt(), buffer.getInt() & 0xFFFFFFFFL, buffer.getInt() & 0xFFFFFFFFL);
+    }
+    
+    /**
+     * Lists the contents of a directory on the device.
+     * The entries {@code .} and {@code ..} are not included.
+     * @param remotePath The path of the directory on the device.
+     * @return The files within the directory; the paths of the returned files are the files' names.
+     * @throws IOException If an IO error occurs.
+     */
+    public List<RemoteFile> list(String remotePath) throws IOException {
+        List<RemoteFile> files = new ArrayList<>();
+        sendRequest(ID_LIST, remotePath);
+        
+        while (true) {
+            read(20);
+            int id = buffer.getInt();
+            if (id == ID_DONE)
+                return files;
+            if (id != ID_DENT)
+                throw new AdbProtocolException(String.format("Unexpected response to LIST of \"%s\"!", remotePath));
+            
+            int mode = buffer.getInt();
+            long size = buffer.getInt() & 0xFFFFFFFFL, lastModified = buffer.getInt() & 0xFFFFFFFFL;
+            String name = readString(buffer.getInt());
+            if (!".".equals(name) && !"..".equals(name))
+                files.add(new RemoteFile(name, mode, size, lastModified));
+        }
+    }
+    
+    /**
+     * Pushes a local file to the device, using the {@link #DEFAULT_FILE_MODE}.
+     * @param localFile The file to push.
+     * @param remotePath The path of the file on the device (not its parent directory).
+     * @param listener Notified of the transfer's progress. May be {@code null}.
+     * @return The amount of bytes transferred.
+     * @throws IOException If an IO error occurs, or the device refuses the file.
+     */
+    public long push(Path localFile, String remotePath, FileTransferProgressEventListener listener) throws IOException {
+        return push(localFile, remotePath, DEFAULT_FILE_MODE, listener);
+    }
+    
+    /**
+     * Pushes a local file to the device.
+     * @param localFile The file to push.
+     * @param remotePath The path of the file on the device (not its parent directory).
+     * @param mode The permissions of the file on the device (e.g. {@code 0755}).
+     * @param listener Notified of the transfer's progress. May be {@code null}.
+     * @return The amount of bytes transferred.
+     * @throws IOException If an IO error occurs, or the device refuses the file.
+     */
+    public long push(Path localFile, String remotePath, int mode, FileTransferProgressEventListener listener) throws IOException {
+        long bytesTransferred = sendFile(localFile, remotePath, mode, listener);
+        readSendResult(remotePath);
+        return bytesTransferred;
+    }
+    
+    /**
+     * Pushes several local files to the device over this connection.
+     * The files are pipelined: further files are sent while the device is still confirming previous ones,
+     * which avoids a round trip per file when pushing many small files.
+     * @param files The files to push, mapped to their paths on the device. Files are pushed in the map's iteration order.
+     * @param mode The permissions of the files on the device (e.g. {@code 0644}).
+     * @param listener Notified of every file's progress. May be {@code null}.
+     * @return The amount of bytes transferred.
+     * @throws IOException If an IO error occurs, or the device refuses a file. Files preceding the failed file have been pushed.
+     */
+    public long pushAll(Map<Path, String> files, int mode, FileTransferProgressEventListener listener) throws IOException {
+        Deque<String> unconfirmed = new ArrayDeque<>();
+        long bytesTransferred = 0;
+        
+        try {
+            for (Map.Entry<Path, String> file : files.entrySet()) {
+                if (unconfirmed.size() == MAX_PIPELINED_PUSHES)
+                    readSendResult(unconfirmed.poll());
+                unconfirmed.add(file.getValue());
+                bytesTransferred += sendFile(file.getKey(), file.getValue(), mode, listener);
+            }
+        } catch (AdbProtocolException ex) {
+            throw ex;
+        } catch (IOException ex) {
+            // The daemon closes the connection when it refuses a file, so report its reason rather than the broken pipe.
+            try {
+                while (!unconfirmed.isEmpty())
+                    readSendResult(unconfirmed.poll());
+            } catch (AdbProtocolException failure) {
+                throw failure;
+            } catch (IOException ignored) { }
+            throw ex;
+        }
+        
+        while (!unconfirmed.isEmpty())
+            readSendResult(unconfirmed.poll());
+        return bytesTransferred;
+    }
+    
+    /**
+     * Pulls a file from the device.
+     * The local file is created or overwritten, and its modification time is set to the remote file's.
+     * @param remotePath The path of the file on the device.
+     * @param localFile The path of the local file (not its parent directory).
+     * @param listener Notified of the transfer's progress. May be {@code null}.
+     * @return The amount of bytes transferred.
+     * @throws IOException If an IO error occurs, or the file could not be read on the device.
+     */
+    public long pull(String remotePath, Path localFile, FileTransferProgressEventListener listener) throws IOException {
+        RemoteFile remoteFile = stat(remotePath);
+        if (!remoteFile.exists())
+            throw new FileNotFoundException(String.format("Remote file \"%s\" does not exist!", remotePath));
+        
+        long startTime = System.nanoTime(), bytesTransferred = 0;
+        sendRequest(ID_RECV, remotePath);
+        
+        try (FileChannel file = FileChannel.open(localFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (true) {
+                read(8);
+                int id = buffer.getInt(), length = buffer.getInt();
+                if (id == ID_DONE)
+                    break;
+                if (id == ID_FAIL)
+                    throw new AdbProtocolException(String.format("Could not pull \"%s\": %s", remotePath, readString(length)));
+                if (id != ID_DATA || length > MAX_DATA_LENGTH)
+                    throw new AdbProtocolException(String.format("Unexpected response to RECV of \"%s\"!", remotePath));
+                
+                read(length);
+                while (buffer.hasRemaining())
+                    file.write(buffer);
+                bytesTransferred += length;
+                if (listener != null)
+                    listener.onFileTransferProgress(new FileTransferProgressEvent(this, remotePath, bytesTransferred, remoteFile.getSize(), System.nanoTime() - startTime));
+            }
+        }
+        
+        Files.setLastModifiedTime(localFile, FileTime.from(remoteFile.getLastModified(TimeUnit.SECONDS), TimeUnit.SECONDS));
+        return bytesTransferred;
+    }
+    //</editor-fold>
+    
+    //<editor-fold defaultstate="collapsed" desc="Protocol">
+    /**
+     * Sends a file's SEND request, data and DONE packet, without waiting for the device's response.
+     * @return The amount of bytes sent.
+     */
+    private long sendFile(Path localFile, String remotePath, int mode, FileTransferProgressEventListener listener) throws IOException {
+        try (FileChannel file = FileChannel.open(localFile, StandardOpenOption.READ)) {
+            long size = file.size(), position = 0, startTime = System.nanoTime();
+            sendRequest(ID_SEND, String.format("%s,%d", remotePath, mode & 07777));
+            
+            while (position < size) {
+                int length = (int)Math.min(MAX_DATA_LENGTH, size - position);
+                writeHeader(ID_DATA, length);
+                for (long sent = 0; sent < length; )
+                    sent += file.transferTo(position + sent, length - sent, channel);
+                position += length;
+                if (listener != null)
+                    listener.onFileTransferProgress(new FileTransferProgressEvent(this, remotePath, position, size, System.nanoTime() - startTime));
+            }
+            
+            writeHeader(ID_DONE, (int)Files.getLastModifiedTime(localFile).to(TimeUnit.SECONDS));
+            return size;
+        }
+    }
+    
+    /**
+     * Reads the device's response to a SEND request.
+     */
+    private void readSendResult(String remotePath) throws IOException {
+        read(8);
+        int id = buffer.getInt(), length = buffer.getInt();
+        if (id == ID_OKAY)
+            return;
+        if (id == ID_FAIL)
+            throw new AdbProtocolException(String.format("Could not push \"%s\": %s", remotePath, readString(length)));
+        throw new AdbProtocolException(String.format("Unexpected response to SEND of \"%s\"!", remotePath));
+    }
+    
+    /**
+     * Sends a request, consisting of its id, the length of the path and the path itself.
+     */
+    private void sendRequest(int id, String path) throws IOException {
+        byte[] payload = path.getBytes(AdbConnection.PROTOCOL_CHARSET);
+        if (payload.length > MAX_PATH_LENGTH)
+            throw new AdbProtocolException(String.format("Path is too long (%d bytes)!", payload.length));
+        
+        buffer.clear();
+        buffer.putInt(id).putInt(payload.length).put(payload).flip();
+        write();
+    }
+    
+    /**
+     * Sends a packet header.
+     */
+    private void writeHeader(int id, int value) throws IOException {
+        buffer.clear();
+        buffer.putInt(id).putInt(value).flip();
+        write();
+    }
+    
+    /**
+     * Writes the contents of the buffer to the channel.
+     */
+    private void write() throws IOException {
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+    
+    /**
+     * Reads exactly the given amount of bytes into the buffer and flips it for reading.
+     */
+    private void read(int length) throws IOException {
+        if (length < 0 || length > buffer.capacity())
+            throw new AdbProtocolException(String.format("Invalid packet length %d!", length));
+        
+        buffer.clear().limit(length);
+        while (buffer.hasRemaining())
+            if (channel.read(buffer) == -1)
+                throw new EOFException("Connection to the sync service was closed unexpectedly!");
+        buffer.flip();
+    }
+    
+    /**
+     * Reads a string of the given length.
+     */
+    private String readString(int length) throws IOException {
+        read(length);
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, AdbConnection.PROTOCOL_CHARSET);
+    }
+    
+    /**
+     * Encodes a request id the way it is sent by the sync protocol.
+     */
+    private static int id(String id) {
+        return id.charAt(0) | id.charAt(1) << 8 | id.charAt(2) << 16 | id.charAt(3) << 24;
+    }
+    //</editor-fold>
+    
+    /**
+     * Ends the sync session and closes the connection.
+     * @throws IOException If an IO error occurs.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (channel.isOpen())
+                writeHeader(ID_QUIT, 0);
+        } catch (IOException ex) { /* The daemon may already have closed the connection. */ }
+        connection.close();
+    }
+    
+}
@@ -20,7 +20,7 @@ package eu.beatsleigher.jdroidlib.android;
 
 import eu.beatsleigher.jdroidlib.android.device.Device;
 import eu.beatsleigher.jdroidlib.exception.DeviceHasNoRootException;
-import java.util.*;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -35,6 +35,8 @@ import java.util.concurrent.TimeUnit;
  */
 public class AdbCommand extends Command implements ICommand {
 
+    private volatile String shellCommandLine;
+
     /**
      * Constructor Constructs an instance of this class, without a
      * {@link eu.beatsleigher.jdroidlib.android.device.Device} object.
@@ -128,48 +130,28 @@ public class AdbCommand extends Command implements ICommand {
 
     /**
      * {@inheritDoc}
-     * @return 
      */
     @Override
-    public List<String> getCommands() {
-        List<String> listOfCommands = new ArrayList<>();
-        
-        listOfCommands.add("adb");
-        if (device != null) {
-            listOfCommands.add("-s");
-            listOfCommands.add(device.getSerial());
-        }
-        if (isShellCommand) {
-            listOfCommands.add("shell");
-            if (isShellRooted)
-               listOfCommands.add("su");
-        }
-        listOfCommands.add(command);
-        listOfCommands.addAll(params);
-        
-        return listOfCommands;
+    ArgvTemplate getArgvTemplate() {
+        return ArgvTemplate.of(ArgvTemplate.ADB, device == null ? null : device.getSerial(),
+                               !isShellCommand ? ArgvTemplate.Kind.PLAIN : isShellRooted ? ArgvTemplate.Kind.ROOT_SHELL : ArgvTemplate.Kind.SHELL);
     }
 
     /**
-     * {inheritDoc}
-     * @return 
+     * Gets the command line that is passed to the device's shell.
+     * This is the part of the command following {@code adb -s <serial> shell}, as it is sent to the ADB server.
+     * @return The shell command line, or {@code null} if this is not a shell command.
      */
-    @Override
-    public String getCommand() {
-        StringBuilder sBuilder = new StringBuilder();
-        
-        sBuilder.append("adb").append(device == null ? "" : String.format(" -s %s", device.getSerial()));
-        if (isShellCommand) {
-            sBuilder.append(" shell");
-            if (isShellRooted)
-                sBuilder.append(" su");
+    public String getShellCommandLine() {
+        if (!isShellCommand)
+            return null;
+
+        String _shellCommandLine = shellCommandLine;
+        if (_shellCommandLine == null) {
+            List<String> _argv = getCommands();
+            shellCommandLine = _shellCommandLine = String.join(" ", _argv.subList(getArgvTemplate().getShellOffset(), _argv.size()));
         }
-        sBuilder.append(command);
-        params.stream().forEach((String _item) -> {
-            sBuilder.append(String.format(" %s", _item));
-        });
-        
-        return sBuilder.toString();
+        return _shellCommandLine;
     }
 
     /**
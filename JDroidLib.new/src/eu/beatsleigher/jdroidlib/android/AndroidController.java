@@ -18,18 +18,37 @@
  */
 package eu.beatsleigher.jdroidlib.android;
 
+import eu.beatsleigher.jdroidlib.adb.AdbBridge;
+import eu.beatsleigher.jdroidlib.adb.DeviceMonitor;
+import eu.beatsleigher.jdroidlib.adb.SyncConnection;
 import eu.beatsleigher.jdroidlib.android.device.Device;
+import eu.beatsleigher.jdroidlib.android.device.DeviceState;
 import eu.beatsleigher.jdroidlib.events.CommandExecutionCompletedEvent;
 import eu.beatsleigher.jdroidlib.events.CommandExecutionCompletedEventListener;
 import eu.beatsleigher.jdroidlib.events.CommandOutputChangedEventListener;
+import eu.beatsleigher.jdroidlib.events.DeviceStateChangedEventListener;
+import eu.beatsleigher.jdroidlib.events.EventDispatcher;
+import eu.beatsleigher.jdroidlib.events.FileTransferProgressEventListener;
+import eu.beatsleigher.jdroidlib.events.FlashProgressEventListener;
+import eu.beatsleigher.jdroidlib.exception.CommandTimeoutException;
 import eu.beatsleigher.jdroidlib.exception.DeviceHasNoRootException;
 import eu.beatsleigher.jdroidlib.exception.InstallationFailedException;
+import eu.beatsleigher.jdroidlib.logcat.LogBuffer;
+import eu.beatsleigher.jdroidlib.metrics.CommandExecutionRecord.Transport;
+import eu.beatsleigher.jdroidlib.metrics.CommandExecutionTracker;
+import eu.beatsleigher.jdroidlib.metrics.CommandMetrics;
 import eu.beatsleigher.jdroidlib.util.HAL9000;
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.StringReader;
+import java.net.ConnectException;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * AndroidController
@@ -43,6 +62,11 @@ public class AndroidController {
     
     //<editor-fold defaultstate="collapsed" desc="Static Members">
     private static AndroidController _instance;
+    private static final ScheduledExecutorService TIMEOUT_SCHEDULER = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+        Thread thread = new Thread(runnable, "JDroidLib-Timeouts");
+        thread.setDaemon(true);
+        return thread;
+    });
     
     /**
      * Singleton method.
@@ -61,10 +85,19 @@ public class AndroidController {
     
     //<editor-fold defaultstate="collapsed" desc="Variables">
     private HAL9000 _helloGentlemen;
-    private final Object _lock = "I'm sorry, Dave. I'm afraid I can't do that. ";
-    private List<CommandExecutionCompletedEventListener> executionCompleteEventListeners;
-    private List<String> connectedDeviceSerials;
-    private List<Device> connectedDevices;
+    private AdbBridge _adbBridge;
+    private volatile boolean nativeTransportEnabled = true;
+    private final CommandScheduler _scheduler = new CommandScheduler();
+    private final FanOutExecutor _fanOut = new FanOutExecutor();
+    private final PackageInstaller _installer = new PackageInstaller(this);
+    private final FastbootFlasher _flasher = new FastbootFlasher(this);
+    private volatile Executor _asyncExecutor = createDefaultAsyncExecutor();
+    private final List<CommandExecutionCompletedEventListener> executionCompleteEventListeners = new CopyOnWriteArrayList<>();
+    private List<String> connectedDeviceSerials = Collections.emptyList();
+    private List<Device> connectedDevices = Collections.emptyList();
+    private final Map<String, Device> deviceCache = new ConcurrentHashMap<>();
+    private final List<DeviceStateChangedEventListener> deviceStateChangedEventListeners = new CopyOnWriteArrayList<>();
+    private DeviceMonitor _deviceMonitor;
     //</editor-fold>
     
     //<editor-fold defaultstate="collapsed" desc="Ctor">
@@ -76,7 +109,8 @@ public class AndroidController {
      */
     private AndroidController() throws IOException, InterruptedException, InstallationFailedException {
         _helloGentlemen = HAL9000.getInstance();
-        this.executionCompleteEventListeners = new ArrayList<>();
+        _adbBridge = new AdbBridge();
+        _deviceMonitor = createDeviceMonitor();
     }
     //</editor-fold>
     
@@ -125,9 +159,7 @@ public class AndroidController {
      * @throws InterruptedException This exception is thrown if an error occurs while waiting for the command to exit.
      */
     public void executeAdbCommandNoReturn(AdbCommand command) throws IOException, InterruptedException {
-        synchronized (_lock) {
-            _helloGentlemen.executeNoReturn(command);
-        }
+        executeAdbCommandNoReturn(command, null);
     }
     
     /**
@@ -138,7 +170,7 @@ public class AndroidController {
      * @throws InterruptedException This exception is thrown if an error occurs while waiting for the command to exit.
      */
     public int executeAdbCommandReturnExitValue(AdbCommand command) throws IOException, InterruptedException {
-        synchronized (_lock) { return _helloGentlemen.executeReturnExitValue(command); }
+        return executeAdbCommandReturnExitValue(command, null);
     }
     
     /**
@@ -149,71 +181,788 @@ public class AndroidController {
      * @throws InterruptedException This exception is thrown if an error occurs while waiting for the command to exit.
      */
     public String executeAdbCommandReturnOutput(AdbCommand command) throws IOException, InterruptedException {
-        synchronized (_lock) { return _helloGentlemen.executeReturnOutput(command); }
+        return executeAdbCommandReturnOutput(command, null);
+    }
+    
+    /**
+     * Executes an {@link eu.beatsleigher.jdroidlib.android.AdbCommand} asynchronously.
+     * The command is executed on the executor set by {@link #setAsyncExecutor(java.util.concurrent.Executor)},
+     * and times out according to the command's timeout, if one was set.
+     * Registered {@link CommandExecutionCompletedEventListener}s are notified once the command has completed successfully.
+     * @param command The command to execute.
+     * @return A future, which completes once the command has finished. Cancelling the future aborts the command.
+     */
+    public CommandFuture<Void> executeAdbCommandNoReturnAsync(AdbCommand command) {
+        return submitAsync(command, (onStart) -> { executeAdbCommandNoReturn(command, onStart); return null; },
+                           (result) -> new CommandExecutionCompletedEvent(this, command, null, -1));
     }
     
     /**
      * Executes an {@link eu.beatsleigher.jdroidlib.android.AdbCommand} asynchronously.
-     * @param command
+     * The command is executed on the executor set by {@link #setAsyncExecutor(java.util.concurrent.Executor)},
+     * and times out according to the command's timeout, if one was set.
+     * Registered {@link CommandExecutionCompletedEventListener}s are notified once the command has completed successfully.
+     * @param command The command to execute.
+     * @return A future, which completes with the exit value of the process. Cancelling the future aborts the command.
+     */
+    public CommandFuture<Integer> executeAdbCommandReturnExitValueAsync(AdbCommand command) {
+        return submitAsync(command, (onStart) -> executeAdbCommandReturnExitValue(command, onStart),
+                           (exitValue) -> new CommandExecutionCompletedEvent(this, command, null, exitValue));
+    }
+    
+    /**
+     * Executes an {@link eu.beatsleigher.jdroidlib.android.AdbCommand} asynchronously.
+     * The command is executed on the executor set by {@link #setAsyncExecutor(java.util.concurrent.Executor)},
+     * and times out according to the command's timeout, if one was set.
+     * Registered {@link CommandExecutionCompletedEventListener}s are notified once the command has completed successfully.
+     * @param command The command to execute.
+     * @return A future, which completes with the entire output of the process. Cancelling the future aborts the command.
+     */
+    public CommandFuture<String> executeAdbCommandReturnOutputAsync(AdbCommand command) {
+        return submitAsync(command, (onStart) -> executeAdbCommandReturnOutput(command, onStart),
+                           (cmdOutput) -> new CommandExecutionCompletedEvent(this, command, cmdOutput, -1));
+    }
+    
+    /**
+     * Executes a given {@link eu.beatsleigher.jdroidlib.android.AdbCommand} and passes its output to a consumer, line by line.
+     * Unlike {@link #executeAdbCommandReturnOutput(eu.beatsleigher.jdroidlib.android.AdbCommand)}, the output is never accumulated,
+     * which makes this method suitable for long-running commands, such as {@code logcat}, or commands producing large amounts of output.
+     * The consumer is called on the executing thread; while it is busy, no further output is read, which throttles the command.
+     * @param command The {@link eu.beatsleigher.jdroidlib.android.AdbCommand} to execute.
+     * @param lineConsumer The consumer receiving every line of output (without line terminators).
+     * @return The exit value of the command.
      * @throws IOException This exception is thrown if an IO error occurs and process execution cannot continue.
      * @throws InterruptedException This exception is thrown if an error occurs while waiting for the command to exit.
      */
-    public void executeAdbCommandNoReturnAsync(AdbCommand command) throws IOException, InterruptedException {
-        Future future = new FutureTask(() -> {
-            synchronized (_lock) { executeAdbCommandNoReturn(command); }
-            if (!executionCompleteEventListeners.isEmpty())
-                executionCompleteEventListeners.stream().forEach((evt) -> {
-                    evt.onCommandExecutionCompleted(new CommandExecutionCompletedEvent(this, command, null, -1));
-            });
-            return null;
+    public int executeAdbCommandStreamLines(AdbCommand command, Consumer<String> lineConsumer) throws IOException, InterruptedException {
+        return executeAdbCommandStreamLines(command, lineConsumer, null);
+    }
+    
+    /**
+     * Executes a given {@link eu.beatsleigher.jdroidlib.android.AdbCommand} and passes its raw output to a consumer, chunk by chunk.
+     * The output is never accumulated, and no {@link CommandOutputChangedEventListener}s are notified.
+     * The consumer is called on the executing thread; while it is busy, no further output is read, which throttles the command.
+     * @param command The {@link eu.beatsleigher.jdroidlib.android.AdbCommand} to execute.
+     * @param chunkConsumer The consumer receiving the output.
+     * @return The exit value of the command.
+     * @throws IOException This exception is thrown if an IO error occurs and process execution cannot continue.
+     * @throws InterruptedException This exception is thrown if an error occurs while waiting for the command to exit.
+     */
+    public int executeAdbCommandStreamChunks(AdbCommand command, OutputChunkConsumer chunkConsumer) throws IOException, InterruptedException {
+        return _scheduler.execute(command, () -> {
+            if (isNativelySupported(command) && command.isShellCommand()) try {
+                return measureNative(command, null, (tracker, onConnect) -> tracker.finished(_adbBridge.executeShellStreamChunks(command.getDevice().getSerial(), command.getShellCommandLine(),
+                    chunkConsumer, onConnect)));
+            } catch (ConnectException ex) { /* The server isn't running (yet); the executable will start it. */ }
+            return _helloGentlemen.executeStreamChunks(command, chunkConsumer);
         });
-    };
+    }
     
     /**
-     * Executes an {@link eu.beatsleigher.jdroidlib.android.AdbCommand} asynchronously.
+     * Executes an {@link eu.beatsleigher.jdroidlib.android.AdbCommand} asynchronously and passes its output to a consumer, line by line.
+     * The consumer is called on the thread executing the command.
+     * Registered {@link CommandExecutionCompletedEventListener}s are notified once the command has completed successfully; the event carries no output.
      * @param command The command to execute.
-     * @return Returns the exit value of the process.
+     * @param lineConsumer The consumer receiving every line of output (without line terminators).
+     * @return A future, which completes with the exit value of the process. Cancelling the future aborts the command.
+     */
+    public CommandFuture<Integer> executeAdbCommandStreamLinesAsync(AdbCommand command, Consumer<String> lineConsumer) {
+        return submitAsync(command, (onStart) -> executeAdbCommandStreamLines(command, lineConsumer, onStart),
+                           (exitValue) -> new CommandExecutionCompletedEvent(this, command, null, exitValue));
+    }
+    
+    /**
+     * Executes several shell commands on a device in a single ADB round-trip.
+     * The commands are run one after another in the same shell, regardless of their exit values.
+     * @param device The device to execute the commands on.
+     * @param commands The command lines to execute (e.g. {@code dumpsys battery}).
+     * @return A list of results, one per command, in the order the commands were passed.
      * @throws IOException This exception is thrown if an IO error occurs and process execution cannot continue.
      * @throws InterruptedException This exception is thrown if an error occurs while waiting for the command to exit.
      */
-    public Future<Integer> executeAdbCommandReturnExitValueAsync(AdbCommand command) throws IOException, InterruptedException  {
-        return new FutureTask<>(() -> {
-            final int exitValue;
-            synchronized (_lock) { exitValue = executeAdbCommandReturnExitValue(command); }
-            
-            if (!executionCompleteEventListeners.isEmpty())
-                executionCompleteEventListeners.stream().forEach((evt) -> {
-                    evt.onCommandExecutionCompleted(new CommandExecutionCompletedEvent(this, command, null, exitValue));
+    public List<ShellResult> executeAdbShellBatch(Device device, String... commands) throws IOException, InterruptedException {
+        return executeAdbShellBatch(device, Arrays.asList(commands));
+    }
+    
+    /**
+     * Executes several shell commands on a device in a single ADB round-trip.
+     * The commands are run one after another in the same shell, regardless of their exit values.
+     * @param device The device to execute the commands on.
+     * @param commands The command lines to execute (e.g. {@code dumpsys battery}).
+     * @return A list of results, one per command, in the order the commands were passed.
+     * @throws IOException This exception is thrown if an IO error occurs and process execution cannot continue.
+     * @throws InterruptedException This exception is thrown if an error occurs while waiting for the command to exit.
+     */
+    public List<ShellResult> executeAdbShellBatch(Device device, List<String> commands) throws IOException, InterruptedException {
+        ShellBatch batch = new ShellBatch(commands);
+        AdbCommand command;
+        try {
+            command = formAdbShellCommand(device, false, batch.getScript());
+        } catch (DeviceHasNoRootException ex) {
+            throw new IllegalStateException(ex); // Cannot happen; the batch doesn't run in a root shell.
+        }
+        return batch.parse(executeAdbCommandReturnOutput(command));
+    }
+    
+    /**
+     * Opens a shell on a device, which is kept open for any number of commands.
+     * The shell is started when the first command is executed; close the session once it is no longer needed.
+     * @param device The device to open the shell on.
+     * @param rootShell Set to {@code true} if the shell should switch to root (via su) once it is started.
+     * @return A new {@link eu.beatsleigher.jdroidlib.android.ShellSession}.
+     */
+    public ShellSession openShellSession(Device device, boolean rootShell) {
+        if (device == null)
+            throw new IllegalArgumentException("Device must not be null!");
+        return new ShellSession(this, device, rootShell);
+    }
+    
+    private void executeAdbCommandNoReturn(AdbCommand command, Consumer<Closeable> onStart) throws IOException, InterruptedException {
+        _scheduler.execute(command, () -> {
+            if (isNativelySupported(command)) try {
+                measureNative(command, onStart, (tracker, onConnect) -> tracker.finished(executeNative(command, onConnect)));
+                return null;
+            } catch (ConnectException ex) { /* The server isn't running (yet); the executable will start it. */ }
+            _helloGentlemen.executeNoReturn(command, asProcessListener(onStart));
+            return null;
+        });
+    }
+    
+    private int executeAdbCommandReturnExitValue(AdbCommand command, Consumer<Closeable> onStart) throws IOException, InterruptedException {
+        return _scheduler.execute(command, () -> {
+            if (isNativelySupported(command)) try {
+                if (command.isShellCommand())
+                    return measureNative(command, onStart, (tracker, onConnect) -> tracker.finished(_adbBridge.executeShellReturnExitValue(command.getDevice().getSerial(), command.getShellCommandLine(), onConnect)));
+                return measureNative(command, onStart, (tracker, onConnect) -> {
+                    executeNative(command, onConnect);
+                    return tracker.finished(0);
+                });
+            } catch (ConnectException ex) { /* The server isn't running (yet); the executable will start it. */ }
+            return _helloGentlemen.executeReturnExitValue(command, asProcessListener(onStart));
+        });
+    }
+    
+    private String executeAdbCommandReturnOutput(AdbCommand command, Consumer<Closeable> onStart) throws IOException, InterruptedException {
+        return _scheduler.execute(command, () -> {
+            if (isNativelySupported(command)) try {
+                return measureNative(command, onStart, (tracker, onConnect) -> tracker.finished(executeNative(command, onConnect)));
+            } catch (ConnectException ex) { /* The server isn't running (yet); the executable will start it. */ }
+            return _helloGentlemen.executeReturnOutput(command, asProcessListener(onStart));
+        });
+    }
+    
+    private int executeAdbCommandStreamLines(AdbCommand command, Consumer<String> lineConsumer, Consumer<Closeable> onStart) throws IOException, InterruptedException {
+        return _scheduler.execute(command, () -> {
+            if (isNativelySupported(command) && command.isShellCommand()) try {
+                return measureNative(command, onStart, (tracker, onConnect) -> tracker.finished(_adbBridge.executeShellStreamLines(command.getDevice().getSerial(), command.getShellCommandLine(),
+                    lineConsumer, onConnect)));
+            } catch (ConnectException ex) { /* The server isn't running (yet); the executable will start it. */ }
+            return _helloGentlemen.executeStreamLines(command, lineConsumer, asProcessListener(onStart));
+        });
+    }
+    
+    private static Consumer<Process> asProcessListener(Consumer<Closeable> onStart) {
+        return onStart == null ? null : (pr) -> onStart.accept(pr::destroyForcibly);
+    }
+    //</editor-fold>
+    
+    //<editor-fold defaultstate="collapsed" desc="Asynchronous Execution">
+    /**
+     * A command execution that can be aborted by closing the resource passed to its start callback.
+     * @param <T> The type of the result.
+     */
+    @FunctionalInterface
+    private interface AbortableExecution<T> {
+        T execute(Consumer<Closeable> onStart) throws IOException, InterruptedException;
+    }
+    
+    /**
+     * Sets the executor asynchronous commands are executed on.
+     * By default, every command runs on its own virtual thread (JDK 21 and later) or on a cached pool of daemon threads (older JDKs).
+     * Commands are still serialized per device by the {@link eu.beatsleigher.jdroidlib.android.CommandScheduler}, regardless of the executor.
+     * @param executor The executor to use.
+     */
+    public void setAsyncExecutor(Executor executor) {
+        if (executor == null)
+            throw new IllegalArgumentException("Executor must not be null!");
+        this._asyncExecutor = executor;
+    }
+    
+    /**
+     * Gets the executor asynchronous commands are executed on.
+     * @return The executor used for asynchronous commands.
+     */
+    public Executor getAsyncExecutor() { return _asyncExecutor; }
+    
+    /**
+     * Submits a command for asynchronous execution.
+     * @param <T> The type of the command's result.
+     * @param command The command to execute.
+     * @param execution The execution of the command.
+     * @param eventFactory Creates the event passed to the {@link CommandExecutionCompletedEventListener}s from the command's result,
+     * or {@code null} for internal commands the listeners aren't notified of.
+     * @return The future representing the command's result.
+     */
+    private <T> CommandFuture<T> submitAsync(Command command, AbortableExecution<T> execution, Function<T, CommandExecutionCompletedEvent> eventFactory) {
+        CommandFuture<T> future = new CommandFuture<>(command);
+        
+        if (command.getTimeout() > 0 && command.getTimeUnits() != null) {
+            ScheduledFuture<?> _timeout = TIMEOUT_SCHEDULER.schedule(future::timeout, command.getTimeout(), command.getTimeUnits());
+            future.whenComplete((result, ex) -> _timeout.cancel(false));
+        }
+        
+        try {
+            _asyncExecutor.execute(() -> {
+                if (future.isDone())
+                    return; // Cancelled or timed out before it was started.
+                future.setRunner(Thread.currentThread());
+                try {
+                    T result = execution.execute(future::attach);
+                    if (future.complete(result) && eventFactory != null && !executionCompleteEventListeners.isEmpty())
+                        getEventDispatcher().dispatch(executionCompleteEventListeners, eventFactory.apply(result),
+                                                      CommandExecutionCompletedEventListener::onCommandExecutionCompleted);
+                } catch (CommandTimeoutException ex) {
+                    future.timeout();
+                } catch (Exception ex) {
+                    future.completeExceptionally(ex);
+                } finally {
+                    future.releaseRunner(); // Don't leak an abort into the next task on this thread.
+                }
             });
-            
-            return exitValue;
+        } catch (RejectedExecutionException ex) {
+            future.completeExceptionally(ex);
+        }
+        
+        return future;
+    }
+    
+    /**
+     * Creates the default executor for asynchronous commands.
+     * Virtual threads are used if the JVM supports them (JDK 21 and later).
+     * @return A new executor.
+     */
+    private static Executor createDefaultAsyncExecutor() {
+        try {
+            return (Executor)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException ex) { /* Virtual threads aren't available on this JVM. */ }
+        
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newCachedThreadPool((runnable) -> {
+            Thread thread = new Thread(runnable, "JDroidLib-Async-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
         });
     }
+    //</editor-fold>
+    //</editor-fold>
     
+    //<editor-fold defaultstate="collapsed" desc="Scheduling">
     /**
-     * Executes an {@link eu.beatsleigher.jdroidlib.android.AdbCommand} asynchronously.
+     * Gets the {@link eu.beatsleigher.jdroidlib.android.CommandScheduler} deciding which commands may run in parallel.
+     * By default, commands are serialized per device, while commands targeting different devices run in parallel.
+     * @return The command scheduler of this class.
+     */
+    public CommandScheduler getCommandScheduler() { return _scheduler; }
+    
+    /**
+     * Sets the maximum amount of commands running against the ADB server at the same time.
+     * @param maxConcurrentCommands The new maximum. Must be greater than zero.
+     */
+    public void setMaxConcurrentServerCommands(int maxConcurrentCommands) { _scheduler.setMaxConcurrentCommands(maxConcurrentCommands); }
+    //</editor-fold>
+    
+    //<editor-fold defaultstate="collapsed" desc="Fan-Out">
+    /**
+     * Gets the {@link eu.beatsleigher.jdroidlib.android.FanOutExecutor} executing commands on several devices at once.
+     * Use it to change the concurrency limits, or to fan out commands with a deadline.
+     * @return The fan-out executor of this class.
+     */
+    public FanOutExecutor getFanOutExecutor() { return _fanOut; }
+    
+    /**
+     * Executes a command on several devices in parallel and returns each device's output.
+     * A failing or slow device does not affect the results of the other devices.
+     * @param devices The devices to execute the command on, e.g. {@link #getConnectedDevices()}.
+     * @param template Creates the command for every device, e.g. {@code (device) -> formAdbShellCommand(device, false, "getprop", "ro.product.model")}.
+     * @return An unmodifiable map containing each device's output, latency and failure, in the order the devices were passed.
+     * @throws InterruptedException If the thread is interrupted while waiting; all commands still running are aborted.
+     */
+    public Map<Device, DeviceResult<String>> executeAdbCommandReturnOutputOnDevices(Collection<Device> devices, FanOutExecutor.CommandTemplate<AdbCommand> template) throws InterruptedException {
+        return _fanOut.execute(devices, template, this::executeAdbCommandReturnOutputAsync);
+    }
+    
+    /**
+     * Executes a command on several devices in parallel and returns each device's exit value.
+     * A failing or slow device does not affect the results of the other devices.
+     * @param devices The devices to execute the command on, e.g. {@link #getConnectedDevices()}.
+     * @param template Creates the command for every device, e.g. {@code (device) -> formAdbCommand(device, "reboot")}.
+     * @return An unmodifiable map containing each device's exit value, latency and failure, in the order the devices were passed.
+     * @throws InterruptedException If the thread is interrupted while waiting; all commands still running are aborted.
+     */
+    public Map<Device, DeviceResult<Integer>> executeAdbCommandReturnExitValueOnDevices(Collection<Device> devices, FanOutExecutor.CommandTemplate<AdbCommand> template) throws InterruptedException {
+        return _fanOut.execute(devices, template, this::executeAdbCommandReturnExitValueAsync);
+    }
+    //</editor-fold>
+    
+    //<editor-fold defaultstate="collapsed" desc="Metrics">
+    /**
+     * Gets the metrics every command execution is reported to, whether it is executed by the ADB executable or via the native transport.
+     * By default, this is an {@link eu.beatsleigher.jdroidlib.metrics.InMemoryCommandMetrics};
+     * call its {@link eu.beatsleigher.jdroidlib.metrics.InMemoryCommandMetrics#registerMBeans()} method to export the metrics via JMX.
+     * @return The command metrics.
+     */
+    public CommandMetrics getCommandMetrics() { return _helloGentlemen.getCommandMetrics(); }
+    
+    /**
+     * Sets the metrics every command execution is reported to.
+     * @param commandMetrics The command metrics, or {@link eu.beatsleigher.jdroidlib.metrics.CommandMetrics#DISABLED} to disable metrics.
+     */
+    public void setCommandMetrics(CommandMetrics commandMetrics) { _helloGentlemen.setCommandMetrics(commandMetrics); }
+    //</editor-fold>
+    
+    //<editor-fold defaultstate="collapsed" desc="Native Transport">
+    /**
+     * Enables or disables the native ADB transport.
+     * If enabled (default), shell commands and device listings are sent directly to the ADB server via its wire protocol,
+     * instead of spawning an ADB process for every command.
+     * Commands the native transport cannot handle are always executed via the ADB executable.
+     * @param enabled {@code true} to enable the native transport, {@code false} to always use the ADB executable.
+     */
+    public void setNativeTransportEnabled(boolean enabled) { this.nativeTransportEnabled = enabled; }
+    
+    /**
+     * Gets a value indicating whether the native ADB transport is enabled.
+     * @return {@code true} if the native transport is enabled, {@code false} if not.
+     */
+    public boolean isNativeTransportEnabled() { return nativeTransportEnabled; }
+    
+    /**
+     * Sets the address of the ADB server used by the native transport.
+     * @param host The host the ADB server is listening on.
+     * @param port The port the ADB server is listening on.
+     */
+    public synchronized void setAdbServerAddress(String host, int port) {
+        boolean monitorWasRunning = _deviceMonitor.isRunning();
+        
+        _deviceMonitor.stop();
+        this._adbBridge = new AdbBridge(host, port);
+        _deviceMonitor = createDeviceMonitor();
+        if (monitorWasRunning)
+            _deviceMonitor.start();
+    }
+    
+    /**
+     * Gets the {@link eu.beatsleigher.jdroidlib.adb.AdbBridge} used by the native transport.
+     * @return The bridge to the ADB server.
+     */
+    public AdbBridge getAdbBridge() { return _adbBridge; }
+    
+    /**
+     * Determines whether a command can be executed via the native transport.
+     * @param command The command to check.
+     * @return {@code true} if the command can be sent to the ADB server directly.
+     */
+    private boolean isNativelySupported(AdbCommand command) {
+        if (!nativeTransportEnabled)
+            return false;
+        if (command.isShellCommand())
+            return true;
+        return command.getDevice() == null && "devices".equals(command.getBaseCommand()) && command.getParameters().isEmpty();
+    }
+    
+    /**
+     * Executes a command via the native transport.
+     * The output mirrors the output of the ADB executable.
+     * @param command The command to execute.
+     * @param onConnect Called with the connection carrying the command. May be {@code null}.
+     * @return The output of the command.
+     * @throws IOException If an IO error occurs, or the ADB server refuses the request.
+     */
+    private String executeNative(AdbCommand command, Consumer<Closeable> onConnect) throws IOException {
+        if (command.isShellCommand())
+            return _adbBridge.executeShell(command.getDevice().getSerial(), command.getShellCommandLine(), onConnect);
+        return "List of devices attached\n" + _adbBridge.getDeviceList(onConnect);
+    }
+    
+    /**
+     * A command execution via the native transport, which reports its result to a tracker.
+     * The output is counted by the connection passed to {@code onConnect}.
+     * @param <T> The type of the result.
+     */
+    @FunctionalInterface
+    private interface NativeExecution<T> {
+        T execute(CommandExecutionTracker tracker, Consumer<Closeable> onConnect) throws IOException;
+    }
+    
+    /**
+     * Executes a command via the native transport and reports the execution to the command metrics.
+     * An execution that cannot reach the ADB server is reported as failed, even though the command then falls back to the ADB executable.
+     * @param <T> The type of the result.
+     * The output is measured in bytes read from the connection carrying the command.
      * @param command The command to execute.
-     * @return The entire output of the process.
+     * @param onStart Called with the connection carrying the command. May be {@code null}.
+     * @param execution The execution of the command; it must finish the tracker passed to it, and pass the callback to the {@link AdbBridge}.
+     * @return The result of the execution.
+     * @throws IOException If an IO error occurs, or the ADB server refuses the request.
+     */
+    private <T> T measureNative(AdbCommand command, Consumer<Closeable> onStart, NativeExecution<T> execution) throws IOException {
+        CommandExecutionTracker tracker = CommandExecutionTracker.start(_helloGentlemen.getCommandMetrics(), command, Transport.NATIVE);
+        Consumer<Closeable> _onConnect = (connection) -> {
+            tracker.countOutput(() -> AdbBridge.getBytesRead(connection));
+            if (onStart != null)
+                onStart.accept(connection);
+        };
+        try {
+            return execution.execute(tracker, _onConnect);
+        } catch (IOException | RuntimeException ex) {
+            tracker.failed(ex);
+            throw ex;
+        }
+    }
+    //</editor-fold>
+    
+    //<editor-fold defaultstate="collapsed" desc="Package Installation">
+    /**
+     * Installs a package on a device.
+     * The APKs are streamed to the device, written to an install session and committed, like {@code adb install-multiple} does.
+     * Unlike with {@code adb install}, the result carries the package manager's failure code and the time spent in every stage.
+     * @param device The device to install the package on.
+     * @param apks The package's APKs: the base APK, followed by any split APKs.
+     * @param flags The install flags to pass to the package manager (e.g. {@code -r} to replace an existing package).
+     * @return The result of the installation.
+     * @throws IOException If an APK cannot be read, or an IO error occurs while talking to the device.
+     * @throws InterruptedException If the thread is interrupted while installing the package.
+     */
+    public InstallResult installPackage(Device device, List<Path> apks, String... flags) throws IOException, InterruptedException {
+        return _installer.install(device, apks, flags);
+    }
+    
+    /**
+     * Installs a package on a device asynchronously.
+     * The installation is executed on the executor set by {@link #setAsyncExecutor(java.util.concurrent.Executor)}.
+     * @param device The device to install the package on.
+     * @param apks The package's APKs: the base APK, followed by any split APKs.
+     * @param flags The install flags to pass to the package manager (e.g. {@code -r} to replace an existing package).
+     * @return A future, which completes with the result of the installation. Cancelling the future stops the installation after the current stage.
+     */
+    public CommandFuture<InstallResult> installPackageAsync(Device device, List<Path> apks, String... flags) {
+        AdbCommand command = formAdbCommand(device, "install-multiple", apks.stream().map(Path::toString).toArray(String[]::new));
+        return submitAsync(command, (onStart) -> _installer.install(device, apks, flags),
+                           (result) -> new CommandExecutionCompletedEvent(this, command, result.getOutput(), -1));
+    }
+    
+    /**
+     * Installs a package on several devices in parallel, subject to the limits of the {@link #getFanOutExecutor() fan-out executor}.
+     * @param devices The devices to install the package on, e.g. {@link #getConnectedDevices()}.
+     * @param apks The package's APKs: the base APK, followed by any split APKs.
+     * @param flags The install flags to pass to the package manager (e.g. {@code -r} to replace an existing package).
+     * @return An unmodifiable map containing each device's installation result, in the order the devices were passed.
+     * @throws InterruptedException If the thread is interrupted while waiting; all installations still running are stopped.
+     */
+    public Map<Device, DeviceResult<InstallResult>> installPackageOnDevices(Collection<Device> devices, List<Path> apks, String... flags) throws InterruptedException {
+        return _fanOut.execute(devices, (device) -> formAdbCommand(device, "install-multiple"),
+                               (command) -> installPackageAsync(command.getDevice(), apks, flags));
+    }
+    //</editor-fold>
+    
+    //<editor-fold defaultstate="collapsed" desc="Fastboot">
+    /**
+     * Creates an instance of the {@link eu.beatsleigher.jdroidlib.android.FastbootCommand} class with the given parameters.
+     * The command is not bound to a device, e.g. {@code devices}.
+     * @param command The command to execute (must not be fastboot!)
+     * @param params The parameters and flags for the command.
+     * @return An instance of the {@link eu.beatsleigher.jdroidlib.android.FastbootCommand} class.
+     */
+    public FastbootCommand formFastbootCommandNoDevice(String command, String... params) {
+        return new FastbootCommand(command, params);
+    }
+    
+    /**
+     * Creates an instance of the {@link eu.beatsleigher.jdroidlib.android.FastbootCommand} class with the given parameters.
+     * @param device The device in fastboot mode on which to execute the command.
+     * @param command The command to execute (must not be fastboot!)
+     * @param params The parameters and flags for the command.
+     * @return An instance of the {@link eu.beatsleigher.jdroidlib.android.FastbootCommand} class.
+     */
+    public FastbootCommand formFastbootCommand(Device device, String command, String... params) throws IllegalArgumentException {
+        return new FastbootCommand(device, command, params);
+    }
+    
+    /**
+     * Executes a given {@link eu.beatsleigher.jdroidlib.android.FastbootCommand} and returns its exit value.
+     * Like ADB commands, fastboot commands are serialized per device by the {@link eu.beatsleigher.jdroidlib.android.CommandScheduler}.
+     * @param command The {@link eu.beatsleigher.jdroidlib.android.FastbootCommand} to execute.
+     * @return The exit value of the command.
      * @throws IOException This exception is thrown if an IO error occurs and process execution cannot continue.
      * @throws InterruptedException This exception is thrown if an error occurs while waiting for the command to exit.
      */
-    public Future<String> executeAdbCommandReturnOutputAsync(AdbCommand command) throws IOException, InterruptedException {
-        return new FutureTask<>(() -> {
-            final String cmdOutput;
-            synchronized (_lock) { cmdOutput = executeAdbCommandReturnOutput(command); }
-            
-            if (!executionCompleteEventListeners.isEmpty())
-                executionCompleteEventListeners.stream().forEach((evt) -> {
-                    evt.onCommandExecutionCompleted(new CommandExecutionCompletedEvent(this, command, cmdOutput, -1));
-            });
-            
-            return cmdOutput;
+    public int executeFastbootCommandReturnExitValue(FastbootCommand command) throws IOException, InterruptedException {
+        return _scheduler.execute(command, () -> _helloGentlemen.executeReturnExitValue(command));
+    }
+    
+    /**
+     * Executes a given {@link eu.beatsleigher.jdroidlib.android.FastbootCommand} and returns its output.
+     * @param command The {@link eu.beatsleigher.jdroidlib.android.FastbootCommand} to execute.
+     * @return The output of the command (fastboot writes most of its output to stderr, which is included).
+     * @throws IOException This exception is thrown if an IO error occurs and process execution cannot continue.
+     * @throws InterruptedException This exception is thrown if an error occurs while waiting for the command to exit.
+     */
+    public String executeFastbootCommandReturnOutput(FastbootCommand command) throws IOException, InterruptedException {
+        return _scheduler.execute(command, () -> _helloGentlemen.executeReturnOutput(command));
+    }
+    
+    /**
+     * Executes a given {@link eu.beatsleigher.jdroidlib.android.FastbootCommand} and passes its output to a consumer, line by line.
+     * @param command The {@link eu.beatsleigher.jdroidlib.android.FastbootCommand} to execute.
+     * @param lineConsumer The consumer receiving every line of output (without line terminators).
+     * @return The exit value of the command.
+     * @throws IOException This exception is thrown if an IO error occurs and process execution cannot continue.
+     * @throws InterruptedException This exception is thrown if an error occurs while waiting for the command to exit.
+     */
+    public int executeFastbootCommandStreamLines(FastbootCommand command, Consumer<String> lineConsumer) throws IOException, InterruptedException {
+        return executeFastbootCommandStreamLines(command, lineConsumer, null);
+    }
+    
+    /**
+     * Executes a {@link eu.beatsleigher.jdroidlib.android.FastbootCommand} asynchronously.
+     * The command is executed on the executor set by {@link #setAsyncExecutor(java.util.concurrent.Executor)},
+     * and times out according to the command's timeout, if one was set.
+     * @param command The command to execute.
+     * @return A future, which completes with the entire output of the process. Cancelling the future aborts the command.
+     */
+    public CommandFuture<String> executeFastbootCommandReturnOutputAsync(FastbootCommand command) {
+        return submitAsync(command, (onStart) -> _scheduler.execute(command, () -> _helloGentlemen.executeReturnOutput(command, asProcessListener(onStart))),
+                           (cmdOutput) -> new CommandExecutionCompletedEvent(this, command, cmdOutput, -1));
+    }
+    
+    int executeFastbootCommandStreamLines(FastbootCommand command, Consumer<String> lineConsumer, Consumer<Closeable> onStart) throws IOException, InterruptedException {
+        return _scheduler.execute(command, () -> _helloGentlemen.executeStreamLines(command, lineConsumer, asProcessListener(onStart)));
+    }
+    
+    /**
+     * Flashes a set of images onto the partitions of a device in fastboot mode.
+     * All images are flashed by a single fastboot process; if a partition fails, the remaining partitions are not flashed.
+     * If the device is not in fastboot mode, fastboot waits for it to appear.
+     * @param device The device to flash.
+     * @param images The images to flash, in the order they are to be flashed.
+     * @param listener The listener to notify whenever a partition has been sent or written, or {@code null}.
+     * It is called on the {@link #getEventDispatcher() event dispatcher}'s thread, so it doesn't hold up fastboot.
+     * @return The result of flashing the device, including the time every partition spent in each stage.
+     * @throws IOException If fastboot cannot be started.
+     * @throws InterruptedException If the thread is interrupted while flashing the device.
+     * @throws IllegalArgumentException If the device's serial number is a TCP address with an invalid port.
+     */
+    public FlashResult flashDevice(Device device, List<FlashImage> images, FlashProgressEventListener listener) throws IOException, InterruptedException {
+        return _flasher.flash(_flasher.createCommand(device, images), images, listener, null);
+    }
+    
+    /**
+     * Flashes a set of images onto the partitions of a device in fastboot mode asynchronously.
+     * The device is flashed on the executor set by {@link #setAsyncExecutor(java.util.concurrent.Executor)}.
+     * @param device The device to flash.
+     * @param images The images to flash, in the order they are to be flashed.
+     * @param listener The listener to notify whenever a partition has been sent or written, or {@code null}.
+     * @return A future, which completes with the result of flashing the device. Cancelling the future kills fastboot.
+     */
+    public CommandFuture<FlashResult> flashDeviceAsync(Device device, List<FlashImage> images, FlashProgressEventListener listener) {
+        return flashDeviceAsync(_flasher.createCommand(device, images), images, listener);
+    }
+    
+    /**
+     * Flashes a set of images onto several devices in fastboot mode in parallel,
+     * subject to the limits of the {@link #getFanOutExecutor() fan-out executor}.
+     * A device failing to flash does not affect the other devices.
+     * @param devices The devices to flash.
+     * @param images The images to flash onto every device, in the order they are to be flashed.
+     * @param listener The listener to notify whenever a partition of any device has been sent or written, or {@code null}.
+     * The listener is called on the {@link #getEventDispatcher() event dispatcher}'s thread, one event at a time.
+     * @return An unmodifiable map containing each device's result, in the order the devices were passed.
+     * @throws InterruptedException If the thread is interrupted while waiting; all devices still being flashed are aborted.
+     */
+    public Map<Device, DeviceResult<FlashResult>> flashDevices(Collection<Device> devices, List<FlashImage> images, FlashProgressEventListener listener) throws InterruptedException {
+        return _fanOut.execute(devices, (device) -> _flasher.createCommand(device, images), (command) -> flashDeviceAsync(command, images, listener));
+    }
+    
+    private CommandFuture<FlashResult> flashDeviceAsync(FastbootCommand command, List<FlashImage> images, FlashProgressEventListener listener) {
+        return submitAsync(command, (onStart) -> _flasher.flash(command, images, listener, onStart),
+                           (result) -> new CommandExecutionCompletedEvent(this, command, result.getOutput(), result.getExitValue()));
+    }
+    //</editor-fold>
+    
+    //<editor-fold defaultstate="collapsed" desc="File Transfer">
+    /**
+     * Pushes a local file to a device.
+     * The file is transferred via the ADB sync protocol; if the ADB server is not running (yet), {@code adb push} is used instead,
+     * in which case no progress is reported.
+     * @param device The device to push the file to.
+     * @param localFile The file to push.
+     * @param remotePath The path of the file on the device (not its parent directory).
+     * @param listener Notified of the transfer's progress. May be {@code null}.
+     * It is called on the {@link #getEventDispatcher() event dispatcher}'s thread, so it doesn't hold up the transfer.
+     * @throws IOException If an IO error occurs, or the device refuses the file.
+     * @throws InterruptedException If the thread is interrupted while waiting for the device.
+     */
+    public void pushFile(Device device, Path localFile, String remotePath, FileTransferProgressEventListener listener) throws IOException, InterruptedException {
+        pushFiles(device, Collections.singletonMap(localFile, remotePath), listener);
+    }
+    
+    /**
+     * Pushes several local files to a device.
+     * All files are pipelined over a single sync connection, so pushing many small files does not cost a process or round trip per file.
+     * If the ADB server is not running (yet), {@code adb push} is used for every file instead, in which case no progress is reported.
+     * @param device The device to push the files to.
+     * @param files The files to push, mapped to their paths on the device.
+     * @param listener Notified of every file's progress. May be {@code null}.
+     * It is called on the {@link #getEventDispatcher() event dispatcher}'s thread, so it doesn't hold up the transfer.
+     * @throws IOException If an IO error occurs, or the device refuses a file.
+     * @throws InterruptedException If the thread is interrupted while waiting for the device.
+     */
+    public void pushFiles(Device device, Map<Path, String> files, FileTransferProgressEventListener listener) throws IOException, InterruptedException {
+        _scheduler.execute(formAdbCommand(device, "push"), () -> {
+            if (nativeTransportEnabled) try (SyncConnection sync = _adbBridge.openSync(device.getSerial())) {
+                sync.pushAll(files, SyncConnection.DEFAULT_FILE_MODE, dispatchTransferProgress(listener));
+                return null;
+            } catch (ConnectException ex) { /* The server isn't running (yet); the executable will start it. */ }
+            for (Map.Entry<Path, String> file : files.entrySet())
+                executeTransferCommand(formAdbCommand(device, "push", file.getKey().toString(), file.getValue()));
+            return null;
         });
     }
+    
+    /**
+     * Pulls a file from a device.
+     * The file is transferred via the ADB sync protocol; if the ADB server is not running (yet), {@code adb pull} is used instead,
+     * in which case no progress is reported.
+     * @param device The device to pull the file from.
+     * @param remotePath The path of the file on the device.
+     * @param localFile The path of the local file (not its parent directory).
+     * @param listener Notified of the transfer's progress. May be {@code null}.
+     * It is called on the {@link #getEventDispatcher() event dispatcher}'s thread, so it doesn't hold up the transfer.
+     * @throws IOException If an IO error occurs, or the file could not be read on the device.
+     * @throws InterruptedException If the thread is interrupted while waiting for the device.
+     */
+    public void pullFile(Device device, String remotePath, Path localFile, FileTransferProgressEventListener listener) throws IOException, InterruptedException {
+        AdbCommand command = formAdbCommand(device, "pull", remotePath, localFile.toString());
+        _scheduler.execute(command, () -> {
+            if (nativeTransportEnabled) try (SyncConnection sync = _adbBridge.openSync(device.getSerial())) {
+                sync.pull(remotePath, localFile, dispatchTransferProgress(listener));
+                return null;
+            } catch (ConnectException ex) { /* The server isn't running (yet); the executable will start it. */ }
+            executeTransferCommand(command);
+            return null;
+        });
+    }
+    
+    /**
+     * Wraps a transfer listener, so it is called on the event dispatcher's thread instead of the transferring thread.
+     * @param listener The listener to wrap. May be {@code null}.
+     * @return The wrapping listener, or {@code null} if there is no listener.
+     */
+    private FileTransferProgressEventListener dispatchTransferProgress(FileTransferProgressEventListener listener) {
+        if (listener == null)
+            return null;
+        List<FileTransferProgressEventListener> listeners = Collections.singletonList(listener);
+        // Delivered by the dispatcher, so a slow listener doesn't stall the socket.
+        return (evt) -> getEventDispatcher().dispatch(listeners, evt, FileTransferProgressEventListener::onFileTransferProgress);
+    }
+    
+    /**
+     * Executes a push or pull via the ADB executable.
+     * @param command The command to execute.
+     * @throws IOException If the command fails.
+     */
+    private void executeTransferCommand(AdbCommand command) throws IOException, InterruptedException {
+        StringBuilder cmdOutput = new StringBuilder();
+        if (_helloGentlemen.executeStreamLines(command, (inLine) -> cmdOutput.append(inLine).append('\n')) != 0)
+            throw new IOException(String.format("\"%s\" failed: %s", command.getCommand(), cmdOutput.toString().trim()));
+    }
     //</editor-fold>
+    
+    //<editor-fold defaultstate="collapsed" desc="Logcat">
+    /**
+     * Starts following the log of a device, reading logcat's default buffers and retaining the most recent
+     * {@value eu.beatsleigher.jdroidlib.logcat.LogBuffer#DEFAULT_CAPACITY} bytes of entries.
+     * @param device The device whose log to follow.
+     * @return The running {@link eu.beatsleigher.jdroidlib.android.LogcatStream}; close it once it is no longer needed.
+     */
+    public LogcatStream openLogcat(Device device) {
+        return openLogcat(device, LogBuffer.DEFAULT_CAPACITY, LogcatStream.DEFAULT_BUFFERS);
+    }
+    
+    /**
+     * Starts following the log of a device.
+     * The stream's buffer is allocated outside of the Java heap; entries older than what fits into it are discarded.
+     * @param device The device whose log to follow.
+     * @param retentionBytes The amount of memory to retain entries in, at least {@value eu.beatsleigher.jdroidlib.logcat.LogBuffer#MIN_CAPACITY} bytes.
+     * @param buffers The names of the log buffers to read (e.g. {@code main}, {@code radio}, {@code events}).
+     * @return The running {@link eu.beatsleigher.jdroidlib.android.LogcatStream}; close it once it is no longer needed.
+     */
+    public LogcatStream openLogcat(Device device, int retentionBytes, List<String> buffers) {
+        if (device == null)
+            throw new IllegalArgumentException("Device must not be null!");
+        if (buffers == null || buffers.isEmpty())
+            throw new IllegalArgumentException("At least one log buffer must be passed!");
+        
+        LogcatStream stream = new LogcatStream(this, device, new LogBuffer(retentionBytes), buffers);
+        stream.start();
+        return stream;
+    }
+    
+    /**
+     * Starts following the logs of several devices, merged into a single log ordered by time.
+     * Entries are held back for {@value eu.beatsleigher.jdroidlib.android.MergedLogcatStream#DEFAULT_REORDER_WINDOW_MILLIS}ms to be merged;
+     * every device reads logcat's default buffers and retains the most recent {@value eu.beatsleigher.jdroidlib.logcat.LogBuffer#DEFAULT_CAPACITY} bytes of entries.
+     * @param devices The devices whose logs to follow.
+     * @return The running {@link eu.beatsleigher.jdroidlib.android.MergedLogcatStream}; close it once it is no longer needed.
+     * @throws IOException If the clock of a device cannot be read.
+     * @throws InterruptedException If the thread is interrupted while reading the devices' clocks.
+     */
+    public MergedLogcatStream openMergedLogcat(Collection<Device> devices) throws IOException, InterruptedException {
+        return openMergedLogcat(devices, MergedLogcatStream.DEFAULT_REORDER_WINDOW_MILLIS, TimeUnit.MILLISECONDS, LogBuffer.DEFAULT_CAPACITY, LogcatStream.DEFAULT_BUFFERS);
+    }
+    
+    /**
+     * Starts following the logs of several devices, merged into a single log ordered by time.
+     * The offsets of the devices' clocks are measured in parallel, subject to the limits of the {@link #getFanOutExecutor() fan-out executor},
+     * before any device's log is read.
+     * @param devices The devices whose logs to follow.
+     * @param reorderWindow The time every entry is held back for, so older entries of other devices can overtake it.
+     * Should exceed the difference between the devices' delays in delivering their logs.
+     * @param timeUnit The unit of the reorder window.
+     * @param retentionBytes The amount of memory to retain each device's entries in, at least {@value eu.beatsleigher.jdroidlib.logcat.LogBuffer#MIN_CAPACITY} bytes.
+     * @param buffers The names of the log buffers to read (e.g. {@code main}, {@code radio}, {@code events}).
+     * @return The running {@link eu.beatsleigher.jdroidlib.android.MergedLogcatStream}; close it once it is no longer needed.
+     * @throws IOException If the clock of a device cannot be read.
+     * @throws InterruptedException If the thread is interrupted while reading the devices' clocks.
+     */
+    public MergedLogcatStream openMergedLogcat(Collection<Device> devices, long reorderWindow, TimeUnit timeUnit, int retentionBytes, List<String> buffers) throws IOException, InterruptedException {
+        if (devices == null || devices.isEmpty())
+            throw new IllegalArgumentException("At least one device must be passed!");
+        if (buffers == null || buffers.isEmpty())
+            throw new IllegalArgumentException("At least one log buffer must be passed!");
+    
+        MergedLogcatStream stream = new MergedLogcatStream(this, reorderWindow, timeUnit, retentionBytes, buffers);
+        Map<Device, DeviceResult<Long>> _offsets = _fanOut.execute(devices, (device) -> MergedLogcatStream.createClockCommand(this, device),
+            (command) -> submitAsync(command, (onStart) -> MergedLogcatStream.measureClockOffset(this, command), null)); // The caller didn't issue these commands.
+        for (DeviceResult<Long> _offset : _offsets.values())
+            if (!_offset.isSuccessful())
+                throw new IOException(String.format("The clock of %s could not be read.", _offset.getDevice().getSerial()), _offset.getFailure());
+    
+        stream.start();
+        _offsets.values().forEach((_offset) -> stream.attach(_offset.getDevice(), _offset.getResult()));
+        return stream;
+    }
     //</editor-fold>
     
     //<editor-fold defaultstate="collapsed" desc="Event Stuff">
+    /**
+     * Gets the {@link eu.beatsleigher.jdroidlib.events.EventDispatcher} delivering this library's events to their listeners.
+     * All listeners are called on the dispatcher's thread, in the order the events were raised, never on the thread executing a command.
+     * Use it to change the dispatcher's {@link EventDispatcher.OverflowPolicy}.
+     * @return The event dispatcher.
+     */
+    public EventDispatcher getEventDispatcher() { return _helloGentlemen.getEventDispatcher(); }
+    
     /**
      * Adds a new event listener to this class.
      * @param evt The {@link CommandExectionCompletedEventListener} to add to this class.
@@ -270,8 +1019,86 @@ public class AndroidController {
         executeAdbCommandNoReturn(formAdbCommandNoDevice("stop-server"));
     }
     
+    /**
+     * Starts monitoring the ADB server for attached and detached devices.
+     * While the monitor is running, {@link #getConnectedDevices()} and {@link #getDeviceSerials()} are served from memory,
+     * without querying the ADB server.
+     * @param timeout The maximum time to wait for the initial device list.
+     * @param timeUnit The unit of the timeout.
+     * @return {@code true} if the initial device list was received within the given timeout.
+     * @throws InterruptedException If the current thread is interrupted while waiting for the device list.
+     */
+    public boolean startDeviceMonitor(long timeout, TimeUnit timeUnit) throws InterruptedException {
+        _deviceMonitor.start();
+        return _deviceMonitor.awaitDeviceList(timeout, timeUnit);
+    }
+    
+    /**
+     * Stops monitoring the ADB server.
+     * Subsequent device lookups will query the ADB server again.
+     */
+    public void stopDeviceMonitor() { _deviceMonitor.stop(); }
+    
+    /**
+     * Gets a value indicating whether the device monitor is running.
+     * @return {@code true} if the device monitor is running, {@code false} if not.
+     */
+    public boolean isDeviceMonitorRunning() { return _deviceMonitor.isRunning(); }
+    
+    /**
+     * Gets the state of a connected device.
+     * If the device monitor is running, the state is served from memory.
+     * @param device The device to get the state of.
+     * @return The device's state, or {@code null} if the device is not connected.
+     * @throws IOException This exception is thrown if an IO error occurs and command execution can no longer continue;
+     * @throws InterruptedException This exception is thrown if an error occurs while waiting for the command to exit.
+     */
+    public DeviceState getDeviceState(Device device) throws IOException, InterruptedException {
+        if (_deviceMonitor.isRunning())
+            return _deviceMonitor.getState(device.getSerial());
+        
+        for (String _line : executeAdbCommandReturnOutput(formAdbCommandNoDevice("devices")).split("\n")) {
+            String[] _columns = _line.split("\t");
+            if (_columns.length > 1 && _columns[0].equals(device.getSerial()))
+                return DeviceState.fromString(_columns[1]);
+        }
+        return null;
+    }
+    
+    /**
+     * Adds a new event listener to this class.
+     * The listener is only notified while the device monitor is running.
+     * @param evt The {@link DeviceStateChangedEventListener} to add to this class.
+     * @return A value indicating whether the addition was successful or not.
+     */
+    public boolean addDeviceStateChangedEventListener(DeviceStateChangedEventListener evt) {
+        return deviceStateChangedEventListeners.add(evt);
+    }
+    
+    /**
+     * Removes an event listener from this class.
+     * @param evt The {@link DeviceStateChangedEventListener} to remove from this class.
+     * @return A value indicating whether the removal was successful or not.
+     */
+    public boolean removeDeviceStateChangedEventListener(DeviceStateChangedEventListener evt) {
+        return deviceStateChangedEventListeners.remove(evt);
+    }
+    
+    /**
+     * Creates a device monitor for the current ADB bridge, which forwards its events to the listeners registered with this class.
+     * @return A new, stopped {@link eu.beatsleigher.jdroidlib.adb.DeviceMonitor}.
+     */
+    private DeviceMonitor createDeviceMonitor() {
+        DeviceMonitor monitor = new DeviceMonitor(_adbBridge);
+        monitor.addDeviceStateChangedEventListener((evt) -> {
+            getEventDispatcher().dispatch(deviceStateChangedEventListeners, evt, DeviceStateChangedEventListener::onDeviceStateChanged);
+        });
+        return monitor;
+    }
+    
     /**
      * Updates the device lists in this class.
+     * If the device monitor is running, the lists are updated from memory, without querying the ADB server.
      * @throws IOException This exception is thrown if an IO error occurs and command execution can no longer continue;
      * @throws InterruptedException 
      */
@@ -281,27 +1108,33 @@ public class AndroidController {
         String _rawOutput = "", _line = null, _parsedDevice = null;
         BufferedReader reader;
         
-        _rawOutput = executeAdbCommandReturnOutput(formAdbCommandNoDevice("devices"));
-        
-        reader = new BufferedReader(new StringReader(_rawOutput));
-        while (reader.read() != -1) {
-            _line = reader.readLine();
-            if (_line.toLowerCase().contains("list") || _line.isEmpty()) continue;
+        if (_deviceMonitor.isRunning()) {
+            _deviceSerials.addAll(_deviceMonitor.getSerials());
+        } else {
+            _rawOutput = executeAdbCommandReturnOutput(formAdbCommandNoDevice("devices"));
             
-            _parsedDevice = _line.split("\\s")[0];
-            _deviceObjects.add(getDevice(_parsedDevice));
-            _deviceSerials.add(_parsedDevice);
+            reader = new BufferedReader(new StringReader(_rawOutput));
+            while ((_line = reader.readLine()) != null) {
+                if (_line.toLowerCase().contains("list") || _line.trim().isEmpty()) continue;
+                
+                _parsedDevice = _line.split("\\s")[0];
+                _deviceSerials.add(_parsedDevice);
+            }
         }
         
+        _deviceSerials.stream().forEach((_serial) -> _deviceObjects.add(getDevice(_serial)));
+        connectedDevices = Collections.unmodifiableList(_deviceObjects);
+        connectedDeviceSerials = Collections.unmodifiableList(_deviceSerials);
     }
     //</editor-fold>
     /**
      * Gets a device object from the passed serial number.
+     * Device objects are cached, so the same serial number always yields the same object.
      * @param serial The serial number of the device.
      * @return A {@link eu.beatsleigher.jdroidlib.android.device.Device} object representing a device connected to the computer.
      */
     public Device getDevice(String serial) {
-        return new Device(this, serial);
+        return deviceCache.computeIfAbsent(serial, (_serial) -> new Device(this, _serial));
     }
     
     /**
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.android;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * ArgvTemplate
+ * The immutable prefix of a command line, e.g. {@code adb -s <serial> shell}, shared by all commands of the same executable, device and kind.
+ * 
+ * Templates are created once per combination and cached, so assembling a command line only copies the prefix,
+ * instead of rebuilding it element by element.
+ * @author Simon
+ */
+final class ArgvTemplate {
+    
+    /**
+     * The kinds of command lines.
+     */
+    enum Kind {
+        /** The command is passed to the executable directly. */
+        PLAIN,
+        /** The command is executed in the device's shell. */
+        SHELL,
+        /** The command is executed in the device's shell, as super user. */
+        ROOT_SHELL;
+    }
+    
+    /** The ADB executable. */
+    static final String ADB = "adb";
+    /** The fastboot executable. */
+    static final String FASTBOOT = "fastboot";
+    
+    private static final ConcurrentMap<String, ArgvTemplate> TEMPLATES = new ConcurrentHashMap<>();
+    
+    private final String[] prefix;
+    private final int shellOffset;
+    
+    private ArgvTemplate(String executable, String serial, Kind kind) {
+        List<String> _prefix = new ArrayList<>(6);
+        _prefix.add(executable);
+        if (serial != null) {
+            _prefix.add("-s");
+            _prefix.add(serial);
+        }
+        if (kind != Kind.PLAIN)
+            _prefix.add("shell");
+        this.shellOffset = kind == Kind.PLAIN ? -1 : _prefix.size();
+        if (kind == Kind.ROOT_SHELL)
+            _prefix.add("su");
+        this.prefix = _prefix.toArray(new String[_prefix.size()]);
+    }
+    
+    /**
+     * Gets the template for a combination of executable, device and kind of command.
+     * @param executable The executable, {@link #ADB} or {@link #FASTBOOT}.
+     * @param serial The serial number of the targeted device, or {@code null} if the command is not device-specific.
+     * @param kind The kind of command.
+     * @return The (cached) template.
+     */
+    static ArgvTemplate of(String executable, String serial, Kind kind) {
+        return TEMPLATES.computeIfAbsent(executable + ' ' + kind + ' ' + (serial == null ? "" : serial), (key) -> new ArgvTemplate(executable, serial, kind));
+    }
+    
+    /**
+     * Assembles a complete command line from this template.
+     * @param command The command following the prefix.
+     * @param params The parameters of the command.
+     * @return An unmodifiable list containing the prefix, the command and its parameters.
+     */
+    List<String> apply(String command, List<String> params) {
+        String[] argv = Arrays.copyOf(prefix, prefix.length + 1 + params.size());
+        argv[prefix.length] = command;
+        for (int i = 0; i < params.size(); i++)
+            argv[prefix.length + 1 + i] = params.get(i);
+        return Collections.unmodifiableList(Arrays.asList(argv));
+    }
+    
+    /**
+     * Gets the index of the first element that is passed to the device's shell, i.e. the element following {@code shell}.
+     * For root shell commands, this is {@code su}.
+     * @return The index, or {@code -1} if this is not a shell template.
+     */
+    int getShellOffset() { return shellOffset; }
+    
+}
@@ -22,6 +22,7 @@ import eu.beatsleigher.jdroidlib.android.device.Device;
 import eu.beatsleigher.jdroidlib.exception.DeviceHasNoRootException;
 import java.io.File;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
@@ -45,6 +46,8 @@ public abstract class Command implements ICommand {
     protected int timeout = DEFAULT_TIMEOUT;
     protected File workingDir;
     protected TimeUnit timeoutTimeUnit;
+    private volatile List<String> argv;
+    private volatile String commandLine;
     
     /**
      * Constructor Constructs an instance of this class, without a
@@ -148,15 +151,33 @@ public abstract class Command implements ICommand {
 
     /**
      * {@inheritDoc }
+     * The command line is assembled once and reused.
      */
     @Override
-    public abstract String getCommand();
+    public String getCommand() {
+        String _commandLine = commandLine;
+        if (_commandLine == null)
+            commandLine = _commandLine = String.join(" ", getCommands());
+        return _commandLine;
+    }
     
     /**
      * Gets a {@link java.util.List} of String containing all the commands necessary to execute the command on the ADB server.
-     * @return A list of String containing all necessary information to execute the command.
+     * The list is assembled from the command's {@link ArgvTemplate} once and reused.
+     * @return An unmodifiable list of String containing all necessary information to execute the command.
+     */
+    public List<String> getCommands() {
+        List<String> _argv = argv;
+        if (_argv == null)
+            argv = _argv = getArgvTemplate().apply(command, params);
+        return _argv;
+    }
+    
+    /**
+     * Gets the template of the command line prefix for this command, e.g. {@code adb -s <serial> shell}.
+     * @return The template matching the command's executable, device and kind.
      */
-    public abstract List<String> getCommands();
+    abstract ArgvTemplate getArgvTemplate();
 
     /**
      * {@inheritDoc }
@@ -194,5 +215,35 @@ public abstract class Command implements ICommand {
      * @return 
      */
     public TimeUnit getTimeUnits() { return timeoutTimeUnit; }
-    
+
+    /**
+     * Gets the device this command is targeted at.
+     * @return The targeted {@link eu.beatsleigher.jdroidlib.android.device.Device}, or {@code null} if the command is not device-specific.
+     */
+    public Device getDevice() { return device; }
+
+    /**
+     * Gets the command (without any parameters) stored in this class.
+     * @return The bare command.
+     */
+    public String getBaseCommand() { return command; }
+
+    /**
+     * Gets the parameters and flags passed to the command.
+     * @return An unmodifiable list of the command's parameters.
+     */
+    public List<String> getParameters() { return Collections.unmodifiableList(params); }
+
+    /**
+     * Gets a value indicating whether this command is executed in a device's shell.
+     * @return {@code true} if this is a shell command, {@code false} if not.
+     */
+    public boolean isShellCommand() { return isShellCommand; }
+
+    /**
+     * Gets a value indicating whether this command is executed in a root shell.
+     * @return {@code true} if this command is executed as super user, {@code false} if not.
+     */
+    public boolean isShellRooted() { return isShellRooted; }
+
 }
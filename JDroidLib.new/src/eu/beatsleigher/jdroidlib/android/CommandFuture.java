@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.android;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * CommandFuture
+ * The pending result of a command executed asynchronously by the {@link eu.beatsleigher.jdroidlib.android.AndroidController}.
+ * 
+ * Unlike a plain {@link java.util.concurrent.CompletableFuture}, cancelling this future (or letting it time out) aborts the command itself:
+ * the underlying process is destroyed, or the connection to the ADB server is closed.
+ * @param <T> The type of the command's result.
+ * @author Simon
+ */
+public class CommandFuture<T> extends CompletableFuture<T> {
+    
+    private final Command command;
+    private final Object runnerLock = new Object();
+    private volatile Closeable resource;
+    private Thread runner;
+    
+    /**
+     * Creates a new instance of this class.
+     * @param command The command whose result this future represents.
+     */
+    CommandFuture(Command command) {
+        this.command = command;
+    }
+    
+    /**
+     * Gets the command whose result this future represents.
+     * @return The command being executed.
+     */
+    public Command getCommand() { return command; }
+    
+    /**
+     * Cancels the command.
+     * If the command is already running, its process is destroyed or its connection closed.
+     * @param mayInterruptIfRunning Ignored; the command is always aborted.
+     * @return {@code true} if the command was cancelled.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+        if (cancelled)
+            abort();
+        return cancelled;
+    }
+    
+    /**
+     * Completes this future with a {@link java.util.concurrent.TimeoutException} and aborts the command.
+     * @return {@code true} if this call timed out the command, {@code false} if it had already completed.
+     */
+    boolean timeout() {
+        boolean timedOut = completeExceptionally(new TimeoutException(String.format("Command \"%s\" timed out!", command.getCommand())));
+        if (timedOut)
+            abort();
+        return timedOut;
+    }
+    
+    /**
+     * Attaches the resource (process or connection) that is to be closed if the command is aborted.
+     * If the command has already been aborted, the resource is closed immediately.
+     * @param resource The resource to attach.
+     */
+    void attach(Closeable resource) {
+        this.resource = resource;
+        if (isDone())
+            abort();
+    }
+    
+    /**
+     * Sets the thread executing the command, so it can be interrupted while it waits for its turn.
+     * @param runner The executing thread.
+     */
+    void setRunner(Thread runner) {
+        synchronized (runnerLock) {
+            this.runner = runner;
+        }
+    }
+    
+    /**
+     * Detaches the thread executing the command, once the command has finished, and clears any interrupt aimed at the command.
+     * The runner is detached under the same lock {@link #abort()} interrupts it with,
+     * so an abort racing the end of the command can't interrupt the next task executed by the thread.
+     */
+    void releaseRunner() {
+        synchronized (runnerLock) {
+            runner = null;
+            Thread.interrupted();
+        }
+    }
+    
+    private void abort() {
+        Closeable _resource = resource;
+        if (_resource != null) try {
+            _resource.close();
+        } catch (IOException ex) { /* The command is being aborted; there's no one to report this to. */ }
+        synchronized (runnerLock) {
+            if (runner != null)
+                runner.interrupt();
+        }
+    }
+    
+}
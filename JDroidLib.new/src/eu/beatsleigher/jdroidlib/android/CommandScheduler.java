@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.android;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * CommandScheduler
+ * Decides which commands may run in parallel.
+ * 
+ * Every command is assigned a resource class by the scheduler's classifier; by default this is the serial number of the targeted device,
+ * or {@link #SERVER_RESOURCE} for commands that are not device-specific (such as {@code start-server} or {@code devices}).
+ * Commands sharing a resource class are executed one after the other, in the order they were submitted,
+ * while commands of different resource classes run in parallel.
+ * On top of that, the number of commands running against the ADB server at the same time is capped.
+ * @author Simon
+ */
+public class CommandScheduler {
+    
+    /** The resource class of commands which are not targeted at a specific device. */
+    public static final String SERVER_RESOURCE = "adb-server";
+    /** The default maximum amount of commands running against the ADB server at the same time. */
+    public static final int DEFAULT_MAX_CONCURRENT_COMMANDS = 16;
+    /** The default classifier: commands are serialized per device, server-level commands are serialized among themselves. */
+    public static final Function<Command, String> DEVICE_CLASSIFIER = (command) -> command.getDevice() == null ? SERVER_RESOURCE : command.getDevice().getSerial();
+    
+    private final Map<String, ReentrantLock> resourceLocks = new ConcurrentHashMap<>();
+    private volatile Function<Command, String> resourceClassifier = DEVICE_CLASSIFIER;
+    private final AdjustableSemaphore serverPermits = new AdjustableSemaphore(DEFAULT_MAX_CONCURRENT_COMMANDS);
+    private volatile int maxConcurrentCommands = DEFAULT_MAX_CONCURRENT_COMMANDS;
+    
+    /**
+     * A unit of work executed by the scheduler.
+     * @param <T> The type of the result.
+     */
+    @FunctionalInterface
+    public interface CommandTask<T> {
+        
+        /**
+         * Executes the task.
+         * @return The result of the task.
+         * @throws IOException If an IO error occurs and process execution cannot continue.
+         * @throws InterruptedException If an error occurs while waiting for the command to exit.
+         */
+        T execute() throws IOException, InterruptedException;
+        
+    }
+    
+    /**
+     * A fair semaphore whose amount of permits can be reduced, so the cap can be changed without replacing the semaphore
+     * threads are already waiting on.
+     */
+    private static class AdjustableSemaphore extends Semaphore {
+        
+        AdjustableSemaphore(int permits) {
+            super(permits, true);
+        }
+        
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+        
+    }
+    
+    //<editor-fold defaultstate="collapsed" desc="Getter and Setter Methods">
+    /**
+     * Sets the classifier that assigns a resource class to every command.
+     * Commands with equal resource classes are never executed in parallel.
+     * @param classifier The classifier. Must not return {@code null}.
+     */
+    public void setResourceClassifier(Function<Command, String> classifier) {
+        if (classifier == null)
+            throw new IllegalArgumentException("Classifier must not be null!");
+        this.resourceClassifier = classifier;
+    }
+    
+    /**
+     * Gets the classifier that assigns a resource class to every command.
+     * @return The current classifier.
+     */
+    public Function<Command, String> getResourceClassifier() { return resourceClassifier; }
+    
+    /**
+     * Sets the maximum amount of commands running against the ADB server at the same time.
+     * Raising the maximum immediately lets waiting commands run. Commands that are already running are not aborted when the maximum is lowered;
+     * instead, no further commands are started until the number of running commands has dropped below the new maximum.
+     * @param maxConcurrentCommands The new maximum. Must be greater than zero.
+     */
+    public synchronized void setMaxConcurrentCommands(int maxConcurrentCommands) {
+        if (maxConcurrentCommands <= 0)
+            throw new IllegalArgumentException("The maximum amount of concurrent commands must be greater than zero!");
+        int _delta = maxConcurrentCommands - this.maxConcurrentCommands;
+        if (_delta > 0)
+            serverPermits.release(_delta);
+        else if (_delta < 0)
+            serverPermits.reducePermits(-_delta);
+        this.maxConcurrentCommands = maxConcurrentCommands;
+    }
+    
+    /**
+     * Gets the maximum amount of commands running against the ADB server at the same time.
+     * @return The current maximum.
+     */
+    public int getMaxConcurrentCommands() { return maxConcurrentCommands; }
+    
+    /**
+     * Gets the resource class the classifier assigns to a command.
+     * @param command The command to classify.
+     * @return The command's resource class.
+     */
+    public String getResourceClass(Command command) {
+        String resourceClass = resourceClassifier.apply(command);
+        return resourceClass == null ? SERVER_RESOURCE : resourceClass;
+    }
+    //</editor-fold>
+    
+    /**
+     * Executes a task on behalf of a command.
+     * The calling thread blocks until all previously submitted commands of the same resource class have finished,
+     * and until the ADB server has capacity for another command.
+     * @param <T> The type of the result.
+     * @param command The command the task executes.
+     * @param task The task to execute.
+     * @return The result of the task.
+     * @throws IOException If an IO error occurs and process execution cannot continue.
+     * @throws InterruptedException If the thread is interrupted while waiting for its turn, or while waiting for the command to exit.
+     */
+    public <T> T execute(Command command, CommandTask<T> task) throws IOException, InterruptedException {
+        ReentrantLock resourceLock = resourceLocks.computeIfAbsent(getResourceClass(command), (_resource) -> new ReentrantLock(true));
+        
+        resourceLock.lockInterruptibly();
+        try {
+            serverPermits.acquire();
+            try {
+                return task.execute();
+            } finally {
+                serverPermits.release();
+            }
+        } finally {
+            resourceLock.unlock();
+        }
+    }
+    
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.android;
+
+import eu.beatsleigher.jdroidlib.android.device.Device;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Class DeviceResult
+ * Represents the outcome of a command executed on one of several devices by the {@link FanOutExecutor}.
+ * Instances of this class are immutable.
+ * @param <T> The type of the command's result.
+ * @author Simon
+ */
+public final class DeviceResult<T> {
+    
+    private final Device device;
+    private final T result;
+    private final Throwable failure;
+    private final long latencyNanos;
+    
+    DeviceResult(Device device, T result, Throwable failure, long latencyNanos) {
+        this.device = device;
+        this.result = result;
+        this.failure = failure;
+        this.latencyNanos = latencyNanos;
+    }
+    
+    /**
+     * Gets the device the command was executed on.
+     * @return The device this result belongs to.
+     */
+    public Device getDevice() { return device; }
+    
+    /**
+     * Gets the result of the command.
+     * @return The command's result, or {@code null} if the command failed.
+     */
+    public T getResult() { return result; }
+    
+    /**
+     * Gets the reason the command failed.
+     * @return The exception the command failed with, or {@code null} if it succeeded.
+     */
+    public Throwable getFailure() { return failure; }
+    
+    /**
+     * Gets a value indicating whether the command completed without an exception.
+     * Note that this says nothing about the command's exit value.
+     * @return {@code true} if the command completed, {@code false} if it failed or timed out.
+     */
+    public boolean isSuccessful() { return failure == null; }
+    
+    /**
+     * Gets a value indicating whether the command did not complete in time.
+     * @return {@code true} if the command (or the entire fan-out) timed out before the command completed.
+     */
+    public boolean isTimedOut() { return failure instanceof TimeoutException; }
+    
+    /**
+     * Gets the time it took to execute the command on the device.
+     * The time spent waiting for a free slot is not included.
+     * If the command never started, this is zero.
+     * @param timeUnit The unit to convert the latency to.
+     * @return The latency in the given unit.
+     */
+    public long getLatency(TimeUnit timeUnit) { return timeUnit.convert(latencyNanos, TimeUnit.NANOSECONDS); }
+    
+    @Override
+    public String toString() {
+        return isSuccessful() ? String.format("%s: %s (%d ms)", device.getSerial(), result, getLatency(TimeUnit.MILLISECONDS))
+                              : String.format("%s: failed with %s (%d ms)", device.getSerial(), failure, getLatency(TimeUnit.MILLISECONDS));
+    }
+    
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.android;
+
+import eu.beatsleigher.jdroidlib.android.device.Device;
+import eu.beatsleigher.jdroidlib.exception.DeviceHasNoRootException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * FanOutExecutor
+ * Executes the same command on several devices in parallel and collects the results per device.
+ * 
+ * The amount of devices a command runs on at the same time is capped, as is the amount of fan-out commands running on a single device.
+ * Commands waiting for a free slot do not occupy a thread; they are started as soon as another command of any fan-out completes.
+ * Every device's result records how long the command took and, if it failed, why.
+ * If a deadline is passed, devices that haven't completed by then are aborted and reported as timed out, while all other results are kept,
+ * so a single slow device cannot stall the entire batch.
+ * @author Simon
+ */
+public class FanOutExecutor {
+    
+    /** The default maximum amount of devices a fan-out command runs on at the same time. */
+    public static final int DEFAULT_MAX_CONCURRENT_DEVICES = 8;
+    /** The default maximum amount of fan-out commands running on a single device at the same time. */
+    public static final int DEFAULT_MAX_COMMANDS_PER_DEVICE = 1;
+    
+    /**
+     * Creates the command to execute on a given device.
+     * @param <C> The type of command, e.g. {@link AdbCommand} or {@link FastbootCommand}.
+     */
+    @FunctionalInterface
+    public interface CommandTemplate<C extends Command> {
+        
+        /**
+         * Creates the command for a device.
+         * @param device The device the command is to be executed on.
+         * @return The command to execute.
+         * @throws DeviceHasNoRootException If the command requires root access and the device has none.
+         */
+        C forDevice(Device device) throws DeviceHasNoRootException;
+        
+    }
+    
+    /**
+     * Starts the asynchronous execution of a command, e.g. {@link AndroidController#executeAdbCommandReturnOutputAsync(eu.beatsleigher.jdroidlib.android.AdbCommand)}.
+     * @param <C> The type of command.
+     * @param <T> The type of the command's result.
+     */
+    @FunctionalInterface
+    public interface CommandExecution<C extends Command, T> {
+        
+        /**
+         * Starts executing a command.
+         * @param command The command to execute.
+         * @return The future representing the command's result.
+         */
+        CommandFuture<T> submit(C command);
+        
+    }
+    
+    private final Deque<DeviceTask<?, ?>> pendingTasks = new ArrayDeque<>();
+    private final Map<String, Integer> runningPerDevice = new HashMap<>();
+    private int runningTotal = 0;
+    private volatile int maxConcurrentDevices = DEFAULT_MAX_CONCURRENT_DEVICES;
+    private volatile int maxCommandsPerDevice = DEFAULT_MAX_COMMANDS_PER_DEVICE;
+    
+    /**
+     * Creates a new instance of this class.
+     * Instances are created by the {@link AndroidController}.
+     */
+    FanOutExecutor() { }
+    
+    //<editor-fold defaultstate="collapsed" desc="Getter and Setter Methods">
+    /**
+     * Sets the maximum amount of devices a fan-out command runs on at the same time.
+     * This limit is shared by all fan-outs of this executor.
+     * @param maxConcurrentDevices The new maximum. Must be greater than zero.
+     */
+    public void setMaxConcurrentDevices(int maxConcurrentDevices) {
+        if (maxConcurrentDevices <= 0)
+            throw new IllegalArgumentException("The maximum amount of concurrent devices must be greater than zero!");
+        this.maxConcurrentDevices = maxConcurrentDevices;
+        dispatch();
+    }
+    
+    /**
+     * Gets the maximum amount of devices a fan-out command runs on at the same time.
+     * @return The current maximum.
+     */
+    public int getMaxConcurrentDevices() { return maxConcurrentDevices; }
+    
+    /**
+     * Sets the maximum amount of fan-out commands running on a single device at the same time.
+     * Note that the {@link CommandScheduler} still serializes commands per device by default; this limit applies on top of that.
+     * @param maxCommandsPerDevice The new maximum. Must be greater than zero.
+     */
+    public void setMaxCommandsPerDevice(int maxCommandsPerDevice) {
+        if (maxCommandsPerDevice <= 0)
+            throw new IllegalArgumentException("The maximum amount of commands per device must be greater than zero!");
+        this.maxCommandsPerDevice = maxCommandsPerDevice;
+        dispatch();
+    }
+    
+    /**
+     * Gets the maximum amount of fan-out commands running on a single device at the same time.
+     * @return The current maximum.
+     */
+    public int getMaxCommandsPerDevice() { return maxCommandsPerDevice; }
+    //</editor-fold>
+    
+    /**
+     * Executes a command on several devices and waits until it has completed on all of them.
+     * @param <C> The type of command.
+     * @param <T> The type of the command's result.
+     * @param devices The devices to execute the command on. Devices with the same serial number are only executed on once.
+     * @param template Creates the command for every device.
+     * @param execution Starts the execution of the command.
+     * @return An unmodifiable map containing each device's result, in the order the devices were passed.
+     * @throws InterruptedException If the thread is interrupted while waiting; all commands still running are aborted.
+     */
+    public <C extends Command, T> Map<Device, DeviceResult<T>> execute(Collection<Device> devices, CommandTemplate<C> template, CommandExecution<C, T> execution) throws InterruptedException {
+        return execute(devices, template, execution, 0, null);
+    }
+    
+    /**
+     * Executes a command on several devices and waits until it has completed on all of them, or until a deadline has passed.
+     * Commands that haven't completed by the deadline are aborted; their results fail with a {@link java.util.concurrent.TimeoutException}.
+     * @param <C> The type of command.
+     * @param <T> The type of the command's result.
+     * @param devices The devices to execute the command on. Devices with the same serial number are only executed on once.
+     * @param template Creates the command for every device.
+     * @param execution Starts the execution of the command.
+     * @param timeout The maximum time to wait for all devices, or {@code 0} to wait indefinitely.
+     * @param timeUnit The unit of the timeout.
+     * @return An unmodifiable map containing each device's result, in the order the devices were passed.
+     * @throws InterruptedException If the thread is interrupted while waiting; all commands still running are aborted.
+     */
+    public <C extends Command, T> Map<Device, DeviceResult<T>> execute(Collection<Device> devices, CommandTemplate<C> template, CommandExecution<C, T> execution,
+                                                                       long timeout, TimeUnit timeUnit) throws InterruptedException {
+        if (devices == null || template == null || execution == null)
+            throw new IllegalArgumentException("Devices, template and execution must not be null!");
+        if (timeout > 0 && timeUnit == null)
+            throw new IllegalArgumentException("Time unit must not be null!");
+        
+        Map<String, DeviceTask<C, T>> _tasks = new LinkedHashMap<>();
+        devices.stream().forEach((_device) -> _tasks.putIfAbsent(_device.getSerial(), new DeviceTask<>(_device, template, execution)));
+        
+        long _deadline = timeout > 0 ? System.nanoTime() + timeUnit.toNanos(timeout) : 0;
+        synchronized (this) {
+            pendingTasks.addAll(_tasks.values());
+        }
+        dispatch();
+        
+        Map<Device, DeviceResult<T>> _results = new LinkedHashMap<>();
+        try {
+            for (DeviceTask<C, T> _task : _tasks.values())
+                _results.put(_task.device, timeout > 0 ? _task.await(_deadline) : _task.await());
+        } catch (InterruptedException ex) {
+            _tasks.values().stream().forEach((_task) -> _task.abort(new CancellationException("The fan-out was interrupted!")));
+            throw ex;
+        }
+        return Collections.unmodifiableMap(_results);
+    }
+    
+    /**
+     * Starts as many pending tasks as the limits allow.
+     * Tasks are started outside of the lock, as starting a command may complete it right away.
+     */
+    private void dispatch() {
+        List<DeviceTask<?, ?>> _ready = new ArrayList<>();
+        synchronized (this) {
+            Iterator<DeviceTask<?, ?>> _iterator = pendingTasks.iterator();
+            while (_iterator.hasNext() && runningTotal < maxConcurrentDevices) {
+                DeviceTask<?, ?> _task = _iterator.next();
+                if (_task.isDone()) { // Aborted before it was started.
+                    _iterator.remove();
+                    continue;
+                }
+                int _running = runningPerDevice.getOrDefault(_task.device.getSerial(), 0);
+                if (_running >= maxCommandsPerDevice)
+                    continue;
+                _iterator.remove();
+                runningPerDevice.put(_task.device.getSerial(), _running + 1);
+                runningTotal++;
+                _ready.add(_task);
+            }
+        }
+        _ready.stream().forEach(DeviceTask::start);
+    }
+    
+    /**
+     * Frees the slot of a task that has completed and starts the next pending tasks.
+     * @param task The completed task.
+     */
+    private void finished(DeviceTask<?, ?> task) {
+        synchronized (this) {
+            runningTotal--;
+            runningPerDevice.computeIfPresent(task.device.getSerial(), (_serial, _running) -> _running > 1 ? _running - 1 : null);
+        }
+        dispatch();
+    }
+    
+    /**
+     * The execution of a fan-out command on a single device.
+     * @param <C> The type of command.
+     * @param <T> The type of the command's result.
+     */
+    private final class DeviceTask<C extends Command, T> {
+        
+        private final Device device;
+        private final CommandTemplate<C> template;
+        private final CommandExecution<C, T> execution;
+        private final CompletableFuture<DeviceResult<T>> outcome = new CompletableFuture<>();
+        private volatile CommandFuture<T> command;
+        private volatile long startTime;
+        private volatile boolean started = false;
+        
+        DeviceTask(Device device, CommandTemplate<C> template, CommandExecution<C, T> execution) {
+            this.device = device;
+            this.template = template;
+            this.execution = execution;
+        }
+        
+        /**
+         * Creates and starts the command. Called once a slot is free.
+         */
+        void start() {
+            startTime = System.nanoTime();
+            started = true;
+            
+            CommandFuture<T> _command;
+            try {
+                _command = execution.submit(template.forDevice(device));
+            } catch (Exception ex) {
+                complete(null, ex);
+                finished(this);
+                return;
+            }
+            
+            command = _command;
+            _command.whenComplete((result, ex) -> {
+                complete(result, ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
+                finished(this);
+            });
+            if (isDone())
+                _command.cancel(true); // Aborted while the command was being created.
+        }
+        
+        /**
+         * Aborts the command, or prevents it from being started.
+         * @param reason The failure to report for this device.
+         */
+        void abort(Throwable reason) {
+            complete(null, reason);
+            CommandFuture<T> _command = command;
+            if (_command != null)
+                _command.cancel(true);
+        }
+        
+        DeviceResult<T> await() throws InterruptedException {
+            try {
+                return outcome.get();
+            } catch (ExecutionException ex) {
+                throw new IllegalStateException(ex); // The outcome is never completed exceptionally.
+            }
+        }
+        
+        DeviceResult<T> await(long deadline) throws InterruptedException {
+            try {
+                return outcome.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException ex) {
+                abort(new TimeoutException(String.format("Fan-out timed out before the command completed on %s!", device.getSerial())));
+                return await();
+            } catch (ExecutionException ex) {
+                throw new IllegalStateException(ex); // The outcome is never completed exceptionally.
+            }
+        }
+        
+        boolean isDone() { return outcome.isDone(); }
+        
+        private void complete(T result, Throwable failure) {
+            outcome.complete(new DeviceResult<>(device, result, failure, started ? System.nanoTime() - startTime : 0));
+        }
+        
+    }
+    
+}
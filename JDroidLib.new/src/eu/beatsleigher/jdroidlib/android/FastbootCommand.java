@@ -18,37 +18,69 @@
  */
 package eu.beatsleigher.jdroidlib.android;
 
-import java.util.List;
+import eu.beatsleigher.jdroidlib.android.device.Device;
 import java.util.concurrent.TimeUnit;
 
 /**
- *
+ * FastbootCommand
+ * Represents a command sent to the fastboot executable.
+ * 
+ * Like {@link AdbCommand}, the command line is assembled from a cached {@link ArgvTemplate} ({@code fastboot -s <serial>}).
  * @author Simon
  */
 public class FastbootCommand extends Command {
 
+    /**
+     * Constructor Constructs an instance of this class, without a
+     * {@link eu.beatsleigher.jdroidlib.android.device.Device} object.
+     *
+     * @param command The command to pass to the fastboot executable.
+     * @param params The command parameters to pass to the fastboot executable.
+     */
     public FastbootCommand(String command, String... params) {
         super(command, params);
     }
 
-    @Override
-    public String getCommand() {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+    /**
+     * Constructor Constructs an instance of this class, targeting a specific device.
+     *
+     * @param device The device to pass the command to.
+     * @param command The command to execute (cannot be "fastboot" or "-s"!)
+     * @param params The parameters and/or flags to go with the command to be executed.
+     * @throws IllegalArgumentException If the device is null, or the command is null or empty.
+     */
+    public FastbootCommand(Device device, String command, String... params) throws IllegalArgumentException {
+        super(device, command, params);
     }
 
+    /**
+     * {@inheritDoc}
+     */
     @Override
-    public List<String> getCommands() {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+    ArgvTemplate getArgvTemplate() {
+        return ArgvTemplate.of(ArgvTemplate.FASTBOOT, device == null ? null : device.getSerial(), ArgvTemplate.Kind.PLAIN);
     }
 
+    /**
+     * {@inheritDoc}
+     */
     @Override
     public ICommand withTimeout(int timeout, TimeUnit timeUnit) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        this.timeout = timeout; this.timeoutTimeUnit = timeUnit; return this;
     }
 
+    /**
+     * {@inheritDoc}
+     */
     @Override
     public ProcessBuilder getProcess() {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        ProcessBuilder process = new ProcessBuilder();
+        
+        process.command(getCommands());
+        process.directory(workingDir);
+        process.redirectErrorStream(true);
+        
+        return process;
     }
     
 }
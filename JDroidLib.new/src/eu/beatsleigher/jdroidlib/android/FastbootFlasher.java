@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.android;
+
+import eu.beatsleigher.jdroidlib.android.FlashResult.Stage;
+import eu.beatsleigher.jdroidlib.android.device.Device;
+import eu.beatsleigher.jdroidlib.events.FlashProgressEvent;
+import eu.beatsleigher.jdroidlib.events.FlashProgressEventListener;
+import eu.beatsleigher.jdroidlib.exception.FastbootProtocolException;
+import eu.beatsleigher.jdroidlib.fastboot.FastbootClient;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * FastbootFlasher
+ * Flashes images onto the partitions of a device in fastboot mode.
+ * 
+ * All partitions of a device are flashed by a single fastboot process ({@code fastboot -s <serial> flash <partition> <image> flash ...}),
+ * whose output is parsed while it runs: every completed stage is reported to the progress listener
+ * and its time, as measured by the bootloader, is added to the result.
+ * Both the current format of fastboot's output ({@code Sending 'boot_a' (65536 KB)   OKAY [  1.624s]})
+ * and the format of older versions, which print the stage and its outcome on separate lines, are understood.
+ * Devices in fastboot mode connected via TCP are flashed through JDroidLib's own {@link FastbootClient} instead,
+ * which splits images larger than the device's download buffer into sparse pieces and sends them straight from the images' shared mappings.
+ * @author Simon
+ */
+final class FastbootFlasher {
+    
+    /** The prefix of the serial numbers of devices connected via TCP. */
+    private static final String TCP_PREFIX = "tcp:";
+    private static final Pattern STAGE_PATTERN = Pattern.compile("^(sending|writing)(?: sparse)? '([^']+)'(?: \\d+/\\d+)?(?: \\((\\d+) KB\\))?", Pattern.CASE_INSENSITIVE);
+    private static final Pattern OKAY_PATTERN = Pattern.compile("OKAY(?:\\s*\\[\\s*([0-9.]+)s\\])?");
+    private static final Pattern FAILED_PATTERN = Pattern.compile("FAILED \\((.*)\\)");
+    private static final Pattern ERROR_PATTERN = Pattern.compile("^(?:fastboot: )?error: (.*)");
+    
+    private final AndroidController controller;
+    
+    FastbootFlasher(AndroidController controller) {
+        this.controller = controller;
+    }
+    
+    /**
+     * Creates the command flashing a set of images onto a device.
+     * @param device The device to flash.
+     * @param images The images to flash, in the order they are to be flashed.
+     * @return The fastboot command.
+     */
+    FastbootCommand createCommand(Device device, List<FlashImage> images) {
+        if (images == null || images.isEmpty())
+            throw new IllegalArgumentException("At least one image must be passed!");
+        
+        String[] _params = new String[images.size() * 3 - 1];
+        for (int i = 0, j = 0; i < images.size(); i++) {
+            if (i > 0)
+                _params[j++] = "flash";
+            _params[j++] = images.get(i).getPartition();
+            _params[j++] = images.get(i).getFile().toString();
+        }
+        return controller.formFastbootCommand(device, "flash", _params);
+    }
+    
+    /**
+     * Flashes a set of images onto a device.
+     * Devices connected via TCP ({@code tcp:<host>[:<port>]}) are flashed through a {@link FastbootClient} if the native transport is enabled,
+     * all other devices through the fastboot executable.
+     * @param command The command created by {@link #createCommand(eu.beatsleigher.jdroidlib.android.device.Device, java.util.List)}.
+     * @param images The images the command flashes.
+     * @param listener The listener to notify of completed stages, or {@code null}.
+     * @param onStart Receives a handle aborting fastboot, or {@code null}.
+     * @return The result of flashing the images.
+     * @throws IOException If fastboot cannot be started, or the device cannot be reached.
+     * @throws InterruptedException If the thread is interrupted while waiting for fastboot.
+     * @throws IllegalArgumentException If the device's serial number is a TCP address with an invalid port.
+     */
+    FlashResult flash(FastbootCommand command, List<FlashImage> images, FlashProgressEventListener listener, Consumer<Closeable> onStart) throws IOException, InterruptedException {
+        String _serial = command.getDevice().getSerial();
+        Progress _progress = new Progress(_serial, images.stream().mapToLong(FlashImage::getSize).sum(), listener);
+        long _start = System.nanoTime();
+        
+        if (controller.isNativeTransportEnabled() && _serial.startsWith(TCP_PREFIX)) {
+            String _address = _serial.substring(TCP_PREFIX.length());
+            int _separator = _address.lastIndexOf(':');
+            String _host = _separator < 0 ? _address : _address.substring(0, _separator);
+            int _port = _separator < 0 ? FastbootClient.DEFAULT_PORT : parsePort(_serial, _address.substring(_separator + 1));
+            int _exitValue = controller.getCommandScheduler().execute(command, () -> flashNative(_host, _port, images, _progress, onStart));
+            return _progress.toResult(_exitValue, System.nanoTime() - _start);
+        }
+        
+        int _exitValue = controller.executeFastbootCommandStreamLines(command, new OutputParser(_progress), onStart);
+        return _progress.toResult(_exitValue, System.nanoTime() - _start);
+    }
+    
+    /**
+     * Flashes a set of images onto a device via TCP.
+     * The output mirrors the output of the fastboot executable.
+     * @param host The host name or address of the device.
+     * @param port The port the device's bootloader listens on.
+     * @param images The images to flash.
+     * @param progress Records the completed stages.
+     * @param onStart Receives the client, so flashing can be aborted. May be {@code null}.
+     * @return Zero if all images were flashed, one if the device reported a failure.
+     * @throws IOException If the device cannot be reached, or the connection fails.
+     * @throws InterruptedException If the thread is interrupted between two pieces of an image.
+     */
+    private int flashNative(String host, int port, List<FlashImage> images, Progress progress, Consumer<Closeable> onStart) throws IOException, InterruptedException {
+        try (FastbootClient _client = new FastbootClient(host, port)) {
+            if (onStart != null)
+                onStart.accept(_client);
+            _client.setMessageListener((_message) -> progress.output.append("(bootloader) ").append(_message).append('\n'));
+            for (FlashImage _image : images)
+                _client.flash(_image, (_partition, _stage, _piece, _pieces, _bytes, _nanos) -> {
+                    if (_stage == Stage.SEND)
+                        progress.output.append(_pieces > 1 ? String.format("Sending sparse '%s' %d/%d (%d KB)", _partition, _piece + 1, _pieces, _bytes / 1024)
+                                                           : String.format("Sending '%s' (%d KB)", _partition, _bytes / 1024));
+                    else
+                        progress.output.append(String.format("Writing '%s'", _partition));
+                    progress.output.append(String.format(" OKAY [%7.3fs]%n", _nanos / (double)TimeUnit.SECONDS.toNanos(1)));
+                    progress.stageCompleted(_partition, _stage, _nanos, _stage == Stage.SEND ? _bytes : 0);
+                });
+            return 0;
+        } catch (FastbootProtocolException ex) {
+            progress.output.append("FAILED (").append(ex.getMessage()).append(")\n");
+            progress.failureMessage = ex.getMessage();
+            return 1;
+        }
+    }
+    
+    /**
+     * Parses the port of a {@code tcp:<host>:<port>} serial number.
+     * @param serial The serial number, for the error message.
+     * @param port The port part of the serial number.
+     * @return The port.
+     * @throws IllegalArgumentException If the port is not a number between 1 and 65535.
+     */
+    private static int parsePort(String serial, String port) {
+        try {
+            int _port = Integer.parseInt(port);
+            if (_port > 0 && _port <= 0xffff)
+                return _port;
+        } catch (NumberFormatException ex) { /* Handled below. */ }
+        throw new IllegalArgumentException("Invalid port in serial number: " + serial);
+    }
+    
+    /**
+     * Records the stages the bootloader has completed and notifies the progress listener.
+     */
+    private final class Progress {
+        
+        private final String serial;
+        private final long totalBytes;
+        private final List<FlashProgressEventListener> listeners;
+        private final StringBuilder output = new StringBuilder();
+        private final Map<String, long[]> stageNanos = new LinkedHashMap<>();
+        private long bytesSent;
+        private String failureMessage;
+        
+        Progress(String serial, long totalBytes, FlashProgressEventListener listener) {
+            this.serial = serial;
+            this.totalBytes = totalBytes;
+            this.listeners = listener == null ? Collections.emptyList() : Collections.singletonList(listener);
+        }
+        
+        void stageCompleted(String partition, Stage stage, long nanos, long bytes) {
+            stageNanos.computeIfAbsent(partition, (_partition) -> new long[Stage.values().length])[stage.ordinal()] += nanos;
+            bytesSent += bytes;
+            // Delivered by the dispatcher, so a slow listener doesn't stall reading fastboot's output.
+            controller.getEventDispatcher().dispatch(listeners, new FlashProgressEvent(controller, serial, partition, stage, nanos, Math.min(bytesSent, totalBytes), totalBytes),
+                                                     FlashProgressEventListener::onFlashProgress);
+        }
+        
+        FlashResult toResult(int exitValue, long totalNanos) {
+            if (exitValue != 0 && failureMessage == null)
+                failureMessage = String.format("fastboot exited with %d", exitValue);
+            // A failure fastboot reported in its output fails the result, even if fastboot exited normally.
+            return new FlashResult(failureMessage == null ? 0 : exitValue != 0 ? exitValue : 1, failureMessage, output.toString(), stageNanos, totalNanos);
+        }
+        
+    }
+    
+    /**
+     * Follows the output of the fastboot executable and records the stages the bootloader has completed.
+     */
+    private static final class OutputParser implements Consumer<String> {
+        
+        private final Progress progress;
+        private String partition;
+        private Stage stage;
+        private long stageStart;
+        private long stageBytes;
+        
+        OutputParser(Progress progress) {
+            this.progress = progress;
+        }
+        
+        @Override
+        public void accept(String line) {
+            progress.output.append(line).append('\n');
+            
+            Matcher _matcher = STAGE_PATTERN.matcher(line);
+            if (_matcher.find()) {
+                partition = _matcher.group(2);
+                stage = Character.toLowerCase(_matcher.group(1).charAt(0)) == 's' ? Stage.SEND : Stage.WRITE;
+                stageStart = System.nanoTime();
+                stageBytes = _matcher.group(3) == null ? 0 : Long.parseLong(_matcher.group(3)) * 1024;
+            }
+            
+            if (stage != null && (_matcher = OKAY_PATTERN.matcher(line)).find()) {
+                long _nanos = _matcher.group(1) == null ? System.nanoTime() - stageStart : (long)(Double.parseDouble(_matcher.group(1)) * TimeUnit.SECONDS.toNanos(1));
+                progress.stageCompleted(partition, stage, _nanos, stage == Stage.SEND ? stageBytes : 0);
+                stage = null;
+            } else if ((_matcher = FAILED_PATTERN.matcher(line)).find()) {
+                progress.failureMessage = _matcher.group(1);
+                stage = null;
+            } else if (progress.failureMessage == null && (_matcher = ERROR_PATTERN.matcher(line)).find())
+                progress.failureMessage = _matcher.group(1);
+        }
+        
+    }
+    
+}
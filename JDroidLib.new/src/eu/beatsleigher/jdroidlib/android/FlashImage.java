@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.android;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Class FlashImage
+ * Represents an image file which is to be flashed onto a partition of a device in fastboot mode.
+ * 
+ * The same instance can (and should) be passed to every device it is flashed onto:
+ * transports streaming the image themselves read it through {@link #getContent(long, int)},
+ * which maps the file into memory once and hands out independent views of that mapping to every device.
+ * The image's size is read once, when the instance is created; the file must not change while it is being flashed.
+ * @author Simon
+ */
+public final class FlashImage {
+    
+    /** The size of the regions the image is mapped in; a single mapping cannot exceed 2 GiB. */
+    public static final int REGION_SIZE = 1 << 30;
+    
+    private final String partition;
+    private final Path file;
+    private final long size;
+    private volatile MappedByteBuffer[] regions;
+    
+    /**
+     * Default constructor.
+     * @param partition The partition to flash the image onto (e.g. {@code boot}, or {@code system_a} for a specific slot).
+     * @param file The image file.
+     * @throws IOException If the image file does not exist, or cannot be read.
+     */
+    public FlashImage(String partition, Path file) throws IOException {
+        if (partition == null || partition.isEmpty() || partition.chars().anyMatch(Character::isWhitespace))
+            throw new IllegalArgumentException("Partition must not be null, empty or contain whitespace!");
+        if (file == null)
+            throw new IllegalArgumentException("File must not be null!");
+        if (!Files.isRegularFile(file) || !Files.isReadable(file))
+            throw new IOException("Image " + file + " does not exist or cannot be read!");
+        
+        this.partition = partition;
+        this.file = file.toAbsolutePath();
+        this.size = Files.size(file);
+    }
+    
+    /**
+     * Gets the partition the image is flashed onto.
+     * @return The name of the partition.
+     */
+    public String getPartition() { return partition; }
+    
+    /**
+     * Gets the image file.
+     * @return The absolute path of the image file.
+     */
+    public Path getFile() { return file; }
+    
+    /**
+     * Gets the size of the image.
+     * @return The size of the image file in bytes.
+     */
+    public long getSize() { return size; }
+    
+    /**
+     * Gets a part of the image's content.
+     * The image is mapped into memory the first time this method is called; all later calls, from any thread, share that mapping.
+     * @param position The offset of the part within the image.
+     * @param length The length of the part. The part must not cross a multiple of {@value #REGION_SIZE} bytes.
+     * @return A read-only view of the part, positioned at zero. The view's position and limit are independent of all other views.
+     * @throws IOException If the image cannot be mapped.
+     */
+    public ByteBuffer getContent(long position, int length) throws IOException {
+        if (position < 0 || length < 0 || position + length > size)
+            throw new IndexOutOfBoundsException(String.format("Range %d+%d is outside of the image (%d bytes)!", position, length, size));
+        if (length == 0)
+            return ByteBuffer.allocate(0).asReadOnlyBuffer();
+        int _region = (int)(position / REGION_SIZE), _offset = (int)(position % REGION_SIZE);
+        if (_offset + length > REGION_SIZE)
+            throw new IllegalArgumentException("The range must not cross a region boundary!");
+        
+        ByteBuffer _view = getRegions()[_region].duplicate();
+        _view.position(_offset).limit(_offset + length);
+        return _view.slice();
+    }
+    
+    /**
+     * Maps the image into memory, unless it has been mapped already.
+     * The mapping is released by the garbage collector once this instance is no longer referenced.
+     * @return The mapped regions of the image.
+     * @throws IOException If the image cannot be mapped.
+     */
+    private MappedByteBuffer[] getRegions() throws IOException {
+        MappedByteBuffer[] _regions = regions;
+        if (_regions == null) synchronized (this) {
+            if ((_regions = regions) == null) {
+                _regions = new MappedByteBuffer[(int)((size + REGION_SIZE - 1) / REGION_SIZE)];
+                try (FileChannel _file = FileChannel.open(file, StandardOpenOption.READ)) {
+                    for (int i = 0; i < _regions.length; i++)
+                        _regions[i] = _file.map(FileChannel.MapMode.READ_ONLY, (long)i * REGION_SIZE, Math.min(REGION_SIZE, size - (long)i * REGION_SIZE));
+                }
+                regions = _regions;
+            }
+        }
+        return _regions;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("%s <- %s (%d bytes)", partition, file, size);
+    }
+    
+}
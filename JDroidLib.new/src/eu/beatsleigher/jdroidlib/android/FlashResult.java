@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.android;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class FlashResult
+ * Represents the outcome of flashing one or more partitions of a device in fastboot mode.
+ * 
+ * The time spent in every stage is recorded per partition, as reported by the bootloader.
+ * Sparse images are sent and written in several chunks; their chunks' times are added up.
+ * Instances of this class are immutable.
+ * @author Simon
+ */
+public final class FlashResult {
+    
+    /**
+     * The stages of flashing a partition.
+     */
+    public enum Stage {
+        /** The image (or a chunk of it) is downloaded to the bootloader. */
+        SEND,
+        /** The bootloader writes the downloaded image (or chunk) to the partition. */
+        WRITE;
+    }
+    
+    private final int exitValue;
+    private final String failureMessage;
+    private final String output;
+    private final Map<String, long[]> stageNanos;
+    private final long totalNanos;
+    
+    FlashResult(int exitValue, String failureMessage, String output, Map<String, long[]> stageNanos, long totalNanos) {
+        this.exitValue = exitValue;
+        this.failureMessage = failureMessage;
+        this.output = output;
+        this.stageNanos = new LinkedHashMap<>();
+        stageNanos.forEach((_partition, _nanos) -> this.stageNanos.put(_partition, _nanos.clone()));
+        this.totalNanos = totalNanos;
+    }
+    
+    /**
+     * Gets a value indicating whether all partitions were flashed.
+     * @return {@code true} if fastboot reported no errors.
+     */
+    public boolean isSuccessful() { return exitValue == 0; }
+    
+    /**
+     * Gets the exit value of flashing the device.
+     * @return Zero if all partitions were flashed. Otherwise fastboot's exit value,
+     * or one if the failure came without one (fastboot exited normally, or the device was flashed via TCP).
+     */
+    public int getExitValue() { return exitValue; }
+    
+    /**
+     * Gets the reason flashing failed.
+     * @return The error reported by the bootloader or fastboot, or {@code null} if flashing succeeded.
+     */
+    public String getFailureMessage() { return failureMessage; }
+    
+    /**
+     * Gets the output of fastboot.
+     * @return The output of fastboot.
+     */
+    public String getOutput() { return output; }
+    
+    /**
+     * Gets the partitions the bootloader reported as sent or written, in the order they were flashed.
+     * On devices with A/B partitions, the names include the slot suffix (e.g. {@code boot_a}).
+     * @return An unmodifiable set containing the names of the partitions.
+     */
+    public Set<String> getPartitions() { return Collections.unmodifiableSet(stageNanos.keySet()); }
+    
+    /**
+     * Gets the time spent in a stage of flashing a partition.
+     * @param partition The partition, as returned by {@link #getPartitions()}.
+     * @param stage The stage.
+     * @param timeUnit The unit to convert the time to.
+     * @return The time spent in the stage, or zero if the partition never reached it.
+     */
+    public long getStageTime(String partition, Stage stage, TimeUnit timeUnit) {
+        long[] _nanos = stageNanos.get(partition);
+        return _nanos == null ? 0 : timeUnit.convert(_nanos[stage.ordinal()], TimeUnit.NANOSECONDS);
+    }
+    
+    /**
+     * Gets the time spent in a stage, summed up over all partitions.
+     * @param stage The stage.
+     * @param timeUnit The unit to convert the time to.
+     * @return The time spent in the stage.
+     */
+    public long getStageTime(Stage stage, TimeUnit timeUnit) {
+        return timeUnit.convert(stageNanos.values().stream().mapToLong((_nanos) -> _nanos[stage.ordinal()]).sum(), TimeUnit.NANOSECONDS);
+    }
+    
+    /**
+     * Gets the time fastboot took to flash all partitions, including the time spent waiting for the device.
+     * @param timeUnit The unit to convert the time to.
+     * @return The total time.
+     */
+    public long getTotalTime(TimeUnit timeUnit) { return timeUnit.convert(totalNanos, TimeUnit.NANOSECONDS); }
+    
+    @Override
+    public String toString() {
+        StringBuilder sBuilder = new StringBuilder(isSuccessful() ? "Success" : String.format("Failure [%s]", failureMessage));
+        for (Stage stage : Stage.values())
+            sBuilder.append(String.format(", %s %d ms", stage.name().toLowerCase(), getStageTime(stage, TimeUnit.MILLISECONDS)));
+        return sBuilder.append(String.format(", total %d ms", getTotalTime(TimeUnit.MILLISECONDS))).toString();
+    }
+    
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.android;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class InstallResult
+ * Represents the outcome of installing a package (consisting of one or more APKs) on a device.
+ * 
+ * Failed installations carry the package manager's failure code (e.g. {@code INSTALL_FAILED_VERSION_DOWNGRADE}),
+ * so callers no longer need to search the output for keywords.
+ * Instances of this class are immutable.
+ * @author Simon
+ */
+public final class InstallResult {
+    
+    /**
+     * The stages of an installation.
+     */
+    public enum Stage {
+        /** The APKs are transferred to a temporary directory on the device. */
+        TRANSFER,
+        /** An install session is created and the APKs are written to it. */
+        STAGING,
+        /**
+         * The session is committed: the package manager verifies the package, optimizes its code (dexopt) and installs it.
+         * The device does not report when dexopt starts or ends, so it is part of this stage.
+         */
+        COMMIT;
+    }
+    
+    private final boolean successful;
+    private final String failureCode;
+    private final String failureMessage;
+    private final String output;
+    private final long[] stageNanos;
+    
+    InstallResult(boolean successful, String failureCode, String failureMessage, String output, long[] stageNanos) {
+        this.successful = successful;
+        this.failureCode = failureCode;
+        this.failureMessage = failureMessage;
+        this.output = output;
+        this.stageNanos = stageNanos.clone();
+    }
+    
+    /**
+     * Gets a value indicating whether the package was installed.
+     * @return {@code true} if the package manager reported success.
+     */
+    public boolean isSuccessful() { return successful; }
+    
+    /**
+     * Gets the failure code reported by the package manager.
+     * @return The failure code (e.g. {@code INSTALL_FAILED_INSUFFICIENT_STORAGE}), or {@code null} if the installation succeeded,
+     * or failed without a code.
+     */
+    public String getFailureCode() { return failureCode; }
+    
+    /**
+     * Gets the message accompanying the failure.
+     * @return The failure message, or {@code null} if the installation succeeded, or the package manager didn't provide one.
+     */
+    public String getFailureMessage() { return failureMessage; }
+    
+    /**
+     * Gets the output of the stage the installation ended with.
+     * @return The output of the package manager.
+     */
+    public String getOutput() { return output; }
+    
+    /**
+     * Gets the time spent in a stage of the installation.
+     * @param stage The stage.
+     * @param timeUnit The unit to convert the time to.
+     * @return The time spent in the stage, or zero if the installation never reached it.
+     */
+    public long getStageTime(Stage stage, TimeUnit timeUnit) { return timeUnit.convert(stageNanos[stage.ordinal()], TimeUnit.NANOSECONDS); }
+    
+    /**
+     * Gets the time spent in all stages of the installation.
+     * @param timeUnit The unit to convert the time to.
+     * @return The total time.
+     */
+    public long getTotalTime(TimeUnit timeUnit) { return timeUnit.convert(Arrays.stream(stageNanos).sum(), TimeUnit.NANOSECONDS); }
+    
+    @Override
+    public String toString() {
+        StringBuilder sBuilder = new StringBuilder(successful ? "Success" : String.format("Failure [%s]", failureCode == null ? failureMessage : failureCode));
+        for (Stage stage : Stage.values())
+            sBuilder.append(String.format(", %s %d ms", stage.name().toLowerCase(), getStageTime(stage, TimeUnit.MILLISECONDS)));
+        return sBuilder.toString();
+    }
+    
+}
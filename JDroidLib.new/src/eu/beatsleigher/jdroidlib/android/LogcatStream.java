@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.android;
+
+import eu.beatsleigher.jdroidlib.android.device.Device;
+import eu.beatsleigher.jdroidlib.logcat.LogArchive;
+import eu.beatsleigher.jdroidlib.logcat.LogBuffer;
+import eu.beatsleigher.jdroidlib.logcat.LogEntry;
+import eu.beatsleigher.jdroidlib.logcat.LogEntryListener;
+import eu.beatsleigher.jdroidlib.logcat.LogcatDecoder;
+import java.io.*;
+import java.net.ConnectException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Class LogcatStream
+ * Follows the log of a device, retaining its most recent entries and passing every new entry to the registered listeners.
+ * 
+ * The log is read in logcat's binary format ({@code logcat -B}) through the exec service, which, unlike the shell, never mangles binary output.
+ * Entries are decoded by a {@link LogcatDecoder} into a single, reused {@link LogEntry} and appended to the stream's {@link LogBuffer},
+ * so following a device's log neither parses text nor grows the heap.
+ * The log is read via the native transport if it is enabled, or via the ADB executable otherwise.
+ * 
+ * Like {@link ShellSession}s, streams bypass the {@link CommandScheduler}, as they hold their own connection to the device for their entire lifetime.
+ * Listeners are called on the thread reading the log; while they are busy, no further entries are read.
+ * @author Simon
+ */
+public class LogcatStream implements Closeable {
+    
+    /** The log buffers read by default, the same logcat reads by default. */
+    public static final List<String> DEFAULT_BUFFERS = Collections.unmodifiableList(Arrays.asList("main", "system", "crash"));
+    
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    
+    private final AndroidController controller;
+    private final Device device;
+    private final LogBuffer buffer;
+    private final List<String> buffers;
+    private final LogcatDecoder decoder = new LogcatDecoder();
+    private final List<LogEntryListener> listeners = new CopyOnWriteArrayList<>();
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    private volatile Closeable _handle;
+    private volatile boolean isClosed = false;
+    
+    /**
+     * Creates a new stream following the log of a device.
+     * The stream is started by {@link #start()}.
+     * @param controller The controller providing the transport.
+     * @param device The device whose log to follow.
+     * @param buffer The buffer retaining the device's most recent entries.
+     * @param buffers The names of the log buffers to read (e.g. {@code main}, {@code events}).
+     */
+    LogcatStream(AndroidController controller, Device device, LogBuffer buffer, List<String> buffers) {
+        this.controller = controller;
+        this.device = device;
+        this.buffer = buffer;
+        this.buffers = new ArrayList<>(buffers);
+    }
+    
+    /**
+     * Starts reading the device's log on the controller's {@link AndroidController#getAsyncExecutor() asynchronous executor}.
+     */
+    void start() {
+        try {
+            controller.getAsyncExecutor().execute(() -> {
+                try {
+                    read();
+                    completion.complete(null);
+                } catch (Exception ex) {
+                    if (isClosed)
+                        completion.complete(null);
+                    else
+                        completion.completeExceptionally(ex);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            completion.completeExceptionally(ex);
+        }
+    }
+    
+    /**
+     * Reads the device's log until logcat exits or the stream is closed.
+     */
+    private void read() throws IOException, InterruptedException {
+        List<String> _params = new ArrayList<>();
+        _params.add("logcat");
+        _params.add("-B");
+        buffers.stream().forEach((_buffer) -> { _params.add("-b"); _params.add(_buffer); });
+        
+        if (controller.isNativeTransportEnabled()) try {
+            controller.getAdbBridge().executeExecStreamChunks(device.getSerial(), String.join(" ", _params), this::decode, this::setHandle);
+            return;
+        } catch (ConnectException ex) { /* The server isn't running (yet); the executable will start it. */ }
+        
+        ProcessBuilder _builder = new AdbCommand(device, "exec-out", _params.toArray(new String[_params.size()])).getProcess();
+        // Anything written to stderr would corrupt the binary output.
+        _builder.redirectErrorStream(false).redirectError(ProcessBuilder.Redirect.INHERIT);
+        Process _process = _builder.start();
+        setHandle(_process::destroyForcibly);
+        try (InputStream inStream = _process.getInputStream()) {
+            byte[] _buffer = new byte[READ_BUFFER_SIZE];
+            int _read;
+            while ((_read = inStream.read(_buffer)) != -1)
+                decode(_buffer, 0, _read);
+        }
+        _process.waitFor();
+    }
+    
+    private void setHandle(Closeable handle) {
+        this._handle = handle;
+        if (isClosed)
+            closeQuietly(handle);
+    }
+    
+    private void decode(byte[] chunk, int offset, int length) {
+        try {
+            decoder.decode(chunk, offset, length, this::deliver);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+    
+    /**
+     * Retains an entry and passes it to the listeners.
+     * Exceptions thrown by listeners are passed to the reading thread's uncaught exception handler; the remaining listeners are still called.
+     * @param entry The entry read.
+     */
+    private void deliver(LogEntry entry) {
+        buffer.append(entry);
+        for (LogEntryListener _listener : listeners) try {
+            _listener.onLogEntry(entry);
+        } catch (RuntimeException ex) {
+            Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(), ex);
+        }
+    }
+    
+    /**
+     * Gets the device whose log this stream follows.
+     * @return The {@link eu.beatsleigher.jdroidlib.android.device.Device}.
+     */
+    public Device getDevice() { return device; }
+    
+    /**
+     * Gets the buffer retaining the device's most recent entries, e.g. to query the last minutes of the log.
+     * @return The stream's {@link eu.beatsleigher.jdroidlib.logcat.LogBuffer}.
+     */
+    public LogBuffer getBuffer() { return buffer; }
+    
+    /**
+     * Persists every entry read from now on in a {@link LogArchive} with the default segment size and duration.
+     * The archive is written to a subdirectory of the given directory named after the device's serial number,
+     * so the logs of several devices can be archived to the same directory. It is closed once the stream stops.
+     * @param directory The directory containing the devices' archives.
+     * @return The device's archive, e.g. to {@link LogArchive#flush() flush} it before querying it.
+     * @throws IOException If the archive's directory cannot be created or read.
+     */
+    public LogArchive archive(Path directory) throws IOException {
+        LogArchive _archive = new LogArchive(directory.resolve(device.getSerial().replaceAll("[^A-Za-z0-9._-]", "_")));
+        addLogEntryListener(_archive);
+        completion.whenComplete((result, ex) -> {
+            removeLogEntryListener(_archive);
+            try {
+                _archive.close();
+            } catch (IOException ioEx) {
+                Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(), ioEx);
+            }
+        });
+        return _archive;
+    }
+    
+    /**
+     * Adds a listener, which is passed every entry read from now on.
+     * @param listener The listener to add.
+     * @return {@code true} if the listener was added.
+     */
+    public boolean addLogEntryListener(LogEntryListener listener) { return listeners.add(listener); }
+    
+    /**
+     * Removes a listener.
+     * @param listener The listener to remove.
+     * @return {@code true} if the listener was removed.
+     */
+    public boolean removeLogEntryListener(LogEntryListener listener) { return listeners.remove(listener); }
+    
+    /**
+     * Gets a value indicating whether the stream is still reading the device's log.
+     * @return {@code true} if the stream is running.
+     */
+    public boolean isRunning() { return !completion.isDone(); }
+    
+    /**
+     * Gets a future which completes once the stream has stopped:
+     * normally if the stream was closed or logcat exited (e.g. because the device was disconnected),
+     * exceptionally if the log could not be read.
+     * @return The future.
+     */
+    public CompletableFuture<Void> getCompletion() { return completion; }
+    
+    /**
+     * Stops reading the device's log. The entries retained by the stream's buffer remain available.
+     */
+    @Override
+    public void close() {
+        isClosed = true;
+        Closeable _current = _handle;
+        if (_current != null)
+            closeQuietly(_current);
+    }
+    
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ex) { /* The log is no longer read either way. */ }
+    }
+    
+}
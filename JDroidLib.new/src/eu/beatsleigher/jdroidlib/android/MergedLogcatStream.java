@@ -0,0 +1,475 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.android;
+
+import eu.beatsleigher.jdroidlib.android.device.Device;
+import eu.beatsleigher.jdroidlib.exception.DeviceHasNoRootException;
+import eu.beatsleigher.jdroidlib.logcat.LogBuffer;
+import eu.beatsleigher.jdroidlib.logcat.LogEntry;
+import eu.beatsleigher.jdroidlib.logcat.MergedLogEntryListener;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Class MergedLogcatStream
+ * Follows the logs of several devices and merges them into a single log, ordered by time.
+ * 
+ * Every device's log is read by its own {@link LogcatStream}. Since the devices' clocks differ, the offset between each device's clock
+ * and the host's clock is measured when the device is attached, and every entry's timestamp is corrected by its device's offset.
+ * The entries are then merged by a streaming k-way merge: each device's entries are queued in the order of their timestamps,
+ * and the oldest entry at the head of all queues is passed to the listeners next.
+ * 
+ * As the devices' logs arrive with different delays, every entry is held back for the reorder window before it is passed on,
+ * giving the other devices' older entries time to arrive. Entries arriving later than that, i.e. older than an entry already passed on,
+ * are passed on immediately and counted by {@link #getLateEntryCount()}.
+ * At most {@value #MAX_PENDING_ENTRIES} entries are held back at a time, so memory stays bounded: once the limit is reached,
+ * the oldest entries are passed on before their reorder window has passed, and the devices' logs are no longer read
+ * until the listeners have caught up. Logcat then buffers the entries on the device.
+ * 
+ * Listeners are called on a single thread of the controller's {@link AndroidController#getAsyncExecutor() asynchronous executor}.
+ * @author Simon
+ */
+public class MergedLogcatStream implements Closeable {
+    
+    /** The default reorder window, in milliseconds. */
+    public static final long DEFAULT_REORDER_WINDOW_MILLIS = 500;
+    /** The maximum number of entries held back; once it is reached, the oldest entries are passed on before the reorder window has passed and reading the devices' logs blocks. */
+    public static final int MAX_PENDING_ENTRIES = 64 * 1024;
+    
+    private static final int CLOCK_SAMPLES = 3;
+    private static final int DELIVERY_BATCH_SIZE = 256;
+    private static final Pattern CLOCK_PATTERN = Pattern.compile("^(\\d+)");
+    private static final Comparator<Pending> ENTRY_ORDER = Comparator.<Pending>comparingLong((_pending) -> _pending.timestampNanos)
+                                                                      .thenComparingLong((_pending) -> _pending.sequence);
+    
+    private final AndroidController controller;
+    private final long reorderWindowNanos;
+    private final int retentionBytes;
+    private final List<String> buffers;
+    private final Map<Device, Source> sources = new LinkedHashMap<>();
+    private final PriorityQueue<Source> heads = new PriorityQueue<>((_source1, _source2) -> ENTRY_ORDER.compare(_source1.queue.peek(), _source2.queue.peek()));
+    private final List<MergedLogEntryListener> listeners = new CopyOnWriteArrayList<>();
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    private int pendingCount = 0;
+    private long sequence = 0;
+    private long lastTimestampNanos = Long.MIN_VALUE;
+    private long lateEntryCount = 0;
+    private boolean isClosed = false;
+    
+    //<editor-fold defaultstate="collapsed" desc="Internal Classes">
+    /**
+     * A device attached to the stream, along with its entries that haven't been passed on yet.
+     */
+    private static final class Source {
+        
+        private final Device device;
+        private final long clockOffsetNanos;
+        private final LogcatStream stream;
+        private final PriorityQueue<Pending> queue = new PriorityQueue<>(ENTRY_ORDER);
+        
+        private Source(Device device, long clockOffsetNanos, LogcatStream stream) {
+            this.device = device;
+            this.clockOffsetNanos = clockOffsetNanos;
+            this.stream = stream;
+        }
+        
+    }
+    
+    /**
+     * An entry held back until the reorder window has passed.
+     */
+    private static final class Pending {
+        
+        private final String serial;
+        private final LogEntry entry;
+        private final long timestampNanos;
+        private final long sequence;
+        private final long dueNanos;
+        
+        private Pending(String serial, LogEntry entry, long timestampNanos, long sequence, long dueNanos) {
+            this.serial = serial;
+            this.entry = entry;
+            this.timestampNanos = timestampNanos;
+            this.sequence = sequence;
+            this.dueNanos = dueNanos;
+        }
+        
+    }
+    //</editor-fold>
+    
+    /**
+     * Creates a new stream without any devices.
+     * The stream is started by {@link #start()}; devices are added by {@link #attach(eu.beatsleigher.jdroidlib.android.device.Device)}.
+     * @param controller The controller providing the transport.
+     * @param reorderWindow The time every entry is held back for.
+     * @param timeUnit The unit of the reorder window.
+     * @param retentionBytes The size of each device's {@link LogBuffer}.
+     * @param buffers The names of the log buffers to read.
+     */
+    MergedLogcatStream(AndroidController controller, long reorderWindow, TimeUnit timeUnit, int retentionBytes, List<String> buffers) {
+        if (reorderWindow < 0)
+            throw new IllegalArgumentException("The reorder window must not be negative!");
+        if (retentionBytes < LogBuffer.MIN_CAPACITY)
+            throw new IllegalArgumentException(String.format("Devices must retain at least %d bytes of entries!", LogBuffer.MIN_CAPACITY));
+        
+        this.controller = controller;
+        this.reorderWindowNanos = timeUnit.toNanos(reorderWindow);
+        this.retentionBytes = retentionBytes;
+        this.buffers = new ArrayList<>(buffers);
+    }
+    
+    /**
+     * Starts merging the devices' entries on the controller's {@link AndroidController#getAsyncExecutor() asynchronous executor}.
+     */
+    void start() {
+        try {
+            controller.getAsyncExecutor().execute(() -> {
+                try {
+                    merge();
+                    completion.complete(null);
+                } catch (InterruptedException ex) {
+                    completion.completeExceptionally(ex);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            completion.completeExceptionally(ex);
+        }
+    }
+    
+    //<editor-fold defaultstate="collapsed" desc="Clock Offsets">
+    /**
+     * Creates the command reading a device's clock.
+     * @param controller The controller creating the command.
+     * @param device The device whose clock to read.
+     * @return The command printing the device's time in nanoseconds since the epoch.
+     * @throws DeviceHasNoRootException Never; the command doesn't require root access.
+     */
+    static AdbCommand createClockCommand(AndroidController controller, Device device) throws DeviceHasNoRootException {
+        return controller.formAdbShellCommand(device, false, "date", "+%s%N");
+    }
+    
+    /**
+     * Measures the offset between a device's clock and the host's clock.
+     * The device's clock is read several times; the reading with the shortest round trip is used,
+     * assuming the device read its clock halfway through the round trip.
+     * The output is streamed, so no {@link eu.beatsleigher.jdroidlib.events.CommandOutputChangedEventListener}s are notified of these internal commands.
+     * @param controller The controller executing the command.
+     * @param command The command created by {@link #createClockCommand(eu.beatsleigher.jdroidlib.android.AndroidController, eu.beatsleigher.jdroidlib.android.device.Device)}.
+     * @return The offset to add to the device's timestamps to get the host's time, in nanoseconds.
+     * @throws IOException If the device's clock cannot be read.
+     * @throws InterruptedException If the thread is interrupted while reading the device's clock.
+     */
+    static long measureClockOffset(AndroidController controller, AdbCommand command) throws IOException, InterruptedException {
+        long _shortestRoundTrip = Long.MAX_VALUE;
+        long _offset = 0;
+        ByteArrayOutputStream _buffer = new ByteArrayOutputStream();
+        for (int i = 0; i < CLOCK_SAMPLES; i++) {
+            _buffer.reset();
+            long _hostNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+            long _start = System.nanoTime();
+            controller.executeAdbCommandStreamChunks(command, _buffer::write);
+            long _roundTrip = System.nanoTime() - _start;
+            String _output = new String(_buffer.toByteArray(), StandardCharsets.UTF_8).trim();
+            
+            if (_roundTrip < _shortestRoundTrip) {
+                _shortestRoundTrip = _roundTrip;
+                _offset = _hostNanos + _roundTrip / 2 - parseDeviceTime(_output);
+            }
+        }
+        return _offset;
+    }
+    
+    /**
+     * Parses the output of {@code date +%s%N}.
+     * Older versions of toolbox and toybox don't support {@code %N} and print the seconds only, followed by {@code N} or {@code %N}.
+     * @param output The command's output.
+     * @return The device's time, in nanoseconds since the epoch.
+     * @throws IOException If the output doesn't contain a time.
+     */
+    private static long parseDeviceTime(String output) throws IOException {
+        Matcher _matcher = CLOCK_PATTERN.matcher(output);
+        if (!_matcher.find())
+            throw new IOException(String.format("The device's clock could not be read: %s", output));
+        
+        String _digits = _matcher.group(1);
+        if (_digits.length() == output.length() && _digits.length() > 10)
+            return Long.parseLong(_digits);
+        return TimeUnit.SECONDS.toNanos(Long.parseLong(_digits));
+    }
+    //</editor-fold>
+    
+    //<editor-fold defaultstate="collapsed" desc="Devices">
+    /**
+     * Adds a device to the stream, measuring the offset of its clock first.
+     * Only the entries read after the device has been attached are merged; these include the entries logcat dumps when it starts.
+     * @param device The device to add.
+     * @throws IOException If the device's clock cannot be read.
+     * @throws InterruptedException If the thread is interrupted while reading the device's clock.
+     */
+    public void attach(Device device) throws IOException, InterruptedException {
+        if (device == null)
+            throw new IllegalArgumentException("Device must not be null!");
+        
+        try {
+            attach(device, measureClockOffset(controller, createClockCommand(controller, device)));
+        } catch (DeviceHasNoRootException ex) {
+            throw new IllegalStateException(ex); // Unreachable: the command isn't a root command.
+        }
+    }
+    
+    /**
+     * Adds a device whose clock offset has already been measured to the stream.
+     * @param device The device to add.
+     * @param clockOffsetNanos The offset to add to the device's timestamps to get the host's time, in nanoseconds.
+     */
+    void attach(Device device, long clockOffsetNanos) {
+        LogcatStream _stream = new LogcatStream(controller, device, new LogBuffer(retentionBytes), buffers);
+        Source _source = new Source(device, clockOffsetNanos, _stream);
+        synchronized (this) {
+            if (isClosed)
+                throw new IllegalStateException("The stream has been closed!");
+            if (sources.containsKey(device))
+                throw new IllegalArgumentException(String.format("%s is already attached!", device.getSerial()));
+            sources.put(device, _source);
+        }
+        // The listener is registered before the stream starts, so no entry is missed.
+        _stream.addLogEntryListener((_entry) -> offer(_source, _entry));
+        _stream.start();
+    }
+    
+    /**
+     * Stops following a device's log. Entries of the device that are still held back are passed on.
+     * @param device The device to remove.
+     * @return {@code true} if the device was attached to this stream.
+     */
+    public boolean detach(Device device) {
+        Source _source;
+        synchronized (this) {
+            _source = sources.remove(device);
+        }
+        if (_source == null)
+            return false;
+        _source.stream.close();
+        return true;
+    }
+    
+    /**
+     * Gets the devices attached to this stream.
+     * @return An unmodifiable copy of the devices, in the order they were attached.
+     */
+    public synchronized List<Device> getDevices() { return Collections.unmodifiableList(new ArrayList<>(sources.keySet())); }
+    
+    /**
+     * Gets the stream following a device's log, e.g. to query its most recent entries.
+     * @param device The device.
+     * @return The device's {@link LogcatStream}, or {@code null} if the device isn't attached.
+     */
+    public synchronized LogcatStream getStream(Device device) {
+        Source _source = sources.get(device);
+        return _source == null ? null : _source.stream;
+    }
+    
+    /**
+     * Gets the offset between a device's clock and the host's clock, as measured when the device was attached.
+     * @param device The device.
+     * @param timeUnit The unit to return the offset in.
+     * @return The offset to add to the device's timestamps to get the host's time; positive if the device's clock is behind.
+     * @throws IllegalArgumentException If the device isn't attached.
+     */
+    public synchronized long getClockOffset(Device device, TimeUnit timeUnit) {
+        Source _source = sources.get(device);
+        if (_source == null)
+            throw new IllegalArgumentException(String.format("%s is not attached!", device.getSerial()));
+        return timeUnit.convert(_source.clockOffsetNanos, TimeUnit.NANOSECONDS);
+    }
+    //</editor-fold>
+    
+    //<editor-fold defaultstate="collapsed" desc="Merging">
+    /**
+     * Queues an entry read from a device.
+     * Called on the thread reading the device's log, which is blocked while {@value #MAX_PENDING_ENTRIES} entries are held back.
+     * @param source The device the entry was read from.
+     * @param entry The entry, which is only valid until this method returns.
+     */
+    private synchronized void offer(Source source, LogEntry entry) {
+        while (pendingCount >= MAX_PENDING_ENTRIES && !isClosed) try {
+            wait();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt(); // The entry is dropped; the reading thread is being shut down.
+            return;
+        }
+        if (isClosed)
+            return;
+        
+        long _timestampNanos = entry.getTimestampNanos() + source.clockOffsetNanos;
+        long _dueNanos = System.nanoTime();
+        if (_timestampNanos < lastTimestampNanos)
+            lateEntryCount++;
+        else
+            _dueNanos += reorderWindowNanos;
+        
+        Pending _pending = new Pending(source.device.getSerial(), entry.copy(), _timestampNanos, sequence++, _dueNanos);
+        Pending _head = source.queue.peek();
+        boolean _isNewHead = _head == null || ENTRY_ORDER.compare(_pending, _head) < 0;
+        if (_isNewHead && _head != null)
+            heads.remove(source); // The source's position among the heads changes.
+        source.queue.add(_pending);
+        if (_isNewHead)
+            heads.add(source);
+        
+        if (++pendingCount >= MAX_PENDING_ENTRIES || _isNewHead)
+            notifyAll();
+    }
+    
+    /**
+     * Passes the queued entries on, oldest first, until the stream is closed and all entries have been passed on.
+     */
+    private void merge() throws InterruptedException {
+        List<Pending> _ready = new ArrayList<>(DELIVERY_BATCH_SIZE);
+        while (true) {
+            synchronized (this) {
+                while (!isHeadReady()) {
+                    if (heads.isEmpty()) {
+                        if (isClosed)
+                            return;
+                        wait();
+                    } else
+                        TimeUnit.NANOSECONDS.timedWait(this, heads.peek().queue.peek().dueNanos - System.nanoTime());
+                }
+                boolean _wasFull = pendingCount >= MAX_PENDING_ENTRIES;
+                while (_ready.size() < DELIVERY_BATCH_SIZE && isHeadReady())
+                    _ready.add(poll());
+                if (_wasFull)
+                    notifyAll(); // Wakes the reading threads blocked in offer().
+            }
+            
+            // Listeners are called without holding the lock, so the devices' logs continue to be read meanwhile.
+            for (Pending _pending : _ready)
+                deliver(_pending);
+            _ready.clear();
+        }
+    }
+    
+    /**
+     * Determines whether the oldest queued entry is to be passed on.
+     * @return {@code true} if there is an entry whose reorder window has passed, or entries are not to be held back any more.
+     */
+    private boolean isHeadReady() {
+        Source _source = heads.peek();
+        return _source != null && (isClosed || pendingCount >= MAX_PENDING_ENTRIES || _source.queue.peek().dueNanos - System.nanoTime() <= 0);
+    }
+    
+    /**
+     * Removes the oldest queued entry.
+     * @return The entry.
+     */
+    private Pending poll() {
+        Source _source = heads.poll();
+        Pending _pending = _source.queue.poll();
+        if (!_source.queue.isEmpty())
+            heads.add(_source);
+        pendingCount--;
+        lastTimestampNanos = Math.max(lastTimestampNanos, _pending.timestampNanos);
+        return _pending;
+    }
+    
+    /**
+     * Passes an entry to the listeners.
+     * Exceptions thrown by listeners are passed to the merging thread's uncaught exception handler; the remaining listeners are still called.
+     * @param pending The entry.
+     */
+    private void deliver(Pending pending) {
+        for (MergedLogEntryListener _listener : listeners) try {
+            _listener.onLogEntry(pending.serial, pending.entry, pending.timestampNanos);
+        } catch (RuntimeException ex) {
+            Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(), ex);
+        }
+    }
+    //</editor-fold>
+    
+    /**
+     * Adds a listener, which is passed every entry merged from now on.
+     * @param listener The listener to add.
+     * @return {@code true} if the listener was added.
+     */
+    public boolean addMergedLogEntryListener(MergedLogEntryListener listener) { return listeners.add(listener); }
+    
+    /**
+     * Removes a listener.
+     * @param listener The listener to remove.
+     * @return {@code true} if the listener was removed.
+     */
+    public boolean removeMergedLogEntryListener(MergedLogEntryListener listener) { return listeners.remove(listener); }
+    
+    /**
+     * Gets the time every entry is held back for, so older entries of other devices can overtake it.
+     * @param timeUnit The unit to return the window in.
+     * @return The reorder window.
+     */
+    public long getReorderWindow(TimeUnit timeUnit) { return timeUnit.convert(reorderWindowNanos, TimeUnit.NANOSECONDS); }
+    
+    /**
+     * Gets the number of entries which arrived after a newer entry had already been passed on, and were thus passed on out of order.
+     * If this number grows steadily, the reorder window is too short.
+     * @return The number of late entries.
+     */
+    public synchronized long getLateEntryCount() { return lateEntryCount; }
+    
+    /**
+     * Gets the number of entries currently held back.
+     * @return The number of queued entries.
+     */
+    public synchronized int getPendingEntryCount() { return pendingCount; }
+    
+    /**
+     * Gets a value indicating whether the stream is still merging the devices' logs.
+     * @return {@code true} if the stream is running.
+     */
+    public boolean isRunning() { return !completion.isDone(); }
+    
+    /**
+     * Gets a future which completes once the stream has been closed and all entries held back have been passed on.
+     * @return The future.
+     */
+    public CompletableFuture<Void> getCompletion() { return completion; }
+    
+    /**
+     * Stops following the devices' logs. Entries still held back are passed on without waiting for the reorder window.
+     */
+    @Override
+    public void close() {
+        List<Source> _sources;
+        synchronized (this) {
+            isClosed = true;
+            _sources = new ArrayList<>(sources.values());
+            notifyAll();
+        }
+        _sources.forEach((_source) -> _source.stream.close());
+    }
+    
+}
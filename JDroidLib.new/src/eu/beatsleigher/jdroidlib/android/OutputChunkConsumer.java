@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.android;
+
+/**
+ * Interface OutputChunkConsumer
+ * Receives the raw output of a command, chunk by chunk, as it is read from the process or the ADB server.
+ * 
+ * The consumer is called on the thread reading the output. While the consumer is busy, no further output is read,
+ * so a slow consumer throttles the command instead of causing its output to pile up in memory.
+ * @author Simon
+ */
+@FunctionalInterface
+public interface OutputChunkConsumer {
+    
+    /**
+     * Called for every chunk of output read.
+     * The buffer is reused for subsequent chunks, so its contents must be copied if they are needed after this method returns.
+     * @param buffer The buffer containing the chunk.
+     * @param offset The offset of the chunk within the buffer.
+     * @param length The length of the chunk.
+     */
+    void onChunk(byte[] buffer, int offset, int length);
+    
+}
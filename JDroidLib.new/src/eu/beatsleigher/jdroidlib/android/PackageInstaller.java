@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.android;
+
+import eu.beatsleigher.jdroidlib.android.InstallResult.Stage;
+import eu.beatsleigher.jdroidlib.android.device.Device;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * PackageInstaller
+ * Installs packages consisting of one or more APKs (split APKs) via the package manager's install sessions,
+ * the same way {@code adb install-multiple} does.
+ * 
+ * An installation runs in three stages, each of which is timed:
+ * the APKs are streamed to a temporary directory on the device over a single sync connection,
+ * an install session is created and the APKs are written to it, and finally the session is committed.
+ * Devices without install sessions (older than Android 5.0) fall back to {@code pm install} for single APKs.
+ * @author Simon
+ */
+final class PackageInstaller {
+    
+    /** The directory APKs are transferred to before they are installed. */
+    static final String REMOTE_DIR = "/data/local/tmp";
+    
+    private static final Pattern SESSION_PATTERN = Pattern.compile("Success: created install session \\[(\\d+)\\]");
+    private static final Pattern SUCCESS_PATTERN = Pattern.compile("^Success", Pattern.MULTILINE);
+    private static final Pattern FAILURE_PATTERN = Pattern.compile("Failure \\[([A-Z0-9_]+)(?::\\s*(.*))?\\]");
+    
+    private final AndroidController controller;
+    
+    PackageInstaller(AndroidController controller) {
+        this.controller = controller;
+    }
+    
+    /**
+     * Installs a package on a device.
+     * @param device The device to install the package on.
+     * @param apks The package's APKs: the base APK, followed by any split APKs.
+     * @param flags The install flags to pass to the package manager (e.g. {@code -r}, {@code -d}, {@code -g}).
+     * @return The result of the installation.
+     * @throws IOException If an APK cannot be read, or an IO error occurs while talking to the device.
+     * @throws InterruptedException If the thread is interrupted between two stages, or while waiting for the device.
+     */
+    InstallResult install(Device device, List<Path> apks, String... flags) throws IOException, InterruptedException {
+        if (device == null)
+            throw new IllegalArgumentException("Device must not be null!");
+        if (apks == null || apks.isEmpty())
+            throw new IllegalArgumentException("At least one APK must be passed!");
+        
+        String _prefix = String.format("%s/jdroidlib-install-%08x-", REMOTE_DIR, ThreadLocalRandom.current().nextInt());
+        String _flags = flags.length == 0 ? "" : String.join(" ", flags) + " ";
+        Map<Path, String> _remoteFiles = new LinkedHashMap<>();
+        long[] _sizes = new long[apks.size()];
+        long _totalSize = 0;
+        for (int i = 0; i < apks.size(); i++) {
+            _sizes[i] = Files.size(apks.get(i));
+            _totalSize += _sizes[i];
+            _remoteFiles.put(apks.get(i), _prefix + i + ".apk");
+        }
+        
+        long[] stageNanos = new long[Stage.values().length];
+        long _start = System.nanoTime();
+        try {
+            controller.pushFiles(device, _remoteFiles, null);
+            _start = endStage(stageNanos, Stage.TRANSFER, _start);
+            
+            String _output = execute(device, String.format("pm install-create %s-S %d", _flags, _totalSize));
+            Matcher _session = SESSION_PATTERN.matcher(_output);
+            if (!_session.find()) {
+                if (apks.size() > 1 || FAILURE_PATTERN.matcher(_output).find()) {
+                    endStage(stageNanos, Stage.STAGING, _start);
+                    return parse(_output, stageNanos);
+                }
+                // No install sessions on this device, install the APK directly.
+                _start = System.nanoTime();
+                _output = execute(device, String.format("pm install %s%s", _flags, _remoteFiles.get(apks.get(0))));
+                endStage(stageNanos, Stage.COMMIT, _start);
+                return parse(_output, stageNanos);
+            }
+            
+            String _sessionId = _session.group(1);
+            boolean committed = false;
+            try {
+                List<String> _writes = new ArrayList<>();
+                for (int i = 0; i < apks.size(); i++)
+                    _writes.add(String.format("pm install-write -S %d %s %d.apk %s", _sizes[i], _sessionId, i, _remoteFiles.get(apks.get(i))));
+                for (ShellResult _write : controller.executeAdbShellBatch(device, _writes))
+                    if (!SUCCESS_PATTERN.matcher(_write.getOutput()).find()) {
+                        endStage(stageNanos, Stage.STAGING, _start);
+                        return parse(_write.getOutput(), stageNanos);
+                    }
+                _start = endStage(stageNanos, Stage.STAGING, _start);
+                
+                committed = true;
+                _output = execute(device, "pm install-commit " + _sessionId);
+                endStage(stageNanos, Stage.COMMIT, _start);
+                return parse(_output, stageNanos);
+            } finally {
+                if (!committed) try {
+                    execute(device, "pm install-abandon " + _sessionId);
+                } catch (IOException ex) { /* The device discards abandoned sessions on its own eventually. */ }
+            }
+        } finally {
+            try {
+                execute(device, "rm -f " + String.join(" ", _remoteFiles.values()));
+            } catch (IOException ex) { /* The files are left in the temporary directory; the installation's outcome is unaffected. */ }
+        }
+    }
+    
+    /**
+     * Records the time spent in a stage.
+     * If the thread has been interrupted meanwhile, the installation is not continued.
+     * @param stageNanos The times of all stages.
+     * @param stage The stage that has ended.
+     * @param start The time the stage started at.
+     * @return The time the stage ended at, i.e. the start of the next stage.
+     * @throws InterruptedException If the thread has been interrupted.
+     */
+    private static long endStage(long[] stageNanos, Stage stage, long start) throws InterruptedException {
+        long end = System.nanoTime();
+        stageNanos[stage.ordinal()] = end - start;
+        if (Thread.interrupted())
+            throw new InterruptedException("The installation was interrupted!");
+        return end;
+    }
+    
+    private String execute(Device device, String commandLine) throws IOException, InterruptedException {
+        return controller.executeAdbShellBatch(device, commandLine).get(0).getOutput();
+    }
+    
+    /**
+     * Parses the output of the package manager.
+     * @param output The output of {@code pm install}, {@code pm install-create}, {@code pm install-write} or {@code pm install-commit}.
+     * @param stageNanos The times of all stages.
+     * @return The result of the installation.
+     */
+    static InstallResult parse(String output, long[] stageNanos) {
+        Matcher _failure = FAILURE_PATTERN.matcher(output);
+        if (_failure.find())
+            return new InstallResult(false, _failure.group(1), _failure.group(2), output, stageNanos);
+        if (SUCCESS_PATTERN.matcher(output).find())
+            return new InstallResult(true, null, null, output, stageNanos);
+        return new InstallResult(false, null, output.trim(), output, stageNanos);
+    }
+    
+}
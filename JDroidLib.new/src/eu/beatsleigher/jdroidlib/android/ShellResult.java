@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.android;
+
+/**
+ * Class ShellResult
+ * Represents the result of a single shell command executed as part of a {@link ShellBatch}.
+ * Instances of this class are immutable.
+ * @author Simon
+ */
+public final class ShellResult {
+    
+    /**
+     * The exit value reported for commands whose exit value could not be determined (e.g. because the shell died before the command was run).
+     */
+    public static final int EXIT_VALUE_UNKNOWN = -1;
+    
+    private final String command;
+    private final String output;
+    private final int exitValue;
+    
+    ShellResult(String command, String output, int exitValue) {
+        this.command = command;
+        this.output = output;
+        this.exitValue = exitValue;
+    }
+    
+    /**
+     * Gets the command this result belongs to.
+     * @return The command line as it was executed in the shell.
+     */
+    public String getCommand() { return command; }
+    
+    /**
+     * Gets the output of the command (stdout and stderr).
+     * @return The command's output.
+     */
+    public String getOutput() { return output; }
+    
+    /**
+     * Gets the exit value of the command.
+     * @return The exit value, or {@link #EXIT_VALUE_UNKNOWN} if it could not be determined.
+     */
+    public int getExitValue() { return exitValue; }
+    
+    /**
+     * Gets a value indicating whether the command exited successfully.
+     * @return {@code true} if the command's exit value is zero, {@code false} if not.
+     */
+    public boolean isSuccessful() { return exitValue == 0; }
+    
+    @Override
+    public String toString() {
+        return String.format("%s (exit value %d)", command, exitValue);
+    }
+    
+}
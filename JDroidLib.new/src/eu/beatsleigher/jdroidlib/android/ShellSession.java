@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.android;
+
+import eu.beatsleigher.jdroidlib.adb.ShellConnection;
+import eu.beatsleigher.jdroidlib.android.device.Device;
+import eu.beatsleigher.jdroidlib.exception.DeviceHasNoRootException;
+import java.io.*;
+import java.net.ConnectException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Class ShellSession
+ * Represents a shell which is kept open on a device, so commands don't pay for connection setup and shell startup every time.
+ * 
+ * Every command written to the shell is framed by two sentinel lines: one before the command runs and one carrying its exit value.
+ * The sentinels are split by an empty quoted string when they are written, so the terminal's echo of the command line never matches them.
+ * Anything printed outside of a frame (prompts, echoed input) is discarded.
+ * 
+ * The shell is opened via the native transport if it is enabled, or via the ADB executable otherwise.
+ * If the shell has died before a command is sent (e.g. because the device was reconnected), a new shell is started and the command is sent again.
+ * If the shell dies while a command is running, that command fails and the next command starts a new shell.
+ * A root session runs {@code su} once when the shell is started, instead of once per command.
+ * 
+ * Sessions bypass the {@link CommandScheduler}, as they hold their own connection to the device for their entire lifetime.
+ * This class is thread-safe; commands are executed one after another.
+ * @author Simon
+ */
+public class ShellSession implements Closeable {
+    
+    private final AndroidController controller;
+    private final Device device;
+    private final boolean rootShell;
+    private final String marker;
+    private final String splitMarker;
+    private Closeable _handle;
+    private BooleanSupplier _isAlive;
+    private BufferedReader reader;
+    private Writer writer;
+    private int sequence = 0;
+    private boolean isClosed = false;
+    
+    /**
+     * Creates a new shell session on a device.
+     * The shell itself is started when the first command is executed.
+     * @param controller The controller providing the transport.
+     * @param device The device to open the shell on.
+     * @param rootShell Set to {@code true} if the shell should run as root.
+     */
+    ShellSession(AndroidController controller, Device device, boolean rootShell) {
+        this.controller = controller;
+        this.device = device;
+        this.rootShell = rootShell;
+        this.marker = String.format("JDROIDLIB_SESSION_%08x", ThreadLocalRandom.current().nextInt());
+        this.splitMarker = marker.substring(0, 9) + "''" + marker.substring(9);
+    }
+    
+    /**
+     * Gets the device this session's shell runs on.
+     * @return The {@link eu.beatsleigher.jdroidlib.android.device.Device}.
+     */
+    public Device getDevice() { return device; }
+    
+    /**
+     * Gets a value indicating whether this session runs its commands as root.
+     * @return {@code true} if this is a root session.
+     */
+    public boolean isRootShell() { return rootShell; }
+    
+    /**
+     * Gets a value indicating whether the shell is currently running.
+     * @return {@code true} if the shell is running.
+     */
+    public synchronized boolean isConnected() { return _handle != null && _isAlive.getAsBoolean(); }
+    
+    /**
+     * Executes a command in the shell.
+     * Changes made to the shell's state (e.g. {@code cd}, {@code export}) persist until the shell is restarted.
+     * @param commandLine The command line to execute.
+     * @return The result of the command.
+     * @throws IOException If the shell couldn't be started, or it died while the command was running.
+     * @throws DeviceHasNoRootException If this is a root session and the shell couldn't be switched to root.
+     */
+    public synchronized ShellResult execute(String commandLine) throws IOException, DeviceHasNoRootException {
+        if (isClosed)
+            throw new IOException("Shell session is closed!");
+        if (!isConnected())
+            start();
+        
+        ShellResult result = frame(commandLine);
+        if (result == null) {
+            // The shell was gone before the command reached it, so it's safe to send it again.
+            start();
+            result = frame(commandLine);
+        }
+        if (result == null)
+            throw new EOFException(String.format("The shell exited before \"%s\" could be executed!", commandLine));
+        return result;
+    }
+    
+    /**
+     * Starts the shell and, for root sessions, switches it to root.
+     */
+    private void start() throws IOException, DeviceHasNoRootException {
+        destroy();
+        
+        InputStream inStream = null;
+        OutputStream outStream = null;
+        if (controller.isNativeTransportEnabled()) try {
+            ShellConnection connection = controller.getAdbBridge().openShell(device.getSerial());
+            _handle = connection;
+            _isAlive = connection::isOpen;
+            inStream = connection.getInputStream();
+            outStream = connection.getOutputStream();
+        } catch (ConnectException ex) { /* The server isn't running (yet); the executable will start it. */ }
+        
+        if (_handle == null) {
+            Process pr = new AdbCommand(device, "shell").getProcess().start();
+            _handle = pr::destroyForcibly;
+            _isAlive = pr::isAlive;
+            inStream = pr.getInputStream();
+            outStream = pr.getOutputStream();
+        }
+        reader = new BufferedReader(new InputStreamReader(inStream, StandardCharsets.UTF_8));
+        writer = new BufferedWriter(new OutputStreamWriter(outStream, StandardCharsets.UTF_8));
+        
+        if (rootShell) {
+            writer.write("su\n");
+            writer.flush();
+            ShellResult result = frame("id");
+            if (result == null)
+                throw new EOFException("The shell exited while switching to root!");
+            if (!result.getOutput().contains("uid=0(")) {
+                destroy();
+                throw new DeviceHasNoRootException(String.format("Could not start a root shell: %s", result.getOutput().trim()));
+            }
+        }
+    }
+    
+    /**
+     * Writes a framed command to the shell and reads its result.
+     * @return The command's result, or {@code null} if the shell was gone before anything could be read.
+     */
+    private ShellResult frame(String commandLine) throws IOException {
+        int seq = ++sequence;
+        String begin = marker + "_B:" + seq, end = marker + "_E:" + seq + ":";
+        boolean receivedOutput = false;
+        
+        try {
+            writer.write(String.format("echo %s_B:%d; { %s\n} 2>&1; __jdl_rc=$?; echo; echo %s_E:%d:$__jdl_rc\n",
+                                       splitMarker, seq, commandLine, splitMarker, seq));
+            writer.flush();
+            
+            StringBuilder output = new StringBuilder();
+            boolean inFrame = false;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                receivedOutput = true;
+                if (!inFrame) {
+                    int index = line.indexOf(begin);
+                    inFrame = index != -1 && line.substring(index).trim().equals(begin);
+                    continue;
+                }
+                
+                int index = line.indexOf(end);
+                if (index == -1) {
+                    output.append(line).append('\n');
+                    continue;
+                }
+                
+                // Drop the line break of the empty line echoed in front of the sentinel.
+                if (output.length() > 0)
+                    output.setLength(output.length() - 1);
+                int exitValue;
+                try {
+                    exitValue = Integer.parseInt(line.substring(index + end.length()).trim());
+                } catch (NumberFormatException ex) {
+                    exitValue = ShellResult.EXIT_VALUE_UNKNOWN;
+                }
+                return new ShellResult(commandLine, output.toString(), exitValue);
+            }
+        } catch (IOException ex) {
+            destroy();
+            if (!receivedOutput)
+                return null;
+            throw ex;
+        }
+        
+        destroy();
+        if (!receivedOutput)
+            return null;
+        throw new EOFException(String.format("The shell exited while executing \"%s\"!", commandLine));
+    }
+    
+    /**
+     * Terminates the shell, if it's running.
+     */
+    private void destroy() {
+        if (_handle != null) try {
+            _handle.close();
+        } catch (IOException ex) { /* Nothing left to clean up. */ }
+        _handle = null;
+        _isAlive = null;
+        reader = null;
+        writer = null;
+    }
+    
+    /**
+     * Closes the shell. Further commands cannot be executed.
+     */
+    @Override
+    public synchronized void close() {
+        isClosed = true;
+        if (writer != null) try {
+            writer.write("exit\n");
+            writer.flush();
+        } catch (IOException ex) { /* The shell is already gone. */ }
+        destroy();
+    }
+    
+}
@@ -19,6 +19,8 @@
 package eu.beatsleigher.jdroidlib.android.device;
 
 import eu.beatsleigher.jdroidlib.android.AndroidController;
+import eu.beatsleigher.jdroidlib.android.LogcatStream;
+import eu.beatsleigher.jdroidlib.android.ShellSession;
 
 /**
  * Device
@@ -28,6 +30,7 @@ import eu.beatsleigher.jdroidlib.android.AndroidController;
 public class Device {
     
     private final String serialNumber;
+    private final AndroidController _controller;
     private boolean _hasRoot;
     
     /**
@@ -36,9 +39,10 @@ public class Device {
      * @param serial The serialnumber of the device this class represents.
      */
     public Device(Object sender, String serial) {
-        if (sender instanceof AndroidController) // Don't change this or use this to your advantage!
+        if (sender instanceof AndroidController) { // Don't change this or use this to your advantage!
             this.serialNumber = serial;
-        else throw new IllegalArgumentException();
+            this._controller = (AndroidController)sender;
+        } else throw new IllegalArgumentException();
     }
     
     /**
@@ -53,4 +57,19 @@ public class Device {
      */
     public String getSerial() { return serialNumber; }
     
+    /**
+     * Opens a shell on this device, which is kept open for any number of commands.
+     * The shell is started when the first command is executed; close the session once it is no longer needed.
+     * @param rootShell Set to {@code true} if the shell should switch to root (via su) once it is started.
+     * @return A new {@link eu.beatsleigher.jdroidlib.android.ShellSession}.
+     */
+    public ShellSession openShellSession(boolean rootShell) { return _controller.openShellSession(this, rootShell); }
+    
+    /**
+     * Starts following this device's log, retaining its most recent entries.
+     * The stream reads logcat's default buffers; use {@link AndroidController#openLogcat(Device, int, java.util.List)} to choose others.
+     * @return The running {@link eu.beatsleigher.jdroidlib.android.LogcatStream}; close it once it is no longer needed.
+     */
+    public LogcatStream openLogcat() { return _controller.openLogcat(this); }
+    
 }
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.android.device;
+
+/**
+ * DeviceState
+ * Represents the state of a device, as reported by the ADB server.
+ * @author Simon
+ */
+public enum DeviceState {
+    
+    DEVICE("device"),
+    OFFLINE("offline"),
+    BOOTLOADER("bootloader"),
+    RECOVERY("recovery"),
+    RESCUE("rescue"),
+    SIDELOAD("sideload"),
+    HOST("host"),
+    UNAUTHORIZED("unauthorized"),
+    AUTHORIZING("authorizing"),
+    CONNECTING("connecting"),
+    NO_PERMISSIONS("no permissions"),
+    UNKNOWN("unknown");
+    
+    private final String adbName;
+    
+    DeviceState(String adbName) { this.adbName = adbName; }
+    
+    /**
+     * Gets the name the ADB server uses for this state.
+     * @return The state as it appears in the output of {@code adb devices}.
+     */
+    public String getAdbName() { return adbName; }
+    
+    /**
+     * Converts a state reported by the ADB server to one of the constants in this enum.
+     * @param state The state as reported by the ADB server.
+     * @return The matching constant, or {@link #UNKNOWN} if the state is not known to JDroidLib.
+     */
+    public static DeviceState fromString(String state) {
+        if (state == null)
+            return UNKNOWN;
+        String _state = state.trim().toLowerCase();
+        if (_state.startsWith("no permissions"))
+            return NO_PERMISSIONS; // The server may append a hint to this state.
+        for (DeviceState value : values())
+            if (value.adbName.equals(_state))
+                return value;
+        return UNKNOWN;
+    }
+    
+}
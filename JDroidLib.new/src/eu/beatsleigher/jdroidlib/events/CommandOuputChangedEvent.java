@@ -36,8 +36,12 @@ public final class CommandOuputChangedEvent extends EventObject {
     private final Command executingCommand;
     /** The current output of the command. */
     private final String currentOutput;
-    /** The previous output of the command. */
-    private final String previousOutput;
+    /** The output of the command, up until (and including) the current output. */
+    private final CharSequence previousOutput;
+    /** The length of the output at the time this event was created. */
+    private final int previousOutputLength;
+    /** The previous output, once it has been converted to a string. */
+    private volatile String previousOutputString;
 
     /**
      * Default constructor.
@@ -47,10 +51,26 @@ public final class CommandOuputChangedEvent extends EventObject {
      * @param previousOutput The entire output of the command that has been piped up until this event was called. 
      */
     public CommandOuputChangedEvent(Object source, Command executingCommand, String currentOutput, String previousOutput) {
+        this(source, executingCommand, currentOutput, (CharSequence)previousOutput);
+    }
+    
+    /**
+     * Constructor for output that is still being accumulated.
+     * The accumulated output is only converted to a string if {@link #getPreviousOutput()} is called,
+     * so emitting an event per line does not copy the entire output per line.
+     * The passed sequence must only ever be appended to, and must be safe to read while it is being appended to (e.g. a {@link StringBuffer}),
+     * as listeners are notified on the {@link EventDispatcher}'s thread.
+     * @param source The calling object.
+     * @param executingCommand The command that is currently being executed by the method calling this event.
+     * @param currentOutput The current output of the process.
+     * @param previousOutput The output accumulated so far, or {@code null} if the output is streamed and not accumulated.
+     */
+    public CommandOuputChangedEvent(Object source, Command executingCommand, String currentOutput, CharSequence previousOutput) {
         super(source);
         this.executingCommand = executingCommand;
         this.currentOutput = currentOutput;
         this.previousOutput = previousOutput;
+        this.previousOutputLength = previousOutput == null ? 0 : previousOutput.length();
     }
     
     /**
@@ -67,8 +87,13 @@ public final class CommandOuputChangedEvent extends EventObject {
     
     /**
      * Gets the previous output of the command.
-     * @return A string value containing all of the command's output up until the calling of this event.
+     * @return A string value containing all of the command's output up until the calling of this event,
+     * or {@code null} if the command's output is streamed and not accumulated.
      */
-    public String getPreviousOutput() { return previousOutput; }
+    public String getPreviousOutput() {
+        if (previousOutputString == null && previousOutput != null)
+            previousOutputString = previousOutput.subSequence(0, previousOutputLength).toString();
+        return previousOutputString;
+    }
     
 }
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.events;
+
+import eu.beatsleigher.jdroidlib.android.device.DeviceState;
+import java.util.EventObject;
+
+/**
+ * Event class
+ * 
+ * The DeviceStateChanged event is called when a device is attached to or detached from the ADB server, or when an attached device changes its state.
+ * An attached device has no previous state, a detached device has no new state.
+ * @author Simon
+ */
+public class DeviceStateChangedEvent extends EventObject {
+    
+    /** The serial number of the device whose state changed. */
+    private final String serial;
+    /** The state the device was in before the change. */
+    private final DeviceState previousState;
+    /** The state the device is in after the change. */
+    private final DeviceState newState;
+    
+    /**
+     * Default constructor.
+     * @param source The source of the event (the sender)
+     * @param serial The serial number of the device whose state changed.
+     * @param previousState The state before the change, or {@code null} if the device was attached.
+     * @param newState The state after the change, or {@code null} if the device was detached.
+     */
+    public DeviceStateChangedEvent(Object source, String serial, DeviceState previousState, DeviceState newState) {
+        super(source);
+        this.serial = serial;
+        this.previousState = previousState;
+        this.newState = newState;
+    }
+    
+    /**
+     * Gets the serial number of the device whose state changed.
+     * @return The device's serial number.
+     */
+    public String getSerial() { return serial; }
+    
+    /**
+     * Gets the state the device was in before the change.
+     * @return The previous state, or {@code null} if the device was attached.
+     */
+    public DeviceState getPreviousState() { return previousState; }
+    
+    /**
+     * Gets the state the device is in after the change.
+     * @return The new state, or {@code null} if the device was detached.
+     */
+    public DeviceState getNewState() { return newState; }
+    
+    /**
+     * Gets a value indicating whether the device was attached.
+     * @return {@code true} if the device was attached.
+     */
+    public boolean isAttached() { return previousState == null; }
+    
+    /**
+     * Gets a value indicating whether the device was detached.
+     * @return {@code true} if the device was detached.
+     */
+    public boolean isDetached() { return newState == null; }
+    
+}
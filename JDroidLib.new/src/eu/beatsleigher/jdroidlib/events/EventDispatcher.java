@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.events;
+
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * EventDispatcher
+ * Delivers JDroidLib's events to their listeners on a dedicated thread.
+ * 
+ * Events are queued and delivered one after the other, in the order they were raised, so listeners observe e.g. a command's output in order.
+ * The thread raising an event (such as the thread reading a process' output) never runs listener code, so a slow listener cannot stall it.
+ * The queue is bounded; what happens when it is full is decided by the {@link OverflowPolicy}.
+ * Exceptions thrown by listeners are passed to the dispatcher thread's uncaught exception handler; the remaining listeners are still called.
+ * @author Simon
+ */
+public class EventDispatcher {
+    
+    /** The default amount of events that may be waiting for delivery. */
+    public static final int DEFAULT_QUEUE_CAPACITY = 4096;
+    
+    /**
+     * Decides what happens to an event raised while the queue is full.
+     */
+    public enum OverflowPolicy {
+        /** The raising thread waits until the queue has room. No events are lost. */
+        BLOCK,
+        /** The new event is discarded. */
+        DROP_NEWEST,
+        /** The oldest queued event is discarded to make room for the new event. */
+        DROP_OLDEST,
+        /** The event is delivered on the raising thread, bypassing the queue (and the ordering guarantee). */
+        CALLER_RUNS;
+    }
+    
+    private final BlockingDeque<Runnable> queue;
+    private final AtomicLong droppedEvents = new AtomicLong();
+    private volatile OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+    private volatile Thread dispatcherThread;
+    
+    /**
+     * Creates a new dispatcher with the {@link #DEFAULT_QUEUE_CAPACITY default capacity}.
+     */
+    public EventDispatcher() { this(DEFAULT_QUEUE_CAPACITY); }
+    
+    /**
+     * Creates a new dispatcher.
+     * The dispatcher thread is started when the first event is raised.
+     * @param queueCapacity The maximum amount of events waiting for delivery. Must be greater than zero.
+     */
+    public EventDispatcher(int queueCapacity) {
+        if (queueCapacity <= 0)
+            throw new IllegalArgumentException("Queue capacity must be greater than zero!");
+        this.queue = new LinkedBlockingDeque<>(queueCapacity);
+    }
+    
+    //<editor-fold defaultstate="collapsed" desc="Getter and Setter Methods">
+    /**
+     * Sets what happens to events raised while the queue is full.
+     * @param overflowPolicy The new policy.
+     */
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        if (overflowPolicy == null)
+            throw new IllegalArgumentException("Overflow policy must not be null!");
+        this.overflowPolicy = overflowPolicy;
+    }
+    
+    /**
+     * Gets what happens to events raised while the queue is full.
+     * @return The current policy. Defaults to {@link OverflowPolicy#BLOCK}.
+     */
+    public OverflowPolicy getOverflowPolicy() { return overflowPolicy; }
+    
+    /**
+     * Gets the amount of events discarded because the queue was full.
+     * @return The amount of events dropped since this dispatcher was created.
+     */
+    public long getDroppedEventCount() { return droppedEvents.get(); }
+    
+    /**
+     * Gets the amount of events waiting for delivery.
+     * @return The current length of the queue.
+     */
+    public int getPendingEventCount() { return queue.size(); }
+    //</editor-fold>
+    
+    /**
+     * Raises an event.
+     * If there are no listeners, the event is neither queued nor delivered.
+     * @param <L> The type of the listeners.
+     * @param <E> The type of the event.
+     * @param listeners The listeners to notify. Should be a copy-on-write list, as it is iterated on the dispatcher thread.
+     * @param event The event to deliver.
+     * @param delivery Calls a listener with the event.
+     */
+    public <L, E> void dispatch(List<L> listeners, E event, BiConsumer<L, E> delivery) {
+        if (listeners.isEmpty())
+            return;
+        
+        Runnable task = () -> listeners.stream().forEach((listener) -> {
+            try {
+                delivery.accept(listener, event);
+            } catch (RuntimeException ex) {
+                Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(), ex);
+            }
+        });
+        ensureStarted();
+        
+        if (queue.offer(task))
+            return;
+        
+        switch (overflowPolicy) {
+            case BLOCK:
+                if (Thread.currentThread() == dispatcherThread) {
+                    task.run(); // A listener raised this event; waiting for the queue to drain would wait for ourselves.
+                    break;
+                }
+                try {
+                    queue.put(task);
+                } catch (InterruptedException ex) {
+                    droppedEvents.incrementAndGet();
+                    Thread.currentThread().interrupt();
+                }
+                break;
+            case DROP_NEWEST:
+                droppedEvents.incrementAndGet();
+                break;
+            case DROP_OLDEST:
+                while (!queue.offer(task))
+                    if (queue.pollFirst() != null)
+                        droppedEvents.incrementAndGet();
+                break;
+            case CALLER_RUNS:
+                task.run();
+                break;
+        }
+    }
+    
+    /**
+     * Waits until all events raised so far have been delivered.
+     * @param timeout The maximum time to wait.
+     * @param timeUnit The unit of the timeout.
+     * @return {@code true} if all events were delivered, {@code false} if the timeout elapsed first.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public boolean awaitDelivery(long timeout, TimeUnit timeUnit) throws InterruptedException {
+        CountDownLatch delivered = new CountDownLatch(1);
+        ensureStarted();
+        if (!queue.offer(delivered::countDown, timeout, timeUnit))
+            return false;
+        return delivered.await(timeout, timeUnit);
+    }
+    
+    /**
+     * Starts the dispatcher thread, if it isn't running yet.
+     */
+    private void ensureStarted() {
+        if (dispatcherThread == null)
+            startDispatcherThread();
+    }
+    
+    private synchronized void startDispatcherThread() {
+        if (dispatcherThread != null)
+            return;
+        
+        Thread thread = new Thread(() -> {
+            while (true) try {
+                queue.take().run();
+            } catch (InterruptedException ex) { /* The dispatcher runs for the lifetime of the JVM. */ }
+        }, "JDroidLib-Events");
+        thread.setDaemon(true);
+        thread.start();
+        dispatcherThread = thread;
+    }
+    
+}
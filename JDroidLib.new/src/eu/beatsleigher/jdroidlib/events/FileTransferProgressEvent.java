@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.events;
+
+import java.util.EventObject;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Event class
+ * Contains the progress of a file being transferred to or from a device.
+ * @author Simon
+ */
+public class FileTransferProgressEvent extends EventObject {
+    
+    /** The path of the file on the device. */
+    private final String remotePath;
+    /** The amount of bytes transferred so far. */
+    private final long bytesTransferred;
+    /** The total size of the file, or -1 if unknown. */
+    private final long totalBytes;
+    /** The time elapsed since the transfer was started, in nanoseconds. */
+    private final long elapsedNanos;
+    
+    /**
+     * Default constructor.
+     * @param source The source of the event (the sender)
+     * @param remotePath The path of the file on the device.
+     * @param bytesTransferred The amount of bytes transferred so far.
+     * @param totalBytes The total size of the file, or -1 if unknown.
+     * @param elapsedNanos The time elapsed since the transfer was started, in nanoseconds.
+     */
+    public FileTransferProgressEvent(Object source, String remotePath, long bytesTransferred, long totalBytes, long elapsedNanos) {
+        super(source);
+        this.remotePath = remotePath;
+        this.bytesTransferred = bytesTransferred;
+        this.totalBytes = totalBytes;
+        this.elapsedNanos = elapsedNanos;
+    }
+    
+    /**
+     * Gets the path of the file on the device.
+     * @return The remote path.
+     */
+    public String getRemotePath() { return remotePath; }
+    
+    /**
+     * Gets the amount of bytes transferred so far.
+     * @return The amount of bytes transferred.
+     */
+    public long getBytesTransferred() { return bytesTransferred; }
+    
+    /**
+     * Gets the total size of the file being transferred.
+     * @return The total size in bytes, or -1 if the size is not known (yet).
+     */
+    public long getTotalBytes() { return totalBytes; }
+    
+    /**
+     * Gets the time elapsed since the transfer was started.
+     * @param timeUnit The unit of time to return.
+     * @return The elapsed time.
+     */
+    public long getElapsedTime(TimeUnit timeUnit) { return timeUnit.convert(elapsedNanos, TimeUnit.NANOSECONDS); }
+    
+    /**
+     * Gets the average throughput of the transfer so far.
+     * @return The throughput in bytes per second.
+     */
+    public double getThroughput() {
+        return elapsedNanos <= 0 ? 0 : bytesTransferred * (double)TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+    
+    /**
+     * Gets a value indicating whether the transfer has completed.
+     * @return {@code true} if all bytes have been transferred.
+     */
+    public boolean isComplete() { return totalBytes >= 0 && bytesTransferred >= totalBytes; }
+    
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.events;
+
+/**
+ * Listener interface for JDroidLib
+ * Provides functionality for monitoring file transfers to and from devices.
+ * @author Simon
+ */
+public interface FileTransferProgressEventListener {
+    
+    /**
+     * Handler method.
+     * Called whenever a chunk of a file has been transferred.
+     * Listeners passed to {@link eu.beatsleigher.jdroidlib.adb.SyncConnection} are called on the transferring thread;
+     * listeners passed to {@link eu.beatsleigher.jdroidlib.android.AndroidController} are called on its event dispatcher's thread.
+     * @param evt 
+     */
+    public void onFileTransferProgress(FileTransferProgressEvent evt);
+    
+}
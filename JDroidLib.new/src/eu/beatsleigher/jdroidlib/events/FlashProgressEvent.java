@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.events;
+
+import eu.beatsleigher.jdroidlib.android.FlashResult.Stage;
+import java.util.EventObject;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Event class
+ * 
+ * The FlashProgress event is called whenever the bootloader of a device has completed a stage of flashing a partition,
+ * i.e. after an image (or a chunk of a sparse image) has been sent, and after it has been written.
+ * @author Simon
+ */
+public class FlashProgressEvent extends EventObject {
+    
+    /** The serial number of the device being flashed. */
+    private final String serial;
+    /** The partition being flashed. */
+    private final String partition;
+    /** The stage that has completed. */
+    private final Stage stage;
+    /** The time the stage took, in nanoseconds. */
+    private final long stageNanos;
+    /** The amount of bytes sent to the device so far. */
+    private final long bytesSent;
+    /** The total size of all images flashed onto the device. */
+    private final long totalBytes;
+    
+    /**
+     * Default constructor.
+     * @param source The source of the event (the sender)
+     * @param serial The serial number of the device being flashed.
+     * @param partition The partition being flashed.
+     * @param stage The stage that has completed.
+     * @param stageNanos The time the stage took, in nanoseconds.
+     * @param bytesSent The amount of bytes sent to the device so far, over all partitions.
+     * @param totalBytes The total size of all images flashed onto the device.
+     */
+    public FlashProgressEvent(Object source, String serial, String partition, Stage stage, long stageNanos, long bytesSent, long totalBytes) {
+        super(source);
+        this.serial = serial;
+        this.partition = partition;
+        this.stage = stage;
+        this.stageNanos = stageNanos;
+        this.bytesSent = bytesSent;
+        this.totalBytes = totalBytes;
+    }
+    
+    /**
+     * Gets the serial number of the device being flashed.
+     * @return The device's serial number.
+     */
+    public String getSerial() { return serial; }
+    
+    /**
+     * Gets the partition being flashed.
+     * @return The name of the partition, as reported by the bootloader (including the slot suffix on A/B devices).
+     */
+    public String getPartition() { return partition; }
+    
+    /**
+     * Gets the stage that has completed.
+     * @return The stage.
+     */
+    public Stage getStage() { return stage; }
+    
+    /**
+     * Gets the time the stage took.
+     * @param timeUnit The unit of time to return.
+     * @return The time spent in the stage.
+     */
+    public long getStageTime(TimeUnit timeUnit) { return timeUnit.convert(stageNanos, TimeUnit.NANOSECONDS); }
+    
+    /**
+     * Gets the amount of bytes sent to the device so far, over all partitions.
+     * Sparse images are sent in chunks, so this value may slightly differ from the images' sizes.
+     * @return The amount of bytes sent.
+     */
+    public long getBytesSent() { return bytesSent; }
+    
+    /**
+     * Gets the total size of all images flashed onto the device.
+     * @return The total size in bytes.
+     */
+    public long getTotalBytes() { return totalBytes; }
+    
+}
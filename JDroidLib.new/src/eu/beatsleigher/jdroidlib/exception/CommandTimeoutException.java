@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.exception;
+
+import java.io.IOException;
+
+/**
+ * CommandTimeoutException
+ * This exception is thrown when a command's timeout elapses before it completes, and its process is destroyed.
+ * Asynchronous commands fail with a {@link java.util.concurrent.TimeoutException} instead.
+ * @author Simon
+ */
+public class CommandTimeoutException extends IOException {
+    
+    /**
+     * Default constructor.
+     */
+    public CommandTimeoutException() { super(); }
+    
+    /**
+     * Constructor with message parameter.
+     * @param message The error message belonging to the exception.
+     */
+    public CommandTimeoutException(String message) { super(message); }
+    
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.exception;
+
+import java.io.IOException;
+
+/**
+ * FastbootProtocolException
+ * This exception is thrown when a device in fastboot mode responds with a failure, or with data that does not adhere to the fastboot protocol.
+ * @author Simon
+ */
+public class FastbootProtocolException extends IOException {
+    
+    /**
+     * Default constructor.
+     */
+    public FastbootProtocolException() { super(); }
+    
+    /**
+     * Constructor with message parameter.
+     * @param message The error message belonging to the exception.
+     */
+    public FastbootProtocolException(String message) { super(message); }
+    
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.fastboot;
+
+import eu.beatsleigher.jdroidlib.android.FlashImage;
+import eu.beatsleigher.jdroidlib.android.FlashResult.Stage;
+import eu.beatsleigher.jdroidlib.exception.FastbootProtocolException;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * FastbootClient
+ * A client for the fastboot protocol, talking to a device in fastboot mode via TCP (e.g. a device flashed over the network, or an emulator).
+ * 
+ * Unlike the fastboot executable, the client splits raw images larger than the device's download buffer ({@code max-download-size})
+ * into sparse images on the fly. The pieces are sent straight from the image's mapping, which is shared by all clients flashing the same {@link FlashImage}.
+ * The protocol allows a single command at a time, so a piece can only be downloaded once the previous piece has been written;
+ * while the device writes a piece, the next piece is paged in from the image file, so its download does not wait for the disk.
+ * Instances of this class are not thread-safe, except for {@link #close()}, which aborts any command in progress.
+ * @author Simon
+ */
+public class FastbootClient implements Closeable {
+    
+    /** The port the bootloader listens on by default. */
+    public static final int DEFAULT_PORT = 5554;
+    /** The default connection timeout in milliseconds. */
+    public static final int DEFAULT_CONNECT_TIMEOUT = 2000;
+    
+    /**
+     * Receives the stages completed while flashing an image.
+     */
+    @FunctionalInterface
+    public interface StageListener {
+        
+        /**
+         * Called whenever the device has completed a stage of flashing a piece of an image.
+         * @param partition The partition being flashed, including its slot suffix.
+         * @param stage The stage that has completed.
+         * @param piece The index of the piece, starting at zero.
+         * @param pieces The amount of pieces the image was split into; {@code 1} if it was sent as a whole.
+         * @param bytes The size of the piece, as it was downloaded.
+         * @param nanos The time the stage took, in nanoseconds.
+         */
+        void onStageCompleted(String partition, Stage stage, int piece, int pieces, long bytes, long nanos);
+        
+    }
+    
+    private final FastbootConnection connection;
+    private volatile Consumer<String> messageListener;
+    private long maxDownloadSize = -1;
+    
+    /**
+     * Connects to a device in fastboot mode, without a read timeout.
+     * @param host The host name or address of the device.
+     * @param port The port the bootloader is listening on, usually {@link #DEFAULT_PORT}.
+     * @throws IOException If the connection cannot be established.
+     */
+    public FastbootClient(String host, int port) throws IOException {
+        this(host, port, DEFAULT_CONNECT_TIMEOUT, 0);
+    }
+    
+    /**
+     * Connects to a device in fastboot mode.
+     * @param host The host name or address of the device.
+     * @param port The port the bootloader is listening on, usually {@link #DEFAULT_PORT}.
+     * @param connectTimeout The connection timeout in milliseconds ({@code 0} for none).
+     * @param readTimeout The read timeout in milliseconds ({@code 0} for none). Writing large partitions can take minutes.
+     * @throws IOException If the connection cannot be established.
+     */
+    public FastbootClient(String host, int port, int connectTimeout, int readTimeout) throws IOException {
+        this.connection = new FastbootConnection(host, port, connectTimeout, readTimeout);
+    }
+    
+    /**
+     * Sets the listener receiving the {@code INFO} and {@code TEXT} messages the device sends while executing commands.
+     * @param listener The listener, or {@code null} to discard the messages.
+     */
+    public void setMessageListener(Consumer<String> listener) { this.messageListener = listener; }
+    
+    /**
+     * Executes a command on the device.
+     * @param command The command (e.g. {@code erase:cache}, {@code set_active:b}).
+     * @return The message accompanying the device's {@code OKAY}, which may be empty.
+     * @throws IOException If an IO error occurs, or the device responds with {@code FAIL}.
+     */
+    public String executeCommand(String command) throws IOException {
+        if (command == null || command.isEmpty())
+            throw new IllegalArgumentException("Command must not be null or empty!");
+        return connection.sendCommand(command, messageListener);
+    }
+    
+    /**
+     * Gets the value of a bootloader variable ({@code getvar}).
+     * @param name The name of the variable (e.g. {@code product}, {@code current-slot}).
+     * @return The value of the variable.
+     * @throws IOException If an IO error occurs, or the bootloader does not know the variable.
+     */
+    public String getVariable(String name) throws IOException {
+        return executeCommand("getvar:" + name).trim();
+    }
+    
+    /**
+     * Gets the size of the device's download buffer, i.e. the largest image (or piece of an image) the device accepts at once.
+     * The value is queried once per connection.
+     * @return The size of the download buffer in bytes.
+     * @throws IOException If an IO error occurs, or the bootloader reports no valid size.
+     */
+    public long getMaxDownloadSize() throws IOException {
+        if (maxDownloadSize < 0) {
+            String _value = getVariable("max-download-size");
+            try {
+                maxDownloadSize = _value.startsWith("0x") || _value.startsWith("0X") ? Long.parseLong(_value.substring(2), 16) : Long.parseLong(_value);
+            } catch (NumberFormatException ex) {
+                throw new FastbootProtocolException(String.format("Invalid max-download-size \"%s\"!", _value));
+            }
+        }
+        return maxDownloadSize;
+    }
+    
+    /**
+     * Resolves the name of a partition the way the fastboot executable does:
+     * on devices with A/B partitions, the partition of the current slot is flashed, unless a slot was given explicitly.
+     * @param partition The partition (e.g. {@code boot} or {@code boot_b}).
+     * @return The partition to flash (e.g. {@code boot_a}).
+     * @throws IOException If an IO error occurs.
+     */
+    public String resolvePartition(String partition) throws IOException {
+        try {
+            if (!"yes".equals(getVariable("has-slot:" + partition)))
+                return partition;
+            String _slot = getVariable("current-slot");
+            return _slot.isEmpty() ? partition : partition + "_" + (_slot.startsWith("_") ? _slot.substring(1) : _slot);
+        } catch (FastbootProtocolException ex) {
+            return partition; // Bootloaders without slots don't know these variables.
+        }
+    }
+    
+    /**
+     * Flashes an image onto its partition.
+     * If the image is larger than the device's download buffer, it is split into sparse pieces, which are downloaded and written one after another.
+     * @param image The image to flash.
+     * @param listener The listener to notify whenever a piece has been downloaded or written. May be {@code null}.
+     * @return The partition that was flashed, including its slot suffix.
+     * @throws IOException If an IO error occurs, or the device refuses a download or fails to write a piece.
+     * @throws InterruptedException If the thread is interrupted between two pieces.
+     */
+    public String flash(FlashImage image, StageListener listener) throws IOException, InterruptedException {
+        String _partition = resolvePartition(image.getPartition());
+        List<SparseSplitter.Piece> _pieces = SparseSplitter.split(image, getMaxDownloadSize());
+        
+        for (int i = 0; i < _pieces.size(); i++) {
+            SparseSplitter.Piece _piece = _pieces.get(i);
+            long _start = System.nanoTime();
+            connection.download(_piece.getBuffers(), _piece.getSize(), messageListener);
+            long _end = System.nanoTime();
+            if (listener != null)
+                listener.onStageCompleted(_partition, Stage.SEND, i, _pieces.size(), _piece.getSize(), _end - _start);
+            
+            if (i + 1 < _pieces.size())
+                prefetch(_pieces.get(i + 1));
+            _start = _end;
+            connection.sendCommand("flash:" + _partition, messageListener);
+            _end = System.nanoTime();
+            if (listener != null)
+                listener.onStageCompleted(_partition, Stage.WRITE, i, _pieces.size(), _piece.getSize(), _end - _start);
+            
+            if (Thread.interrupted())
+                throw new InterruptedException("Flashing was interrupted!");
+        }
+        return _partition;
+    }
+    
+    /**
+     * Reboots the device. The connection is unusable afterwards.
+     * @throws IOException If an IO error occurs, or the device refuses to reboot.
+     */
+    public void reboot() throws IOException {
+        executeCommand("reboot");
+    }
+    
+    /**
+     * Closes the connection to the device. A command in progress fails with an {@link java.io.IOException}.
+     * @throws IOException If an IO error occurs.
+     */
+    @Override
+    public void close() throws IOException {
+        connection.close();
+    }
+    
+    /**
+     * Pages in a piece in the background, while the device writes the previous piece.
+     * @param piece The piece to page in.
+     */
+    private static void prefetch(SparseSplitter.Piece piece) {
+        CompletableFuture.runAsync(() -> {
+            try {
+                piece.prefetch();
+            } catch (IOException ex) { /* The download maps the image again and reports the error. */ }
+        });
+    }
+    
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.fastboot;
+
+import eu.beatsleigher.jdroidlib.exception.FastbootProtocolException;
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.*;
+import java.util.function.Consumer;
+
+/**
+ * FastbootConnection
+ * Represents a single TCP connection to a device in fastboot mode.
+ * 
+ * After a handshake ({@code FB01}), every message in either direction is wrapped in a packet,
+ * which is prefixed with the length of its payload as an eight byte, big-endian integer.
+ * The device answers every command with any amount of {@code INFO} or {@code TEXT} messages,
+ * followed by either {@code OKAY}, {@code FAIL} or, for a download, {@code DATA} and the amount of bytes it expects.
+ * @author Simon
+ */
+class FastbootConnection implements Closeable {
+    
+    /** The charset used for commands and responses. */
+    static final Charset PROTOCOL_CHARSET = StandardCharsets.US_ASCII;
+    /** The maximum length of a single command. */
+    static final int MAX_COMMAND_LENGTH = 4096;
+    /** The maximum length of a single response accepted from the device. */
+    static final int MAX_RESPONSE_LENGTH = 0xFFFF;
+    
+    private static final String HANDSHAKE = "FB01";
+    private static final String STATUS_OKAY = "OKAY";
+    private static final String STATUS_FAIL = "FAIL";
+    private static final String STATUS_DATA = "DATA";
+    private static final String STATUS_INFO = "INFO";
+    private static final String STATUS_TEXT = "TEXT";
+    
+    private final Socket socket;
+    private final SocketChannel channel;
+    private final DataInputStream input;
+    private final ByteBuffer packetHeader = ByteBuffer.allocate(8);
+    
+    /**
+     * Opens a new connection to a device in fastboot mode and performs the handshake.
+     * @param host The host name or address of the device.
+     * @param port The port the device's bootloader is listening on.
+     * @param connectTimeout The connection timeout in milliseconds ({@code 0} for none).
+     * @param readTimeout The read timeout in milliseconds ({@code 0} for none).
+     * @throws IOException If the connection could not be established, or the device does not speak the fastboot protocol.
+     */
+    FastbootConnection(String host, int port, int connectTimeout, int readTimeout) throws IOException {
+        // Packets are written through the channel, so image data can be sent straight from the mapped file.
+        channel = SocketChannel.open();
+        socket = channel.socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(readTimeout);
+            socket.connect(new InetSocketAddress(host, port), connectTimeout);
+            input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            
+            writeFully(ByteBuffer.wrap(HANDSHAKE.getBytes(PROTOCOL_CHARSET)));
+            byte[] _handshake = new byte[HANDSHAKE.length()];
+            input.readFully(_handshake);
+            String _response = new String(_handshake, PROTOCOL_CHARSET);
+            if (!_response.startsWith("FB") || !_response.substring(2).chars().allMatch(Character::isDigit) || Integer.parseInt(_response.substring(2)) < 1)
+                throw new FastbootProtocolException(String.format("Unexpected handshake \"%s\"!", _response));
+        } catch (IOException ex) {
+            socket.close();
+            throw ex;
+        }
+    }
+    
+    /**
+     * Sends a command to the device and waits for it to complete.
+     * @param command The command to send (e.g. {@code getvar:product}).
+     * @param messages Receives the {@code INFO} and {@code TEXT} messages sent by the device. May be {@code null}.
+     * @return The message accompanying the device's {@code OKAY}, which may be empty.
+     * @throws IOException If an IO error occurs, or the device responds with {@code FAIL}.
+     */
+    String sendCommand(String command, Consumer<String> messages) throws IOException {
+        writeCommand(command);
+        return readResponse(command, STATUS_OKAY, messages);
+    }
+    
+    /**
+     * Downloads data to the device.
+     * The data is sent as a single packet, whose payload is gathered from the passed buffers.
+     * @param data The buffers containing the data, from their positions to their limits.
+     * @param size The total amount of bytes remaining in the buffers.
+     * @param messages Receives the {@code INFO} and {@code TEXT} messages sent by the device. May be {@code null}.
+     * @throws IOException If an IO error occurs, or the device refuses the download.
+     */
+    void download(ByteBuffer[] data, long size, Consumer<String> messages) throws IOException {
+        String _command = String.format("download:%08x", size);
+        writeCommand(_command);
+        String _expected = readResponse(_command, STATUS_DATA, messages);
+        if (!_expected.equalsIgnoreCase(String.format("%08x", size)))
+            throw new FastbootProtocolException(String.format("Device expects %s bytes instead of %d!", _expected, size));
+        
+        ByteBuffer[] _packet = new ByteBuffer[data.length + 1];
+        _packet[0] = header(size);
+        System.arraycopy(data, 0, _packet, 1, data.length);
+        long _remaining = 8 + size;
+        while (_remaining > 0)
+            _remaining -= channel.write(_packet);
+        
+        readResponse(_command, STATUS_OKAY, messages);
+    }
+    
+    /**
+     * Writes a command as a single packet.
+     * @param command The command to write.
+     * @throws IOException If an IO error occurs, or the command is too long.
+     */
+    private void writeCommand(String command) throws IOException {
+        byte[] _payload = command.getBytes(PROTOCOL_CHARSET);
+        if (_payload.length > MAX_COMMAND_LENGTH)
+            throw new FastbootProtocolException(String.format("Command is too long (%d bytes)!", _payload.length));
+        writeFully(header(_payload.length));
+        writeFully(ByteBuffer.wrap(_payload));
+    }
+    
+    /**
+     * Reads the device's responses to a command, until the command has completed.
+     * @param command The command the responses belong to, for error reporting.
+     * @param expected The status completing the command ({@code OKAY} or {@code DATA}).
+     * @param messages Receives {@code INFO} and {@code TEXT} messages. May be {@code null}.
+     * @return The message accompanying the expected status.
+     * @throws IOException If an IO error occurs, or the device responds with {@code FAIL} or an unexpected status.
+     */
+    private String readResponse(String command, String expected, Consumer<String> messages) throws IOException {
+        while (true) {
+            long _length = input.readLong();
+            if (_length < 4 || _length > MAX_RESPONSE_LENGTH)
+                throw new FastbootProtocolException(String.format("Invalid response length %d to command \"%s\"!", _length, command));
+            byte[] _response = new byte[(int)_length];
+            input.readFully(_response);
+            String status = new String(_response, 0, 4, PROTOCOL_CHARSET), message = new String(_response, 4, _response.length - 4, PROTOCOL_CHARSET);
+            
+            if (expected.equals(status))
+                return message;
+            if (STATUS_INFO.equals(status) || STATUS_TEXT.equals(status)) {
+                if (messages != null)
+                    messages.accept(message);
+                continue;
+            }
+            if (STATUS_FAIL.equals(status))
+                throw new FastbootProtocolException(String.format("Command \"%s\" failed: %s", command, message));
+            throw new FastbootProtocolException(String.format("Unexpected response to command \"%s\": %s", command, status));
+        }
+    }
+    
+    /**
+     * Creates the header of a packet.
+     * @param length The length of the packet's payload.
+     * @return The header, ready to be written.
+     */
+    private ByteBuffer header(long length) {
+        packetHeader.clear();
+        packetHeader.putLong(length).flip();
+        return packetHeader;
+    }
+    
+    /**
+     * Writes the remaining contents of a buffer to the channel.
+     * @param buffer The buffer to write.
+     * @throws IOException If an IO error occurs.
+     */
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+    
+    /**
+     * Closes this connection.
+     * @throws IOException If an IO error occurs.
+     */
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+    
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.fastboot;
+
+import eu.beatsleigher.jdroidlib.android.FlashImage;
+import eu.beatsleigher.jdroidlib.exception.FastbootProtocolException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+
+/**
+ * SparseSplitter
+ * Splits images into pieces that fit into a device's download buffer.
+ * 
+ * Images that fit are sent as they are. Larger raw images are split into Android sparse images, each of which covers all blocks of the partition:
+ * a piece consists of a {@code DONT_CARE} chunk skipping the blocks before it, a {@code RAW} chunk carrying its blocks,
+ * and a {@code DONT_CARE} chunk skipping the blocks after it. The bootloader writes the {@code RAW} chunk and leaves all other blocks alone.
+ * Only the sparse headers are allocated; the data of every piece consists of views of the image's shared mapping.
+ * @author Simon
+ */
+final class SparseSplitter {
+    
+    /** The magic number every sparse image starts with. */
+    static final int SPARSE_MAGIC = 0xED26FF3A;
+    /** The size of the blocks sparse images are made of. */
+    static final int BLOCK_SIZE = 4096;
+    /** The size of a sparse image's file header. */
+    static final int FILE_HEADER_SIZE = 28;
+    /** The size of a sparse chunk's header. */
+    static final int CHUNK_HEADER_SIZE = 12;
+    /** A chunk carrying the blocks' data. */
+    static final short CHUNK_TYPE_RAW = (short)0xCAC1;
+    /** A chunk skipping blocks. */
+    static final short CHUNK_TYPE_DONT_CARE = (short)0xCAC3;
+    /** The largest download the protocol can announce ({@code download:%08x}). */
+    static final long MAX_DOWNLOAD_SIZE = 0xFFFFFFFFL;
+    
+    private static final ByteBuffer PADDING = ByteBuffer.allocateDirect(BLOCK_SIZE).asReadOnlyBuffer();
+    
+    private SparseSplitter() { }
+    
+    /**
+     * Splits an image into pieces no larger than the device's download buffer.
+     * @param image The image to split.
+     * @param maxDownloadSize The size of the device's download buffer.
+     * @return The pieces, in the order they are to be downloaded and flashed.
+     * @throws IOException If the image cannot be read, or it is a sparse image too large to be downloaded at once.
+     */
+    static List<Piece> split(FlashImage image, long maxDownloadSize) throws IOException {
+        long _maxSize = Math.min(maxDownloadSize, MAX_DOWNLOAD_SIZE);
+        if (image.getSize() <= _maxSize)
+            return Collections.singletonList(new Piece(null, image, 0, image.getSize(), null));
+        if (isSparse(image))
+            throw new FastbootProtocolException(String.format("Sparse image %s is larger than the device's download buffer (%d bytes)!", image.getFile(), maxDownloadSize));
+        
+        long _blocksPerPiece = (_maxSize - FILE_HEADER_SIZE - 3 * CHUNK_HEADER_SIZE) / BLOCK_SIZE;
+        if (_blocksPerPiece < 1)
+            throw new FastbootProtocolException(String.format("The device's download buffer (%d bytes) is too small!", maxDownloadSize));
+        long _totalBlocks = (image.getSize() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        
+        List<Piece> _pieces = new ArrayList<>();
+        for (long _firstBlock = 0; _firstBlock < _totalBlocks; _firstBlock += _blocksPerPiece) {
+            long _lastBlock = Math.min(_firstBlock + _blocksPerPiece, _totalBlocks);
+            boolean _skipBefore = _firstBlock > 0, _skipAfter = _lastBlock < _totalBlocks;
+            long _dataLength = Math.min(_lastBlock * BLOCK_SIZE, image.getSize()) - _firstBlock * BLOCK_SIZE;
+            
+            ByteBuffer _header = ByteBuffer.allocate(FILE_HEADER_SIZE + CHUNK_HEADER_SIZE * 2).order(ByteOrder.LITTLE_ENDIAN);
+            _header.putInt(SPARSE_MAGIC).putShort((short)1).putShort((short)0)
+                   .putShort((short)FILE_HEADER_SIZE).putShort((short)CHUNK_HEADER_SIZE)
+                   .putInt(BLOCK_SIZE).putInt((int)_totalBlocks).putInt(1 + (_skipBefore ? 1 : 0) + (_skipAfter ? 1 : 0)).putInt(0);
+            if (_skipBefore)
+                putChunkHeader(_header, CHUNK_TYPE_DONT_CARE, _firstBlock, 0);
+            putChunkHeader(_header, CHUNK_TYPE_RAW, _lastBlock - _firstBlock, (_lastBlock - _firstBlock) * BLOCK_SIZE);
+            _header.flip();
+            
+            ByteBuffer _trailer = null;
+            if (_skipAfter) {
+                _trailer = ByteBuffer.allocate(CHUNK_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                putChunkHeader(_trailer, CHUNK_TYPE_DONT_CARE, _totalBlocks - _lastBlock, 0);
+                _trailer.flip();
+            }
+            _pieces.add(new Piece(_header, image, _firstBlock * BLOCK_SIZE, _dataLength, _trailer));
+        }
+        return _pieces;
+    }
+    
+    /**
+     * Determines whether an image is a sparse image already.
+     * @param image The image to check.
+     * @return {@code true} if the image starts with the sparse magic number.
+     * @throws IOException If the image cannot be read.
+     */
+    static boolean isSparse(FlashImage image) throws IOException {
+        return image.getSize() >= FILE_HEADER_SIZE && image.getContent(0, 4).order(ByteOrder.LITTLE_ENDIAN).getInt() == SPARSE_MAGIC;
+    }
+    
+    private static void putChunkHeader(ByteBuffer buffer, short type, long blocks, long dataLength) {
+        buffer.putShort(type).putShort((short)0).putInt((int)blocks).putInt((int)(CHUNK_HEADER_SIZE + dataLength));
+    }
+    
+    /**
+     * A piece of an image, which is downloaded and flashed at once.
+     */
+    static final class Piece {
+        
+        private final ByteBuffer header;
+        private final FlashImage image;
+        private final long offset;
+        private final long length;
+        private final ByteBuffer trailer;
+        
+        Piece(ByteBuffer header, FlashImage image, long offset, long length, ByteBuffer trailer) {
+            this.header = header;
+            this.image = image;
+            this.offset = offset;
+            this.length = length;
+            this.trailer = trailer;
+        }
+        
+        /**
+         * Gets a value indicating whether this piece is a sparse image.
+         * @return {@code true} if the piece is a sparse image, {@code false} if it is the entire image.
+         */
+        boolean isSparse() { return header != null; }
+        
+        /**
+         * Gets the size of this piece, as it is downloaded.
+         * @return The size of the piece in bytes, including its sparse headers and the padding of its last block.
+         */
+        long getSize() {
+            return header == null ? length : header.remaining() + padding() + length + (trailer == null ? 0 : trailer.remaining());
+        }
+        
+        /**
+         * Gets the amount of image data this piece carries.
+         * @return The amount of bytes of the image.
+         */
+        long getDataLength() { return length; }
+        
+        /**
+         * Creates the buffers making up this piece.
+         * Every call returns new views, so several devices can download the same piece at the same time.
+         * @return The buffers, ready to be written.
+         * @throws IOException If the image cannot be mapped.
+         */
+        ByteBuffer[] getBuffers() throws IOException {
+            List<ByteBuffer> _buffers = new ArrayList<>();
+            if (header != null)
+                _buffers.add(header.duplicate());
+            forEachRegion((_position, _length) -> _buffers.add(image.getContent(_position, _length)));
+            if (header != null && padding() > 0)
+                _buffers.add((ByteBuffer)PADDING.duplicate().limit(padding()));
+            if (trailer != null)
+                _buffers.add(trailer.duplicate());
+            return _buffers.toArray(new ByteBuffer[_buffers.size()]);
+        }
+        
+        /**
+         * Reads one byte of every page of this piece's data, so the data is in memory by the time the piece is downloaded.
+         * @throws IOException If the image cannot be mapped.
+         */
+        void prefetch() throws IOException {
+            forEachRegion((_position, _length) -> {
+                ByteBuffer _content = image.getContent(_position, _length);
+                for (int i = 0; i < _length; i += BLOCK_SIZE)
+                    _content.get(i);
+            });
+        }
+        
+        private int padding() { return (int)((BLOCK_SIZE - length % BLOCK_SIZE) % BLOCK_SIZE); }
+        
+        /**
+         * Splits this piece's data at the boundaries of the image's mapped regions.
+         * @param consumer Receives every part of the data.
+         * @throws IOException If the consumer does.
+         */
+        private void forEachRegion(RegionConsumer consumer) throws IOException {
+            long _position = offset, _end = offset + length;
+            while (_position < _end) {
+                int _length = (int)Math.min(_end - _position, FlashImage.REGION_SIZE - _position % FlashImage.REGION_SIZE);
+                consumer.accept(_position, _length);
+                _position += _length;
+            }
+        }
+        
+    }
+    
+    @FunctionalInterface
+    private interface RegionConsumer {
+        void accept(long position, int length) throws IOException;
+    }
+    
+}
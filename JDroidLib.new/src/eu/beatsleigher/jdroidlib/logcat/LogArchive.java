@@ -0,0 +1,432 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.logcat;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+
+/**
+ * LogArchive
+ * Persists a device's log in compressed, rolling segment files, which can be queried by a {@link LogArchiveReader}.
+ * 
+ * Entries are collected in blocks of about {@value #BLOCK_SIZE} bytes; every block is compressed on its own and appended to the current segment file.
+ * For every block, an entry is appended to the segment's index file, holding the block's position, the range of its entries' timestamps
+ * and a filter of its entries' tags. Queries read the small index files only and then decompress just the blocks which may contain matching entries,
+ * instead of whole segments.
+ * 
+ * A new segment is started once the current one exceeds its size or covers more than its duration of the device's log.
+ * Once the archive exceeds its maximum size, its oldest segments are deleted.
+ * The archive is a {@link LogEntryListener}, so it is usually added to a {@link eu.beatsleigher.jdroidlib.android.LogcatStream}
+ * (see {@link eu.beatsleigher.jdroidlib.android.LogcatStream#archive(java.nio.file.Path)}).
+ * All methods are thread-safe.
+ * @author Simon
+ */
+public final class LogArchive implements LogEntryListener, Closeable {
+    
+    /** The default size of a segment, in compressed bytes. */
+    public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+    /** The default span of the device's log covered by a segment, in minutes. */
+    public static final long DEFAULT_SEGMENT_DURATION_MINUTES = 60;
+    /** The amount of uncompressed entries collected in a block before it is compressed and written, in bytes. */
+    public static final int BLOCK_SIZE = 64 * 1024;
+    
+    //<editor-fold defaultstate="collapsed" desc="File Format">
+    /** The first bytes of every segment and index file: "JDLA". */
+    static final int MAGIC = 0x4A444C41;
+    static final int VERSION = 1;
+    static final int FILE_HEADER_SIZE = 8;
+    
+    /** Every entry in a block: the lengths of its tag and message, its priority, buffer ID, timestamp, PID, TID and UID, followed by its tag and message. */
+    static final int RECORD_HEADER_SIZE = 26;
+    static final int RECORD_OFFSET_MESSAGE_LENGTH = 2;
+    static final int RECORD_OFFSET_PRIORITY = 4;
+    static final int RECORD_OFFSET_BUFFER_ID = 5;
+    static final int RECORD_OFFSET_TIMESTAMP = 6;
+    static final int RECORD_OFFSET_PID = 14;
+    static final int RECORD_OFFSET_TID = 18;
+    static final int RECORD_OFFSET_UID = 22;
+    
+    /** Every entry in an index file: the block's position and length in the segment, its uncompressed length, number of entries,
+     *  oldest and newest timestamp, and the filter of its tags. */
+    static final int INDEX_ENTRY_SIZE = 100;
+    static final int INDEX_OFFSET_COMPRESSED_LENGTH = 8;
+    static final int INDEX_OFFSET_LENGTH = 12;
+    static final int INDEX_OFFSET_ENTRY_COUNT = 16;
+    static final int INDEX_OFFSET_OLDEST = 20;
+    static final int INDEX_OFFSET_NEWEST = 28;
+    static final int INDEX_OFFSET_TAG_FILTER = 36;
+    /** The tag filter is a 512 bit Bloom filter, setting two bits per tag. */
+    static final int TAG_FILTER_LONGS = 8;
+    
+    static final String SEGMENT_SUFFIX = ".seg";
+    static final String INDEX_SUFFIX = ".idx";
+    static final Pattern SEGMENT_PATTERN = Pattern.compile("segment-(\\d+)\\.seg");
+    
+    /**
+     * Adds a tag to a tag filter.
+     * @param filter The filter.
+     * @param tagHash The {@link LogEntry#hashTag(byte[], int, int) hash} of the tag.
+     */
+    static void addToFilter(long[] filter, long tagHash) {
+        int _bit1 = (int)(tagHash & 511), _bit2 = (int)((tagHash >>> 32) & 511);
+        filter[_bit1 >>> 6] |= 1L << _bit1;
+        filter[_bit2 >>> 6] |= 1L << _bit2;
+    }
+    
+    /**
+     * Determines whether a tag filter may contain a tag.
+     * @param filter The filter.
+     * @param tagHash The {@link LogEntry#hashTag(byte[], int, int) hash} of the tag.
+     * @return {@code false} if the tag was definitely not added to the filter.
+     */
+    static boolean mayContain(long[] filter, long tagHash) {
+        int _bit1 = (int)(tagHash & 511), _bit2 = (int)((tagHash >>> 32) & 511);
+        return (filter[_bit1 >>> 6] & 1L << _bit1) != 0 && (filter[_bit2 >>> 6] & 1L << _bit2) != 0;
+    }
+    
+    /**
+     * Determines whether a tag filter stored in a buffer may contain a tag.
+     * @param buffer The buffer containing the filter.
+     * @param offset The offset of the filter in the buffer.
+     * @param tagHash The {@link LogEntry#hashTag(byte[], int, int) hash} of the tag.
+     * @return {@code false} if the tag was definitely not added to the filter.
+     */
+    static boolean mayContain(ByteBuffer buffer, int offset, long tagHash) {
+        int _bit1 = (int)(tagHash & 511), _bit2 = (int)((tagHash >>> 32) & 511);
+        return (buffer.getLong(offset + (_bit1 >>> 6) * 8) & 1L << _bit1) != 0 && (buffer.getLong(offset + (_bit2 >>> 6) * 8) & 1L << _bit2) != 0;
+    }
+    
+    /**
+     * Gets the path of a segment file.
+     * @param directory The archive's directory.
+     * @param sequence The segment's sequence number.
+     * @return The path of the segment file; the index file has the same name, ending with {@value #INDEX_SUFFIX}.
+     */
+    static Path getSegmentPath(Path directory, long sequence) {
+        return directory.resolve(String.format("segment-%012d%s", sequence, SEGMENT_SUFFIX));
+    }
+    
+    /**
+     * Gets the path of the index file belonging to a segment file.
+     * @param segment The path of the segment file.
+     * @return The path of the index file.
+     */
+    static Path getIndexPath(Path segment) {
+        String _name = segment.getFileName().toString();
+        return segment.resolveSibling(_name.substring(0, _name.length() - SEGMENT_SUFFIX.length()) + INDEX_SUFFIX);
+    }
+    
+    /**
+     * Lists the segments of an archive.
+     * @param directory The archive's directory.
+     * @return The sequence numbers and paths of the segment files, from the oldest to the newest segment.
+     * @throws IOException If the directory cannot be read.
+     */
+    static TreeMap<Long, Path> listSegments(Path directory) throws IOException {
+        TreeMap<Long, Path> _segments = new TreeMap<>();
+        if (!Files.isDirectory(directory))
+            return _segments;
+        try (DirectoryStream<Path> _stream = Files.newDirectoryStream(directory, "segment-*" + SEGMENT_SUFFIX)) {
+            for (Path _path : _stream) {
+                Matcher _matcher = SEGMENT_PATTERN.matcher(_path.getFileName().toString());
+                if (_matcher.matches())
+                    _segments.put(Long.parseLong(_matcher.group(1)), _path);
+            }
+        }
+        return _segments;
+    }
+    //</editor-fold>
+    
+    private static final long MAX_BLOCK_AGE_NANOS = TimeUnit.MINUTES.toNanos(1);
+    
+    private final Path directory;
+    private final long segmentSize;
+    private final long segmentDurationNanos;
+    private final long maxArchiveSize;
+    /** The segments written before the current one, with their sizes (including their index files). */
+    private final TreeMap<Long, Long> segmentSizes = new TreeMap<>();
+    private long archiveSize = 0;
+    private long nextSequence;
+    
+    private final ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE + RECORD_HEADER_SIZE + 2 * 0xffff).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer indexEntry = ByteBuffer.allocate(INDEX_ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private byte[] compressed = new byte[BLOCK_SIZE];
+    private final long[] tagFilter = new long[TAG_FILTER_LONGS];
+    private int blockEntryCount = 0;
+    private long blockOldest;
+    private long blockNewest;
+    private long blockStartNanos;
+    
+    private FileChannel segmentChannel;
+    private FileChannel indexChannel;
+    private long segmentSequence;
+    private long segmentStart;
+    private long segmentLength;
+    private long indexLength;
+    private IOException failure;
+    private boolean isClosed = false;
+    
+    /**
+     * Creates an archive with the default segment size and duration and no limit on its size.
+     * @param directory The directory to write the segments to. It should only contain a single device's archive.
+     * @throws IOException If the directory cannot be created or read.
+     */
+    public LogArchive(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_SEGMENT_DURATION_MINUTES, TimeUnit.MINUTES, 0);
+    }
+    
+    /**
+     * Creates an archive.
+     * Segments already contained in the directory are kept; new segments are added after them.
+     * @param directory The directory to write the segments to. It should only contain a single device's archive.
+     * @param segmentSize The size after which a new segment is started, in compressed bytes.
+     * @param segmentDuration The span of the device's log after which a new segment is started.
+     * @param timeUnit The unit of the segment duration.
+     * @param maxArchiveSize The size of all segments after which the oldest segments are deleted, in bytes, or {@code 0} to keep all segments.
+     * @throws IOException If the directory cannot be created or read.
+     */
+    public LogArchive(Path directory, long segmentSize, long segmentDuration, TimeUnit timeUnit, long maxArchiveSize) throws IOException {
+        if (segmentSize < BLOCK_SIZE)
+            throw new IllegalArgumentException(String.format("Segments must hold at least %d bytes!", BLOCK_SIZE));
+        if (segmentDuration <= 0)
+            throw new IllegalArgumentException("The segment duration must be positive!");
+        if (maxArchiveSize < 0)
+            throw new IllegalArgumentException("The maximum size of the archive must not be negative!");
+        
+        this.directory = Files.createDirectories(directory);
+        this.segmentSize = segmentSize;
+        this.segmentDurationNanos = timeUnit.toNanos(segmentDuration);
+        this.maxArchiveSize = maxArchiveSize;
+        
+        TreeMap<Long, Path> _segments = listSegments(directory);
+        for (Map.Entry<Long, Path> _segment : _segments.entrySet()) {
+            long _size = Files.size(_segment.getValue());
+            Path _index = getIndexPath(_segment.getValue());
+            if (Files.exists(_index))
+                _size += Files.size(_index);
+            segmentSizes.put(_segment.getKey(), _size);
+            archiveSize += _size;
+        }
+        this.nextSequence = _segments.isEmpty() ? 0 : _segments.lastKey() + 1;
+    }
+    
+    /**
+     * Appends an entry to the archive.
+     * If the archive cannot be written, the {@link IOException} is thrown once, wrapped in an {@link UncheckedIOException};
+     * all further entries are discarded, and the exception is thrown again by {@link #close()}.
+     * @param entry The entry to append.
+     */
+    @Override
+    public synchronized void onLogEntry(LogEntry entry) {
+        if (isClosed || failure != null)
+            return;
+        
+        try {
+            long _timestamp = entry.getTimestampNanos();
+            if (segmentChannel != null && (_timestamp - segmentStart >= segmentDurationNanos || (blockEntryCount > 0 && System.nanoTime() - blockStartNanos >= MAX_BLOCK_AGE_NANOS))) {
+                writeBlock();
+                if (_timestamp - segmentStart >= segmentDurationNanos)
+                    closeSegment();
+            }
+            if (segmentChannel == null)
+                openSegment(_timestamp);
+            
+            if (blockEntryCount == 0) {
+                blockOldest = blockNewest = _timestamp;
+                blockStartNanos = System.nanoTime();
+            }
+            int _position = block.position();
+            block.putShort(_position, (short)entry.getTagLength())
+                 .putShort(_position + RECORD_OFFSET_MESSAGE_LENGTH, (short)entry.getMessageLength())
+                 .put(_position + RECORD_OFFSET_PRIORITY, (byte)entry.getPriority().ordinal())
+                 .put(_position + RECORD_OFFSET_BUFFER_ID, (byte)entry.getBufferId())
+                 .putLong(_position + RECORD_OFFSET_TIMESTAMP, _timestamp)
+                 .putInt(_position + RECORD_OFFSET_PID, entry.getPid())
+                 .putInt(_position + RECORD_OFFSET_TID, entry.getTid())
+                 .putInt(_position + RECORD_OFFSET_UID, entry.getUid());
+            block.position(_position + RECORD_HEADER_SIZE);
+            entry.writePayload(block);
+            
+            blockEntryCount++;
+            blockOldest = Math.min(blockOldest, _timestamp);
+            blockNewest = Math.max(blockNewest, _timestamp);
+            addToFilter(tagFilter, entry.hashTag());
+            
+            if (block.position() >= BLOCK_SIZE) {
+                writeBlock();
+                if (segmentLength >= segmentSize)
+                    closeSegment();
+            }
+        } catch (IOException ex) {
+            failure = ex;
+            closeQuietly();
+            throw new UncheckedIOException(ex);
+        }
+    }
+    
+    /**
+     * Starts a new segment.
+     * @param timestamp The timestamp of the segment's first entry.
+     */
+    private void openSegment(long timestamp) throws IOException {
+        segmentSequence = nextSequence++;
+        Path _segment = getSegmentPath(directory, segmentSequence);
+        segmentChannel = FileChannel.open(_segment, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        indexChannel = FileChannel.open(getIndexPath(_segment), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        
+        ByteBuffer _header = ByteBuffer.allocate(FILE_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        _header.putInt(MAGIC).putInt(VERSION).flip();
+        writeFully(segmentChannel, _header);
+        _header.rewind();
+        writeFully(indexChannel, _header);
+        
+        segmentStart = timestamp;
+        segmentLength = indexLength = FILE_HEADER_SIZE;
+        archiveSize += 2 * FILE_HEADER_SIZE;
+    }
+    
+    /**
+     * Compresses the current block, appends it to the segment and its entry to the segment's index.
+     * The block is appended before its index entry, so the index never refers to a block that hasn't been written.
+     */
+    private void writeBlock() throws IOException {
+        if (blockEntryCount == 0)
+            return;
+        
+        deflater.reset();
+        deflater.setInput(block.array(), 0, block.position());
+        deflater.finish();
+        int _length = 0;
+        while (!deflater.finished()) {
+            if (_length == compressed.length)
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            _length += deflater.deflate(compressed, _length, compressed.length - _length);
+        }
+        
+        indexEntry.clear();
+        indexEntry.putLong(segmentLength)
+                  .putInt(_length)
+                  .putInt(block.position())
+                  .putInt(blockEntryCount)
+                  .putLong(blockOldest)
+                  .putLong(blockNewest);
+        for (long _bits : tagFilter)
+            indexEntry.putLong(_bits);
+        indexEntry.flip();
+        
+        writeFully(segmentChannel, ByteBuffer.wrap(compressed, 0, _length));
+        writeFully(indexChannel, indexEntry);
+        segmentLength += _length;
+        indexLength += INDEX_ENTRY_SIZE;
+        archiveSize += _length + INDEX_ENTRY_SIZE;
+        
+        block.clear();
+        blockEntryCount = 0;
+        Arrays.fill(tagFilter, 0);
+    }
+    
+    /**
+     * Closes the current segment and deletes the oldest segments if the archive has grown too large.
+     */
+    private void closeSegment() throws IOException {
+        segmentChannel.close();
+        indexChannel.close();
+        segmentChannel = indexChannel = null;
+        segmentSizes.put(segmentSequence, segmentLength + indexLength);
+        
+        while (maxArchiveSize > 0 && archiveSize > maxArchiveSize && !segmentSizes.isEmpty()) {
+            Map.Entry<Long, Long> _oldest = segmentSizes.pollFirstEntry();
+            Path _segment = getSegmentPath(directory, _oldest.getKey());
+            Files.deleteIfExists(getIndexPath(_segment));
+            Files.deleteIfExists(_segment);
+            archiveSize -= _oldest.getValue();
+        }
+    }
+    
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+    
+    /**
+     * Compresses and writes the entries collected so far, making them visible to {@link LogArchiveReader}s.
+     * Blocks are written once they are full or their oldest entry was added a minute ago, so calling this method is only necessary before querying the newest entries.
+     * @throws IOException If the archive cannot be written.
+     */
+    public synchronized void flush() throws IOException {
+        if (failure != null)
+            throw failure;
+        if (segmentChannel != null)
+            writeBlock();
+    }
+    
+    /**
+     * Gets the directory the archive is written to, e.g. to create a {@link LogArchiveReader}.
+     * @return The archive's directory.
+     */
+    public Path getDirectory() { return directory; }
+    
+    /**
+     * Gets the size of the archive's files, including the current segment.
+     * @return The size in bytes.
+     */
+    public synchronized long getSize() { return archiveSize; }
+    
+    /**
+     * Writes the entries collected so far and closes the current segment. Entries passed to the archive afterwards are discarded.
+     * @throws IOException If the archive cannot be written, or an earlier write failed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (isClosed)
+            return;
+        isClosed = true;
+        try {
+            if (failure != null)
+                throw failure;
+            if (segmentChannel != null) {
+                writeBlock();
+                closeSegment();
+            }
+        } finally {
+            closeQuietly();
+            deflater.end();
+        }
+    }
+    
+    private void closeQuietly() {
+        for (FileChannel _channel : new FileChannel[] { segmentChannel, indexChannel }) try {
+            if (_channel != null)
+                _channel.close();
+        } catch (IOException ex) { /* The archive is unusable either way. */ }
+        segmentChannel = indexChannel = null;
+    }
+    
+}
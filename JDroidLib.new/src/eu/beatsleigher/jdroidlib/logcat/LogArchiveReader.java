@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.logcat;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * LogArchiveReader
+ * Queries the entries of a device's log persisted by a {@link LogArchive}.
+ * 
+ * A query reads the index files of the archive's segments, skips every segment and block whose timestamps lie outside of the queried range
+ * or whose tag filter rules out the queried tag, and decompresses only the remaining blocks.
+ * The indexes of segments are cached, so repeated queries only read the index entries appended since.
+ * Blocks which the archive hasn't written yet (see {@link LogArchive#flush()}) are not visible to queries.
+ * All methods are thread-safe; concurrent queries are serialized.
+ * @author Simon
+ */
+public final class LogArchiveReader implements Closeable {
+    
+    private final Path directory;
+    private final Map<Path, SegmentIndex> indexes = new HashMap<>();
+    private final Inflater inflater = new Inflater();
+    private final LogEntry entry = new LogEntry();
+    private ByteBuffer compressed = ByteBuffer.allocate(LogArchive.BLOCK_SIZE);
+    private byte[] uncompressed = new byte[LogArchive.BLOCK_SIZE];
+    private long blocksRead = 0;
+    
+    /**
+     * The index of a segment, as read from its index file.
+     */
+    private static final class SegmentIndex {
+        
+        private final ByteBuffer entries;
+        private final int blockCount;
+        private final long oldest;
+        private final long newest;
+        private final long[] tagFilter = new long[LogArchive.TAG_FILTER_LONGS];
+        
+        private SegmentIndex(ByteBuffer entries) {
+            this.entries = entries;
+            this.blockCount = (entries.limit() - LogArchive.FILE_HEADER_SIZE) / LogArchive.INDEX_ENTRY_SIZE; // A partially written entry is ignored.
+            
+            long _oldest = Long.MAX_VALUE, _newest = Long.MIN_VALUE;
+            for (int i = 0; i < blockCount; i++) {
+                int _base = LogArchive.FILE_HEADER_SIZE + i * LogArchive.INDEX_ENTRY_SIZE;
+                _oldest = Math.min(_oldest, entries.getLong(_base + LogArchive.INDEX_OFFSET_OLDEST));
+                _newest = Math.max(_newest, entries.getLong(_base + LogArchive.INDEX_OFFSET_NEWEST));
+                for (int j = 0; j < LogArchive.TAG_FILTER_LONGS; j++)
+                    tagFilter[j] |= entries.getLong(_base + LogArchive.INDEX_OFFSET_TAG_FILTER + j * 8);
+            }
+            this.oldest = _oldest;
+            this.newest = _newest;
+        }
+        
+    }
+    
+    /**
+     * Creates a reader for an archive.
+     * @param directory The directory the archive was written to, e.g. {@link LogArchive#getDirectory()}.
+     */
+    public LogArchiveReader(Path directory) {
+        if (directory == null)
+            throw new IllegalArgumentException("Directory must not be null!");
+        this.directory = directory;
+    }
+    
+    /**
+     * Passes all entries logged within a time range to a listener.
+     * @param fromNanos The start of the range (inclusive), in nanoseconds since the epoch according to the device's clock.
+     * @param toNanos The end of the range (inclusive), in nanoseconds since the epoch according to the device's clock.
+     * @param listener Receives the entries, segment by segment, in the order they were archived. The entry passed to it is reused.
+     * @return The amount of entries passed to the listener.
+     * @throws IOException If the archive cannot be read or is corrupt.
+     */
+    public int query(long fromNanos, long toNanos, LogEntryListener listener) throws IOException {
+        return query(fromNanos, toNanos, null, listener);
+    }
+    
+    /**
+     * Passes all entries with a given tag logged within a time range to a listener.
+     * @param fromNanos The start of the range (inclusive), in nanoseconds since the epoch according to the device's clock.
+     * @param toNanos The end of the range (inclusive), in nanoseconds since the epoch according to the device's clock.
+     * @param tag The tag of the entries to pass on, or {@code null} to pass on entries with any tag.
+     * @param listener Receives the entries, segment by segment, in the order they were archived. The entry passed to it is reused.
+     * @return The amount of entries passed to the listener.
+     * @throws IOException If the archive cannot be read or is corrupt.
+     */
+    public synchronized int query(long fromNanos, long toNanos, String tag, LogEntryListener listener) throws IOException {
+        byte[] _tag = tag == null ? null : tag.getBytes(StandardCharsets.UTF_8);
+        long _tagHash = tag == null ? 0 : LogEntry.hashTag(_tag, 0, _tag.length);
+        TreeMap<Long, Path> _segments = LogArchive.listSegments(directory);
+        indexes.keySet().retainAll(_segments.values());
+        
+        int _count = 0;
+        for (Path _segment : _segments.values()) {
+            SegmentIndex _index = readIndex(_segment);
+            if (_index == null || _index.blockCount == 0 || _index.newest < fromNanos || _index.oldest > toNanos
+                || (tag != null && !LogArchive.mayContain(_index.tagFilter, _tagHash)))
+                continue;
+            
+            try (FileChannel _channel = FileChannel.open(_segment, StandardOpenOption.READ)) {
+                ByteBuffer _entries = _index.entries;
+                for (int i = 0; i < _index.blockCount; i++) {
+                    int _base = LogArchive.FILE_HEADER_SIZE + i * LogArchive.INDEX_ENTRY_SIZE;
+                    if (_entries.getLong(_base + LogArchive.INDEX_OFFSET_NEWEST) < fromNanos || _entries.getLong(_base + LogArchive.INDEX_OFFSET_OLDEST) > toNanos
+                        || (tag != null && !LogArchive.mayContain(_entries, _base + LogArchive.INDEX_OFFSET_TAG_FILTER, _tagHash)))
+                        continue;
+                    _count += readBlock(_channel, _entries.getLong(_base), _entries.getInt(_base + LogArchive.INDEX_OFFSET_COMPRESSED_LENGTH),
+                                        _entries.getInt(_base + LogArchive.INDEX_OFFSET_LENGTH), fromNanos, toNanos, tag, listener);
+                }
+            } catch (NoSuchFileException ex) { /* The segment was deleted by the archive meanwhile. */ }
+        }
+        return _count;
+    }
+    
+    /**
+     * Passes all entries logged within the last given time to a listener, relative to the newest entry in the archive.
+     * As with {@link LogBuffer#forEachInLast(long, java.util.concurrent.TimeUnit, eu.beatsleigher.jdroidlib.logcat.LogEntryListener)},
+     * the time is measured by the device's clock.
+     * @param duration The amount of time.
+     * @param timeUnit The unit of the duration.
+     * @param listener Receives the entries. The entry passed to it is reused.
+     * @return The amount of entries passed to the listener.
+     * @throws IOException If the archive cannot be read or is corrupt.
+     */
+    public synchronized int queryLast(long duration, TimeUnit timeUnit, LogEntryListener listener) throws IOException {
+        long _newest = getNewestTimestamp();
+        return _newest == Long.MIN_VALUE ? 0 : query(_newest - timeUnit.toNanos(duration), _newest, null, listener);
+    }
+    
+    /**
+     * Gets the timestamp of the newest entry in the archive.
+     * @return The timestamp in nanoseconds since the epoch according to the device's clock, or {@link Long#MIN_VALUE} if the archive is empty.
+     * @throws IOException If the archive cannot be read.
+     */
+    public synchronized long getNewestTimestamp() throws IOException {
+        long _newest = Long.MIN_VALUE;
+        for (Path _segment : LogArchive.listSegments(directory).values()) {
+            SegmentIndex _index = readIndex(_segment);
+            if (_index != null && _index.blockCount > 0)
+                _newest = Math.max(_newest, _index.newest);
+        }
+        return _newest;
+    }
+    
+    /**
+     * Gets the number of blocks decompressed by queries so far, e.g. to verify that queries are selective.
+     * @return The number of blocks read.
+     */
+    public synchronized long getBlocksRead() { return blocksRead; }
+    
+    /**
+     * Reads the index of a segment, unless the cached index is still current.
+     * @param segment The path of the segment file.
+     * @return The segment's index, or {@code null} if the segment has no index file.
+     */
+    private SegmentIndex readIndex(Path segment) throws IOException {
+        Path _path = LogArchive.getIndexPath(segment);
+        SegmentIndex _index = indexes.get(segment);
+        try {
+            long _size = Files.size(_path);
+            if (_index != null && _index.entries.limit() == _size)
+                return _index;
+            
+            ByteBuffer _entries = ByteBuffer.wrap(Files.readAllBytes(_path)).order(ByteOrder.LITTLE_ENDIAN);
+            if (_entries.limit() < LogArchive.FILE_HEADER_SIZE || _entries.getInt(0) != LogArchive.MAGIC)
+                throw new IOException(String.format("%s is not a log archive index.", _path));
+            if (_entries.getInt(4) != LogArchive.VERSION)
+                throw new IOException(String.format("%s has the unsupported version %d.", _path, _entries.getInt(4)));
+            
+            indexes.put(segment, _index = new SegmentIndex(_entries));
+            return _index;
+        } catch (NoSuchFileException ex) {
+            indexes.remove(segment);
+            return null;
+        }
+    }
+    
+    /**
+     * Decompresses a block and passes its matching entries to a listener.
+     * @return The amount of entries passed to the listener.
+     */
+    private int readBlock(FileChannel channel, long position, int compressedLength, int length, long fromNanos, long toNanos, String tag, LogEntryListener listener) throws IOException {
+        if (compressed.capacity() < compressedLength)
+            compressed = ByteBuffer.allocate(compressedLength);
+        if (uncompressed.length < length)
+            uncompressed = new byte[length];
+        
+        compressed.clear().limit(compressedLength);
+        while (compressed.hasRemaining())
+            if (channel.read(compressed, position + compressed.position()) < 0)
+                throw new IOException(String.format("Block at %d of %s is truncated.", position, directory));
+        
+        inflater.reset();
+        inflater.setInput(compressed.array(), 0, compressedLength);
+        try {
+            int _inflated = 0;
+            while (_inflated < length && !inflater.finished()) {
+                int _read = inflater.inflate(uncompressed, _inflated, length - _inflated);
+                if (_read == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    break;
+                _inflated += _read;
+            }
+            if (_inflated != length)
+                throw new IOException(String.format("Block at %d of %s is truncated.", position, directory));
+        } catch (DataFormatException ex) {
+            throw new IOException(String.format("Block at %d of %s is corrupt.", position, directory), ex);
+        }
+        blocksRead++;
+        
+        ByteBuffer _block = ByteBuffer.wrap(uncompressed, 0, length).order(ByteOrder.LITTLE_ENDIAN);
+        int _count = 0;
+        for (int _position = 0; _position < length;) {
+            int _tagLength = _block.getShort(_position) & 0xffff;
+            int _messageLength = _block.getShort(_position + LogArchive.RECORD_OFFSET_MESSAGE_LENGTH) & 0xffff;
+            long _timestamp = _block.getLong(_position + LogArchive.RECORD_OFFSET_TIMESTAMP);
+            
+            if (_timestamp >= fromNanos && _timestamp <= toNanos) {
+                entry.set(_timestamp, _block.getInt(_position + LogArchive.RECORD_OFFSET_PID), _block.getInt(_position + LogArchive.RECORD_OFFSET_TID),
+                          _block.getInt(_position + LogArchive.RECORD_OFFSET_UID), _block.get(_position + LogArchive.RECORD_OFFSET_BUFFER_ID),
+                          LogPriority.fromValue(_block.get(_position + LogArchive.RECORD_OFFSET_PRIORITY)));
+                int _payload = _position + LogArchive.RECORD_HEADER_SIZE;
+                entry.setPayload(uncompressed, _payload, _tagLength, _payload + _tagLength, _messageLength);
+                if (tag == null || entry.hasTag(tag)) {
+                    listener.onLogEntry(entry);
+                    _count++;
+                }
+            }
+            _position += LogArchive.RECORD_HEADER_SIZE + _tagLength + _messageLength;
+        }
+        return _count;
+    }
+    
+    /**
+     * Releases the memory held by the reader's decompressor.
+     */
+    @Override
+    public synchronized void close() {
+        inflater.end();
+        indexes.clear();
+    }
+    
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.logcat;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LogBuffer
+ * A bounded ring buffer retaining the most recent entries of a device's log.
+ * 
+ * The entries are stored in a single direct buffer outside of the Java heap, so retaining a device's log costs a fixed amount of memory
+ * and puts no pressure on the garbage collector, no matter how much the device logs. Once the buffer is full, the oldest entries are overwritten.
+ * Every entry is stored as a 32 byte header followed by its tag and message, as written by the device.
+ * Queries read the entries into a reused {@link LogEntry}; only the headers are read for entries that are skipped.
+ * All methods are thread-safe; queries block appending, so their listeners should return quickly.
+ * @author Simon
+ */
+public final class LogBuffer {
+    
+    /** The default capacity of a log buffer, in bytes. */
+    public static final int DEFAULT_CAPACITY = 8 * 1024 * 1024;
+    /** The smallest capacity of a log buffer, in bytes; it holds at least two of the largest possible entries. */
+    public static final int MIN_CAPACITY = 256 * 1024;
+    
+    private static final int HEADER_SIZE = 32;
+    private static final int ALIGNMENT = 8;
+    private static final int OFFSET_TAG_LENGTH = 4;
+    private static final int OFFSET_MESSAGE_LENGTH = 6;
+    private static final int OFFSET_PRIORITY = 8;
+    private static final int OFFSET_BUFFER_ID = 9;
+    private static final int OFFSET_TIMESTAMP = 12;
+    private static final int OFFSET_PID = 20;
+    private static final int OFFSET_TID = 24;
+    private static final int OFFSET_UID = 28;
+    
+    private final ByteBuffer buffer;
+    private final ByteBuffer reader;
+    private final int capacity;
+    private final LogEntry entry = new LogEntry();
+    /** The position of the oldest entry; positions grow monotonically and are mapped onto the buffer modulo its capacity. */
+    private long head = 0;
+    /** The position the next entry is written to. */
+    private long tail = 0;
+    private int entryCount = 0;
+    private long newestTimestamp = Long.MIN_VALUE;
+    
+    /**
+     * Creates a log buffer with the {@link #DEFAULT_CAPACITY default capacity}.
+     */
+    public LogBuffer() { this(DEFAULT_CAPACITY); }
+    
+    /**
+     * Creates a log buffer.
+     * @param capacity The amount of memory to allocate, in bytes, at least {@value #MIN_CAPACITY}. It is rounded down to a multiple of eight.
+     */
+    public LogBuffer(int capacity) {
+        if (capacity < MIN_CAPACITY)
+            throw new IllegalArgumentException(String.format("Capacity must be at least %d bytes!", MIN_CAPACITY));
+        this.capacity = capacity - capacity % ALIGNMENT;
+        this.buffer = ByteBuffer.allocateDirect(this.capacity).order(ByteOrder.LITTLE_ENDIAN);
+        this.reader = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    }
+    
+    /**
+     * Appends an entry, overwriting the oldest entries if the buffer is full.
+     * @param entry The entry to append.
+     */
+    public synchronized void append(LogEntry entry) {
+        int _length = HEADER_SIZE + entry.getTagLength() + entry.getMessageLength();
+        _length += (ALIGNMENT - _length % ALIGNMENT) % ALIGNMENT;
+        
+        int _index = (int)(tail % capacity);
+        if (capacity - _index < _length) {
+            // The entry doesn't fit in before the end of the buffer; the rest of the buffer is skipped.
+            int _padding = capacity - _index;
+            evict(tail + _padding + _length);
+            buffer.putInt(_index, -_padding);
+            tail += _padding;
+            _index = 0;
+        } else
+            evict(tail + _length);
+        
+        buffer.putInt(_index, _length)
+              .putShort(_index + OFFSET_TAG_LENGTH, (short)entry.getTagLength())
+              .putShort(_index + OFFSET_MESSAGE_LENGTH, (short)entry.getMessageLength())
+              .put(_index + OFFSET_PRIORITY, (byte)entry.getPriority().ordinal())
+              .put(_index + OFFSET_BUFFER_ID, (byte)entry.getBufferId())
+              .putLong(_index + OFFSET_TIMESTAMP, entry.getTimestampNanos())
+              .putInt(_index + OFFSET_PID, entry.getPid())
+              .putInt(_index + OFFSET_TID, entry.getTid())
+              .putInt(_index + OFFSET_UID, entry.getUid());
+        buffer.position(_index + HEADER_SIZE);
+        entry.writePayload(buffer);
+        
+        tail += _length;
+        entryCount++;
+        newestTimestamp = Math.max(newestTimestamp, entry.getTimestampNanos());
+    }
+    
+    /**
+     * Removes the oldest entries until the buffer can be filled up to the given position.
+     * @param end The position the buffer is to be filled up to.
+     */
+    private void evict(long end) {
+        while (end - head > capacity) {
+            int _length = buffer.getInt((int)(head % capacity));
+            if (_length > 0)
+                entryCount--;
+            head += Math.abs(_length);
+        }
+    }
+    
+    /**
+     * Passes all entries logged at or after a given time to a listener, from the oldest to the newest.
+     * @param timestampNanos The time, in nanoseconds since the epoch according to the device's clock.
+     * @param listener Receives the entries. The entry passed to it is reused.
+     * @return The amount of entries passed to the listener.
+     */
+    public synchronized int forEachSince(long timestampNanos, LogEntryListener listener) {
+        int _count = 0;
+        for (long _position = head; _position < tail; ) {
+            int _index = (int)(_position % capacity);
+            int _length = buffer.getInt(_index);
+            _position += Math.abs(_length);
+            if (_length < 0 || buffer.getLong(_index + OFFSET_TIMESTAMP) < timestampNanos)
+                continue;
+            
+            entry.set(buffer.getLong(_index + OFFSET_TIMESTAMP), buffer.getInt(_index + OFFSET_PID), buffer.getInt(_index + OFFSET_TID),
+                      buffer.getInt(_index + OFFSET_UID), buffer.get(_index + OFFSET_BUFFER_ID), LogPriority.fromValue(buffer.get(_index + OFFSET_PRIORITY)));
+            reader.position(_index + HEADER_SIZE);
+            entry.setPayload(reader, buffer.getShort(_index + OFFSET_TAG_LENGTH) & 0xFFFF, buffer.getShort(_index + OFFSET_MESSAGE_LENGTH) & 0xFFFF);
+            listener.onLogEntry(entry);
+            _count++;
+        }
+        return _count;
+    }
+    
+    /**
+     * Passes the entries logged within a period before the newest entry to a listener, from the oldest to the newest.
+     * The period is measured by the device's clock, relative to the newest entry, e.g. the last five minutes of the log.
+     * @param duration The length of the period.
+     * @param timeUnit The unit of the duration.
+     * @param listener Receives the entries. The entry passed to it is reused.
+     * @return The amount of entries passed to the listener.
+     */
+    public synchronized int forEachInLast(long duration, TimeUnit timeUnit, LogEntryListener listener) {
+        return entryCount == 0 ? 0 : forEachSince(newestTimestamp - timeUnit.toNanos(duration), listener);
+    }
+    
+    /**
+     * Gets copies of the entries logged within a period before the newest entry.
+     * @param duration The length of the period.
+     * @param timeUnit The unit of the duration.
+     * @return A new list containing copies of the entries, from the oldest to the newest.
+     */
+    public List<LogEntry> getLast(long duration, TimeUnit timeUnit) {
+        List<LogEntry> _entries = new ArrayList<>();
+        forEachInLast(duration, timeUnit, (_entry) -> _entries.add(_entry.copy()));
+        return _entries;
+    }
+    
+    /**
+     * Gets the amount of entries in the buffer.
+     * @return The amount of entries retained.
+     */
+    public synchronized int size() { return entryCount; }
+    
+    /**
+     * Gets the time of the newest entry appended to the buffer.
+     * @return The nanoseconds since the epoch according to the device's clock, or {@link Long#MIN_VALUE} if no entry has been appended.
+     */
+    public synchronized long getNewestTimestamp() { return newestTimestamp; }
+    
+    /**
+     * Gets the amount of memory used by the entries in the buffer.
+     * @return The amount of bytes used.
+     */
+    public synchronized long getUsedBytes() { return tail - head; }
+    
+    /**
+     * Gets the capacity of the buffer.
+     * @return The amount of memory allocated, in bytes.
+     */
+    public int getCapacity() { return capacity; }
+    
+    /**
+     * Removes all entries from the buffer.
+     */
+    public synchronized void clear() {
+        head = tail;
+        entryCount = 0;
+        newestTimestamp = Long.MIN_VALUE;
+    }
+    
+}
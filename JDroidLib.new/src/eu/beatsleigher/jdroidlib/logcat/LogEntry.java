@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.logcat;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * LogEntry
+ * A single entry of a device's log.
+ * 
+ * Instances are reused: the decoder and the ring buffer overwrite the same instance for every entry they pass to a consumer,
+ * so an entry must be {@link #copy() copied} if it is needed after the consumer has returned.
+ * The tag and the message are kept as the bytes written by the device and are only decoded into strings when they are requested.
+ * @author Simon
+ */
+public final class LogEntry {
+    
+    /** The main log buffer. */
+    public static final int BUFFER_MAIN = 0;
+    /** The radio log buffer. */
+    public static final int BUFFER_RADIO = 1;
+    /** The events log buffer, whose entries are binary. */
+    public static final int BUFFER_EVENTS = 2;
+    /** The system log buffer. */
+    public static final int BUFFER_SYSTEM = 3;
+    /** The crash log buffer. */
+    public static final int BUFFER_CRASH = 4;
+    /** The stats log buffer, whose entries are binary. */
+    public static final int BUFFER_STATS = 5;
+    /** The security log buffer, whose entries are binary. */
+    public static final int BUFFER_SECURITY = 6;
+    /** The kernel log buffer. */
+    public static final int BUFFER_KERNEL = 7;
+    
+    private long timestampNanos;
+    private int pid;
+    private int tid;
+    private int uid = -1;
+    private int bufferId;
+    private LogPriority priority = LogPriority.UNKNOWN;
+    private byte[] data = new byte[256];
+    private int tagLength;
+    private int messageLength;
+    private String tag;
+    private String message;
+    
+    /**
+     * Sets the header of this entry and discards its tag and message.
+     */
+    void set(long timestampNanos, int pid, int tid, int uid, int bufferId, LogPriority priority) {
+        this.timestampNanos = timestampNanos;
+        this.pid = pid;
+        this.tid = tid;
+        this.uid = uid;
+        this.bufferId = bufferId;
+        this.priority = priority;
+        this.tagLength = 0;
+        this.messageLength = 0;
+        this.tag = null;
+        this.message = null;
+    }
+    
+    /**
+     * Sets the tag and the message of this entry.
+     * @param source The bytes containing the tag and the message.
+     */
+    void setPayload(byte[] source, int tagOffset, int tagLength, int messageOffset, int messageLength) {
+        ensureCapacity(tagLength + messageLength);
+        System.arraycopy(source, tagOffset, data, 0, tagLength);
+        System.arraycopy(source, messageOffset, data, tagLength, messageLength);
+        setLengths(tagLength, messageLength);
+    }
+    
+    /**
+     * Sets the tag and the message of this entry.
+     * @param source The buffer containing the tag, immediately followed by the message, at its position.
+     */
+    void setPayload(ByteBuffer source, int tagLength, int messageLength) {
+        ensureCapacity(tagLength + messageLength);
+        source.get(data, 0, tagLength + messageLength);
+        setLengths(tagLength, messageLength);
+    }
+    
+    private void setLengths(int tagLength, int messageLength) {
+        this.tagLength = tagLength;
+        this.messageLength = messageLength;
+        this.tag = null;
+        this.message = null;
+    }
+    
+    private void ensureCapacity(int length) {
+        if (data.length < length)
+            data = new byte[Math.max(length, data.length * 2)];
+    }
+    
+    /**
+     * Gets the time the entry was logged at, according to the device's clock.
+     * @return The nanoseconds since the epoch.
+     */
+    public long getTimestampNanos() { return timestampNanos; }
+    
+    /**
+     * Gets the time the entry was logged at, according to the device's clock.
+     * @return The time the entry was logged at.
+     */
+    public Instant getTimestamp() { return Instant.ofEpochSecond(0, timestampNanos); }
+    
+    /**
+     * Gets the ID of the process that logged the entry.
+     * @return The process ID.
+     */
+    public int getPid() { return pid; }
+    
+    /**
+     * Gets the ID of the thread that logged the entry.
+     * @return The thread ID.
+     */
+    public int getTid() { return tid; }
+    
+    /**
+     * Gets the ID of the user the logging process runs as.
+     * @return The user ID, or {@code -1} if the device (older than Android 7.0) does not report it.
+     */
+    public int getUid() { return uid; }
+    
+    /**
+     * Gets the ID of the log buffer the entry was read from.
+     * @return The buffer's ID, e.g. {@link #BUFFER_MAIN}.
+     */
+    public int getBufferId() { return bufferId; }
+    
+    /**
+     * Gets a value indicating whether the entry is binary, i.e. it was read from the events, stats or security buffer.
+     * Binary entries have no tag or priority; their message is the raw payload.
+     * @return {@code true} if the entry is binary.
+     */
+    public boolean isBinary() { return isBinaryBuffer(bufferId); }
+    
+    /**
+     * Gets the priority of the entry.
+     * @return The priority, or {@link LogPriority#UNKNOWN} for binary entries.
+     */
+    public LogPriority getPriority() { return priority; }
+    
+    /**
+     * Gets the tag of the entry.
+     * The tag is decoded when this method is called first for the current entry.
+     * @return The tag, which is empty for binary entries.
+     */
+    public String getTag() {
+        if (tag == null)
+            tag = new String(data, 0, tagLength, StandardCharsets.UTF_8);
+        return tag;
+    }
+    
+    /**
+     * Compares the tag of the entry with a string.
+     * ASCII tags are compared with the bytes written by the device, so the entry's tag is not decoded.
+     * @param tag The tag to compare the entry's tag with.
+     * @return {@code true} if the tags are equal.
+     */
+    public boolean hasTag(String tag) {
+        if (this.tag != null)
+            return this.tag.equals(tag);
+        boolean _ascii = true;
+        for (int i = 0; i < tag.length() && _ascii; i++)
+            _ascii = tag.charAt(i) < 0x80;
+        if (!_ascii)
+            return getTag().equals(tag);
+        
+        // An ASCII tag is encoded as one byte per character.
+        if (tagLength != tag.length())
+            return false;
+        for (int i = 0; i < tagLength; i++)
+            if (data[i] != tag.charAt(i))
+                return false;
+        return true;
+    }
+    
+    /**
+     * Gets the message of the entry.
+     * The message is decoded when this method is called first for the current entry.
+     * @return The message. For binary entries, the payload is decoded as ISO-8859-1, so every byte maps to one character.
+     */
+    public String getMessage() {
+        if (message == null)
+            message = new String(data, tagLength, messageLength, isBinary() ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+        return message;
+    }
+    
+    /**
+     * Gets the length of the tag, as written by the device.
+     * @return The tag's length in bytes.
+     */
+    public int getTagLength() { return tagLength; }
+    
+    /**
+     * Gets the length of the message, as written by the device.
+     * @return The message's length in bytes.
+     */
+    public int getMessageLength() { return messageLength; }
+    
+    /**
+     * Writes the tag and the message, as written by the device, to a buffer.
+     * @param buffer The buffer to write to.
+     */
+    void writePayload(ByteBuffer buffer) {
+        buffer.put(data, 0, tagLength + messageLength);
+    }
+    
+    /**
+     * Computes a hash of the tag, as written by the device, without decoding it.
+     * @return The tag's hash, which equals {@link #hashTag(byte[], int, int)} of the tag's UTF-8 bytes.
+     */
+    long hashTag() { return hashTag(data, 0, tagLength); }
+    
+    /**
+     * Computes the 64 bit FNV-1a hash of a tag.
+     * @param tag The bytes containing the tag.
+     * @param offset The offset of the tag.
+     * @param length The length of the tag in bytes.
+     * @return The tag's hash.
+     */
+    static long hashTag(byte[] tag, int offset, int length) {
+        long _hash = 0xcbf29ce484222325L;
+        for (int i = offset; i < offset + length; i++)
+            _hash = (_hash ^ (tag[i] & 0xff)) * 0x100000001b3L;
+        return _hash;
+    }
+    
+    /**
+     * Creates a copy of this entry, which is not overwritten when the next entry is read.
+     * @return A new instance containing the same entry.
+     */
+    public LogEntry copy() {
+        LogEntry _copy = new LogEntry();
+        _copy.set(timestampNanos, pid, tid, uid, bufferId, priority);
+        _copy.data = Arrays.copyOf(data, tagLength + messageLength);
+        _copy.setLengths(tagLength, messageLength);
+        return _copy;
+    }
+    
+    /**
+     * Determines whether the entries of a log buffer are binary.
+     * @param bufferId The ID of the log buffer.
+     * @return {@code true} if the buffer's entries are binary.
+     */
+    static boolean isBinaryBuffer(int bufferId) {
+        return bufferId == BUFFER_EVENTS || bufferId == BUFFER_STATS || bufferId == BUFFER_SECURITY;
+    }
+    
+    /**
+     * Formats the entry like {@code logcat -v threadtime} (with the date in UTC).
+     * @return The formatted entry.
+     */
+    @Override
+    public String toString() {
+        return String.format("%s %5d %5d %c %s: %s", getTimestamp(), pid, tid, priority.getLetter(), getTag(), getMessage());
+    }
+    
+}
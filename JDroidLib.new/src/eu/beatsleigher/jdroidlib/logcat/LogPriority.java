@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.logcat;
+
+/**
+ * The priorities of log entries, as defined by Android's {@code android_LogPriority}.
+ * @author Simon
+ */
+public enum LogPriority {
+    UNKNOWN('?'),
+    DEFAULT('?'),
+    VERBOSE('V'),
+    DEBUG('D'),
+    INFO('I'),
+    WARN('W'),
+    ERROR('E'),
+    FATAL('F'),
+    SILENT('S');
+    
+    private static final LogPriority[] VALUES = values();
+    
+    private final char letter;
+    
+    LogPriority(char letter) {
+        this.letter = letter;
+    }
+    
+    /**
+     * Gets the letter logcat displays for this priority.
+     * @return The priority's letter (e.g. {@code W} for {@link #WARN}).
+     */
+    public char getLetter() { return letter; }
+    
+    /**
+     * Gets the priority with the given value.
+     * @param value The priority's value, as written by the device.
+     * @return The priority, or {@link #UNKNOWN} if the value is not known.
+     */
+    public static LogPriority fromValue(int value) {
+        return value >= 0 && value < VALUES.length ? VALUES[value] : UNKNOWN;
+    }
+    
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.logcat;
+
+import java.io.IOException;
+
+/**
+ * LogcatDecoder
+ * Decodes the binary output of {@code logcat -B} into {@link LogEntry LogEntries}.
+ * 
+ * Every entry is a {@code logger_entry} structure: a little-endian header (the payload's length, the header's size,
+ * the process and thread IDs, the timestamp and, depending on the header's version, the buffer's ID and the user ID), followed by the payload.
+ * Text entries carry their priority, their NUL-terminated tag and their NUL-terminated message; binary entries (events, stats, security) carry raw data.
+ * The fields are read at fixed offsets, so decoding neither parses text nor allocates anything per entry:
+ * a single {@link LogEntry} is overwritten for every entry.
+ * Output can be passed in chunks of any size; entries spanning two chunks are reassembled.
+ * Instances of this class are not thread-safe.
+ * @author Simon
+ */
+public final class LogcatDecoder {
+    
+    /** The size of the original ({@code logger_entry} v1) header, which does not carry its own size. */
+    static final int MIN_HEADER_SIZE = 20;
+    /** The largest header size accepted; newer header versions are expected to append fields. */
+    static final int MAX_HEADER_SIZE = 64;
+    /** The largest entry accepted. */
+    static final int MAX_ENTRY_SIZE = MAX_HEADER_SIZE + 0xFFFF;
+    
+    private static final int PREFIX_SIZE = 4;
+    
+    private final LogEntry entry = new LogEntry();
+    private final byte[] pending = new byte[MAX_ENTRY_SIZE];
+    private int pendingLength = 0;
+    
+    /**
+     * Decodes a chunk of {@code logcat -B}'s output.
+     * @param buffer The buffer containing the chunk.
+     * @param offset The offset of the chunk within the buffer.
+     * @param length The length of the chunk.
+     * @param listener Receives every entry completed by the chunk.
+     * @throws IOException If the output is not in logcat's binary format.
+     */
+    public void decode(byte[] buffer, int offset, int length, LogEntryListener listener) throws IOException {
+        // Complete the entry started by the previous chunk.
+        while (pendingLength > 0 && length > 0) {
+            int _take = Math.min((pendingLength < PREFIX_SIZE ? PREFIX_SIZE : entrySize(pending, 0)) - pendingLength, length);
+            System.arraycopy(buffer, offset, pending, pendingLength, _take);
+            pendingLength += _take;
+            offset += _take;
+            length -= _take;
+            if (pendingLength >= PREFIX_SIZE && pendingLength == entrySize(pending, 0)) {
+                decodeEntry(pending, 0, listener);
+                pendingLength = 0;
+            }
+        }
+        
+        int _size;
+        while (length >= PREFIX_SIZE && (_size = entrySize(buffer, offset)) <= length) {
+            decodeEntry(buffer, offset, listener);
+            offset += _size;
+            length -= _size;
+        }
+        
+        if (length > 0) {
+            System.arraycopy(buffer, offset, pending, 0, length);
+            pendingLength = length;
+        }
+    }
+    
+    /**
+     * Discards an incomplete entry left over from the previous chunk.
+     */
+    public void reset() { pendingLength = 0; }
+    
+    /**
+     * Gets the size of an entry, including its header.
+     * @param buffer The buffer containing at least the first four bytes of the entry.
+     * @param offset The offset of the entry.
+     * @return The size of the entry.
+     * @throws IOException If the header's size is invalid.
+     */
+    private static int entrySize(byte[] buffer, int offset) throws IOException {
+        return headerSize(buffer, offset) + readUnsignedShort(buffer, offset);
+    }
+    
+    private static int headerSize(byte[] buffer, int offset) throws IOException {
+        int _headerSize = readUnsignedShort(buffer, offset + 2);
+        if (_headerSize == 0)
+            return MIN_HEADER_SIZE;
+        if (_headerSize < MIN_HEADER_SIZE || _headerSize > MAX_HEADER_SIZE)
+            throw new IOException(String.format("Invalid log entry header size %d; is the output in logcat's binary format?", _headerSize));
+        return _headerSize;
+    }
+    
+    /**
+     * Decodes a complete entry and passes it to the listener.
+     */
+    private void decodeEntry(byte[] buffer, int offset, LogEntryListener listener) throws IOException {
+        int _payloadLength = readUnsignedShort(buffer, offset);
+        int _headerSize = headerSize(buffer, offset);
+        long _timestamp = (readInt(buffer, offset + 12) & 0xFFFFFFFFL) * 1_000_000_000L + readInt(buffer, offset + 16);
+        int _bufferId = _headerSize >= 24 ? readInt(buffer, offset + 20) : LogEntry.BUFFER_MAIN;
+        int _uid = _headerSize >= 28 ? readInt(buffer, offset + 24) : -1;
+        int _payload = offset + _headerSize, _end = _payload + _payloadLength;
+        
+        if (LogEntry.isBinaryBuffer(_bufferId) || _payloadLength == 0) {
+            entry.set(_timestamp, readInt(buffer, offset + 4), readInt(buffer, offset + 8), _uid, _bufferId, LogPriority.UNKNOWN);
+            entry.setPayload(buffer, _payload, 0, _payload, _payloadLength);
+        } else {
+            int _tagEnd = indexOfNul(buffer, _payload + 1, _end);
+            int _message = Math.min(_tagEnd + 1, _end);
+            int _messageEnd = indexOfNul(buffer, _message, _end);
+            entry.set(_timestamp, readInt(buffer, offset + 4), readInt(buffer, offset + 8), _uid, _bufferId, LogPriority.fromValue(buffer[_payload]));
+            entry.setPayload(buffer, _payload + 1, _tagEnd - _payload - 1, _message, _messageEnd - _message);
+        }
+        listener.onLogEntry(entry);
+    }
+    
+    private static int indexOfNul(byte[] buffer, int from, int end) {
+        for (int i = from; i < end; i++)
+            if (buffer[i] == 0)
+                return i;
+        return end;
+    }
+    
+    private static int readUnsignedShort(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xFF) | (buffer[offset + 1] & 0xFF) << 8;
+    }
+    
+    private static int readInt(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xFF) | (buffer[offset + 1] & 0xFF) << 8 | (buffer[offset + 2] & 0xFF) << 16 | buffer[offset + 3] << 24;
+    }
+    
+}
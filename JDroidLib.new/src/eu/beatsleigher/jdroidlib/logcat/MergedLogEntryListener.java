@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.logcat;
+
+/**
+ * Interface MergedLogEntryListener
+ * Receives the entries of several devices' logs, merged into a single log ordered by time.
+ * 
+ * Unlike the entries passed to a {@link LogEntryListener}, the entries passed to this listener are copies and may be retained.
+ * @author Simon
+ */
+@FunctionalInterface
+public interface MergedLogEntryListener {
+    
+    /**
+     * Called for every log entry, in the order of the entries' corrected timestamps.
+     * @param serial The serial number of the device the entry was logged on.
+     * @param entry The entry, with the timestamp of the device's clock.
+     * @param timestampNanos The entry's timestamp corrected to the host's clock, in nanoseconds since the epoch.
+     */
+    void onLogEntry(String serial, LogEntry entry, long timestampNanos);
+    
+}
@@ -0,0 +1,26 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+/**
+ * Contains JDroidLib's logcat support.
+ * Devices' logs are read in logcat's binary format, decoded without parsing text, and retained in bounded, off-heap ring buffers.
+ * The logs of several devices can be merged into a single log ordered by time (see {@link eu.beatsleigher.jdroidlib.android.MergedLogcatStream}).
+ * Logs can be persisted in compressed, indexed segment files ({@link eu.beatsleigher.jdroidlib.logcat.LogArchive}) and queried by time and tag.
+ */
+package eu.beatsleigher.jdroidlib.logcat;
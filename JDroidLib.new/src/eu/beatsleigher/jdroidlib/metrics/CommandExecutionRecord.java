@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.metrics;
+
+import eu.beatsleigher.jdroidlib.android.Command;
+import eu.beatsleigher.jdroidlib.android.FastbootCommand;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class CommandExecutionRecord
+ * Describes a single, finished execution of a command.
+ * Instances of this class are immutable.
+ * @author Simon
+ */
+public final class CommandExecutionRecord {
+    
+    /**
+     * The ways a command can be executed.
+     */
+    public enum Transport {
+        /** The command was executed by starting the ADB or fastboot executable. */
+        PROCESS,
+        /** The command was sent to the ADB server directly. */
+        NATIVE;
+    }
+    
+    /**
+     * The exit value reported for executions whose exit value is not known (e.g. because the execution failed, or the transport doesn't report it).
+     */
+    public static final int EXIT_VALUE_UNKNOWN = -1;
+    
+    private final Command command;
+    private final Transport transport;
+    private final long startTime;
+    private final long durationNanos;
+    private final long outputBytes;
+    private final int exitValue;
+    private final boolean timedOut;
+    private final Throwable failure;
+    
+    CommandExecutionRecord(Command command, Transport transport, long startTime, long durationNanos, long outputBytes, int exitValue, boolean timedOut, Throwable failure) {
+        this.command = command;
+        this.transport = transport;
+        this.startTime = startTime;
+        this.durationNanos = durationNanos;
+        this.outputBytes = outputBytes;
+        this.exitValue = exitValue;
+        this.timedOut = timedOut;
+        this.failure = failure;
+    }
+    
+    /**
+     * Gets the type of a command, which executions are grouped by.
+     * The type consists of the executable and the command passed to it, e.g. {@code adb install} or {@code fastboot flash};
+     * all shell commands share the type {@code adb shell}.
+     * @param command The command to get the type of.
+     * @return The command's type.
+     */
+    public static String getCommandType(Command command) {
+        if (command instanceof FastbootCommand)
+            return "fastboot " + command.getBaseCommand();
+        return command.isShellCommand() ? "adb shell" : "adb " + command.getBaseCommand();
+    }
+    
+    /**
+     * Gets the command that was executed.
+     * @return The executed command.
+     */
+    public Command getCommand() { return command; }
+    
+    /**
+     * Gets the type of the executed command.
+     * @return The command type, as returned by {@link #getCommandType(eu.beatsleigher.jdroidlib.android.Command)}.
+     */
+    public String getCommandType() { return getCommandType(command); }
+    
+    /**
+     * Gets the serial number of the device the command was executed on.
+     * @return The device's serial number, or {@code null} if the command was not device-specific.
+     */
+    public String getDeviceSerial() { return command.getDevice() == null ? null : command.getDevice().getSerial(); }
+    
+    /**
+     * Gets the way the command was executed.
+     * @return The transport.
+     */
+    public Transport getTransport() { return transport; }
+    
+    /**
+     * Gets the time at which the execution was started.
+     * @return The time in milliseconds since the epoch.
+     */
+    public long getStartTime() { return startTime; }
+    
+    /**
+     * Gets the time the execution took.
+     * @param timeUnit The unit to convert the time to.
+     * @return The duration of the execution.
+     */
+    public long getDuration(TimeUnit timeUnit) { return timeUnit.convert(durationNanos, TimeUnit.NANOSECONDS); }
+    
+    /**
+     * Gets the amount of output the command produced.
+     * For output decoded by the native transport, this is the length of the decoded output.
+     * @return The amount of output, in bytes.
+     */
+    public long getOutputBytes() { return outputBytes; }
+    
+    /**
+     * Gets the exit value of the command.
+     * @return The exit value, or {@link #EXIT_VALUE_UNKNOWN} if it is not known.
+     */
+    public int getExitValue() { return exitValue; }
+    
+    /**
+     * Gets a value indicating whether the command was aborted because its timeout elapsed.
+     * @return {@code true} if the command timed out.
+     */
+    public boolean isTimedOut() { return timedOut; }
+    
+    /**
+     * Gets the exception the execution failed with.
+     * @return The exception, or {@code null} if the execution did not fail.
+     */
+    public Throwable getFailure() { return failure; }
+    
+    /**
+     * Gets a value indicating whether the execution failed with an exception.
+     * A command that ran to completion but returned a non-zero exit value has not failed.
+     * @return {@code true} if the execution failed.
+     */
+    public boolean isFailed() { return failure != null; }
+    
+    @Override
+    public String toString() {
+        return String.format("%s (%s, %s): %dms, %d bytes, exit value %d%s", getCommandType(), getDeviceSerial(), transport,
+                             getDuration(TimeUnit.MILLISECONDS), outputBytes, exitValue, timedOut ? ", timed out" : failure != null ? ", failed: " + failure : "");
+    }
+    
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.metrics;
+
+import eu.beatsleigher.jdroidlib.android.Command;
+import eu.beatsleigher.jdroidlib.metrics.CommandExecutionRecord.Transport;
+import java.util.function.LongSupplier;
+
+/**
+ * Class CommandExecutionTracker
+ * Collects the measurements of a single command execution and reports them to a {@link CommandMetrics} implementation.
+ * 
+ * A tracker is created when the execution starts and is finished exactly once, either by one of the {@code finished} methods or by {@link #failed(java.lang.Throwable)};
+ * any further calls are ignored.
+ * Trackers are used by the thread executing the command; output may be added from that thread only.
+ * A tracker may be marked as timed out from any thread, e.g. by a watchdog destroying the command's process.
+ * @author Simon
+ */
+public final class CommandExecutionTracker {
+    
+    private final CommandMetrics metrics;
+    private final Command command;
+    private final Transport transport;
+    private final long startTime;
+    private final long startNanos;
+    private long outputBytes;
+    private LongSupplier outputCounter;
+    private volatile boolean timedOut;
+    private volatile boolean isFinished;
+    
+    private CommandExecutionTracker(CommandMetrics metrics, Command command, Transport transport) {
+        this.metrics = metrics;
+        this.command = command;
+        this.transport = transport;
+        this.startTime = System.currentTimeMillis();
+        this.startNanos = System.nanoTime();
+    }
+    
+    /**
+     * Starts tracking the execution of a command.
+     * @param metrics The metrics to report the execution to.
+     * @param command The command being executed.
+     * @param transport The way the command is executed.
+     * @return A new tracker.
+     */
+    public static CommandExecutionTracker start(CommandMetrics metrics, Command command, Transport transport) {
+        CommandExecutionTracker tracker = new CommandExecutionTracker(metrics, command, transport);
+        try {
+            metrics.onCommandStarted(command, transport);
+        } catch (RuntimeException ex) { /* Metrics must never fail a command. */ }
+        return tracker;
+    }
+    
+    /**
+     * Adds output produced by the command.
+     * @param bytes The amount of output, in bytes.
+     */
+    public void addOutput(long bytes) { outputBytes += bytes; }
+    
+    /**
+     * Sets a counter of the output produced by the command, which is queried once the execution finishes.
+     * This is used when the output is counted at its source, e.g. by a connection to the ADB server.
+     * @param outputCounter Supplies the amount of output, in bytes, which is added to any output added directly.
+     */
+    public void countOutput(LongSupplier outputCounter) { this.outputCounter = outputCounter; }
+    
+    /**
+     * Marks the execution as timed out.
+     */
+    public void timedOut() { timedOut = true; }
+    
+    /**
+     * Finishes the execution of a command that returned an exit value.
+     * @param exitValue The exit value of the command.
+     * @return The exit value, for convenience.
+     */
+    public int finished(int exitValue) {
+        finish(exitValue, null);
+        return exitValue;
+    }
+    
+    /**
+     * Finishes the execution of a command whose output was returned in full, but whose exit value is not known.
+     * The output is not counted here, as its length in bytes is not known once it has been decoded;
+     * it must be {@link #addOutput(long) added} or {@link #countOutput(java.util.function.LongSupplier) counted} as it is read.
+     * @param output The output of the command.
+     * @return The output, for convenience.
+     */
+    public String finished(String output) {
+        finish(CommandExecutionRecord.EXIT_VALUE_UNKNOWN, null);
+        return output;
+    }
+    
+    /**
+     * Finishes the execution of a command that failed.
+     * If the command had a timeout which elapsed before it failed, the execution is considered to have timed out, as commands are aborted once their timeout elapses.
+     * @param failure The exception the execution failed with.
+     */
+    public void failed(Throwable failure) {
+        if (command.getTimeout() > 0 && command.getTimeUnits() != null
+                && System.nanoTime() - startNanos >= command.getTimeUnits().toNanos(command.getTimeout()))
+            timedOut = true;
+        finish(CommandExecutionRecord.EXIT_VALUE_UNKNOWN, failure);
+    }
+    
+    private void finish(int exitValue, Throwable failure) {
+        if (isFinished)
+            return;
+        isFinished = true;
+        try {
+            if (outputCounter != null)
+                outputBytes += outputCounter.getAsLong();
+            metrics.onCommandFinished(new CommandExecutionRecord(command, transport, startTime, System.nanoTime() - startNanos, outputBytes, exitValue, timedOut, failure));
+        } catch (RuntimeException ex) { /* Metrics must never fail a command. */ }
+    }
+    
+}
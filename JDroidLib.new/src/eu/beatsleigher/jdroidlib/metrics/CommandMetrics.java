@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.metrics;
+
+import eu.beatsleigher.jdroidlib.android.Command;
+import eu.beatsleigher.jdroidlib.metrics.CommandExecutionRecord.Transport;
+
+/**
+ * Interface CommandMetrics
+ * The service provider interface JDroidLib reports command executions to.
+ * 
+ * Implementations are called on the thread executing the command, so they must be thread-safe and should return quickly.
+ * Exceptions thrown by an implementation are ignored; they never fail the command.
+ * @author Simon
+ */
+public interface CommandMetrics {
+    
+    /**
+     * An implementation that discards everything reported to it.
+     */
+    public static final CommandMetrics DISABLED = new CommandMetrics() {
+        @Override
+        public void onCommandStarted(Command command, Transport transport) {}
+        
+        @Override
+        public void onCommandFinished(CommandExecutionRecord record) {}
+    };
+    
+    /**
+     * Called when the execution of a command starts.
+     * Every call to this method is followed by exactly one call to {@link #onCommandFinished(eu.beatsleigher.jdroidlib.metrics.CommandExecutionRecord)}.
+     * @param command The command being executed.
+     * @param transport The way the command is executed.
+     */
+    void onCommandStarted(Command command, Transport transport);
+    
+    /**
+     * Called when the execution of a command has finished, successfully or not.
+     * @param record The record of the execution.
+     */
+    void onCommandFinished(CommandExecutionRecord record);
+    
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.metrics;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Class CommandStatistics
+ * Thread-safe statistics of the executions of a group of commands, such as all commands of one type, or all commands sent to one device.
+ * @author Simon
+ */
+public class CommandStatistics implements CommandStatisticsMXBean {
+    
+    private final String name;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder outputBytes = new LongAdder();
+    private final ConcurrentMap<Integer, LongAdder> exitValueCounts = new ConcurrentHashMap<>();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    
+    /**
+     * Creates a new instance of this class.
+     * @param name The name of the group of commands covered by the statistics.
+     */
+    public CommandStatistics(String name) { this.name = name; }
+    
+    /**
+     * Records the start of a command's execution.
+     */
+    public void recordStarted() {
+        started.increment();
+        inFlight.incrementAndGet();
+    }
+    
+    /**
+     * Records a finished execution.
+     * @param record The record of the execution.
+     */
+    public void recordFinished(CommandExecutionRecord record) {
+        inFlight.decrementAndGet();
+        latency.record(record.getDuration(TimeUnit.NANOSECONDS));
+        outputBytes.add(record.getOutputBytes());
+        if (record.isTimedOut())
+            timeouts.increment();
+        if (record.isFailed() || record.isTimedOut()) {
+            failures.increment();
+            return;
+        }
+        completed.increment();
+        if (record.getExitValue() != CommandExecutionRecord.EXIT_VALUE_UNKNOWN)
+            exitValueCounts.computeIfAbsent(record.getExitValue(), (exitValue) -> new LongAdder()).increment();
+    }
+    
+    /**
+     * Gets the histogram of the execution times.
+     * @return The latency histogram.
+     */
+    public LatencyHistogram getLatencyHistogram() { return latency; }
+    
+    //<editor-fold defaultstate="collapsed" desc="CommandStatisticsMXBean">
+    @Override
+    public String getName() { return name; }
+    
+    @Override
+    public int getInFlight() { return inFlight.get(); }
+    
+    @Override
+    public long getStarted() { return started.sum(); }
+    
+    @Override
+    public long getCompleted() { return completed.sum(); }
+    
+    @Override
+    public long getFailures() { return failures.sum(); }
+    
+    @Override
+    public long getTimeouts() { return timeouts.sum(); }
+    
+    @Override
+    public long getOutputBytes() { return outputBytes.sum(); }
+    
+    @Override
+    public Map<Integer, Long> getExitValueCounts() {
+        Map<Integer, Long> _counts = new TreeMap<>();
+        exitValueCounts.forEach((exitValue, count) -> _counts.put(exitValue, count.sum()));
+        return _counts;
+    }
+    
+    @Override
+    public double getLatencyMillisMean() { return latency.getMean(TimeUnit.MILLISECONDS); }
+    
+    @Override
+    public long getLatencyMillisMax() { return latency.getMax(TimeUnit.MILLISECONDS); }
+    
+    @Override
+    public long getLatencyMillisP50() { return latency.getPercentile(50, TimeUnit.MILLISECONDS); }
+    
+    @Override
+    public long getLatencyMillisP90() { return latency.getPercentile(90, TimeUnit.MILLISECONDS); }
+    
+    @Override
+    public long getLatencyMillisP99() { return latency.getPercentile(99, TimeUnit.MILLISECONDS); }
+    //</editor-fold>
+    
+    @Override
+    public String toString() {
+        return String.format("%s: %d in flight, %d completed, %d failed (%d timed out), %d bytes, p50 %dms, p99 %dms, max %dms",
+                             name, getInFlight(), getCompleted(), getFailures(), getTimeouts(), getOutputBytes(), getLatencyMillisP50(), getLatencyMillisP99(), getLatencyMillisMax());
+    }
+    
+}
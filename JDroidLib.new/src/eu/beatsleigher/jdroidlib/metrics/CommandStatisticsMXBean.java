@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.metrics;
+
+import java.util.Map;
+
+/**
+ * Interface CommandStatisticsMXBean
+ * The management interface {@link CommandStatistics} are exported with via JMX.
+ * All latencies are given in milliseconds.
+ * @author Simon
+ */
+public interface CommandStatisticsMXBean {
+    
+    /** @return The name of the group of commands these statistics cover. */
+    String getName();
+    
+    /** @return The amount of commands currently being executed. */
+    int getInFlight();
+    
+    /** @return The amount of commands that have been started. */
+    long getStarted();
+    
+    /** @return The amount of commands that ran to completion within their timeout, regardless of their exit value. */
+    long getCompleted();
+    
+    /** @return The amount of commands that failed with an exception or timed out. */
+    long getFailures();
+    
+    /** @return The amount of commands that were aborted because their timeout elapsed. */
+    long getTimeouts();
+    
+    /** @return The total amount of output produced by the commands, in bytes. */
+    long getOutputBytes();
+    
+    /** @return The amount of completed commands per exit value. */
+    Map<Integer, Long> getExitValueCounts();
+    
+    /** @return The mean execution time. */
+    double getLatencyMillisMean();
+    
+    /** @return The longest execution time. */
+    long getLatencyMillisMax();
+    
+    /** @return The estimated median execution time. */
+    long getLatencyMillisP50();
+    
+    /** @return The estimated 90th percentile of the execution times. */
+    long getLatencyMillisP90();
+    
+    /** @return The estimated 99th percentile of the execution times. */
+    long getLatencyMillisP99();
+    
+}
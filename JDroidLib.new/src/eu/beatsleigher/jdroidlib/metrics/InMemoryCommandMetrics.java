@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.metrics;
+
+import eu.beatsleigher.jdroidlib.android.Command;
+import eu.beatsleigher.jdroidlib.metrics.CommandExecutionRecord.Transport;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.*;
+import javax.management.*;
+
+/**
+ * Class InMemoryCommandMetrics
+ * The default {@link CommandMetrics} implementation.
+ * 
+ * Keeps {@link CommandStatistics} for all commands, per command type (see {@link CommandExecutionRecord#getCommandType(eu.beatsleigher.jdroidlib.android.Command)})
+ * and per device, in memory.
+ * Once {@link #registerMBeans()} has been called, all statistics (including those created later on) are exported via JMX, under the domain {@value #JMX_DOMAIN}.
+ * @author Simon
+ */
+public class InMemoryCommandMetrics implements CommandMetrics {
+    
+    /** The JMX domain the statistics are exported under. */
+    public static final String JMX_DOMAIN = "eu.beatsleigher.jdroidlib";
+    
+    private final CommandStatistics total = new CommandStatistics("total");
+    private final ConcurrentMap<String, CommandStatistics> commandTypeStatistics = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CommandStatistics> deviceStatistics = new ConcurrentHashMap<>();
+    private final Set<ObjectName> registeredNames = new HashSet<>();
+    private MBeanServer mBeanServer;
+    
+    //<editor-fold defaultstate="collapsed" desc="CommandMetrics">
+    @Override
+    public void onCommandStarted(Command command, Transport transport) {
+        total.recordStarted();
+        getCommandTypeStatistics(CommandExecutionRecord.getCommandType(command)).recordStarted();
+        if (command.getDevice() != null)
+            getDeviceStatistics(command.getDevice().getSerial()).recordStarted();
+    }
+    
+    @Override
+    public void onCommandFinished(CommandExecutionRecord record) {
+        total.recordFinished(record);
+        getCommandTypeStatistics(record.getCommandType()).recordFinished(record);
+        if (record.getDeviceSerial() != null)
+            getDeviceStatistics(record.getDeviceSerial()).recordFinished(record);
+    }
+    //</editor-fold>
+    
+    //<editor-fold defaultstate="collapsed" desc="Getter Methods">
+    /**
+     * Gets the statistics of all commands.
+     * @return The statistics of all commands.
+     */
+    public CommandStatistics getTotalStatistics() { return total; }
+    
+    /**
+     * Gets the statistics of all commands of a type.
+     * @param commandType The type of command, e.g. {@code adb shell}.
+     * @return The statistics of the command type.
+     */
+    public CommandStatistics getCommandTypeStatistics(String commandType) {
+        return commandTypeStatistics.computeIfAbsent(commandType, (_type) -> register(new CommandStatistics(_type), "commandType"));
+    }
+    
+    /**
+     * Gets the statistics of all commands sent to a device.
+     * @param serial The serial number of the device.
+     * @return The statistics of the device.
+     */
+    public CommandStatistics getDeviceStatistics(String serial) {
+        return deviceStatistics.computeIfAbsent(serial, (_serial) -> register(new CommandStatistics(_serial), "device"));
+    }
+    
+    /**
+     * Gets the statistics of all command types executed so far.
+     * @return An unmodifiable view of the statistics, keyed by command type.
+     */
+    public Map<String, CommandStatistics> getCommandTypeStatistics() { return Collections.unmodifiableMap(commandTypeStatistics); }
+    
+    /**
+     * Gets the statistics of all devices commands have been sent to so far.
+     * @return An unmodifiable view of the statistics, keyed by serial number.
+     */
+    public Map<String, CommandStatistics> getDeviceStatistics() { return Collections.unmodifiableMap(deviceStatistics); }
+    //</editor-fold>
+    
+    //<editor-fold defaultstate="collapsed" desc="JMX Export">
+    /**
+     * Exports all statistics to the platform MBean server.
+     * @throws JMException If the statistics could not be registered.
+     */
+    public void registerMBeans() throws JMException {
+        registerMBeans(ManagementFactory.getPlatformMBeanServer());
+    }
+    
+    /**
+     * Exports all statistics to an MBean server.
+     * Statistics created afterwards are exported as soon as they are created.
+     * @param server The MBean server to register the statistics with.
+     * @throws JMException If the statistics could not be registered.
+     */
+    public synchronized void registerMBeans(MBeanServer server) throws JMException {
+        if (server == null)
+            throw new IllegalArgumentException("MBean server must not be null!");
+        if (mBeanServer != null)
+            unregisterMBeans();
+        mBeanServer = server;
+        registerMBean(total, new ObjectName(String.format("%s:type=CommandMetrics,name=total", JMX_DOMAIN)));
+        for (CommandStatistics _statistics : commandTypeStatistics.values())
+            registerMBean(_statistics, getObjectName(_statistics, "commandType"));
+        for (CommandStatistics _statistics : deviceStatistics.values())
+            registerMBean(_statistics, getObjectName(_statistics, "device"));
+    }
+    
+    /**
+     * Removes all statistics from the MBean server they were exported to.
+     */
+    public synchronized void unregisterMBeans() {
+        if (mBeanServer == null)
+            return;
+        for (ObjectName _name : registeredNames) {
+            try {
+                mBeanServer.unregisterMBean(_name);
+            } catch (JMException ex) { /* Already unregistered by someone else. */ }
+        }
+        registeredNames.clear();
+        mBeanServer = null;
+    }
+    
+    /**
+     * Registers newly created statistics, if the statistics are being exported.
+     * @param statistics The statistics to register.
+     * @param group The group the statistics belong to.
+     * @return The statistics, for convenience.
+     */
+    private synchronized CommandStatistics register(CommandStatistics statistics, String group) {
+        if (mBeanServer != null) try {
+            registerMBean(statistics, getObjectName(statistics, group));
+        } catch (JMException ex) { /* The statistics are still recorded, just not exported. */ }
+        return statistics;
+    }
+    
+    private void registerMBean(CommandStatistics statistics, ObjectName name) throws JMException {
+        if (mBeanServer.isRegistered(name))
+            mBeanServer.unregisterMBean(name); // Left behind by another instance of this class.
+        mBeanServer.registerMBean(statistics, name);
+        registeredNames.add(name);
+    }
+    
+    private static ObjectName getObjectName(CommandStatistics statistics, String group) throws MalformedObjectNameException {
+        return new ObjectName(String.format("%s:type=CommandMetrics,%s=%s", JMX_DOMAIN, group, ObjectName.quote(statistics.getName())));
+    }
+    //</editor-fold>
+    
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Class LatencyHistogram
+ * A thread-safe histogram of execution times.
+ * 
+ * Times are counted in buckets of exponentially growing width: bucket {@code i} holds times of less than 2<sup>i</sup> microseconds.
+ * This keeps the histogram small and recording cheap, while the relative error of the reported percentiles stays below a factor of two.
+ * @author Simon
+ */
+public class LatencyHistogram {
+    
+    /** The amount of buckets; the last bucket holds all times of 2<sup>38</sup> microseconds (about three days) and more. */
+    public static final int BUCKET_COUNT = 40;
+    
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+    
+    /**
+     * Records an execution time.
+     * @param nanos The execution time in nanoseconds.
+     */
+    public void record(long nanos) {
+        long _nanos = Math.max(nanos, 0), currentMax;
+        buckets.incrementAndGet(getBucket(TimeUnit.NANOSECONDS.toMicros(_nanos)));
+        count.incrementAndGet();
+        totalNanos.addAndGet(_nanos);
+        while (_nanos > (currentMax = maxNanos.get()) && !maxNanos.compareAndSet(currentMax, _nanos));
+    }
+    
+    /**
+     * Gets the amount of recorded times.
+     * @return The amount of recorded times.
+     */
+    public long getCount() { return count.get(); }
+    
+    /**
+     * Gets the mean of all recorded times.
+     * @param timeUnit The unit to convert the time to.
+     * @return The mean time, or {@code 0} if no times have been recorded.
+     */
+    public double getMean(TimeUnit timeUnit) {
+        long _count = count.get();
+        return _count == 0 ? 0 : (double)totalNanos.get() / _count / timeUnit.toNanos(1);
+    }
+    
+    /**
+     * Gets the longest recorded time.
+     * @param timeUnit The unit to convert the time to.
+     * @return The longest time.
+     */
+    public long getMax(TimeUnit timeUnit) { return timeUnit.convert(maxNanos.get(), TimeUnit.NANOSECONDS); }
+    
+    /**
+     * Estimates a percentile of the recorded times.
+     * The estimate is the upper bound of the bucket the percentile falls into, but never more than the longest recorded time.
+     * @param percentile The percentile to estimate, between {@code 0} and {@code 100}.
+     * @param timeUnit The unit to convert the time to.
+     * @return The estimated percentile, or {@code 0} if no times have been recorded.
+     */
+    public long getPercentile(double percentile, TimeUnit timeUnit) {
+        if (percentile < 0 || percentile > 100)
+            throw new IllegalArgumentException("Percentile must be between 0 and 100!");
+        
+        long[] _buckets = getBucketCounts();
+        long _count = 0;
+        for (long _bucket : _buckets)
+            _count += _bucket;
+        if (_count == 0)
+            return 0;
+        
+        long rank = Math.max(1, (long)Math.ceil(percentile / 100 * _count)), seen = 0;
+        for (int i = 0; i < _buckets.length; i++) {
+            seen += _buckets[i];
+            if (seen >= rank)
+                return timeUnit.convert(Math.min(TimeUnit.MICROSECONDS.toNanos(1L << i), maxNanos.get()), TimeUnit.NANOSECONDS);
+        }
+        return getMax(timeUnit);
+    }
+    
+    /**
+     * Gets the amount of times recorded in each bucket.
+     * @return A copy of the buckets; bucket {@code i} holds times of less than 2<sup>i</sup> microseconds.
+     */
+    public long[] getBucketCounts() {
+        long[] _buckets = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++)
+            _buckets[i] = buckets.get(i);
+        return _buckets;
+    }
+    
+    private static int getBucket(long micros) {
+        return Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+    
+}
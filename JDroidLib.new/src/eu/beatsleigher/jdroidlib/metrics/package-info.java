@@ -0,0 +1,25 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+/**
+ * Contains JDroidLib's command execution metrics.
+ * Every command executed by JDroidLib is reported to a {@link eu.beatsleigher.jdroidlib.metrics.CommandMetrics} implementation;
+ * by default this is an {@link eu.beatsleigher.jdroidlib.metrics.InMemoryCommandMetrics}, which can export its statistics via JMX.
+ */
+package eu.beatsleigher.jdroidlib.metrics;
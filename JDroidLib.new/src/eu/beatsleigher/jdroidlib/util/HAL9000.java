@@ -19,10 +19,19 @@
 package eu.beatsleigher.jdroidlib.util;
 
 import eu.beatsleigher.jdroidlib.android.Command;
+import eu.beatsleigher.jdroidlib.android.OutputChunkConsumer;
 import eu.beatsleigher.jdroidlib.events.*;
+import eu.beatsleigher.jdroidlib.exception.CommandTimeoutException;
 import eu.beatsleigher.jdroidlib.exception.InstallationFailedException;
+import eu.beatsleigher.jdroidlib.metrics.*;
+import eu.beatsleigher.jdroidlib.metrics.CommandExecutionRecord.Transport;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.Consumer;
 
 /**
  * Good afternoon, gentlemen. I am a HAL 9000 computer.
@@ -32,6 +41,13 @@ public class HAL9000 {
     
     //<editor-fold defaultstate="collapsed" desc="Static Members">
     private static HAL9000 instance;
+    /** The size of the buffer used to read a process' output. */
+    static final int STREAM_BUFFER_SIZE = 8192;
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+        Thread thread = new Thread(runnable, "JDroidLib-Watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
     
     /**
      * Gets an instance of this class.
@@ -48,7 +64,9 @@ public class HAL9000 {
     
     //<editor-fold defaultstate="collapsed" desc="Instance Members">
     //<editor-fold defaultstate="collapsed" desc="Variables">
-    List<CommandOutputChangedEventListener> commandOutputChangedEventHandlers = new ArrayList<>();
+    private final List<CommandOutputChangedEventListener> commandOutputChangedEventHandlers = new CopyOnWriteArrayList<>();
+    private final EventDispatcher eventDispatcher = new EventDispatcher();
+    private volatile CommandMetrics commandMetrics = new InMemoryCommandMetrics();
     //</editor-fold>
     //<editor-fold defaultstate="collapsed" desc="Ctor" >
     /**
@@ -87,61 +105,381 @@ public class HAL9000 {
      * @return A {@link java.io.File} object pointing to JDroidLib's dir on the filesystem.
      */
     public File getJDroidLibPath() { return ResourceManager.Installer.getInstallPath().getParentFile(); }
+    
+    /**
+     * Gets the metrics every command execution is reported to.
+     * By default, this is an {@link eu.beatsleigher.jdroidlib.metrics.InMemoryCommandMetrics}.
+     * @return The command metrics.
+     */
+    public CommandMetrics getCommandMetrics() { return commandMetrics; }
+    
+    /**
+     * Sets the metrics every command execution is reported to.
+     * @param commandMetrics The command metrics, or {@link eu.beatsleigher.jdroidlib.metrics.CommandMetrics#DISABLED} to disable metrics.
+     */
+    public void setCommandMetrics(CommandMetrics commandMetrics) {
+        if (commandMetrics == null)
+            throw new IllegalArgumentException("Command metrics must not be null! Use CommandMetrics.DISABLED instead.");
+        this.commandMetrics = commandMetrics;
+    }
     //</editor-fold>
     //<editor-fold defaultstate="collapsed" desc="Process Execution">
     /**
      * Executes a passed command without returning anything.
      * This method runs synchronously and the calling method locks it to a thread.
      * @param command The command to execute.
-     * @throws IOException This exception is thrown if an IO error occurs and process execution cannot continue.
+     * @throws IOException This exception is thrown if an IO error occurs and process execution cannot continue,
+     * or a {@link CommandTimeoutException} if the command's timeout elapses.
      * @throws InterruptedException This exception is thrown if an error occurs while waiting for the command to exit.
      */
     public void executeNoReturn(Command command) throws IOException, InterruptedException {
-        Process pr = command.getProcess().start();
-        pr.waitFor(command.getTimeout(), command.getTimeUnits());
+        executeNoReturn(command, null);
+    }
+    
+    /**
+     * Executes a passed command without returning anything.
+     * This method runs synchronously and the calling method locks it to a thread.
+     * @param command The command to execute.
+     * @param onStart Called with the started process, so it can be destroyed if the command is aborted. May be {@code null}.
+     * @throws IOException This exception is thrown if an IO error occurs and process execution cannot continue,
+     * or a {@link CommandTimeoutException} if the command's timeout elapses.
+     * @throws InterruptedException This exception is thrown if an error occurs while waiting for the command to exit.
+     */
+    public void executeNoReturn(Command command, Consumer<Process> onStart) throws IOException, InterruptedException {
+        execute(command, onStart);
     }
     
     /**
      * Executed a passed command and returns the exit value of the process.
      * @param command The command to execute.
      * @return The return value of the executed command.
-     * @throws IOException This exception is thrown if an IO error occurs and process execution cannot continue.
+     * @throws IOException This exception is thrown if an IO error occurs and process execution cannot continue,
+     * or a {@link CommandTimeoutException} if the command's timeout elapses.
      * @throws InterruptedException This exception is thrown if an error occurs while waiting for the command to exit.
      */
     public int executeReturnExitValue(Command command) throws IOException, InterruptedException {
-        Process pr = command.getProcess().start();
-        pr.waitFor(command.getTimeout(), command.getTimeUnits());
-        return pr.exitValue();
+        return executeReturnExitValue(command, null);
+    }
+    
+    /**
+     * Executed a passed command and returns the exit value of the process.
+     * @param command The command to execute.
+     * @param onStart Called with the started process, so it can be destroyed if the command is aborted. May be {@code null}.
+     * @return The return value of the executed command.
+     * @throws IOException This exception is thrown if an IO error occurs and process execution cannot continue,
+     * or a {@link CommandTimeoutException} if the command's timeout elapses.
+     * @throws InterruptedException This exception is thrown if an error occurs while waiting for the command to exit.
+     */
+    public int executeReturnExitValue(Command command, Consumer<Process> onStart) throws IOException, InterruptedException {
+        return execute(command, onStart);
     }
     
     /**
      * Executes a passed command and returns the output of the process.
      * @param command The command to execute.
      * @return The output of the executed process.
-     * @throws IOException This exception is thrown if an IO error occurs and process execution cannot continue.
+     * @throws IOException This exception is thrown if an IO error occurs and process execution cannot continue,
+     * or a {@link CommandTimeoutException} if the command's timeout elapses.
      * @throws InterruptedException This exception is thrown if an error occurs while waiting for the command to exit.
      */
     public String executeReturnOutput(Command command) throws IOException, InterruptedException {
-        StringBuilder sBuilder = new StringBuilder();
+        return executeReturnOutput(command, null);
+    }
+    
+    /**
+     * Executes a passed command and returns the output of the process.
+     * @param command The command to execute.
+     * @param onStart Called with the started process, so it can be destroyed if the command is aborted. May be {@code null}.
+     * @return The output of the executed process.
+     * @throws IOException This exception is thrown if an IO error occurs and process execution cannot continue,
+     * or a {@link CommandTimeoutException} if the command's timeout elapses.
+     * @throws InterruptedException This exception is thrown if an error occurs while waiting for the command to exit.
+     */
+    public String executeReturnOutput(Command command, Consumer<Process> onStart) throws IOException, InterruptedException {
+        StringBuffer sBuilder = new StringBuffer(); // Read by the event listeners on the dispatcher thread, while it is appended to.
+        streamLines(command, (inLine) -> sBuilder.append(inLine).append('\n'), sBuilder, onStart);
+        return sBuilder.toString();
+    }
+    
+    /**
+     * Executes a passed command and passes its output to a consumer, line by line.
+     * The output is not accumulated, so memory usage does not grow with the amount of output.
+     * The consumer is called on the executing thread; while it is busy, the process' output is not read, which throttles the process.
+     * @param command The command to execute.
+     * @param lineConsumer The consumer receiving every line of output (without line terminators).
+     * @return The exit value of the process.
+     * @throws IOException This exception is thrown if an IO error occurs and process execution cannot continue,
+     * or a {@link CommandTimeoutException} if the command's timeout elapses.
+     * @throws InterruptedException This exception is thrown if an error occurs while waiting for the command to exit.
+     */
+    public int executeStreamLines(Command command, Consumer<String> lineConsumer) throws IOException, InterruptedException {
+        return executeStreamLines(command, lineConsumer, null);
+    }
+    
+    /**
+     * Executes a passed command and passes its output to a consumer, line by line.
+     * The output is not accumulated, so memory usage does not grow with the amount of output.
+     * The consumer is called on the executing thread; while it is busy, the process' output is not read, which throttles the process.
+     * @param command The command to execute.
+     * @param lineConsumer The consumer receiving every line of output (without line terminators).
+     * @param onStart Called with the started process, so it can be destroyed if the command is aborted. May be {@code null}.
+     * @return The exit value of the process.
+     * @throws IOException This exception is thrown if an IO error occurs and process execution cannot continue,
+     * or a {@link CommandTimeoutException} if the command's timeout elapses.
+     * @throws InterruptedException This exception is thrown if an error occurs while waiting for the command to exit.
+     */
+    public int executeStreamLines(Command command, Consumer<String> lineConsumer, Consumer<Process> onStart) throws IOException, InterruptedException {
+        return streamLines(command, lineConsumer, null, onStart);
+    }
+    
+    /**
+     * Executes a passed command and passes its raw output to a consumer, chunk by chunk.
+     * The output is not accumulated and no {@link eu.beatsleigher.jdroidlib.events.CommandOuputChangedEvent}s are raised.
+     * The consumer is called on the executing thread; while it is busy, the process' output is not read, which throttles the process.
+     * @param command The command to execute.
+     * @param chunkConsumer The consumer receiving the output.
+     * @return The exit value of the process.
+     * @throws IOException This exception is thrown if an IO error occurs and process execution cannot continue,
+     * or a {@link CommandTimeoutException} if the command's timeout elapses.
+     * @throws InterruptedException This exception is thrown if an error occurs while waiting for the command to exit.
+     */
+    public int executeStreamChunks(Command command, OutputChunkConsumer chunkConsumer) throws IOException, InterruptedException {
+        return executeStreamChunks(command, chunkConsumer, null);
+    }
+    
+    /**
+     * Executes a passed command and passes its raw output to a consumer, chunk by chunk.
+     * The output is not accumulated and no {@link eu.beatsleigher.jdroidlib.events.CommandOuputChangedEvent}s are raised.
+     * The consumer is called on the executing thread; while it is busy, the process' output is not read, which throttles the process.
+     * @param command The command to execute.
+     * @param chunkConsumer The consumer receiving the output.
+     * @param onStart Called with the started process, so it can be destroyed if the command is aborted. May be {@code null}.
+     * @return The exit value of the process.
+     * @throws IOException This exception is thrown if an IO error occurs and process execution cannot continue,
+     * or a {@link CommandTimeoutException} if the command's timeout elapses.
+     * @throws InterruptedException This exception is thrown if an error occurs while waiting for the command to exit.
+     */
+    public int executeStreamChunks(Command command, OutputChunkConsumer chunkConsumer, Consumer<Process> onStart) throws IOException, InterruptedException {
+        CommandExecutionTracker tracker = CommandExecutionTracker.start(commandMetrics, command, Transport.PROCESS);
+        try {
+            Process pr = start(command, onStart);
+            Watchdog watchdog = new Watchdog(command, pr, tracker);
+            byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+            int read;
+            
+            try (InputStream inStream = watchdog.getInputStream()) {
+                while ((read = inStream.read(buffer)) != -1) {
+                    tracker.addOutput(read);
+                    chunkConsumer.onChunk(buffer, 0, read);
+                }
+                return tracker.finished(watchdog.waitFor());
+            } finally {
+                watchdog.cancel();
+            }
+        } catch (IOException | InterruptedException | RuntimeException ex) {
+            tracker.failed(ex);
+            throw ex;
+        }
+    }
+    
+    /**
+     * Executes a passed command, discarding its output.
+     * The output is still read, as a process writing more output than the pipe holds would otherwise block forever.
+     * @param command The command to execute.
+     * @param onStart Called with the started process. May be {@code null}.
+     * @return The exit value of the process.
+     */
+    private int execute(Command command, Consumer<Process> onStart) throws IOException, InterruptedException {
+        CommandExecutionTracker tracker = CommandExecutionTracker.start(commandMetrics, command, Transport.PROCESS);
+        try {
+            Process pr = start(command, onStart);
+            Watchdog watchdog = new Watchdog(command, pr, tracker);
+            byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+            int read;
+            
+            try (InputStream inStream = watchdog.getInputStream()) {
+                while ((read = inStream.read(buffer)) != -1)
+                    tracker.addOutput(read);
+                return tracker.finished(watchdog.waitFor());
+            } finally {
+                watchdog.cancel();
+            }
+        } catch (IOException | InterruptedException | RuntimeException ex) {
+            tracker.failed(ex);
+            throw ex;
+        }
+    }
+    
+    /**
+     * Executes a passed command, passes its output to a consumer line by line and raises the output changed events.
+     * @param command The command to execute.
+     * @param lineConsumer The consumer receiving every line of output.
+     * @param accumulatedOutput The output accumulated by the consumer, passed to the events. May be {@code null}.
+     * @param onStart Called with the started process. May be {@code null}.
+     * @return The exit value of the process.
+     */
+    private int streamLines(Command command, Consumer<String> lineConsumer, CharSequence accumulatedOutput, Consumer<Process> onStart) throws IOException, InterruptedException {
+        CommandExecutionTracker tracker = CommandExecutionTracker.start(commandMetrics, command, Transport.PROCESS);
+        try {
+            Process pr = start(command, onStart);
+            Watchdog watchdog = new Watchdog(command, pr, tracker);
+            String inLine;
+            
+            try (BufferedReader inStreamReader = new BufferedReader(new InputStreamReader(new CountingInputStream(watchdog.getInputStream(), tracker)), STREAM_BUFFER_SIZE)) {
+                while ((inLine = inStreamReader.readLine()) != null) {
+                    lineConsumer.accept(inLine);
+                    if (!commandOutputChangedEventHandlers.isEmpty())
+                        eventDispatcher.dispatch(commandOutputChangedEventHandlers, new CommandOuputChangedEvent(this, command, inLine, accumulatedOutput),
+                                                 CommandOutputChangedEventListener::onCommandOutputChangedEventListener);
+                }
+                return tracker.finished(watchdog.waitFor());
+            } finally {
+                watchdog.cancel();
+            }
+        } catch (IOException | InterruptedException | RuntimeException ex) {
+            tracker.failed(ex);
+            throw ex;
+        }
+    }
+    
+    /**
+     * Starts the process for a passed command.
+     * @param command The command to start.
+     * @param onStart Called with the started process. May be {@code null}.
+     * @return The started process.
+     * @throws IOException This exception is thrown if the process could not be started.
+     */
+    private Process start(Command command, Consumer<Process> onStart) throws IOException {
         Process pr = command.getProcess().start();
-        BufferedReader inStreamReader = new BufferedReader(new InputStreamReader(pr.getInputStream()));
-        String inLine;
+        if (onStart != null)
+            onStart.accept(pr);
+        return pr;
+    }
+    
+    /**
+     * Enforces a command's timeout on its process.
+     * The process is destroyed once the timeout elapses, even while its output is still being read.
+     * Destroying the process closes its output, which the watchdog's input stream then reports as the end of the output;
+     * waiting for the process then fails with a {@link CommandTimeoutException}, rather than returning the exit value of the destroyed process.
+     * Like the timeout of an asynchronous command, the timeout is only enforced if it is positive.
+     */
+    private static class Watchdog {
         
-        while (inStreamReader.read() != -1) {
-            inLine = inStreamReader.readLine();
-            if (inLine.isEmpty()) continue;
-            
-            sBuilder.append(inLine);
-            if (!commandOutputChangedEventHandlers.isEmpty())
-                for (CommandOutputChangedEventListener handler : commandOutputChangedEventHandlers)
-                    handler.onCommandOutputChangedEventListener(
-                            new eu.beatsleigher.jdroidlib.events.CommandOuputChangedEvent(this, command, inLine, sBuilder.toString())); // Don't change! It works!
+        private final Command command;
+        private final Process pr;
+        private final ScheduledFuture<?> timeout;
+        private volatile boolean hasFired = false;
+        
+        /**
+         * Starts watching a process.
+         * @param command The command the process belongs to. If it has no timeout, the process is not watched.
+         * @param pr The process to watch.
+         * @param tracker The tracker of the command's execution, which is told if the command timed out.
+         */
+        Watchdog(Command command, Process pr, CommandExecutionTracker tracker) {
+            this.command = command;
+            this.pr = pr;
+            this.timeout = command.getTimeout() <= 0 || command.getTimeUnits() == null ? null : WATCHDOG.schedule(() -> {
+                if (pr.isAlive()) {
+                    hasFired = true;
+                    tracker.timedOut();
+                    pr.destroyForcibly();
+                }
+            }, command.getTimeout(), command.getTimeUnits());
+        }
+        
+        /**
+         * Gets the output of the process, which ends when the process is destroyed by the watchdog.
+         * @return The process' output.
+         */
+        InputStream getInputStream() {
+            return new FilterInputStream(pr.getInputStream()) {
+                @Override
+                public int read() throws IOException {
+                    try {
+                        return super.read();
+                    } catch (IOException ex) {
+                        if (hasFired)
+                            return -1;
+                        throw ex;
+                    }
+                }
+                
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    try {
+                        return super.read(buffer, offset, length);
+                    } catch (IOException ex) {
+                        if (hasFired)
+                            return -1;
+                        throw ex;
+                    }
+                }
+            };
+        }
+        
+        /**
+         * Waits for the process to exit.
+         * @return The exit value of the process.
+         * @throws CommandTimeoutException If the watchdog destroyed the process.
+         * @throws InterruptedException If the thread is interrupted while waiting.
+         */
+        int waitFor() throws CommandTimeoutException, InterruptedException {
+            int exitValue = pr.waitFor();
+            if (hasFired)
+                throw new CommandTimeoutException(String.format("Command \"%s\" timed out after %d %s!",
+                                                                command.getCommand(), command.getTimeout(), command.getTimeUnits().toString().toLowerCase()));
+            return exitValue;
+        }
+        
+        /**
+         * Stops watching the process, as it has exited or is no longer waited for.
+         */
+        void cancel() {
+            if (timeout != null)
+                timeout.cancel(false);
+        }
+        
+    }
+    
+    /**
+     * Input stream counting the bytes read from a process' output.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        
+        private final CommandExecutionTracker tracker;
+        
+        CountingInputStream(InputStream inStream, CommandExecutionTracker tracker) {
+            super(inStream);
+            this.tracker = tracker;
+        }
+        
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+            if (read != -1)
+                tracker.addOutput(1);
+            return read;
+        }
+        
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0)
+                tracker.addOutput(read);
+            return read;
         }
         
-        return sBuilder.toString();
     }
     //</editor-fold>
     //<editor-fold defaultstate="collapsed" desc="Event Lists">
+    /**
+     * Gets the {@link eu.beatsleigher.jdroidlib.events.EventDispatcher} delivering JDroidLib's events to their listeners.
+     * Listeners are never called on the thread reading a process' output, so a slow listener doesn't block the process.
+     * @return The event dispatcher of this class.
+     */
+    public EventDispatcher getEventDispatcher() { return eventDispatcher; }
+    
     /**
      * Adds a new {@link eu.beatsleigher.jdroidlib.events.CommandOuputChangedEventListener} to the list of listeners in this class.
      * @param listener The listener to add.
@@ -20,12 +20,20 @@ package eu.beatsleigher.jdroidlib.util;
 
 import eu.beatsleigher.jdroidlib.exception.InstallationFailedException;
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
 
 /**
  * ResourceManager class. This class is an internal class and is not designed
  * for use applications. ResourceManager manages the resources provided by
  * JDroidLib. As an example, it installs the ADB binaries to the local
- * filesystem and deletes the installed files as soon as the JVM exits.
+ * filesystem.
  *
  * @author Simon
  */
@@ -36,7 +44,9 @@ class ResourceManager {
         private static final File installPath;
         private static final String os = System.getProperty("os.name").toLowerCase();
         private static final String userHome = System.getProperty("user.home");
-        private static final Installer instance;
+        private static final String LOCK_FILE = ".install.lock";
+        private static final Set<PosixFilePermission> EXECUTABLE_PERMISSIONS = PosixFilePermissions.fromString("rwxr-xr-x");
+        private static final Set<PosixFilePermission> FILE_PERMISSIONS = PosixFilePermissions.fromString("rw-r--r--");
         private static File adbExe;
         private static File fastbootExe;
         private static File ddmsJar;
@@ -50,11 +60,15 @@ class ResourceManager {
             } else {
                 installPath = new File(String.format("%s/com/beatsleigher/jdroidlib/bin", userHome));
             }
-            instance = new Installer();
         }
 
         /**
          * Installs the ADB and fastboot binaries to the local system.
+         * Binaries that are already installed are only replaced if their SHA-256 digest differs from the bundled binary's,
+         * so starting JDroidLib usually writes nothing at all.
+         * The installation is guarded by a file lock, so several JVMs may start at the same time;
+         * every binary is written to a temporary file first and then moved into place, so no JVM ever sees a partially written binary.
+         * The installed binaries are kept when the JVM exits.
          *
          * @return Returns a boolean value indicating whether the install was
          * successful or not.
@@ -63,7 +77,7 @@ class ResourceManager {
          * @throws InterruptedException if an error occurs during installation.
          * @throws InstallationFailedException if files were not installed (correctly).
          */
-        static boolean installBinaries() throws IOException, InterruptedException, InstallationFailedException {
+        static synchronized boolean installBinaries() throws IOException, InterruptedException, InstallationFailedException {
             if (os.contains("windows")) {
                 return installWin();
             } else if (os.contains("linux")) {
@@ -79,77 +93,14 @@ class ResourceManager {
          * @return {@code true} if install was successful, {@code false} if not.
          * @author Simon
          * @throws IOException if an error occurs during installation.
-         * @throws InterruptedException if an error occurs during installation.
          * @throws InstallationFailedException if files were not installed (correctly).
          */
-        private static boolean installLinux() throws IOException, InterruptedException, InstallationFailedException {
-            if (!installPath.exists()) {
-                installPath.mkdirs();
-            }
-
-            try {
-                InputStream input = instance.getClass().getResourceAsStream("/eu/beatsleigher/jdroidlib/res/adb/linux/adb");
-                File adb_tools = new File(installPath.getAbsolutePath() + "/adb");
-                OutputStream output = new FileOutputStream(adb_tools);
-                int readBytes = 0;
-                byte[] buffer = new byte[4096];
-                while ((readBytes = input.read(buffer)) > 0) {
-                    output.write(buffer, 0, readBytes);
-                }
-                input.close();
-                output.close();
-                /*# ========== #*/
-                input = instance.getClass().getResourceAsStream("/eu/beatsleigher/jdroidlib/res/adb/linux/fastboot");
-                adb_tools = new File(installPath.getAbsolutePath() + "/fastboot");
-                output = new FileOutputStream(adb_tools);
-                readBytes = 0;
-                buffer = new byte[4096];
-                while ((readBytes = input.read(buffer)) > 0) {
-                    output.write(buffer, 0, readBytes);
-                }
-                input.close();
-                output.close();
-                /*# ========== #*/
-                input = instance.getClass().getResourceAsStream("/eu/beatsleigher/jdroidlib/res/adb/linux/ddms.jar");
-                adb_tools = new File(installPath.getAbsolutePath() + "/ddms.jar");
-                output = new FileOutputStream(adb_tools);
-                readBytes = 0;
-                buffer = new byte[4096];
-                while ((readBytes = input.read(buffer)) > 0) {
-                    output.write(buffer, 0, readBytes);
-                }
-                input.close();
-                output.close();
-                /*# ========== #*/
-                ProcessBuilder process = new ProcessBuilder("chmod", "a+x", installPath.getAbsolutePath() + "/adb");
-                Process pr = process.start();
-                Thread.sleep(200);
-                pr.destroy();
-                process = new ProcessBuilder("chmod", "a+x", installPath.getAbsolutePath() + "/fastboot");
-                pr = process.start();
-                Thread.sleep(200);
-                pr.destroy();
-            } finally {
-                adbExe = new File(String.format("$s/adb", installPath.getAbsolutePath()));
-                fastbootExe = new File(String.format("$s/fastboot", installPath.getAbsolutePath()));
-                ddmsJar = new File(String.format("$s/ddms.jar", installPath.getAbsolutePath()));
-                if (adbExe.exists() && fastbootExe.exists() && ddmsJar.exists()) {
-                    adbExe.deleteOnExit();
-                    fastbootExe.deleteOnExit();
-                    ddmsJar.deleteOnExit();
-                    return true;
-                } else {
-                    String exceptionMessage = String.format(
-                              "An error has occurred during installation!\n"
-                            + "Files attempted to install:\n"
-                            + "adb[.exe]:\t\t%s"
-                            + "fastboot[.exe]:\t\t%s"
-                            + "ddms.jar:\t\t%s", adbExe.exists() ? adbExe.getAbsolutePath() : "Installation failed!",
-                                                 fastbootExe.exists() ? fastbootExe.getAbsolutePath() : "Installation failed!",
-                                                 ddmsJar.exists() ? ddmsJar.getAbsolutePath() : "Installation failed!");
-                    throw new InstallationFailedException(exceptionMessage);
-                }
-            }
+        private static boolean installLinux() throws IOException, InstallationFailedException {
+            install("linux", Arrays.asList("adb", "fastboot"), Arrays.asList("ddms.jar"));
+            adbExe = new File(installPath, "adb");
+            fastbootExe = new File(installPath, "fastboot");
+            ddmsJar = new File(installPath, "ddms.jar");
+            return true;
         }
 
         /**
@@ -158,76 +109,14 @@ class ResourceManager {
          * @return {@code true} if installation was successful, {@code false} if
          * not.
          * @throws IOException if an error occurs during installation.
-         * @throws InterruptedException if an error occurs during installation.
+         * @throws InstallationFailedException if files were not installed (correctly).
          */
-        private static boolean installMac() throws IOException, InterruptedException, InstallationFailedException {
-            if (!installPath.exists()) {
-                installPath.mkdirs();
-            }
-
-            try {
-                InputStream input = instance.getClass().getResourceAsStream("/eu/beatsleigher/jdroidlib/res/adb/mac/adb");
-                File adb_tools = new File(installPath.getAbsolutePath() + "/adb");
-                OutputStream output = new FileOutputStream(adb_tools);
-                int readBytes = 0;
-                byte[] buffer = new byte[4096];
-                while ((readBytes = input.read(buffer)) > 0) {
-                    output.write(buffer, 0, readBytes);
-                }
-                input.close();
-                output.close();
-                /*# ========== #*/
-                input = instance.getClass().getResourceAsStream("/eu/beatsleigher/jdroidlib/res/adb/mac/fastboot");
-                adb_tools = new File(installPath.getAbsolutePath() + "/fastboot");
-                output = new FileOutputStream(adb_tools);
-                readBytes = 0;
-                buffer = new byte[4096];
-                while ((readBytes = input.read(buffer)) > 0) {
-                    output.write(buffer, 0, readBytes);
-                }
-                input.close();
-                output.close();
-                /*# ========== #*/
-                input = instance.getClass().getResourceAsStream("/eu/beatsleigher/jdroidlib/res/adb/mac/ddms.jar");
-                adb_tools = new File(installPath.getAbsolutePath() + "/ddms.jar");
-                output = new FileOutputStream(adb_tools);
-                readBytes = 0;
-                buffer = new byte[4096];
-                while ((readBytes = input.read(buffer)) > 0) {
-                    output.write(buffer, 0, readBytes);
-                }
-                input.close();
-                output.close();
-                /*# ========== #*/
-                ProcessBuilder process = new ProcessBuilder("chmod", "a+x", installPath.getAbsolutePath() + "/adb");
-                Process pr = process.start();
-                Thread.sleep(200);
-                pr.destroy();
-                process = new ProcessBuilder("chmod", "a+x", installPath.getAbsolutePath() + "/fastboot");
-                pr = process.start();
-                Thread.sleep(200);
-                pr.destroy();
-            } finally {
-                adbExe = new File(String.format("$s/adb", installPath.getAbsolutePath()));
-                fastbootExe = new File(String.format("$s/fastboot", installPath.getAbsolutePath()));
-                ddmsJar = new File(String.format("$s/ddms.jar", installPath.getAbsolutePath()));
-                if (adbExe.exists() && fastbootExe.exists() && ddmsJar.exists()) {
-                    adbExe.deleteOnExit();
-                    fastbootExe.deleteOnExit();
-                    ddmsJar.deleteOnExit();
-                    return true;
-                } else {
-                    String exceptionMessage = String.format(
-                              "An error has occurred during installation!\n"
-                            + "Files attempted to install:\n"
-                            + "adb[.exe]:\t\t%s"
-                            + "fastboot[.exe]:\t\t%s"
-                            + "ddms.jar:\t\t%s", adbExe.exists() ? adbExe.getAbsolutePath() : "Installation failed!",
-                                                 fastbootExe.exists() ? fastbootExe.getAbsolutePath() : "Installation failed!",
-                                                 ddmsJar.exists() ? ddmsJar.getAbsolutePath() : "Installation failed!");
-                    throw new InstallationFailedException(exceptionMessage);
-                }
-            }
+        private static boolean installMac() throws IOException, InstallationFailedException {
+            install("mac", Arrays.asList("adb", "fastboot"), Arrays.asList("ddms.jar"));
+            adbExe = new File(installPath, "adb");
+            fastbootExe = new File(installPath, "fastboot");
+            ddmsJar = new File(installPath, "ddms.jar");
+            return true;
         }
 
         /**
@@ -236,90 +125,128 @@ class ResourceManager {
          * @return {@code true} if installation was successful, {@code false} if
          * not.
          * @throws IOException if an error occurs during installation.
-         * @throws InterruptedException if an error occurs during installation.
+         * @throws InstallationFailedException if files were not installed (correctly).
          */
-        private static boolean installWin() throws IOException, InterruptedException, InstallationFailedException {
+        private static boolean installWin() throws IOException, InstallationFailedException {
+            install("win", Arrays.asList("adb.exe", "fastboot.exe"), Arrays.asList("AdbWinApi.dll", "AdbWinUsbApi.dll", "ddms.jar"));
+            adbExe = new File(installPath, "adb.exe");
+            fastbootExe = new File(installPath, "fastboot.exe");
+            ddmsJar = new File(installPath, "ddms.jar");
+            return true;
+        }
+        
+        /**
+         * Installs the bundled binaries of an operating system, while holding the installation lock.
+         * @param platform The directory of the binaries within the bundled resources.
+         * @param executables The binaries to mark as executable.
+         * @param files The remaining binaries.
+         * @throws IOException if an error occurs during installation.
+         * @throws InstallationFailedException if a binary is missing from the bundled resources.
+         */
+        private static void install(String platform, List<String> executables, List<String> files) throws IOException, InstallationFailedException {
+            Path directory = installPath.toPath();
+            Files.createDirectories(directory);
+            
+            try (FileChannel lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                FileLock lock = lockChannel.lock();
+                try {
+                    for (String executable : executables)
+                        installFile(platform, executable, directory, true);
+                    for (String file : files)
+                        installFile(platform, file, directory, false);
+                } finally {
+                    lock.release();
+                }
+            }
+        }
+        
+        /**
+         * Installs a single bundled binary, unless an identical copy is already installed.
+         * @param platform The directory of the binary within the bundled resources.
+         * @param fileName The name of the binary.
+         * @param directory The directory to install the binary to.
+         * @param executable Set to {@code true} if the binary must be executable.
+         * @throws IOException if an error occurs during installation.
+         * @throws InstallationFailedException if the binary is missing from the bundled resources.
+         */
+        private static void installFile(String platform, String fileName, Path directory, boolean executable) throws IOException, InstallationFailedException {
+            String resource = String.format("/eu/beatsleigher/jdroidlib/res/adb/%s/%s", platform, fileName);
+            Path target = directory.resolve(fileName);
+            
+            byte[] bundledDigest;
+            try (InputStream input = openResource(resource)) {
+                bundledDigest = digest(input);
+            }
+            
+            if (Files.isRegularFile(target)) {
+                byte[] installedDigest;
+                try (InputStream input = Files.newInputStream(target)) {
+                    installedDigest = digest(input);
+                }
+                if (MessageDigest.isEqual(bundledDigest, installedDigest)) {
+                    setPermissions(target, executable); // Cheap, and repairs permissions changed since the last start.
+                    return;
+                }
+            }
+            
+            Path temporary = Files.createTempFile(directory, fileName, ".tmp");
             try {
-                InputStream input = instance.getClass().getResourceAsStream("/eu/beatsleigher/jdroidlib/res/adb/win/adb.exe");
-                File adb_tools = new File(installPath.getAbsolutePath() + "/adb.exe");
-                OutputStream output = new FileOutputStream(adb_tools);
-                int readBytes = 0;
-                byte[] buffer = new byte[4096];
-                while ((readBytes = input.read(buffer)) > 0) {
-                    output.write(buffer, 0, readBytes);
+                try (InputStream input = openResource(resource)) {
+                    Files.copy(input, temporary, StandardCopyOption.REPLACE_EXISTING);
                 }
-                input.close();
-                output.close();
-                /*# ========== #*/
-                input = instance.getClass().getResourceAsStream("/eu/beatsleigher/jdroidlib/res/adb/win/AdbWinApi.dll");
-                adb_tools = new File(installPath.getAbsolutePath() + "/AdbWinApi.dll");
-                output = new FileOutputStream(adb_tools);
-                readBytes = 0;
-                buffer = new byte[4096];
-                while ((readBytes = input.read(buffer)) > 0)
-                    output.write(buffer, 0, readBytes);
-                input.close();
-                output.close();
-                /*# ========== #*/
-                input = instance.getClass().getResourceAsStream("/eu/beatsleigher/jdroidlib/res/adb/win/AdbWinUsbApi.dll");
-                adb_tools = new File(installPath.getAbsolutePath() + "/AdbWinUsbApi.dll");
-                output = new FileOutputStream(adb_tools);
-                readBytes = 0;
-                buffer = new byte[4096];
-                while ((readBytes = input.read(buffer)) > 0)
-                    output.write(buffer, 0, readBytes);
-                input.close();
-                output.close();
-                /*# ========== #*/
-                input = instance.getClass().getResourceAsStream("/eu/beatsleigher/jdroidlib/res/adb/win/fastboot.exe");
-                adb_tools = new File(installPath.getAbsolutePath() + "/fastboot.exe");
-                output = new FileOutputStream(adb_tools);
-                readBytes = 0;
-                buffer = new byte[4096];
-                while ((readBytes = input.read(buffer)) > 0)
-                    output.write(buffer, 0, readBytes);
-                input.close();
-                output.close();
-                /*# ========== #*/
-                input = instance.getClass().getResourceAsStream("/eu/beatsleigher/jdroidlib/res/adb/win/ddms.jar");
-                adb_tools = new File(installPath.getAbsolutePath() + "/ddms.jar");
-                output = new FileOutputStream(adb_tools);
-                readBytes = 0;
-                buffer = new byte[4096];
-                while ((readBytes = input.read(buffer)) > 0)
-                    output.write(buffer, 0, readBytes);
-                input.close();
-                output.close();
-                /*# ========== #*/
-            } finally {
-                adbExe = new File(String.format("%s/adb", installPath.getAbsolutePath()));
-                File adbDll = new File(String.format("%s/AdbWinApi.dll", installPath.getAbsolutePath()));
-                File adbUsbDll = new File(String.format("%s/AdbWinUsbApi.dll", installPath.getAbsolutePath()));
-                fastbootExe = new File(String.format("%s/fastboot", installPath.getAbsolutePath()));
-                ddmsJar = new File(String.format("%s/ddms.jar", installPath.getAbsolutePath()));
-                if (adbExe.exists() && fastbootExe.exists() && ddmsJar.exists()) {
-                    adbExe.deleteOnExit();
-                    fastbootExe.deleteOnExit();
-                    ddmsJar.deleteOnExit();
-                    return true;
-                } else {
-                    String exceptionMessage = String.format(
-                              "An error has occurred during installation!\n"
-                            + "Files attempted to install:\n"
-                            + "adb[.exe]:\t\t%s"
-                            + "AdbWinApi.dll:\t\t%s"
-                            + "AdbWinUsbApi.dll.\t\t%s"
-                            + "fastboot[.exe]:\t\t%s"
-                            + "ddms.jar:\t\t%s", adbExe.exists() ? adbExe.getAbsolutePath() : "Installation failed!",
-                                                 adbDll.exists() ? adbDll.getAbsolutePath() : "Installation failed!",
-                                                 adbUsbDll.exists() ? adbUsbDll.getAbsolutePath() : "Installation failed!",
-                                                 fastbootExe.exists() ? fastbootExe.getAbsolutePath() : "Installation failed!",
-                                                 ddmsJar.exists() ? ddmsJar.getAbsolutePath() : "Installation failed!");
-                    throw new InstallationFailedException(exceptionMessage);
+                setPermissions(temporary, executable);
+                try {
+                    Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException ex) {
+                    Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
                 }
+            } finally {
+                Files.deleteIfExists(temporary);
             }
         }
         
+        private static InputStream openResource(String resource) throws InstallationFailedException {
+            InputStream input = ResourceManager.class.getResourceAsStream(resource);
+            if (input == null)
+                throw new InstallationFailedException(String.format("An error has occurred during installation!\n%s is missing from JDroidLib's resources.", resource));
+            return input;
+        }
+        
+        /**
+         * Computes the SHA-256 digest of a stream's contents.
+         * @param input The stream to read. It is read to its end, but not closed.
+         * @return The digest.
+         * @throws IOException if the stream cannot be read.
+         */
+        private static byte[] digest(InputStream input) throws IOException {
+            MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IllegalStateException(ex); // Every JVM is required to support SHA-256.
+            }
+            
+            byte[] buffer = new byte[64 * 1024];
+            int readBytes;
+            while ((readBytes = input.read(buffer)) != -1)
+                digest.update(buffer, 0, readBytes);
+            return digest.digest();
+        }
+        
+        /**
+         * Sets the permissions of an installed binary.
+         * On file systems without POSIX permissions (e.g. on Windows), only the executable flag is set.
+         * @param file The binary.
+         * @param executable Set to {@code true} if the binary must be executable.
+         * @throws IOException if the permissions cannot be set.
+         */
+        private static void setPermissions(Path file, boolean executable) throws IOException {
+            if (Files.getFileStore(file).supportsFileAttributeView("posix"))
+                Files.setPosixFilePermissions(file, executable ? EXECUTABLE_PERMISSIONS : FILE_PERMISSIONS);
+            else if (executable && !file.toFile().setExecutable(true, false))
+                throw new IOException(String.format("Could not make %s executable!", file));
+        }
+        
         /**
          * Gets the installation path for the ADB binaries.
          * @return The directory to which the ADB binaries are installed.
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.adb;
+
+import eu.beatsleigher.jdroidlib.exception.AdbProtocolException;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * AdbBridgeTest
+ * Checks the framing of requests and responses against a {@link FakeAdbServer}.
+ * @author Simon
+ */
+public class AdbBridgeTest {
+    
+    @Test
+    public void testServerVersionIsDecodedFromHex() throws Exception {
+        try (FakeAdbServer server = new FakeAdbServer((input, output) -> {
+            FakeAdbServer.expectRequest(input, output, "host:version");
+            FakeAdbServer.writeHexPrefixed(output, "0029");
+        })) {
+            Assert.assertEquals(41, server.createBridge().getServerVersion());
+        }
+    }
+    
+    @Test
+    public void testRefusedRequestCarriesServerMessage() throws Exception {
+        try (FakeAdbServer server = new FakeAdbServer((input, output) -> {
+            FakeAdbServer.readRequest(input);
+            FakeAdbServer.writeFail(output, "device 'nope' not found");
+        })) {
+            try {
+                server.createBridge().executeShell("nope", "ls");
+                Assert.fail("A refused request must throw.");
+            } catch (AdbProtocolException ex) {
+                Assert.assertTrue(ex.getMessage(), ex.getMessage().contains("device 'nope' not found"));
+            }
+        }
+    }
+    
+    @Test
+    public void testShellOutputIsReadUntilClosed() throws Exception {
+        try (FakeAdbServer server = new FakeAdbServer((input, output) -> {
+            FakeAdbServer.expectRequest(input, output, "host:transport:SERIAL");
+            FakeAdbServer.expectRequest(input, output, "shell:ls /");
+            output.write("system\nvendor\n".getBytes(StandardCharsets.UTF_8));
+        })) {
+            Assert.assertEquals("system\nvendor\n", server.createBridge().executeShell("SERIAL", "ls /"));
+        }
+    }
+    
+    @Test
+    public void testExitValueSurvivesBackgroundedCommand() throws Exception {
+        try (FakeAdbServer server = new FakeAdbServer(new EchoingShell("sleep 1 &", "", 0))) {
+            Assert.assertEquals(0, server.createBridge().executeShellReturnExitValue("SERIAL", "sleep 1 &"));
+        }
+    }
+    
+    @Test
+    public void testExitValueSurvivesTrailingComment() throws Exception {
+        try (FakeAdbServer server = new FakeAdbServer(new EchoingShell("false # fails", "", 1))) {
+            Assert.assertEquals(1, server.createBridge().executeShellReturnExitValue("SERIAL", "false # fails"));
+        }
+    }
+    
+    @Test
+    public void testStreamedLinesExcludeExitValue() throws Exception {
+        try (FakeAdbServer server = new FakeAdbServer(new EchoingShell("cat file", "first\nlast without newline", 3))) {
+            List<String> _lines = new ArrayList<>();
+            Assert.assertEquals(3, server.createBridge().executeShellStreamLines("SERIAL", "cat file", _lines::add, null));
+            Assert.assertEquals(Arrays.asList("first", "last without newline"), _lines);
+        }
+    }
+    
+    @Test
+    public void testStreamedChunksExcludeExitValue() throws Exception {
+        try (FakeAdbServer server = new FakeAdbServer(new EchoingShell("cat file", "rawäoutput", 0))) {
+            ByteArrayOutputStream _output = new ByteArrayOutputStream();
+            Assert.assertEquals(0, server.createBridge().executeShellStreamChunks("SERIAL", "cat file", _output::write, null));
+            Assert.assertEquals("rawäoutput", new String(_output.toByteArray(), StandardCharsets.UTF_8));
+        }
+    }
+    
+    /**
+     * Plays a device's shell running a single command: checks the command is run in a group before its exit value is echoed,
+     * and answers with the given output and exit value.
+     */
+    private static final class EchoingShell implements FakeAdbServer.Handler {
+        
+        private final String command;
+        private final String output;
+        private final int exitValue;
+        
+        EchoingShell(String command, String output, int exitValue) {
+            this.command = command;
+            this.output = output;
+            this.exitValue = exitValue;
+        }
+        
+        @Override
+        public void handle(DataInputStream input, OutputStream output) throws Exception {
+            FakeAdbServer.expectRequest(input, output, "host:transport:SERIAL");
+            String _request = FakeAdbServer.readRequest(input);
+            String _prefix = String.format("shell:{ %s\n}; echo ", command);
+            if (!_request.startsWith(_prefix) || !_request.endsWith("$?"))
+                throw new IOException(String.format("Unexpected shell request \"%s\"!", _request));
+            FakeAdbServer.writeOkay(output);
+            
+            String _marker = _request.substring(_prefix.length(), _request.length() - 2);
+            output.write(String.format("%s%s%d\n", this.output, _marker, exitValue).getBytes(StandardCharsets.UTF_8));
+        }
+        
+    }
+    
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.adb;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * FakeAdbServer
+ * A stand-in for the ADB server, listening on the loopback interface.
+ * 
+ * Every connection accepted is passed to the next of the server's handlers, which plays the server's part of the conversation.
+ * A handler failing (e.g. because it received an unexpected request) fails the test when the server is closed.
+ * @author Simon
+ */
+final class FakeAdbServer implements Closeable {
+    
+    /**
+     * Plays the server's part of a single connection.
+     */
+    @FunctionalInterface
+    interface Handler {
+        void handle(DataInputStream input, OutputStream output) throws Exception;
+    }
+    
+    private final ServerSocket serverSocket;
+    private final Thread thread;
+    private volatile Throwable failure;
+    
+    /**
+     * Starts a new server.
+     * @param handlers The handlers of the connections the server accepts, in order.
+     * @throws IOException If the server socket cannot be opened.
+     */
+    FakeAdbServer(Handler... handlers) throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        List<Handler> _handlers = Arrays.asList(handlers);
+        thread = new Thread(() -> {
+            for (Handler _handler : _handlers)
+                try (Socket _socket = serverSocket.accept()) {
+                    // The output is unbuffered, so every response reaches the client before the handler waits for the next request.
+                    _handler.handle(new DataInputStream(new BufferedInputStream(_socket.getInputStream())), _socket.getOutputStream());
+                } catch (Throwable ex) {
+                    if (!serverSocket.isClosed())
+                        failure = ex;
+                    return;
+                }
+        }, "FakeAdbServer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * Gets the port the server listens on.
+     * @return The server's port.
+     */
+    int getPort() { return serverSocket.getLocalPort(); }
+    
+    /**
+     * Creates a bridge connecting to this server.
+     * @return A new {@link AdbBridge}.
+     */
+    AdbBridge createBridge() { return new AdbBridge(InetAddress.getLoopbackAddress().getHostAddress(), getPort()).withReadTimeout(5000); }
+    
+    //<editor-fold defaultstate="collapsed" desc="Protocol">
+    /**
+     * Reads a request sent by the client.
+     * @param input The connection's input.
+     * @return The request, without its length prefix.
+     * @throws IOException If the request cannot be read.
+     */
+    static String readRequest(DataInputStream input) throws IOException {
+        return new String(readFully(input, Integer.parseInt(new String(readFully(input, 4), StandardCharsets.UTF_8), 16)), StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Reads a request and acknowledges it, after checking it is the expected one.
+     * @param input The connection's input.
+     * @param output The connection's output.
+     * @param request The expected request.
+     * @throws IOException If the request cannot be read or isn't the expected one.
+     */
+    static void expectRequest(DataInputStream input, OutputStream output, String request) throws IOException {
+        String _request = readRequest(input);
+        if (!request.equals(_request))
+            throw new IOException(String.format("Expected request \"%s\", but got \"%s\"!", request, _request));
+        writeOkay(output);
+    }
+    
+    static byte[] readFully(DataInputStream input, int length) throws IOException {
+        byte[] _buffer = new byte[length];
+        input.readFully(_buffer);
+        return _buffer;
+    }
+    
+    static void writeOkay(OutputStream output) throws IOException {
+        output.write("OKAY".getBytes(StandardCharsets.UTF_8));
+    }
+    
+    static void writeFail(OutputStream output, String message) throws IOException {
+        output.write("FAIL".getBytes(StandardCharsets.UTF_8));
+        writeHexPrefixed(output, message);
+    }
+    
+    static void writeHexPrefixed(OutputStream output, String data) throws IOException {
+        byte[] _data = data.getBytes(StandardCharsets.UTF_8);
+        output.write(String.format("%04x", _data.length).getBytes(StandardCharsets.UTF_8));
+        output.write(_data);
+    }
+    //</editor-fold>
+    
+    /**
+     * Stops the server.
+     * @throws IOException If the server socket cannot be closed.
+     * @throws AssertionError If a handler failed.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            thread.join(5000);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        serverSocket.close();
+        if (failure != null)
+            throw new AssertionError("The fake ADB server failed.", failure);
+    }
+    
+}
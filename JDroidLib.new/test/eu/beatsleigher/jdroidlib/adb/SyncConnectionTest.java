@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.adb;
+
+import eu.beatsleigher.jdroidlib.exception.AdbProtocolException;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * SyncConnectionTest
+ * Checks the packets of the sync protocol against a {@link FakeAdbServer} playing the device's sync service.
+ * @author Simon
+ */
+public class SyncConnectionTest {
+    
+    private static final int FILE_SIZE = SyncConnection.MAX_DATA_LENGTH + 1000;
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    @Test
+    public void testPushSplitsFileIntoDataPackets() throws Exception {
+        byte[] _content = createContent();
+        Path _localFile = folder.newFile().toPath();
+        Files.write(_localFile, _content);
+        Files.setLastModifiedTime(_localFile, java.nio.file.attribute.FileTime.from(1234567890, TimeUnit.SECONDS));
+        ByteArrayOutputStream _received = new ByteArrayOutputStream();
+        List<Integer> _dataLengths = new ArrayList<>();
+        
+        try (FakeAdbServer server = new FakeAdbServer((input, output) -> {
+            openSync(input, output);
+            Assert.assertEquals("SEND", readId(input));
+            Assert.assertEquals("/sdcard/file,420", new String(FakeAdbServer.readFully(input, readInt(input)), StandardCharsets.UTF_8));
+            String _id;
+            while ("DATA".equals(_id = readId(input))) {
+                int _length = readInt(input);
+                _dataLengths.add(_length);
+                _received.write(FakeAdbServer.readFully(input, _length));
+            }
+            Assert.assertEquals("DONE", _id);
+            Assert.assertEquals(1234567890, readInt(input));
+            writePacket(output, "OKAY", 0);
+            expectQuit(input);
+        })) {
+            List<Long> _progress = new ArrayList<>();
+            try (SyncConnection sync = server.createBridge().openSync("SERIAL")) {
+                Assert.assertEquals(FILE_SIZE, sync.push(_localFile, "/sdcard/file", (evt) -> _progress.add(evt.getBytesTransferred())));
+            }
+            Assert.assertEquals(Arrays.asList((long)SyncConnection.MAX_DATA_LENGTH, (long)FILE_SIZE), _progress);
+        }
+        Assert.assertEquals(Arrays.asList(SyncConnection.MAX_DATA_LENGTH, 1000), _dataLengths);
+        Assert.assertArrayEquals(_content, _received.toByteArray());
+    }
+    
+    @Test
+    public void testRefusedPushCarriesDeviceMessage() throws Exception {
+        Path _localFile = folder.newFile().toPath();
+        Files.write(_localFile, new byte[] { 1, 2, 3 });
+        
+        try (FakeAdbServer server = new FakeAdbServer((input, output) -> {
+            openSync(input, output);
+            Assert.assertEquals("SEND", readId(input));
+            FakeAdbServer.readFully(input, readInt(input));
+            Assert.assertEquals("DATA", readId(input));
+            FakeAdbServer.readFully(input, readInt(input));
+            Assert.assertEquals("DONE", readId(input));
+            readInt(input);
+            byte[] _message = "Read-only file system".getBytes(StandardCharsets.UTF_8);
+            writePacket(output, "FAIL", _message.length);
+            output.write(_message);
+            expectQuit(input);
+        })) {
+            try (SyncConnection sync = server.createBridge().openSync("SERIAL")) {
+                sync.push(_localFile, "/system/file", null);
+                Assert.fail("A refused push must throw.");
+            } catch (AdbProtocolException ex) {
+                Assert.assertTrue(ex.getMessage(), ex.getMessage().contains("Read-only file system"));
+            }
+        }
+    }
+    
+    @Test
+    public void testPullReassemblesDataPackets() throws Exception {
+        byte[] _content = createContent();
+        Path _localFile = folder.getRoot().toPath().resolve("pulled");
+        
+        try (FakeAdbServer server = new FakeAdbServer((input, output) -> {
+            openSync(input, output);
+            Assert.assertEquals("STAT", readId(input));
+            Assert.assertEquals("/sdcard/file", new String(FakeAdbServer.readFully(input, readInt(input)), StandardCharsets.UTF_8));
+            writePacket(output, "STAT", 0100644);
+            output.write(littleEndian(FILE_SIZE));
+            output.write(littleEndian(1234567890));
+            
+            Assert.assertEquals("RECV", readId(input));
+            FakeAdbServer.readFully(input, readInt(input));
+            writePacket(output, "DATA", SyncConnection.MAX_DATA_LENGTH);
+            output.write(_content, 0, SyncConnection.MAX_DATA_LENGTH);
+            writePacket(output, "DATA", 1000);
+            output.write(_content, SyncConnection.MAX_DATA_LENGTH, 1000);
+            writePacket(output, "DONE", 0);
+            expectQuit(input);
+        })) {
+            try (SyncConnection sync = server.createBridge().openSync("SERIAL")) {
+                Assert.assertEquals(FILE_SIZE, sync.pull("/sdcard/file", _localFile, null));
+            }
+        }
+        Assert.assertArrayEquals(_content, Files.readAllBytes(_localFile));
+        Assert.assertEquals(1234567890, Files.getLastModifiedTime(_localFile).to(TimeUnit.SECONDS));
+    }
+    
+    //<editor-fold defaultstate="collapsed" desc="Helper Methods">
+    private static byte[] createContent() {
+        byte[] _content = new byte[FILE_SIZE];
+        new Random(42).nextBytes(_content);
+        return _content;
+    }
+    
+    private static void openSync(DataInputStream input, OutputStream output) throws IOException {
+        FakeAdbServer.expectRequest(input, output, "host:transport:SERIAL");
+        FakeAdbServer.expectRequest(input, output, "sync:");
+    }
+    
+    private static void expectQuit(DataInputStream input) throws IOException {
+        Assert.assertEquals("QUIT", readId(input));
+        readInt(input);
+    }
+    
+    private static String readId(DataInputStream input) throws IOException {
+        return new String(FakeAdbServer.readFully(input, 4), StandardCharsets.US_ASCII);
+    }
+    
+    private static int readInt(DataInputStream input) throws IOException {
+        return ByteBuffer.wrap(FakeAdbServer.readFully(input, 4)).order(ByteOrder.LITTLE_ENDIAN).getInt();
+    }
+    
+    private static void writePacket(OutputStream output, String id, int value) throws IOException {
+        output.write(id.getBytes(StandardCharsets.US_ASCII));
+        output.write(littleEndian(value));
+    }
+    
+    private static byte[] littleEndian(int value) {
+        return ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(value).array();
+    }
+    //</editor-fold>
+    
+}
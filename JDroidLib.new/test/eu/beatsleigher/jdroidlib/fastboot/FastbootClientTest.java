@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.fastboot;
+
+import eu.beatsleigher.jdroidlib.android.FlashImage;
+import eu.beatsleigher.jdroidlib.exception.FastbootProtocolException;
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * FastbootClientTest
+ * Checks the packets of the fastboot TCP protocol against a stand-in bootloader, listening on the loopback interface.
+ * @author Simon
+ */
+public class FastbootClientTest {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    /**
+     * Plays the bootloader's part of a connection, after the handshake.
+     */
+    @FunctionalInterface
+    private interface Bootloader {
+        void handle(DataInputStream input, DataOutputStream output) throws Exception;
+    }
+    
+    @Test
+    public void testCommandSkipsInfoMessages() throws Exception {
+        List<String> _messages = new ArrayList<>();
+        try (ServerSocket server = startBootloader((input, output) -> {
+            Assert.assertEquals("getvar:product", readPacket(input));
+            writePacket(output, "INFOchecking");
+            writePacket(output, "OKAYsailfish");
+        }); FastbootClient client = connect(server)) {
+            client.setMessageListener(_messages::add);
+            Assert.assertEquals("sailfish", client.getVariable("product"));
+        }
+        Assert.assertEquals(Collections.singletonList("checking"), _messages);
+    }
+    
+    @Test
+    public void testFailCarriesDeviceMessage() throws Exception {
+        try (ServerSocket server = startBootloader((input, output) -> {
+            Assert.assertEquals("erase:cache", readPacket(input));
+            writePacket(output, "FAILpartition locked");
+        }); FastbootClient client = connect(server)) {
+            client.executeCommand("erase:cache");
+            Assert.fail("FAIL was not reported!");
+        } catch (FastbootProtocolException ex) {
+            Assert.assertTrue(ex.getMessage(), ex.getMessage().endsWith("partition locked"));
+        }
+    }
+    
+    @Test
+    public void testFlashDownloadsEveryPiece() throws Exception {
+        Path _file = folder.newFile().toPath();
+        Files.write(_file, new byte[3 * SparseSplitter.BLOCK_SIZE]);
+        long _maxDownloadSize = SparseSplitter.FILE_HEADER_SIZE + 3 * SparseSplitter.CHUNK_HEADER_SIZE + 2 * SparseSplitter.BLOCK_SIZE;
+        List<Long> _downloads = new ArrayList<>();
+        
+        try (ServerSocket server = startBootloader((input, output) -> {
+            Assert.assertEquals("getvar:has-slot:boot", readPacket(input));
+            writePacket(output, "FAILunknown variable");
+            Assert.assertEquals("getvar:max-download-size", readPacket(input));
+            writePacket(output, String.format("OKAY0x%x", _maxDownloadSize));
+            for (int i = 0; i < 2; i++) {
+                String _command = readPacket(input);
+                Assert.assertTrue(_command, _command.startsWith("download:"));
+                writePacket(output, "DATA" + _command.substring("download:".length()));
+                long _length = input.readLong();
+                Assert.assertEquals(Long.parseLong(_command.substring("download:".length()), 16), _length);
+                input.readFully(new byte[(int)_length]);
+                _downloads.add(_length);
+                writePacket(output, "OKAY");
+                Assert.assertEquals("flash:boot", readPacket(input));
+                writePacket(output, "OKAY");
+            }
+        }); FastbootClient client = connect(server)) {
+            Assert.assertEquals("boot", client.flash(new FlashImage("boot", _file), null));
+        }
+        Assert.assertEquals(2, _downloads.size());
+        for (long _length : _downloads)
+            Assert.assertTrue(_length <= _maxDownloadSize);
+    }
+    
+    /**
+     * Starts a bootloader accepting a single connection.
+     * The bootloader's socket is closed once it has handled the connection; a failing bootloader closes it right away,
+     * so the client's next read fails instead of hanging.
+     * @param bootloader The bootloader's part of the connection.
+     * @return The server socket, which the test closes.
+     * @throws IOException If the server socket cannot be opened.
+     */
+    private static ServerSocket startBootloader(Bootloader bootloader) throws IOException {
+        ServerSocket _server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        Thread _thread = new Thread(() -> {
+            try (Socket _socket = _server.accept()) {
+                DataInputStream _input = new DataInputStream(new BufferedInputStream(_socket.getInputStream()));
+                DataOutputStream _output = new DataOutputStream(_socket.getOutputStream());
+                byte[] _handshake = new byte[4];
+                _input.readFully(_handshake);
+                Assert.assertEquals("FB01", new String(_handshake, StandardCharsets.US_ASCII));
+                _output.write(_handshake);
+                bootloader.handle(_input, _output);
+            } catch (Throwable ex) { /* The client fails as soon as the connection is closed. */ }
+        }, "FakeBootloader");
+        _thread.setDaemon(true);
+        _thread.start();
+        return _server;
+    }
+    
+    private static FastbootClient connect(ServerSocket server) throws IOException {
+        return new FastbootClient(InetAddress.getLoopbackAddress().getHostAddress(), server.getLocalPort(), 5000, 5000);
+    }
+    
+    private static String readPacket(DataInputStream input) throws IOException {
+        byte[] _payload = new byte[(int)input.readLong()];
+        input.readFully(_payload);
+        return new String(_payload, StandardCharsets.US_ASCII);
+    }
+    
+    private static void writePacket(DataOutputStream output, String payload) throws IOException {
+        byte[] _payload = payload.getBytes(StandardCharsets.US_ASCII);
+        output.writeLong(_payload.length);
+        output.write(_payload);
+    }
+    
+}
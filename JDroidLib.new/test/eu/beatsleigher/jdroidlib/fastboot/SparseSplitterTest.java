@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2015 Simon.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package eu.beatsleigher.jdroidlib.fastboot;
+
+import eu.beatsleigher.jdroidlib.android.FlashImage;
+import eu.beatsleigher.jdroidlib.exception.FastbootProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.*;
+import java.util.*;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * SparseSplitterTest
+ * Checks the sparse headers of split images, by writing the pieces onto a partition the way a bootloader does.
+ * @author Simon
+ */
+public class SparseSplitterTest {
+    
+    /** A download buffer holding the headers and two blocks. */
+    private static final long MAX_DOWNLOAD_SIZE = SparseSplitter.FILE_HEADER_SIZE + 3 * SparseSplitter.CHUNK_HEADER_SIZE + 2 * SparseSplitter.BLOCK_SIZE;
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    @Test
+    public void testSmallImageIsSentAsIs() throws Exception {
+        FlashImage _image = createImage(createContent(1000));
+        List<SparseSplitter.Piece> _pieces = SparseSplitter.split(_image, MAX_DOWNLOAD_SIZE);
+        
+        Assert.assertEquals(1, _pieces.size());
+        Assert.assertFalse(_pieces.get(0).isSparse());
+        Assert.assertEquals(1000, _pieces.get(0).getSize());
+    }
+    
+    @Test
+    public void testLargeImageIsSplitIntoSparsePieces() throws Exception {
+        byte[] _content = createContent(5 * SparseSplitter.BLOCK_SIZE + 100);
+        List<SparseSplitter.Piece> _pieces = SparseSplitter.split(createImage(_content), MAX_DOWNLOAD_SIZE);
+        Assert.assertEquals(3, _pieces.size());
+        
+        byte[] _partition = new byte[6 * SparseSplitter.BLOCK_SIZE];
+        List<Integer> _chunkCounts = new ArrayList<>();
+        for (SparseSplitter.Piece _piece : _pieces) {
+            Assert.assertTrue(_piece.isSparse());
+            Assert.assertTrue(_piece.getSize() <= MAX_DOWNLOAD_SIZE);
+            _chunkCounts.add(write(concat(_piece.getBuffers(), _piece.getSize()), _partition));
+        }
+        
+        Assert.assertEquals(Arrays.asList(2, 3, 2), _chunkCounts);
+        Assert.assertArrayEquals(_content, Arrays.copyOf(_partition, _content.length));
+    }
+    
+    @Test(expected = FastbootProtocolException.class)
+    public void testLargeSparseImageIsRefused() throws Exception {
+        ByteBuffer _content = ByteBuffer.allocate((int)MAX_DOWNLOAD_SIZE + 1).order(ByteOrder.LITTLE_ENDIAN);
+        _content.putInt(SparseSplitter.SPARSE_MAGIC);
+        SparseSplitter.split(createImage(_content.array()), MAX_DOWNLOAD_SIZE);
+    }
+    
+    /**
+     * Writes a sparse image onto a partition, checking its headers on the way.
+     * {@code DONT_CARE} chunks leave the partition alone, so every piece must only overwrite its own blocks.
+     * @param piece The sparse image.
+     * @param partition The partition to write.
+     * @return The amount of chunks in the image.
+     */
+    private static int write(ByteBuffer piece, byte[] partition) {
+        Assert.assertEquals(SparseSplitter.SPARSE_MAGIC, piece.getInt());
+        Assert.assertEquals(1, piece.getShort());
+        Assert.assertEquals(0, piece.getShort());
+        Assert.assertEquals(SparseSplitter.FILE_HEADER_SIZE, piece.getShort());
+        Assert.assertEquals(SparseSplitter.CHUNK_HEADER_SIZE, piece.getShort());
+        Assert.assertEquals(SparseSplitter.BLOCK_SIZE, piece.getInt());
+        int _totalBlocks = piece.getInt(), _chunks = piece.getInt();
+        Assert.assertEquals(partition.length / SparseSplitter.BLOCK_SIZE, _totalBlocks);
+        Assert.assertEquals(0, piece.getInt());
+        
+        int _block = 0;
+        for (int i = 0; i < _chunks; i++) {
+            short _type = piece.getShort();
+            Assert.assertEquals(0, piece.getShort());
+            int _blocks = piece.getInt(), _size = piece.getInt();
+            if (_type == SparseSplitter.CHUNK_TYPE_RAW) {
+                Assert.assertEquals(SparseSplitter.CHUNK_HEADER_SIZE + _blocks * SparseSplitter.BLOCK_SIZE, _size);
+                piece.get(partition, _block * SparseSplitter.BLOCK_SIZE, _blocks * SparseSplitter.BLOCK_SIZE);
+            } else {
+                Assert.assertEquals(SparseSplitter.CHUNK_TYPE_DONT_CARE, _type);
+                Assert.assertEquals(SparseSplitter.CHUNK_HEADER_SIZE, _size);
+            }
+            _block += _blocks;
+        }
+        Assert.assertEquals(_totalBlocks, _block);
+        Assert.assertFalse(piece.hasRemaining());
+        return _chunks;
+    }
+    
+    private static ByteBuffer concat(ByteBuffer[] buffers, long size) {
+        ByteBuffer _result = ByteBuffer.allocate((int)size);
+        for (ByteBuffer _buffer : buffers)
+            _result.put(_buffer);
+        Assert.assertFalse(_result.hasRemaining());
+        _result.flip();
+        return _result.order(ByteOrder.LITTLE_ENDIAN);
+    }
+    
+    private FlashImage createImage(byte[] content) throws Exception {
+        Path _file = folder.newFile().toPath();
+        Files.write(_file, content);
+        return new FlashImage("system", _file);
+    }
+    
+    private static byte[] createContent(int length) {
+        byte[] _content = new byte[length];
+        new Random(42).nextBytes(_content);
+        return _content;
+    }
+    
+}
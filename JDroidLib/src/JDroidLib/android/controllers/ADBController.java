@@ -136,6 +136,33 @@ public final class ADBController {
         return controller.executeCommand(Command.getCommand(Command.CommandType.ADB_COMMAND, device.getSerial(), cmd_param, returnOutput));
     }
     
+    /**
+     * Executes several shell commands on a device in a single ADB invocation.
+     * The commands are run one after another in the same shell, regardless of their exit values.
+     * @param device The device to execute the commands on.
+     * @param commands The command lines to execute (E.G.: "dumpsys battery").
+     * @return A list of results, one per command, in the order the commands were passed.
+     * @throws IOException If something goes wrong during command/process execution.
+     * @throws IllegalArgumentException If one or more arguments are illegal/faulty.
+     */
+    public List<ShellResult> executeShellBatch(Device device, String... commands) throws IOException, IllegalArgumentException {
+        return executeShellBatch(device, Arrays.asList(commands));
+    }
+    
+    /**
+     * Executes several shell commands on a device in a single ADB invocation.
+     * The commands are run one after another in the same shell, regardless of their exit values.
+     * @param device The device to execute the commands on.
+     * @param commands The command lines to execute (E.G.: "dumpsys battery").
+     * @return A list of results, one per command, in the order the commands were passed.
+     * @throws IOException If something goes wrong during command/process execution.
+     * @throws IllegalArgumentException If one or more arguments are illegal/faulty.
+     */
+    public List<ShellResult> executeShellBatch(Device device, List<String> commands) throws IOException, IllegalArgumentException {
+        ShellBatch batch = new ShellBatch(commands);
+        return batch.parse(executeCommand(device, true, true, batch.getScript()));
+    }
+    
     /**
      * Executes a given command and either returns the output or an empty string.
      * @param returnOutput Set to <i>true</i> if the the process' output should be returned.
@@ -165,7 +192,7 @@ public final class ADBController {
      * @throws IOException If something goes wrong during process execution.
      */
     public void stopServer() throws IOException {
-        controller.executeCommand(Command.getAnonymousCommand(Command.CommandType.ANONYMOUS_COMMAND, Command.convertArrayToList("stop-server"), false, true));
+        controller.executeCommand(Command.getAnonymousCommand(Command.CommandType.ANONYMOUS_COMMAND, Command.convertArrayToList("kill-server"), false, true));
     }
     
     /**
@@ -20,9 +20,11 @@ package JDroidLib.android.controllers;
 
 import JDroidLib.android.device.*;
 import JDroidLib.interfaces.*;
+import JDroidLib.util.ShellResult;
 
 import java.io.*;
 import java.util.*;
+import java.util.regex.Pattern;
 
 
 /**
@@ -31,6 +33,11 @@ import java.util.*;
  */
 public class PackageController implements Disposeable {
     
+    /** Package names, e.g. "com.example.app". */
+    private static final Pattern PACKAGE_NAME = Pattern.compile("[A-Za-z][A-Za-z0-9_]*(\\.[A-Za-z][A-Za-z0-9_]*)*");
+    /** Permission names, e.g. "android.permission.READ_CONTACTS". */
+    private static final Pattern PERMISSION_NAME = Pattern.compile("[A-Za-z][A-Za-z0-9_]*(\\.[A-Za-z0-9_-]+)*");
+    
     private Device device = null;
     private ADBController adbController = null;
     
@@ -41,21 +48,17 @@ public class PackageController implements Disposeable {
     
     /**
      * Lists all permission groups from the device associated with this object.
-     * @return A list of permissions (Only permission names) derived from the device associated with this object.
+     * The groups are served from the device's @see PackageIndex.
+     * @return A list of permission groups (Only group names, e.g. "CONTACTS") derived from the device associated with this object.
      * @throws IOException If something goes wrong.
      */
     public List<String> listPermissionGroups() throws IOException {
         List<String> permGroups = new ArrayList<>();
-        // new String[]{"pm", "list", "permission-groups"}
-        String output = adbController.executeCommand(device, true, true, "pm", "list", "permission-groups");
-        String[] parsed0 = output.split("\n");
-        for (String str : parsed0) {
-            if (str.toLowerCase().startsWith("permission")) {
-                String[] parsed1 = str.split("-group.");
-                permGroups.add(parsed1[1]);
-            }
+        for (String group : device.getPackageIndex().get(PackageIndex.Section.PERMISSION_GROUPS)) {
+            // android.permission-group.CONTACTS -> CONTACTS
+            int separator = group.indexOf("-group.");
+            permGroups.add(separator == -1 ? group : group.substring(separator + "-group.".length()));
         }
-        
         return permGroups;
     }
     
@@ -119,40 +122,22 @@ public class PackageController implements Disposeable {
     
     /**
      * Lists all the device's features.
-     * @return Returns the features of the device as a List of String.
+     * The features are served from the device's @see PackageIndex.
+     * @return Returns the features of the device as an unmodifiable, sorted List of String.
      * @throws IOException If something goes wrong.
      */
     public List<String> getFeatures() throws IOException {
-        List<String> features = new ArrayList<>();
-        
-        String output = adbController.executeCommand(device, true, true, "pm", "list", "features");
-        String[] parsed0 = output.split("\n");
-        
-        for (String str : parsed0) {
-            String[] parsed1 = str.split(":");
-            features.add(parsed1[1]);
-        }
-        
-        return features;
+        return device.getPackageIndex().get(PackageIndex.Section.FEATURES);
     }
     
     /**
      * Lists all available libs (libraries) on the current device.
-     * @return A List of String containing all libraries.
+     * The libraries are served from the device's @see PackageIndex.
+     * @return An unmodifiable, sorted List of String containing all libraries.
      * @throws IOException If something goes wrong.
      */
     public List<String> getLibs() throws IOException {
-        List<String> libs = new ArrayList<>();
-        
-        String output = adbController.executeCommand(device, true, true, "pm", "list", "libraries");
-        String[] parsed0 = output.split("\n");
-        
-        for (String str : parsed0) {
-            String[] parsed1 = str.split(":");
-            libs.add(parsed1[1]);
-        }
-        
-        return libs;
+        return device.getPackageIndex().get(PackageIndex.Section.LIBRARIES);
     }
     
     /**
@@ -226,7 +211,9 @@ public class PackageController implements Disposeable {
             for (int i = 0; i < args.size(); i++)
                 _args[i] = args.get(i);
                 
-            return adbController.executeCommand(device, true, true, "pm", _args);
+            String output = adbController.executeCommand(device, true, true, "pm", _args);
+            device.getPackageIndex().invalidate(PackageIndex.Section.PACKAGES);
+            return output;
         }
         
     /**
@@ -245,7 +232,10 @@ public class PackageController implements Disposeable {
         } else {
             args[3] = _package;
         }
-        return adbController.executeCommand(device, true, true, "pm", args);
+        String output = adbController.executeCommand(device, true, true, "pm", args);
+        if (output.contains("Success"))
+            device.getPackageIndex().removePackage(_package);
+        return output;
     }
     
     /**
@@ -338,6 +328,60 @@ public class PackageController implements Disposeable {
         return adbController.executeCommand(device, true, true, "pm", "revoke", _package, permission);
     }
     
+    /**
+     * Grants several permissions to a package in a single shell invocation.
+     * @param _package The package to be modified.
+     * @param permissions The permissions to grant.
+     * @return The outcome of every grant, mapped to its permission, in the order the permissions were passed.
+     * @throws IOException If something goes wrong.
+     * @throws IllegalArgumentException If the package or a permission is not a valid name.
+     */
+    public Map<String, ShellResult> grantPermissions(String _package, Collection<String> permissions) throws IOException {
+        return applyPermissions("grant", _package, permissions);
+    }
+    
+    /**
+     * Revokes several permissions from a package in a single shell invocation.
+     * @param _package The package to modify.
+     * @param permissions The permissions to remove.
+     * @return The outcome of every revocation, mapped to its permission, in the order the permissions were passed.
+     * @throws IOException If something goes wrong.
+     * @throws IllegalArgumentException If the package or a permission is not a valid name.
+     */
+    public Map<String, ShellResult> revokePermissions(String _package, Collection<String> permissions) throws IOException {
+        return applyPermissions("revoke", _package, permissions);
+    }
+    
+    /**
+     * Runs {@code pm grant} or {@code pm revoke} for every permission as one shell batch.
+     * A failing permission doesn't stop the remaining ones from being applied.
+     * The names are interpolated into a shell script, so anything but a valid package or permission name is refused.
+     */
+    private Map<String, ShellResult> applyPermissions(String action, String _package, Collection<String> permissions) throws IOException {
+        if (_package == null || _package.isEmpty())
+            throw new IllegalArgumentException("Package must not be null or empty!");
+        if (!PACKAGE_NAME.matcher(_package).matches())
+            throw new IllegalArgumentException("Invalid package name: " + _package);
+        if (permissions == null || permissions.isEmpty())
+            throw new IllegalArgumentException("Permissions must not be null or empty!");
+        
+        List<String> _permissions = new ArrayList<>(new LinkedHashSet<>(permissions));
+        List<String> commands = new ArrayList<>(_permissions.size());
+        for (String permission : _permissions) {
+            if (permission == null || permission.isEmpty())
+                throw new IllegalArgumentException("Permissions must not contain null or empty entries!");
+            if (!PERMISSION_NAME.matcher(permission).matches())
+                throw new IllegalArgumentException("Invalid permission name: " + permission);
+            commands.add(String.format("pm %s %s %s", action, _package, permission));
+        }
+        
+        List<ShellResult> results = adbController.executeShellBatch(device, commands);
+        Map<String, ShellResult> outcomes = new LinkedHashMap<>();
+        for (int i = 0; i < _permissions.size(); i++)
+            outcomes.put(_permissions.get(i), results.get(i));
+        return Collections.unmodifiableMap(outcomes);
+    }
+    
     /**
      * Creates a new user on the device.
      * @param userName The desired name for the new user.
@@ -376,17 +420,19 @@ public class PackageController implements Disposeable {
     
     /**
      * Gets a list of all installed packages from the device.
-     * @return A list of all installed packages.
+     * The packages are served from the device's @see PackageIndex; use it directly to search packages by name or prefix.
+     * @return An unmodifiable, sorted list of all installed packages, as printed by the package manager ("package:name").
      * @throws IOException If something goes wrong.
      */
     public List<String> getPackages() throws IOException {
-        String output = adbController.executeCommand(device, true, true, "pm", "list", "packages");
-        String[] packages = output.split("\n");
-        List<String> packageList = new ArrayList<>();
-        
-        packageList.addAll(Arrays.asList(packages));
-        
-        return packageList;
+        final List<String> packages = device.getPackageIndex().getPackages();
+        return new AbstractList<String>() {
+            @Override
+            public String get(int index) { return "package:" + packages.get(index); }
+            
+            @Override
+            public int size() { return packages.size(); }
+        };
     }
 
     @Override
@@ -20,6 +20,8 @@ package JDroidLib.android.device;
 import JDroidLib.android.controllers.ADBController;
 
 import java.io.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Represents a device's battery.
@@ -98,220 +100,205 @@ public class Battery {
         BATTERY_HEALTH_COLD;
     }
     
-    private boolean isACPowered = false;
-    private boolean isUSBPowered = false;
-    private boolean isWirelessPowered = false;
-    private boolean isPresent = false;
-    
-    private BatteryStatus batteryStatus = BatteryStatus.BATTERY_STATUS_UNKNOWN;
-    private BatteryHealth batteryHealth = BatteryHealth.BATTERY_HEALTH_UNKOWN;
-    private int batteryLevel = 0;
-    private int batteryScale = 0;
-    private int batteryVoltage = 0;
-    private int currentBatteryCurrent = 0;
-    
-    private String batteryTemp = "0";
-    private String batteryTechnology = "";
+    /**
+     * The default maximum age of a cached snapshot, in milliseconds.
+     */
+    public static final long DEFAULT_MAX_AGE = 2000;
     
     private final Device device;
     
     private ADBController adbController = null;
+    private boolean isSnapshot = false;
+    private volatile long maxAge = DEFAULT_MAX_AGE;
+    private volatile BatterySnapshot snapshot = null;
+    private final AtomicReference<FutureTask<BatterySnapshot>> pendingRefresh = new AtomicReference<>();
     
     Battery(Device device, ADBController adbController) {
         this.device = device;
         this.adbController = adbController;
     }
     
+    /**
+     * Creates a snapshot of the battery from previously fetched output of {@code dumpsys battery}.
+     * Snapshots never update themselves.
+     * @param device The device the battery belongs to.
+     * @param adbController The ADBController that makes this thing work.
+     * @param raw The output of {@code dumpsys battery}.
+     * @throws IOException If the output cannot be read.
+     */
+    Battery(Device device, ADBController adbController, String raw) throws IOException {
+        this(device, adbController);
+        parse(raw);
+        isSnapshot = true;
+    }
+    
+    /**
+     * Sets the maximum age of the cached battery information.
+     * Getters called within this time after the last query share its result instead of querying the device again.
+     * @param maxAge The maximum age. Zero disables caching (concurrent queries are still shared).
+     * @param timeUnit The unit of maxAge.
+     */
+    public void setMaxAge(long maxAge, TimeUnit timeUnit) {
+        if (maxAge < 0)
+            throw new IllegalArgumentException("maxAge must not be negative!");
+        this.maxAge = timeUnit.toMillis(maxAge);
+    }
+    
+    /**
+     * Gets the maximum age of the cached battery information.
+     * @param timeUnit The unit to return the maximum age in.
+     * @return The maximum age.
+     */
+    public long getMaxAge(TimeUnit timeUnit) { return timeUnit.convert(maxAge, TimeUnit.MILLISECONDS); }
+    
+    /**
+     * Gets a consistent snapshot of the battery's state.
+     * If the cached snapshot is younger than the maximum age, it is returned; otherwise the device is queried.
+     * @return The battery's state.
+     * @throws IOException If an error occurs while updating the information.
+     */
+    public BatterySnapshot getSnapshot() throws IOException {
+        BatterySnapshot current = snapshot;
+        if (current != null && (isSnapshot || current.getAge() < maxAge))
+            return current;
+        return refresh();
+    }
+    
+    /**
+     * Queries the device for the battery's state, regardless of the cached snapshot's age.
+     * If a query is already running (e.g. on another thread), its result is shared instead of starting another query.
+     * @return The battery's new state.
+     * @throws IOException If an error occurs while updating the information.
+     */
+    public BatterySnapshot refresh() throws IOException {
+        if (isSnapshot)
+            return snapshot;
+        
+        FutureTask<BatterySnapshot> task;
+        while ((task = pendingRefresh.get()) == null) {
+            FutureTask<BatterySnapshot> newTask = new FutureTask<>(new Callable<BatterySnapshot>() {
+                @Override
+                public BatterySnapshot call() throws IOException {
+                    return BatterySnapshot.parse(adbController.executeCommand(device, true, true, "dumpsys", "battery"));
+                }
+            });
+            if (pendingRefresh.compareAndSet(null, newTask)) {
+                try {
+                    newTask.run();
+                } finally {
+                    pendingRefresh.compareAndSet(newTask, null);
+                }
+                task = newTask;
+                break;
+            }
+        }
+        
+        try {
+            BatterySnapshot result = task.get();
+            snapshot = result;
+            return result;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the battery information!");
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException)
+                throw (IOException)ex.getCause();
+            if (ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException)ex.getCause();
+            throw new IOException(ex.getCause());
+        }
+    }
+    
     /**
      * Determines whether the device is powered via AC or not.
      * @return {@code true} if the device is being powered via AC, {@code false} if not.
      * @throws IOException If an error occurs while updating the information.
      */
-    public boolean isACPowered() throws IOException { update(); return isACPowered; }
+    public boolean isACPowered() throws IOException { return getSnapshot().isACPowered(); }
     
     /**
      * Determines whether the device is powered via USB or not.
      * @return {@code true} if the device is being powered via USB, {@code false} if not.
      * @throws IOException If an error occurs while updating the information.
      */
-    public boolean isUSBPowered() throws IOException { update(); return isUSBPowered; }
+    public boolean isUSBPowered() throws IOException { return getSnapshot().isUSBPowered(); }
     
     /**
      * Determines whether the device is powered via a wireless charging station or not.
      * @return {@code true} if the device is powered via a wireless station, {@code false} if not.
      * @throws IOException 
      */
-    public boolean isWirelessPowered() throws IOException { update(); return isWirelessPowered; }
+    public boolean isWirelessPowered() throws IOException { return getSnapshot().isWirelessPowered(); }
     
     /**
      * Determines whether the battery is inserted into the device.
      * @return {@code true} is the battery is inserted, {@code false} if not.
      * @throws IOException If an error occurs while updating the information.
      */
-    public boolean isPresent() throws IOException { update(); return isPresent; }
+    public boolean isPresent() throws IOException { return getSnapshot().isPresent(); }
     
     /**
      * Determines the current status of the battery.
      * @return
      * @throws IOException 
      */
-    public BatteryStatus getStatus() throws IOException { update(); return batteryStatus; }
+    public BatteryStatus getStatus() throws IOException { return getSnapshot().getStatus(); }
     
     /**
      * Determines the current health of the battery.
      * @return Return the health of the battery.
      * @throws IOException If an error occurs while updating the information.
      */
-    public BatteryHealth getHealth() throws IOException { update(); return batteryHealth; }
+    public BatteryHealth getHealth() throws IOException { return getSnapshot().getHealth(); }
     
     /**
      * Determines the current battery level.
      * @return The battery level.
      * @throws IOException If an error occurs while updating the information.
      */
-    public int getLevel() throws IOException { update(); return batteryLevel; }
+    public int getLevel() throws IOException { return getSnapshot().getLevel(); }
     
     /**
      * Determines the battery's scale (The maximum percentage of charge [default: 0-100]).
      * @return The battery scale.
      * @throws IOException If an error occurs while updating the information.
      */
-    public int getScale() throws IOException { update(); return batteryScale; }
+    public int getScale() throws IOException { return getSnapshot().getScale(); }
     
     /**
      * Determines the current battery voltage.
      * @return The current voltage.
      * @throws IOException 
      */
-    public int getVoltage() throws IOException { update(); return batteryVoltage; }
+    public int getVoltage() throws IOException { return getSnapshot().getVoltage(); }
     
     /**
      * Determines the current battery current (mAmps).
      * @return The battery current (mAmps).
      * @throws IOException If an error occurs while updating the information.
      */
-    public int getCurrent() throws IOException { update(); return currentBatteryCurrent; }
+    public int getCurrent() throws IOException { return getSnapshot().getCurrent(); }
     
     /**
      * Determines the current battery temperature.
      * @return The battery temperature.
      * @throws IOException if an error occurs while updating the information.
      */
-    public double getTemp() throws IOException {
-        update();
-        String temp = batteryTemp;
-        double val = 0;
-        val = (Double.valueOf(temp) / 10);
-        return val;
-    }
+    public double getTemp() throws IOException { return getSnapshot().getTemp(); }
     
     /**
      * Determines the battery's technology.
      * @return The battery's technology.
      * @throws IOException If an error occurs while updating the information.
      */
-    public String getTechnology() throws IOException { update(); return batteryTechnology; }
+    public String getTechnology() throws IOException { return getSnapshot().getTechnology(); }
     
     /**
-     * Updates the information stored in this class' variables.
-     * @throws IOException If an error occurs while executing the ADB process.
+     * Parses the output of {@code dumpsys battery} and caches the result.
+     * @param raw The output of {@code dumpsys battery}.
+     * @throws IOException If the output cannot be read.
      */
-    private void update() throws IOException {
-        String raw = adbController.executeCommand(device, true, true, "dumpsys", "battery");
-        BufferedReader reader = new BufferedReader(new StringReader(raw));
-            String line = "";
-            while ((line = reader.readLine()) != null) {
-                if (line.equals("Current Battery Service State:")) continue;
-                if (line.contains("AC powered:")) {
-                    String[] arr = line.split(": ");
-                    isACPowered = Boolean.valueOf(arr[1]);
-                }
-                if (line.contains("USB powered: ")) {
-                    String[] arr = line.split(": ");
-                    isUSBPowered = Boolean.valueOf(arr[1]);
-                }
-                if (line.contains("Wireless powered: ")) {
-                    String[] arr = line.split(": ");
-                    isWirelessPowered = Boolean.valueOf(arr[1]);
-                }
-                if (line.contains("status: ")) {
-                    String[] arr = line.split(": ");
-                    switch (arr[1]) {
-                        case "1":
-                            batteryStatus = BatteryStatus.BATTERY_STATUS_UNKNOWN;
-                            break;
-                        case "2":
-                            batteryStatus = BatteryStatus.BATTERY_STATUS_CHARGING;
-                            break;
-                        case "3":
-                            batteryStatus = BatteryStatus.BATTERY_STATUS_DISCHARGING;
-                            break;
-                        case "4":
-                            batteryStatus = BatteryStatus.BATTERY_STATUS_NOT_CHARGING;
-                            break;
-                        case "5":
-                            batteryStatus = BatteryStatus.BATTERY_STATUS_FULL;
-                            break;
-                        default:
-                            batteryStatus = BatteryStatus.BATTERY_STATUS_UNKNOWN;
-                    }
-                }
-                if (line.contains("health: ")) {
-                    String[] arr = line.split(": ");
-                    switch (arr[1]) {
-                        case "1":
-                            batteryHealth = BatteryHealth.BATTERY_HEALTH_UNKOWN;
-                            break;
-                        case "2":
-                            batteryHealth = BatteryHealth.BATTERY_HEALTH_GOOD;
-                            break;
-                        case "3":
-                            batteryHealth = BatteryHealth.BATTERY_HEALTH_OVERHEAT;
-                            break;
-                        case "4":
-                            batteryHealth = BatteryHealth.BATTERY_HEALTH_DEAD;
-                            break;
-                        case "5":
-                            batteryHealth = BatteryHealth.BATTERY_HEALTH_OVER_VOLTAGE;
-                            break;
-                        case "6":
-                            batteryHealth = BatteryHealth.BATTERY_HEALTH_UNSPECIFIED_FAILURE;
-                            break;
-                        case "7":
-                            batteryHealth = BatteryHealth.BATTERY_HEALTH_COLD;
-                            break;
-                        default:
-                            batteryHealth = BatteryHealth.BATTERY_HEALTH_UNKOWN;
-                    }
-                }
-                if (line.contains("present: ")) {
-                    String[] arr = line.split(": ");
-                    isPresent = Boolean.valueOf(arr[1]);
-                }
-                if (line.contains("level:")) {
-                    String[] arr = line.split(": ");
-                    batteryLevel = Integer.valueOf(arr[1]);
-                }
-                if (line.contains("scale: ")) {
-                    String[] arr = line.split(": ");
-                    batteryScale = Integer.valueOf(arr[1]);
-                }
-                if (line.contains("voltage: ")) {
-                    String[] arr = line.split(": ");
-                    batteryVoltage = Integer.valueOf(arr[1]);
-                }
-                if (line.contains("current now: ")) {
-                    String[] arr = line.split(": ");
-                    currentBatteryCurrent = Integer.valueOf(arr[1]);
-                }
-                if (line.contains("temperature: ")) {
-                    String[] arr = line.split(": ");
-                    batteryTemp = arr[1].trim();
-                }
-                if (line.contains("technology: ")) {
-                    String[] arr = line.split(": ");
-                    batteryTechnology = arr[1];
-                }
-            }
+    void parse(String raw) throws IOException {
+        snapshot = BatterySnapshot.parse(raw);
     }
 }
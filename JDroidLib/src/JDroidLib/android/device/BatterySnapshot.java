@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2014 beatsleigher
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package JDroidLib.android.device;
+
+import JDroidLib.android.device.Battery.BatteryHealth;
+import JDroidLib.android.device.Battery.BatteryStatus;
+
+import java.io.*;
+
+/**
+ * Represents the state of a device's battery at a single point in time.
+ * All values of a snapshot stem from the same {@code dumpsys battery} sample, so they are consistent with each other.
+ * Instances of this class are immutable and can be shared between threads.
+ * @author beatsleigher
+ */
+public final class BatterySnapshot {
+    
+    private final long timestamp;
+    private final boolean isACPowered;
+    private final boolean isUSBPowered;
+    private final boolean isWirelessPowered;
+    private final boolean isPresent;
+    private final BatteryStatus batteryStatus;
+    private final BatteryHealth batteryHealth;
+    private final int batteryLevel;
+    private final int batteryScale;
+    private final int batteryVoltage;
+    private final int currentBatteryCurrent;
+    private final double batteryTemp;
+    private final String batteryTechnology;
+    
+    private BatterySnapshot(long timestamp, boolean isACPowered, boolean isUSBPowered, boolean isWirelessPowered, boolean isPresent,
+                            BatteryStatus batteryStatus, BatteryHealth batteryHealth, int batteryLevel, int batteryScale,
+                            int batteryVoltage, int currentBatteryCurrent, double batteryTemp, String batteryTechnology) {
+        this.timestamp = timestamp;
+        this.isACPowered = isACPowered;
+        this.isUSBPowered = isUSBPowered;
+        this.isWirelessPowered = isWirelessPowered;
+        this.isPresent = isPresent;
+        this.batteryStatus = batteryStatus;
+        this.batteryHealth = batteryHealth;
+        this.batteryLevel = batteryLevel;
+        this.batteryScale = batteryScale;
+        this.batteryVoltage = batteryVoltage;
+        this.currentBatteryCurrent = currentBatteryCurrent;
+        this.batteryTemp = batteryTemp;
+        this.batteryTechnology = batteryTechnology;
+    }
+    
+    /**
+     * Parses the output of {@code dumpsys battery}.
+     * @param raw The output of {@code dumpsys battery}.
+     * @return A new snapshot, timestamped with the current time.
+     * @throws IOException If the output cannot be read.
+     */
+    static BatterySnapshot parse(String raw) throws IOException {
+        boolean isACPowered = false, isUSBPowered = false, isWirelessPowered = false, isPresent = false;
+        BatteryStatus batteryStatus = BatteryStatus.BATTERY_STATUS_UNKNOWN;
+        BatteryHealth batteryHealth = BatteryHealth.BATTERY_HEALTH_UNKOWN;
+        int batteryLevel = 0, batteryScale = 0, batteryVoltage = 0, currentBatteryCurrent = 0;
+        String batteryTemp = "0", batteryTechnology = "";
+        
+        BufferedReader reader = new BufferedReader(new StringReader(raw));
+        String line = "";
+        while ((line = reader.readLine()) != null) {
+            if (line.equals("Current Battery Service State:")) continue;
+            if (line.contains("AC powered:")) {
+                String[] arr = line.split(": ");
+                isACPowered = Boolean.valueOf(arr[1]);
+            }
+            if (line.contains("USB powered: ")) {
+                String[] arr = line.split(": ");
+                isUSBPowered = Boolean.valueOf(arr[1]);
+            }
+            if (line.contains("Wireless powered: ")) {
+                String[] arr = line.split(": ");
+                isWirelessPowered = Boolean.valueOf(arr[1]);
+            }
+            if (line.contains("status: ")) {
+                String[] arr = line.split(": ");
+                switch (arr[1]) {
+                    case "2":
+                        batteryStatus = BatteryStatus.BATTERY_STATUS_CHARGING;
+                        break;
+                    case "3":
+                        batteryStatus = BatteryStatus.BATTERY_STATUS_DISCHARGING;
+                        break;
+                    case "4":
+                        batteryStatus = BatteryStatus.BATTERY_STATUS_NOT_CHARGING;
+                        break;
+                    case "5":
+                        batteryStatus = BatteryStatus.BATTERY_STATUS_FULL;
+                        break;
+                    default:
+                        batteryStatus = BatteryStatus.BATTERY_STATUS_UNKNOWN;
+                }
+            }
+            if (line.contains("health: ")) {
+                String[] arr = line.split(": ");
+                switch (arr[1]) {
+                    case "2":
+                        batteryHealth = BatteryHealth.BATTERY_HEALTH_GOOD;
+                        break;
+                    case "3":
+                        batteryHealth = BatteryHealth.BATTERY_HEALTH_OVERHEAT;
+                        break;
+                    case "4":
+                        batteryHealth = BatteryHealth.BATTERY_HEALTH_DEAD;
+                        break;
+                    case "5":
+                        batteryHealth = BatteryHealth.BATTERY_HEALTH_OVER_VOLTAGE;
+                        break;
+                    case "6":
+                        batteryHealth = BatteryHealth.BATTERY_HEALTH_UNSPECIFIED_FAILURE;
+                        break;
+                    case "7":
+                        batteryHealth = BatteryHealth.BATTERY_HEALTH_COLD;
+                        break;
+                    default:
+                        batteryHealth = BatteryHealth.BATTERY_HEALTH_UNKOWN;
+                }
+            }
+            if (line.contains("present: ")) {
+                String[] arr = line.split(": ");
+                isPresent = Boolean.valueOf(arr[1]);
+            }
+            if (line.contains("level:")) {
+                String[] arr = line.split(": ");
+                batteryLevel = Integer.valueOf(arr[1]);
+            }
+            if (line.contains("scale: ")) {
+                String[] arr = line.split(": ");
+                batteryScale = Integer.valueOf(arr[1]);
+            }
+            if (line.contains("voltage: ")) {
+                String[] arr = line.split(": ");
+                batteryVoltage = Integer.valueOf(arr[1]);
+            }
+            if (line.contains("current now: ")) {
+                String[] arr = line.split(": ");
+                currentBatteryCurrent = Integer.valueOf(arr[1]);
+            }
+            if (line.contains("temperature: ")) {
+                String[] arr = line.split(": ");
+                batteryTemp = arr[1].trim();
+            }
+            if (line.contains("technology: ")) {
+                String[] arr = line.split(": ");
+                batteryTechnology = arr[1];
+            }
+        }
+        reader.close();
+        
+        return new BatterySnapshot(System.currentTimeMillis(), isACPowered, isUSBPowered, isWirelessPowered, isPresent,
+                                   batteryStatus, batteryHealth, batteryLevel, batteryScale, batteryVoltage, currentBatteryCurrent,
+                                   Double.valueOf(batteryTemp) / 10, batteryTechnology);
+    }
+    
+    /**
+     * Gets the time this snapshot was taken at.
+     * @return The time in milliseconds since the epoch.
+     */
+    public long getTimestamp() { return timestamp; }
+    
+    /**
+     * Gets the age of this snapshot.
+     * @return The time in milliseconds since this snapshot was taken.
+     */
+    public long getAge() { return System.currentTimeMillis() - timestamp; }
+    
+    /**
+     * Determines whether the device was powered via AC or not.
+     * @return {@code true} if the device was being powered via AC, {@code false} if not.
+     */
+    public boolean isACPowered() { return isACPowered; }
+    
+    /**
+     * Determines whether the device was powered via USB or not.
+     * @return {@code true} if the device was being powered via USB, {@code false} if not.
+     */
+    public boolean isUSBPowered() { return isUSBPowered; }
+    
+    /**
+     * Determines whether the device was powered via a wireless charging station or not.
+     * @return {@code true} if the device was powered via a wireless station, {@code false} if not.
+     */
+    public boolean isWirelessPowered() { return isWirelessPowered; }
+    
+    /**
+     * Determines whether the battery was inserted into the device.
+     * @return {@code true} is the battery was inserted, {@code false} if not.
+     */
+    public boolean isPresent() { return isPresent; }
+    
+    /**
+     * Gets the status of the battery.
+     * @return The battery's status.
+     */
+    public BatteryStatus getStatus() { return batteryStatus; }
+    
+    /**
+     * Gets the health of the battery.
+     * @return The battery's health.
+     */
+    public BatteryHealth getHealth() { return batteryHealth; }
+    
+    /**
+     * Gets the battery level.
+     * @return The battery level.
+     */
+    public int getLevel() { return batteryLevel; }
+    
+    /**
+     * Gets the battery's scale (The maximum percentage of charge [default: 0-100]).
+     * @return The battery scale.
+     */
+    public int getScale() { return batteryScale; }
+    
+    /**
+     * Gets the battery voltage.
+     * @return The voltage.
+     */
+    public int getVoltage() { return batteryVoltage; }
+    
+    /**
+     * Gets the battery current (mAmps).
+     * @return The battery current (mAmps).
+     */
+    public int getCurrent() { return currentBatteryCurrent; }
+    
+    /**
+     * Gets the battery temperature.
+     * @return The battery temperature.
+     */
+    public double getTemp() { return batteryTemp; }
+    
+    /**
+     * Gets the battery's technology.
+     * @return The battery's technology.
+     */
+    public String getTechnology() { return batteryTechnology; }
+    
+    @Override
+    public String toString() {
+        return String.format("Battery: %d/%d, %s, %s, %.1fC", batteryLevel, batteryScale, batteryStatus, batteryHealth, batteryTemp);
+    }
+    
+}
@@ -23,16 +23,28 @@ import JDroidLib.android.controllers.ADBController;
 import JDroidLib.enums.*;
 
 import java.io.*;
+import java.util.*;
+import java.util.regex.*;
 
 /**
  * This class allows you to easily grab build properties from the Android OS. Represents a device's build properties.
+ * 
+ * All properties are fetched with a single {@code getprop} and kept in an index, from which all lookups are served.
+ * The index is invalidated when a property is set through this class or the device is rebooted;
+ * use {@link #invalidate()} or {@link #refresh()} to pick up changes made by other means.
  * @author beatsleigher
  */
 public class BuildProp {
     
+    /**
+     * Matches a single line of getprop's output: [key]: [value]
+     */
+    private static final Pattern PROPERTY_PATTERN = Pattern.compile("^\\[(.*?)\\]:\\s*\\[(.*)\\]$");
+    
     private final Device device;
     private String propFile = "";
     private final ADBController adbController;
+    private volatile Map<String, String> properties = null;
     
     /**
      * Default constructor for @see BuildProp.
@@ -52,21 +64,8 @@ public class BuildProp {
      */
     @Deprecated
     public String getProp(String prop) throws IOException {
-        String returnVal = "Not Found.";
-        pullProp(System.getProperty("user.home") + "/.jdroidlib/tmp");
-        
-        BufferedReader reader = new BufferedReader(new FileReader(new File(propFile)));
-        String line = "";
-        while ((line = reader.readLine()) != null) {
-            if (line.contains(prop)) {
-                String[] found = line.split("=");
-                returnVal = found[1];
-                break;
-            }
-        }
-        reader.close();
-        
-        return returnVal;
+        String value = getProperties().get(prop);
+        return value == null ? "Not Found." : value;
     }
     
     /**
@@ -77,41 +76,121 @@ public class BuildProp {
      * @throws IOException 
      */
     public String getProp() throws IOException {
-        String output = adbController.executeCommand(device, true, true, "getprop");
-        String toReturn = "";
-        BufferedReader reader = new BufferedReader(new StringReader(output));
-        String line = "";
-        while ((line = reader.readLine()) != null) {
-            String s1 = line.trim();
-            String s2 = s1.replaceAll("\\[", "");
-            String s3 = s2.replace("]", "");
-            String s4 = s3.replace(":", " = ");
-            toReturn += s4 + "\n";
+        return format(getProperties());
+    }
+    
+    /**
+     * Gets all build properties of the device.
+     * The properties are fetched once and served from the cache until the cache is invalidated.
+     * @return An unmodifiable map of all properties, sorted by their names.
+     * @throws IOException If something went wrong while fetching the properties.
+     */
+    public Map<String, String> getProperties() throws IOException {
+        Map<String, String> current = properties;
+        if (current != null)
+            return current;
+        
+        synchronized (this) {
+            if (properties == null)
+                properties = fetch();
+            return properties;
         }
-        return toReturn;
     }
     
     /**
-     * Pulls a list of properties from the device, then checks for the desired property.
+     * Gets a single build property.
      * @param key of the property (property name).
      * @return the desired property
      * @throws IOException 
      * @throws JDroidLib.exceptions.PropertyNotFoundException 
      */
     public String getSingleProperty(String key) throws IOException, PropertyNotFoundException {
-        String returnString = "";
-        String properties = getProp();
-        BufferedReader reader = new BufferedReader(new StringReader(properties));
-        String line = "";
+        String value = getProperties().get(key);
+        if (value == null)
+            throw new PropertyNotFoundException("Could not find property \"" + key + "\".");
+        return value;
+    }
+    
+    /**
+     * Discards the cached properties, so they are fetched again on the next lookup.
+     */
+    public void invalidate() { properties = null; }
+    
+    /**
+     * Fetches the properties again and compares them against the cached ones.
+     * Values of unchanged properties are kept, so repeated refreshes don't duplicate them in memory.
+     * @return The properties that were added or changed, mapped to their new values, and the properties that were removed, mapped to {@code null}.
+     * If no properties were cached, all properties are returned.
+     * @throws IOException If something went wrong while fetching the properties.
+     */
+    public synchronized Map<String, String> refresh() throws IOException {
+        Map<String, String> previous = properties;
+        Map<String, String> current = parseProperties(adbController.executeCommand(device, true, true, "getprop"));
+        Map<String, String> delta = new TreeMap<>();
         
-        while ((line = reader.readLine()) != null) {
-            if (line.startsWith(key)) {
-                String[] prop = line.split(" = ");
-                return prop[1];
+        if (previous == null)
+            delta.putAll(current);
+        else {
+            for (Map.Entry<String, String> entry : current.entrySet()) {
+                String oldValue = previous.get(entry.getKey());
+                if (oldValue == null || !oldValue.equals(entry.getValue()))
+                    delta.put(entry.getKey(), entry.getValue());
+                else
+                    entry.setValue(oldValue);
             }
+            for (String key : previous.keySet())
+                if (!current.containsKey(key))
+                    delta.put(key, null);
         }
         
-        throw new PropertyNotFoundException("Could not find property \"" + key + "\".");
+        properties = Collections.unmodifiableMap(current);
+        return delta;
+    }
+    
+    /**
+     * Runs getprop on the device and indexes its output.
+     */
+    private Map<String, String> fetch() throws IOException {
+        return Collections.unmodifiableMap(parseProperties(adbController.executeCommand(device, true, true, "getprop")));
+    }
+    
+    /**
+     * Parses the output of {@code getprop} into a map.
+     * @param output The output of {@code getprop}.
+     * @return A sorted map of all properties found in the output.
+     * @throws IOException If the output cannot be read.
+     */
+    static Map<String, String> parseProperties(String output) throws IOException {
+        Map<String, String> props = new TreeMap<>();
+        BufferedReader reader = new BufferedReader(new StringReader(output));
+        String line = "";
+        while ((line = reader.readLine()) != null) {
+            Matcher matcher = PROPERTY_PATTERN.matcher(line.trim());
+            if (matcher.matches())
+                props.put(matcher.group(1), matcher.group(2));
+        }
+        reader.close();
+        return props;
+    }
+    
+    /**
+     * Converts the output of {@code getprop} into a list of "key = value" lines.
+     * @param output The output of {@code getprop}.
+     * @return The converted list of properties.
+     * @throws IOException If the output cannot be read.
+     */
+    static String parse(String output) throws IOException {
+        return format(parseProperties(output));
+    }
+    
+    /**
+     * Formats properties as a list of "key = value" lines.
+     */
+    private static String format(Map<String, String> props) {
+        StringBuilder sBuilder = new StringBuilder();
+        for (Map.Entry<String, String> entry : props.entrySet())
+            sBuilder.append(entry.getKey()).append(" = ").append(entry.getValue()).append('\n');
+        return sBuilder.toString();
     }
     
     /**
@@ -123,6 +202,7 @@ public class BuildProp {
      */
     public void setProp(String key, String value, boolean rebootAfter) throws IOException {
         adbController.executeCommand(device, true, true, "setprop", key, value);
+        invalidate();
         if (rebootAfter)
             device.reboot(DeviceState.DEVICE);
     }
@@ -34,18 +34,43 @@ public class BusyBox {
     private String busyboxVersion = "";
     
     private final ADBController adbController;
+    private boolean isSnapshot = false;
     
     BusyBox(Device device, ADBController adbController) {
         this.device = device;
         this.adbController = adbController;
     }
     
+    /**
+     * Creates a snapshot of the busybox-installation from previously fetched output of {@code busybox}.
+     * Snapshots never update themselves.
+     * @param device The device busybox is installed on.
+     * @param adbController The ADBController that makes this thing work.
+     * @param raw The output of {@code busybox}.
+     * @throws IOException If the output cannot be read.
+     */
+    BusyBox(Device device, ADBController adbController, String raw) throws IOException {
+        this(device, adbController);
+        parse(raw);
+        isSnapshot = true;
+    }
+    
     /**
      * Updates all the information represented by this class.
      * @throws IOException If an error occurs while executing ADB commands.
      */
     private void update() throws IOException {
-        String raw = adbController.executeCommand(device, true, true, "busybox");
+        if (isSnapshot)
+            return;
+        parse(adbController.executeCommand(device, true, true, "busybox"));
+    }
+    
+    /**
+     * Parses the output of {@code busybox} into the information represented by this class.
+     * @param raw The output of {@code busybox}.
+     * @throws IOException If the output cannot be read.
+     */
+    void parse(String raw) throws IOException {
         BufferedReader reader = new BufferedReader(new StringReader(raw));
         String line = "";
         while ((line = reader.readLine()) != null) {
@@ -33,6 +33,7 @@ public class CPU {
     private final Device device;
     private String[] cpuLoad = null;
     private List<String>cpuUsage = null;
+    private boolean isSnapshot = false;
     
     /**
      * Default constructor for @see CPU.
@@ -46,12 +47,36 @@ public class CPU {
         cpuUsage = new ArrayList();
     }
     
+    /**
+     * Creates a snapshot of the CPU from previously fetched output of {@code dumpsys cpuinfo}.
+     * Snapshots never update themselves.
+     * @param device The device the CPU belongs to.
+     * @param adbController The ADBController that makes this thing work.
+     * @param raw The output of {@code dumpsys cpuinfo}.
+     * @throws IOException If the output cannot be read.
+     */
+    CPU(Device device, ADBController adbController, String raw) throws IOException {
+        this(device, adbController);
+        parse(raw);
+        isSnapshot = true;
+    }
+    
     /**
      * Update CPU Usage list and cpu load.
      * @throws IOException 
      */
     private void update() throws IOException {
-        String raw = adbController.executeCommand(device, true, true, "dumpsys", "cpuinfo");
+        if (isSnapshot)
+            return;
+        parse(adbController.executeCommand(device, true, true, "dumpsys", "cpuinfo"));
+    }
+    
+    /**
+     * Parses the output of {@code dumpsys cpuinfo} into the CPU usage list and CPU load.
+     * @param raw The output of {@code dumpsys cpuinfo}.
+     * @throws IOException If the output cannot be read.
+     */
+    void parse(String raw) throws IOException {
         BufferedReader reader = new BufferedReader(new StringReader(raw));
         String line = "";
         cpuUsage.clear();
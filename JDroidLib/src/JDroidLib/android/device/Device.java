@@ -21,6 +21,7 @@ package JDroidLib.android.device;
 import JDroidLib.android.controllers.*;
 import JDroidLib.enums.DeviceState;
 import JDroidLib.exceptions.*;
+import JDroidLib.util.ShellSession;
 import java.io.*;
 import java.util.*;
 
@@ -55,6 +56,11 @@ public class Device {
      * @see BuildProp
      */
     private final BuildProp buildProp;
+    /**
+     * Represents the device's package inventory.
+     * @see PackageIndex
+     */
+    private final PackageIndex packageIndex;
     /**
      * The device's current state. @see DeviceState.
      */
@@ -96,6 +102,7 @@ public class Device {
         battery = new Battery(this, adbController);
         cpu = new CPU(this, adbController);
         buildProp = new BuildProp(this, adbController);
+        packageIndex = new PackageIndex(this, adbController);
         if (!(arr.length <= 1))
             state = DeviceState.getState(arr[1].toLowerCase());
         else
@@ -180,6 +187,12 @@ public class Device {
      * @return Returns an instance of @see BuildProp, which represents the device's build properties.
      */
     public BuildProp getBuildProp() { return buildProp; }
+    
+    /**
+     * Returns an instance of @see PackageIndex.
+     * @return Returns an instance of @see PackageIndex, which represents the device's installed packages, features, libraries and permission groups.
+     */
+    public PackageIndex getPackageIndex() { return packageIndex; }
 
     
     /**
@@ -196,6 +209,24 @@ public class Device {
             }
     }
     
+    /**
+     * Takes a snapshot of the device's battery, CPU, SU- and busybox-installations and build properties.
+     * All information is fetched in a single ADB round-trip, instead of one per getter.
+     * @return A @see DeviceSnapshot containing the device's current state.
+     * @throws IOException If something goes wrong during process execution.
+     */
+    public DeviceSnapshot takeSnapshot() throws IOException {
+        return new DeviceSnapshot(this, adbController, adbController.executeShellBatch(this, DeviceSnapshot.COMMANDS));
+    }
+    
+    /**
+     * Opens a shell on this device, which is kept open for any number of commands.
+     * The shell is started when the first command is executed; close the session once it's no longer needed.
+     * @param rootShell Set to true, if the shell should switch to root (via su) once it's started.
+     * @return A new @see ShellSession.
+     */
+    public ShellSession openShellSession(boolean rootShell) { return new ShellSession(this, rootShell); }
+    
     /**
      * Returns an instance of @see PackageController.
      * @return Returns an instance of @see PackageController, which represents the device's package manager.
@@ -214,8 +245,10 @@ public class Device {
         BufferedReader reader = new BufferedReader(new StringReader(output));
         String line = null;
         while ((line = reader.readLine()) != null) {
-            if (line.toLowerCase().contains("success"))
+            if (line.toLowerCase().contains("success")) {
+                packageIndex.invalidate(PackageIndex.Section.PACKAGES);
                 return true;
+            }
         }
         return false;
     }
@@ -232,6 +265,8 @@ public class Device {
             throw new IllegalArgumentException("Invalid parameter: stateToBootInto must not be null!");
         
         if (stateToBootInto == DeviceState.BOOTLOADER || stateToBootInto == DeviceState.FASTBOOT || stateToBootInto == DeviceState.RECOVERY || stateToBootInto == DeviceState.DEVICE) {
+            buildProp.invalidate(); // Properties set at runtime don't survive a reboot.
+            su.closeRootShell(); // Nor does the root shell.
             if (stateToBootInto == DeviceState.DEVICE) {
                 adbController.executeCommand(this, false, true, "reboot");
                 return;
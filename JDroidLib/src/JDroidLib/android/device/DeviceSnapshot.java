@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2014 beatsleigher
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package JDroidLib.android.device;
+
+import JDroidLib.android.controllers.ADBController;
+import JDroidLib.util.ShellResult;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Represents the state of a device's battery, CPU, SU- and busybox-installations and build properties at a single point in time.
+ * All information is fetched in a single ADB round-trip; the objects returned by this class never update themselves.
+ * Use {@link Device#takeSnapshot()} to get an instance of this class.
+ * @author beatsleigher
+ */
+public class DeviceSnapshot {
+    
+    /**
+     * The commands executed to take a snapshot, in the order their results are parsed.
+     */
+    static final List<String> COMMANDS = Collections.unmodifiableList(Arrays.asList(
+            "dumpsys battery", "dumpsys cpuinfo", "su -v", "busybox", "getprop"));
+    
+    private final Device device;
+    private final long timestamp;
+    private final Battery battery;
+    private final CPU cpu;
+    private final SU su;
+    private final BusyBox busybox;
+    private final String buildProperties;
+    
+    /**
+     * Creates a new snapshot from the results of {@link #COMMANDS}.
+     * @param device The device the snapshot was taken of.
+     * @param adbController The ADBController that makes this thing work.
+     * @param results The results of the snapshot's commands.
+     * @throws IOException If the results cannot be read.
+     */
+    DeviceSnapshot(Device device, ADBController adbController, List<ShellResult> results) throws IOException {
+        this.device = device;
+        this.timestamp = System.currentTimeMillis();
+        battery = new Battery(device, adbController, results.get(0).getOutput());
+        cpu = new CPU(device, adbController, results.get(1).getOutput());
+        su = new SU(device, adbController, results.get(2).getOutput());
+        busybox = new BusyBox(device, adbController, results.get(3).getOutput());
+        buildProperties = BuildProp.parse(results.get(4).getOutput());
+    }
+    
+    /**
+     * Gets the device this snapshot was taken of.
+     * @return The @see Device.
+     */
+    public Device getDevice() { return device; }
+    
+    /**
+     * Gets the time the snapshot was taken at.
+     * @return The time in milliseconds since the epoch.
+     */
+    public long getTimestamp() { return timestamp; }
+    
+    /**
+     * Gets the state of the device's battery at the time of the snapshot.
+     * @return A @see Battery which never updates itself.
+     */
+    public Battery getBattery() { return battery; }
+    
+    /**
+     * Gets the state of the device's CPU at the time of the snapshot.
+     * @return A @see CPU which never updates itself.
+     */
+    public CPU getCPU() { return cpu; }
+    
+    /**
+     * Gets the state of the device's SU-installation at the time of the snapshot.
+     * @return A @see SU which never updates itself.
+     */
+    public SU getSU() { return su; }
+    
+    /**
+     * Gets the state of the device's busybox-installation at the time of the snapshot.
+     * @return A @see BusyBox which never updates itself.
+     */
+    public BusyBox getBusybox() { return busybox; }
+    
+    /**
+     * Gets the device's build properties at the time of the snapshot.
+     * @return A list of all build properties, formatted like the output of {@link BuildProp#getProp()}.
+     */
+    public String getBuildProperties() { return buildProperties; }
+    
+}
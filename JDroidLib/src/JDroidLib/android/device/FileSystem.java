@@ -227,7 +227,7 @@ public class FileSystem {
         adbController.rootServer();
         
         try {
-            adbOutput = adbController.executeCommand(device, false, true, "pull", source.getAbsolutePath(), dest);
+            adbOutput = adbController.executeCommand(device, false, true, "push", source.getAbsolutePath(), dest);
         } finally {
             if (adbOutput != null || !adbOutput.equals(""))
                 returnVal = adbOutput;
@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2014 beatsleigher
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package JDroidLib.android.device;
+
+import JDroidLib.android.controllers.ADBController;
+import JDroidLib.util.ShellResult;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Represents the inventory of a device's package manager: its installed packages, features, libraries and permission groups.
+ * 
+ * All sections are fetched with a single shell batch the first time any of them is needed and kept in an index, from which all lookups are served.
+ * Every section is stored as a sorted array of interned names, so lookups and prefix queries are binary searches.
+ * Installing or uninstalling packages through JDroidLib only updates the package section: 
+ * uninstalled packages are removed from the index, installations cause just the package list to be fetched again.
+ * Use {@link #invalidate()} to pick up changes made by other means.
+ * @author beatsleigher
+ */
+public class PackageIndex {
+    
+    /**
+     * The sections of the index, along with the commands listing them.
+     */
+    public enum Section {
+        PACKAGES("pm list packages", "package:"),
+        FEATURES("pm list features", "feature:"),
+        LIBRARIES("pm list libraries", "library:"),
+        PERMISSION_GROUPS("pm list permission-groups", "permission group:");
+        
+        private final String command;
+        private final String prefix;
+        
+        private Section(String command, String prefix) {
+            this.command = command;
+            this.prefix = prefix;
+        }
+        
+        /**
+         * Gets the command listing this section's entries.
+         * @return The command line to run in the device's shell.
+         */
+        public String getCommand() { return command; }
+        
+        /**
+         * Gets the prefix the package manager prints in front of every entry of this section.
+         * @return The prefix (e.g. "package:").
+         */
+        public String getPrefix() { return prefix; }
+    }
+    
+    private final Device device;
+    private final ADBController adbController;
+    private final AtomicReferenceArray<String[]> sections = new AtomicReferenceArray<>(Section.values().length);
+    
+    /**
+     * Default constructor for @see PackageIndex.
+     * @param device The device this class should represent.
+     * @param adbController The ADBController that makes this thing work.
+     */
+    PackageIndex(Device device, ADBController adbController) {
+        this.device = device;
+        this.adbController = adbController;
+    }
+    
+    /**
+     * Gets all entries of a section.
+     * @param section The section to get.
+     * @return An unmodifiable, sorted list of the section's entries.
+     * @throws IOException If something went wrong while fetching the index.
+     */
+    public List<String> get(Section section) throws IOException {
+        return Collections.unmodifiableList(Arrays.asList(getSection(section)));
+    }
+    
+    /**
+     * Gets all entries of a section starting with a given prefix.
+     * @param section The section to search.
+     * @param prefix The prefix to search for (e.g. "com.android.").
+     * @return An unmodifiable, sorted list of all matching entries.
+     * @throws IOException If something went wrong while fetching the index.
+     */
+    public List<String> getByPrefix(Section section, String prefix) throws IOException {
+        String[] entries = getSection(section);
+        int from = insertionPoint(entries, prefix);
+        int to = from;
+        while (to < entries.length && entries[to].startsWith(prefix))
+            to++;
+        return Collections.unmodifiableList(Arrays.asList(entries).subList(from, to));
+    }
+    
+    /**
+     * Determines whether a section contains an entry.
+     * @param section The section to search.
+     * @param entry The entry to search for (e.g. a package name).
+     * @return Returns true if the section contains the entry.
+     * @throws IOException If something went wrong while fetching the index.
+     */
+    public boolean contains(Section section, String entry) throws IOException {
+        return Arrays.binarySearch(getSection(section), entry) >= 0;
+    }
+    
+    /**
+     * Gets all installed packages.
+     * @return An unmodifiable, sorted list of package names.
+     * @throws IOException If something went wrong while fetching the index.
+     */
+    public List<String> getPackages() throws IOException { return get(Section.PACKAGES); }
+    
+    /**
+     * Determines whether a package is installed.
+     * @param _package The name of the package.
+     * @return Returns true if the package is installed.
+     * @throws IOException If something went wrong while fetching the index.
+     */
+    public boolean isInstalled(String _package) throws IOException { return contains(Section.PACKAGES, _package); }
+    
+    /**
+     * Discards the entire index, so it is fetched again on the next lookup.
+     */
+    public void invalidate() {
+        for (Section section : Section.values())
+            sections.set(section.ordinal(), null);
+    }
+    
+    /**
+     * Discards a single section of the index, so only this section is fetched again on the next lookup.
+     * @param section The section to discard.
+     */
+    public void invalidate(Section section) { sections.set(section.ordinal(), null); }
+    
+    /**
+     * Removes an uninstalled package from the index, without fetching the package list again.
+     * @param _package The name of the package that was uninstalled.
+     */
+    public void removePackage(String _package) {
+        int index = Section.PACKAGES.ordinal();
+        String[] current, updated;
+        do {
+            current = sections.get(index);
+            if (current == null)
+                return;
+            int position = Arrays.binarySearch(current, _package);
+            if (position < 0)
+                return;
+            updated = new String[current.length - 1];
+            System.arraycopy(current, 0, updated, 0, position);
+            System.arraycopy(current, position + 1, updated, position, updated.length - position);
+        } while (!sections.compareAndSet(index, current, updated));
+    }
+    
+    /**
+     * Gets a section, fetching it and all other missing sections if it isn't cached.
+     */
+    private String[] getSection(Section section) throws IOException {
+        String[] entries = sections.get(section.ordinal());
+        if (entries != null)
+            return entries;
+        
+        synchronized (this) {
+            entries = sections.get(section.ordinal());
+            // The fetched entries are returned directly, as the section may be invalidated again right after it has been stored.
+            return entries != null ? entries : fetch(section);
+        }
+    }
+    
+    /**
+     * Fetches all sections missing from the index in a single shell batch.
+     * Sections whose command failed are not stored, so they are fetched again on the next lookup.
+     * @param section The section to return.
+     * @return The fetched entries of the section.
+     * @throws IOException If the section's command failed (e.g. because the package manager isn't running yet).
+     */
+    private String[] fetch(Section section) throws IOException {
+        List<Section> missing = new ArrayList<>();
+        List<String> commands = new ArrayList<>();
+        for (Section candidate : Section.values())
+            if (sections.get(candidate.ordinal()) == null) {
+                missing.add(candidate);
+                commands.add(candidate.getCommand());
+            }
+        
+        if (!missing.contains(section)) {
+            missing.add(section);
+            commands.add(section.getCommand());
+        }
+        
+        List<ShellResult> results = adbController.executeShellBatch(device, commands);
+        String[] entries = null;
+        for (int i = 0; i < missing.size(); i++) {
+            ShellResult result = results.get(i);
+            if (!result.isSuccessful()) {
+                if (missing.get(i) == section)
+                    throw new IOException(String.format("\"%s\" failed with exit value %d: %s", result.getCommand(), result.getExitValue(), result.getOutput().trim()));
+                continue;
+            }
+            String[] parsed = parse(result.getOutput(), missing.get(i).getPrefix());
+            sections.set(missing.get(i).ordinal(), parsed);
+            if (missing.get(i) == section)
+                entries = parsed;
+        }
+        return entries;
+    }
+    
+    /**
+     * Parses the output of {@code pm list packages}, {@code pm list features}, {@code pm list libraries} or {@code pm list permission-groups}.
+     * Every entry is printed as "type:name"; lines without the section's prefix (such as error messages) are skipped.
+     * @param output The output of the package manager.
+     * @param prefix The prefix of the section's entries (e.g. "package:").
+     * @return A sorted array of the (interned) names.
+     * @throws IOException If the output cannot be read.
+     */
+    static String[] parse(String output, String prefix) throws IOException {
+        List<String> entries = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new StringReader(output));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!line.startsWith(prefix))
+                continue;
+            String entry = line.substring(prefix.length()).trim();
+            if (!entry.isEmpty())
+                entries.add(entry.intern());
+        }
+        reader.close();
+        
+        String[] sorted = entries.toArray(new String[entries.size()]);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+    
+    /**
+     * Gets the index of the first entry not less than the key.
+     */
+    private static int insertionPoint(String[] entries, String key) {
+        int position = Arrays.binarySearch(entries, key);
+        return position < 0 ? -(position + 1) : position;
+    }
+    
+}
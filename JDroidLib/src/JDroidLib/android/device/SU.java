@@ -19,6 +19,7 @@ package JDroidLib.android.device;
 
 import JDroidLib.android.controllers.ADBController;
 import JDroidLib.exceptions.*;
+import JDroidLib.util.ShellSession;
 
 import java.io.*;
 
@@ -34,6 +35,9 @@ public class SU {
     boolean isInstalled = false;
     boolean hasRoot = false;
     String suVersion = "";
+    private boolean isSnapshot = false;
+    private boolean keepRootShell = false;
+    private ShellSession rootSession = null;
     
     /**
      * The constructor for this class.
@@ -45,12 +49,36 @@ public class SU {
         this.adbController = adbController;
     }
     
+    /**
+     * Creates a snapshot of the SU-installation from previously fetched output of {@code su -v}.
+     * Snapshots never update themselves.
+     * @param device The device to represent
+     * @param adbController The @see ADBController which powers everything.
+     * @param raw The output of {@code su -v}.
+     * @throws IOException If the output cannot be read.
+     */
+    SU(Device device, ADBController adbController, String raw) throws IOException {
+        this(device, adbController);
+        parse(raw);
+        isSnapshot = true;
+    }
+    
     /**
      * Updates the information represented by this class.
      * @throws IOException If an error occurs while executing the ADB commands.
      */
     private void update() throws IOException {
-        String raw = adbController.executeCommand(device, true, true, "su", "-v");
+        if (isSnapshot)
+            return;
+        parse(adbController.executeCommand(device, true, true, "su", "-v"));
+    }
+    
+    /**
+     * Parses the output of {@code su -v} into the information represented by this class.
+     * @param raw The output of {@code su -v}.
+     * @throws IOException If the output cannot be read.
+     */
+    void parse(String raw) throws IOException {
         BufferedReader reader = new BufferedReader(new StringReader(raw));
         String line = "";
         while ((line = reader.readLine()) != null) {
@@ -90,6 +118,8 @@ public class SU {
     
     /**
      * Executes a command as the root user on the device associated with this class.
+     * By default, every command starts its own root shell. If the root shell is kept (see {@link #setKeepRootShell(boolean)}),
+     * all commands are executed in the same root shell, which is started (and switches to root) only once.
      * @param remount Remount the device?
      * @param cmds The command (and arguments) to be executed.
      * @return ADB's output.
@@ -97,6 +127,24 @@ public class SU {
      * @throws JDroidLib.exceptions.DeviceHasNoRootException if the device does <i>not</i> have root.
      */
     public String executeSUCommand(boolean remount, String[] cmds) throws IOException, DeviceHasNoRootException {
+        synchronized (this) {
+            if (keepRootShell) {
+                if (remount)
+                    device.remountDevice();
+                if (rootSession == null)
+                    rootSession = device.openShellSession(true);
+                
+                StringBuilder commandLine = new StringBuilder();
+                for (String cmd : cmds) {
+                    if (commandLine.length() > 0)
+                        commandLine.append(' ');
+                    commandLine.append(cmd);
+                }
+                // Executed while holding the lock, so the session cannot be closed while it's in use.
+                return rootSession.execute(commandLine.toString()).getOutput();
+            }
+        }
+        
         if (!hasRoot())
             throw new DeviceHasNoRootException("Cannot execute root commands without root access.");
         
@@ -106,4 +154,32 @@ public class SU {
         return adbController.executeCommand(device, true, true, "su", cmds);
     }
     
+    /**
+     * Sets whether {@link #executeSUCommand(boolean, java.lang.String[])} keeps a single root shell open for all commands,
+     * instead of starting a new root shell for every command.
+     * The kept shell stays open until it is disabled again, {@link #closeRootShell()} is called or the device is rebooted.
+     * @param keepRootShell Set to true, to keep the root shell open between commands.
+     */
+    public synchronized void setKeepRootShell(boolean keepRootShell) {
+        this.keepRootShell = keepRootShell;
+        if (!keepRootShell)
+            closeRootShell();
+    }
+    
+    /**
+     * Determines whether a single root shell is kept open for all root commands.
+     * @return True, if the root shell is kept open.
+     */
+    public synchronized boolean isKeepingRootShell() { return keepRootShell; }
+    
+    /**
+     * Closes the root shell kept open by {@link #executeSUCommand(boolean, java.lang.String[])}, if there is one.
+     * If the root shell is still to be kept, the next root command starts a new one.
+     */
+    public synchronized void closeRootShell() {
+        if (rootSession != null)
+            rootSession.close();
+        rootSession = null;
+    }
+    
 }
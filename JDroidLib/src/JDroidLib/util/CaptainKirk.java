@@ -22,6 +22,9 @@ import JDroidLib.exceptions.*;
 import JDroidLib.interfaces.*;
 
 import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 /**
  * This is Captain Kirk! Say hello! He will be our commander and captain,
@@ -39,7 +42,23 @@ public class CaptainKirk implements Disposeable {
     private File fastboot;
     private File backupDir;
     private static CaptainKirk instance = null;
-    private File workingDir = new File(String.format("{0}{1}{2}", System.getProperty("user.home"), System.getProperty("path.seperator"), "ADB-Fastboot-Work"));
+    private File workingDir = new File(System.getProperty("user.home"), "ADB-Fastboot-Work");
+    
+    /**
+     * The default maximum amount of ADB and fastboot processes allowed to run at the same time.
+     */
+    public static final int DEFAULT_MAX_PROCESSES = 4;
+    
+    // Fair, so that commands are given a process in the order they were issued once the pool is saturated.
+    private final PoolSemaphore processPermits = new PoolSemaphore(DEFAULT_MAX_PROCESSES);
+    private int maxProcesses = DEFAULT_MAX_PROCESSES;
+    private final AtomicInteger activeProcesses = new AtomicInteger();
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicLong executedCommands = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final Object serverLock = new Object();
+    private volatile boolean isServerRunning = false;
     
     /**
      * Singleton statement.
@@ -69,38 +88,170 @@ public class CaptainKirk implements Disposeable {
     /**
      * Executes ADB, fastboot and anonymous commands.
      * This method is used to execute all commands via the ADB server or fastboot server.
+     * 
+     * At most {@link #getMaxProcesses()} commands are executed at the same time; further commands wait for a process to become available,
+     * in the order they were issued.
+     * The ADB server is started once, before the first ADB command, and is kept running until a {@code kill-server} command is executed.
      * @param command The @see Command object containing all the information needed to execute commands.
      * @return If the property "returnsOutput" in the command object is set to <u>true</u>, 
      * this function will return the output provided by the command.
-     * @throws IOException If an error occurs while executing the process.
+     * @throws IOException If an error occurs while executing the process, or the thread is interrupted while waiting for a process.
      */
     public String executeCommand(Command command) throws IOException {
         if (command == null) throw new IllegalArgumentException("Command cannot be null!");
+        List<String> parameters = command.getParameters();
+        boolean isKillServer = command.isAnonymous() && parameters.size() > 1 && "kill-server".equals(parameters.get(1));
+        
+        if (command.isADBCommand() && !isKillServer)
+            ensureServerRunning();
+        
+        acquireProcess();
+        try {
+            return execute(parameters, command.returnsOutput());
+        } finally {
+            if (isKillServer)
+                isServerRunning = false;
+            releaseProcess();
+        }
+    }
+    
+    /**
+     * Starts a process and waits for it to exit.
+     * @param parameters The executable and its arguments.
+     * @param returnOutput Set to true, if the process' output is to be returned.
+     * @return The process' output, or an empty string if returnOutput is false.
+     * @throws IOException If an error occurs while executing the process, or the thread is interrupted while waiting for it.
+     */
+    private String execute(List<String> parameters, boolean returnOutput) throws IOException {
         StringBuilder sBuilder = new StringBuilder();
         
         Process pr;
         ProcessBuilder process = new ProcessBuilder();
-        BufferedReader iStreamReader;
         String line = null;
         
-        process.command(command.getParameters());
+        if (!workingDir.exists())
+            workingDir.mkdirs();
+        process.command(parameters);
         process.directory(workingDir);
         process.redirectErrorStream(true);
         pr = process.start();
         
         // Process output
-        iStreamReader = new BufferedReader(new InputStreamReader(pr.getInputStream()));
-        while ((line = iStreamReader.readLine()) != null)
-            if (command.returnsOutput()) {
-                sBuilder.append(line);
-                sBuilder.append("\n");
-            }
-        
-        executeCommand(Command.getAnonymousCommand(Command.CommandType.ANONYMOUS_COMMAND, Command.convertArrayToList("kill-server"), false, true));
+        try (BufferedReader iStreamReader = new BufferedReader(new InputStreamReader(pr.getInputStream()))) {
+            while ((line = iStreamReader.readLine()) != null)
+                if (returnOutput) {
+                    sBuilder.append(line);
+                    sBuilder.append("\n");
+                }
+            pr.waitFor();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for process to exit!");
+        } finally {
+            pr.destroy(); // Only does something if the process is still running.
+        }
         
         return sBuilder.toString();
     }
+    
+    /**
+     * Starts the ADB server, if it isn't known to be running.
+     * Starting the server up front means commands issued concurrently don't all try to start it at once, and it is only started once.
+     * @throws IOException If an error occurs while starting the server.
+     */
+    private void ensureServerRunning() throws IOException {
+        if (isServerRunning)
+            return;
+        
+        synchronized (serverLock) {
+            if (isServerRunning)
+                return;
+            acquireProcess();
+            try {
+                execute(Command.convertArrayToList(adb.getAbsolutePath(), "start-server"), false);
+                isServerRunning = true;
+            } finally {
+                releaseProcess();
+            }
+        }
+    }
+    
+    /**
+     * Waits for a process to become available and takes it from the pool.
+     * @throws InterruptedIOException If the thread is interrupted while waiting.
+     */
+    private void acquireProcess() throws InterruptedIOException {
+        long start = System.nanoTime();
+        queueDepth.incrementAndGet();
+        try {
+            processPermits.acquire();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a process!");
+        } finally {
+            queueDepth.decrementAndGet();
+        }
+        
+        long waitNanos = System.nanoTime() - start;
+        long currentMax;
+        activeProcesses.incrementAndGet();
+        executedCommands.incrementAndGet();
+        totalWaitNanos.addAndGet(waitNanos);
+        while (waitNanos > (currentMax = maxWaitNanos.get()) && !maxWaitNanos.compareAndSet(currentMax, waitNanos));
+    }
+    
+    /**
+     * Returns a process to the pool.
+     */
+    private void releaseProcess() {
+        activeProcesses.decrementAndGet();
+        processPermits.release();
+    }
     //# ========== Processing Methods  End  ========== #\\
+    
+    //# ========== Process Pool Start ========== #\\
+    /**
+     * Gets the maximum amount of ADB and fastboot processes allowed to run at the same time.
+     * @return The size of the process pool.
+     */
+    public synchronized int getMaxProcesses() { return maxProcesses; }
+    
+    /**
+     * Sets the maximum amount of ADB and fastboot processes allowed to run at the same time.
+     * Processes that are already running are not affected when the pool shrinks; new commands wait until enough of them have exited.
+     * @param maxProcesses The new size of the process pool.
+     * @throws IllegalArgumentException If maxProcesses is less than one.
+     */
+    public synchronized void setMaxProcesses(int maxProcesses) {
+        if (maxProcesses < 1) throw new IllegalArgumentException("The process pool must allow at least one process!");
+        int delta = maxProcesses - this.maxProcesses;
+        if (delta > 0)
+            processPermits.release(delta);
+        else if (delta < 0)
+            processPermits.reducePermits(-delta);
+        this.maxProcesses = maxProcesses;
+    }
+    
+    /**
+     * Gets the current metrics of the process pool, such as the amount of queued commands and the time commands spend waiting for a process.
+     * @return A snapshot of the process pool's metrics.
+     */
+    public ProcessPoolMetrics getProcessPoolMetrics() {
+        return new ProcessPoolMetrics(getMaxProcesses(), activeProcesses.get(), queueDepth.get(), executedCommands.get(), totalWaitNanos.get(), maxWaitNanos.get());
+    }
+    
+    /**
+     * Fair semaphore that can shrink, so the process pool can be resized.
+     */
+    private static class PoolSemaphore extends Semaphore {
+        
+        PoolSemaphore(int permits) { super(permits, true); }
+        
+        @Override
+        protected void reducePermits(int reduction) { super.reducePermits(reduction); }
+        
+    }
+    //# ========== Process Pool  End  ========== #\\
 
     /**
      * Prepares this object for disposal.
@@ -22,6 +22,7 @@ package JDroidLib.util;
 import JDroidLib.android.controllers.*;
 import JDroidLib.android.device.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Command class.
@@ -50,6 +51,9 @@ public class Command {
     private final boolean isAnonymous;
     private static ADBController adbController = null;
     private final boolean isADBCommand;
+    private volatile List<String> commandLine = null;
+    // The prefixes (executable [-s serial]) are the same for every command issued to a device, so they are only built once.
+    private static final ConcurrentMap<String, String[]> prefixes = new ConcurrentHashMap<>();
     
     /**
      * Creates a new instance of @see Command with the following parameters to be used in ADBController and CaptainKirk.
@@ -148,31 +152,50 @@ public class Command {
     
     /**
      * The parameters (including the first command/executable) to execute.
-     * @return Returns a list of all the supplied parameters.
+     * The list is assembled once and reused by subsequent calls.
+     * @return Returns an unmodifiable list of all the supplied parameters.
      */
     public List<String> getParameters() {
-        List<String> parameters = new ArrayList<>();
+        List<String> commandLine = this.commandLine;
+        if (commandLine != null)
+            return commandLine;
         
+        String[] prefix;
         switch (commandType) {
             case ADB_COMMAND:
-                parameters.add(CaptainKirk.getADB().getAbsolutePath());
-                parameters.add("-s");
-                parameters.add(device.getSerial());
+                prefix = getPrefix(CaptainKirk.getADB().getAbsolutePath(), device.getSerial());
+                break;
             case FASTBOOT_COMMAND:
-                parameters.add(CaptainKirk.getFastboot().getAbsolutePath());
-                parameters.add("-s");
-                parameters.add(serial);
-            case ANONYMOUS_COMMAND:
-                if (isADBCommand)
-                    parameters.add(CaptainKirk.getADB().getAbsolutePath());
-                else
-                    parameters.add(CaptainKirk.getFastboot().getAbsolutePath());
+                prefix = getPrefix(CaptainKirk.getFastboot().getAbsolutePath(), serial);
+                break;
+            default:
+                prefix = getPrefix(isADBCommand ? CaptainKirk.getADB().getAbsolutePath() : CaptainKirk.getFastboot().getAbsolutePath(), null);
+                break;
         }
         
-        for (String param : this.parameters)
-            parameters.add(param);
+        String[] parameters = Arrays.copyOf(prefix, prefix.length + this.parameters.size());
+        for (int i = 0; i < this.parameters.size(); i++)
+            parameters[prefix.length + i] = this.parameters.get(i);
         
-        return parameters; 
+        return this.commandLine = Collections.unmodifiableList(Arrays.asList(parameters));
+    }
+    
+    /**
+     * Gets the (cached) prefix of a command line.
+     * @param executable The absolute path to the executable.
+     * @param serial The serial number of the targeted device, or null if the command is not device-specific.
+     * @return Returns the executable, followed by "-s" and the serial number, if one was supplied.
+     */
+    private static String[] getPrefix(String executable, String serial) {
+        String key = serial == null ? executable : executable + ' ' + serial;
+        String[] prefix = prefixes.get(key);
+        if (prefix == null) {
+            prefix = serial == null ? new String[] { executable } : new String[] { executable, "-s", serial };
+            String[] existing = prefixes.putIfAbsent(key, prefix);
+            if (existing != null)
+                prefix = existing;
+        }
+        return prefix;
     }
     
     /**
@@ -189,6 +212,12 @@ public class Command {
      */
     public boolean isAnonymous() { return isAnonymous; }
     
+    /**
+     * Determines whether the current command is executed by ADB (as opposed to fastboot).
+     * @return Returns true if this command is passed to the ADB executable.
+     */
+    public boolean isADBCommand() { return isADBCommand; }
+    
     @Override
     public String toString() {
         if (commandType == CommandType.ADB_COMMAND) 
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2014 beatsleigher
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package JDroidLib.util;
+
+import java.util.concurrent.*;
+
+/**
+ * Represents the state of {@link CaptainKirk}'s process pool at a single point in time.
+ * Instances of this class are immutable and can be shared between threads.
+ * @author beatsleigher
+ */
+public final class ProcessPoolMetrics {
+    
+    private final long timestamp;
+    private final int maxProcesses;
+    private final int activeProcesses;
+    private final int queueDepth;
+    private final long executedCommands;
+    private final long totalWaitNanos;
+    private final long maxWaitNanos;
+    
+    ProcessPoolMetrics(int maxProcesses, int activeProcesses, int queueDepth, long executedCommands, long totalWaitNanos, long maxWaitNanos) {
+        this.timestamp = System.currentTimeMillis();
+        this.maxProcesses = maxProcesses;
+        this.activeProcesses = activeProcesses;
+        this.queueDepth = queueDepth;
+        this.executedCommands = executedCommands;
+        this.totalWaitNanos = totalWaitNanos;
+        this.maxWaitNanos = maxWaitNanos;
+    }
+    
+    /**
+     * Gets the time at which these metrics were taken.
+     * @return The time in milliseconds since the epoch.
+     */
+    public long getTimestamp() { return timestamp; }
+    
+    /**
+     * Gets the maximum amount of processes allowed to run at the same time.
+     * @return The size of the process pool.
+     */
+    public int getMaxProcesses() { return maxProcesses; }
+    
+    /**
+     * Gets the amount of processes that were running.
+     * @return The amount of running processes.
+     */
+    public int getActiveProcesses() { return activeProcesses; }
+    
+    /**
+     * Gets the amount of commands that were waiting for a process.
+     * @return The queue depth.
+     */
+    public int getQueueDepth() { return queueDepth; }
+    
+    /**
+     * Gets the amount of commands that have been given a process since the pool was created.
+     * @return The amount of executed commands.
+     */
+    public long getExecutedCommands() { return executedCommands; }
+    
+    /**
+     * Gets the time all executed commands spent waiting for a process, combined.
+     * @param timeUnit The unit to convert the time to.
+     * @return The total wait time.
+     */
+    public long getTotalWaitTime(TimeUnit timeUnit) { return timeUnit.convert(totalWaitNanos, TimeUnit.NANOSECONDS); }
+    
+    /**
+     * Gets the average time a command spent waiting for a process.
+     * @param timeUnit The unit to convert the time to.
+     * @return The average wait time, or {@code 0} if no commands have been executed yet.
+     */
+    public long getAverageWaitTime(TimeUnit timeUnit) {
+        return executedCommands == 0 ? 0 : timeUnit.convert(totalWaitNanos / executedCommands, TimeUnit.NANOSECONDS);
+    }
+    
+    /**
+     * Gets the longest time a single command spent waiting for a process.
+     * @param timeUnit The unit to convert the time to.
+     * @return The maximum wait time.
+     */
+    public long getMaxWaitTime(TimeUnit timeUnit) { return timeUnit.convert(maxWaitNanos, TimeUnit.NANOSECONDS); }
+    
+    @Override
+    public String toString() {
+        return String.format("Process pool: %d/%d active, %d queued, %d executed, avg. wait %dms, max. wait %dms",
+                activeProcesses, maxProcesses, queueDepth, executedCommands, getAverageWaitTime(TimeUnit.MILLISECONDS), getMaxWaitTime(TimeUnit.MILLISECONDS));
+    }
+    
+}
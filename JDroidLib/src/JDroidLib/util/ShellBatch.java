@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2014 beatsleigher
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package JDroidLib.util;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Combines several shell commands into a single shell invocation, so they can be executed in one ADB round-trip.
+ * 
+ * Every command is followed by a sentinel line carrying the command's index and exit value.
+ * The sentinel is unique to each batch, so it cannot be mistaken for the output of a command.
+ * After the batch has been executed, {@link #parse(java.lang.String)} splits the shell's output back into one {@link ShellResult} per command.
+ * 
+ * @author beatsleigher
+ */
+public final class ShellBatch {
+    
+    private static final Random RANDOM = new Random();
+    
+    private final List<String> commands;
+    private final String sentinel;
+    
+    /**
+     * Creates a new batch of shell commands.
+     * @param commands The command lines to execute, in order.
+     */
+    public ShellBatch(List<String> commands) {
+        if (commands == null || commands.isEmpty())
+            throw new IllegalArgumentException("commands must not be null or empty!");
+        
+        this.commands = Collections.unmodifiableList(new ArrayList<>(commands));
+        this.sentinel = String.format("JDROIDLIB_BATCH_%08x", RANDOM.nextInt());
+    }
+    
+    /**
+     * Gets the commands in this batch.
+     * @return An unmodifiable list of the batch's command lines.
+     */
+    public List<String> getCommands() { return commands; }
+    
+    /**
+     * Gets the script to pass to the device's shell.
+     * The exit value of each command is stored before the sentinel is echoed; the sentinel is preceded by an empty line,
+     * so it always starts on its own line, even if the command's output doesn't end with a line break.
+     * @return The script executing all commands of this batch.
+     */
+    public String getScript() {
+        StringBuilder sBuilder = new StringBuilder();
+        for (int i = 0; i < commands.size(); i++) {
+            if (i > 0)
+                sBuilder.append("; ");
+            sBuilder.append("{ ").append(commands.get(i)).append("; } 2>&1; ")
+                    .append("__jdl_rc=$?; echo; echo ").append(sentinel).append(':').append(i).append(":$__jdl_rc");
+        }
+        return sBuilder.toString();
+    }
+    
+    /**
+     * Splits the output of this batch into the results of the single commands.
+     * Commands whose sentinel is missing (e.g. because the shell died) are reported with {@link ShellResult#EXIT_VALUE_UNKNOWN}.
+     * @param raw The output of the shell executing {@link #getScript()}.
+     * @return A list of results, in the order of the commands.
+     * @throws IOException If the output cannot be read.
+     */
+    public List<ShellResult> parse(String raw) throws IOException {
+        ShellResult[] results = new ShellResult[commands.size()];
+        StringBuilder output = new StringBuilder();
+        String prefix = sentinel + ":";
+        
+        BufferedReader reader = new BufferedReader(new StringReader(raw == null ? "" : raw));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            int index = line.indexOf(prefix);
+            if (index == -1) {
+                output.append(line).append('\n');
+                continue;
+            }
+            
+            String[] arr = line.substring(index + prefix.length()).trim().split(":");
+            int commandIndex, exitValue;
+            try {
+                commandIndex = Integer.parseInt(arr[0]);
+                exitValue = arr.length > 1 ? Integer.parseInt(arr[1]) : ShellResult.EXIT_VALUE_UNKNOWN;
+            } catch (NumberFormatException ex) {
+                output.append(line).append('\n');
+                continue;
+            }
+            if (commandIndex < 0 || commandIndex >= results.length)
+                continue;
+            
+            // Drop the line break of the empty line echoed in front of the sentinel.
+            if (output.length() > 0)
+                output.setLength(output.length() - 1);
+            results[commandIndex] = new ShellResult(commands.get(commandIndex), output.toString(), exitValue);
+            output.setLength(0);
+        }
+        reader.close();
+        
+        List<ShellResult> resultList = new ArrayList<>(results.length);
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] == null) {
+                results[i] = new ShellResult(commands.get(i), output.toString(), ShellResult.EXIT_VALUE_UNKNOWN);
+                output.setLength(0);
+            }
+            resultList.add(results[i]);
+        }
+        return resultList;
+    }
+    
+}
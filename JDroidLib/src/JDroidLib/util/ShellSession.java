@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2014 beatsleigher
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package JDroidLib.util;
+
+import JDroidLib.android.device.Device;
+import JDroidLib.exceptions.DeviceHasNoRootException;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Represents a shell which is kept open on a device, so commands don't pay for starting ADB and a new shell every time.
+ * 
+ * Every command written to the shell is framed by two sentinel lines: one before the command runs and one carrying its exit value.
+ * The sentinels are split by an empty quoted string when they are written, so the terminal's echo of the command line never matches them.
+ * Anything printed outside of a frame (prompts, echoed input) is discarded.
+ * 
+ * If the shell has died before a command is sent (e.g. because the device was reconnected), a new shell is started and the command is sent again.
+ * If the shell dies while a command is running, that command fails and the next command starts a new shell.
+ * A root session runs {@code su} once when the shell is started, instead of once per command.
+ * 
+ * This class is thread-safe; commands are executed one after another.
+ * Sessions should be closed once they are no longer needed.
+ * @author beatsleigher
+ */
+public class ShellSession implements Closeable {
+    
+    private static final Random RANDOM = new Random();
+    
+    private final List<String> shellCommand;
+    private final boolean rootShell;
+    private final String marker;
+    private final String splitMarker;
+    private Process process = null;
+    private BufferedReader reader = null;
+    private Writer writer = null;
+    private int sequence = 0;
+    private boolean isClosed = false;
+    
+    /**
+     * Creates a new shell session on a device.
+     * The shell itself is started when the first command is executed.
+     * @param device The device to open the shell on.
+     * @param rootShell Set to true, if the shell should run as root.
+     */
+    public ShellSession(Device device, boolean rootShell) {
+        this(Command.convertArrayToList(CaptainKirk.getADB().getAbsolutePath(), "-s", device.getSerial(), "shell"), rootShell);
+    }
+    
+    ShellSession(List<String> shellCommand, boolean rootShell) {
+        this.shellCommand = shellCommand;
+        this.rootShell = rootShell;
+        this.marker = String.format("JDROIDLIB_SESSION_%08x", RANDOM.nextInt());
+        this.splitMarker = marker.substring(0, 9) + "''" + marker.substring(9);
+    }
+    
+    /**
+     * Determines whether this session runs its commands as root.
+     * @return True, if this is a root session.
+     */
+    public boolean isRootShell() { return rootShell; }
+    
+    /**
+     * Determines whether the shell is currently running.
+     * @return True, if the shell is running.
+     */
+    public synchronized boolean isConnected() { return process != null && isAlive(process); }
+    
+    /**
+     * Executes a command in the shell.
+     * Changes made to the shell's state (E.G.: cd, export) persist until the shell is restarted.
+     * @param commandLine The command line to execute.
+     * @return The result of the command.
+     * @throws IOException If the shell couldn't be started, or it died while the command was running.
+     * @throws DeviceHasNoRootException If this is a root session and the shell couldn't be switched to root.
+     */
+    public synchronized ShellResult execute(String commandLine) throws IOException, DeviceHasNoRootException {
+        if (isClosed)
+            throw new IOException("Shell session is closed!");
+        if (!isConnected())
+            start();
+        
+        ShellResult result = frame(commandLine);
+        if (result == null) {
+            // The shell was gone before the command reached it, so it's safe to send it again.
+            start();
+            result = frame(commandLine);
+        }
+        if (result == null)
+            throw new EOFException("The shell exited before \"" + commandLine + "\" could be executed!");
+        return result;
+    }
+    
+    /**
+     * Starts the shell and, for root sessions, switches it to root.
+     */
+    private void start() throws IOException, DeviceHasNoRootException {
+        destroy();
+        
+        ProcessBuilder builder = new ProcessBuilder(shellCommand);
+        builder.redirectErrorStream(true);
+        process = builder.start();
+        reader = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"));
+        writer = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), "UTF-8"));
+        
+        if (rootShell) {
+            writer.write("su\n");
+            writer.flush();
+            ShellResult result = frame("id");
+            if (result == null)
+                throw new EOFException("The shell exited while switching to root!");
+            String uid = result.getOutput();
+            if (!uid.contains("uid=0(")) {
+                destroy();
+                throw new DeviceHasNoRootException("Could not start a root shell: " + uid.trim());
+            }
+        }
+    }
+    
+    /**
+     * Writes a framed command to the shell and reads its result.
+     * @return The command's result, or null if the shell was gone before anything could be read.
+     */
+    private ShellResult frame(String commandLine) throws IOException {
+        int seq = ++sequence;
+        String begin = marker + "_B:" + seq, end = marker + "_E:" + seq + ":";
+        boolean receivedOutput = false;
+        
+        try {
+            writer.write("echo " + splitMarker + "_B:" + seq + "; { " + commandLine + "\n} 2>&1; __jdl_rc=$?; echo; echo "
+                         + splitMarker + "_E:" + seq + ":$__jdl_rc\n");
+            writer.flush();
+            
+            StringBuilder output = new StringBuilder();
+            boolean inFrame = false;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                receivedOutput = true;
+                if (!inFrame) {
+                    int index = line.indexOf(begin);
+                    inFrame = index != -1 && line.substring(index).trim().equals(begin);
+                    continue;
+                }
+                
+                int index = line.indexOf(end);
+                if (index == -1) {
+                    output.append(line).append('\n');
+                    continue;
+                }
+                
+                // Drop the line break of the empty line echoed in front of the sentinel.
+                if (output.length() > 0)
+                    output.setLength(output.length() - 1);
+                int exitValue;
+                try {
+                    exitValue = Integer.parseInt(line.substring(index + end.length()).trim());
+                } catch (NumberFormatException ex) {
+                    exitValue = ShellResult.EXIT_VALUE_UNKNOWN;
+                }
+                return new ShellResult(commandLine, output.toString(), exitValue);
+            }
+        } catch (IOException ex) {
+            destroy();
+            if (!receivedOutput)
+                return null;
+            throw ex;
+        }
+        
+        destroy();
+        if (!receivedOutput)
+            return null;
+        throw new EOFException("The shell exited while executing \"" + commandLine + "\"!");
+    }
+    
+    /**
+     * Stops the shell process, if it's running.
+     */
+    private void destroy() {
+        if (process != null)
+            process.destroy();
+        process = null;
+        reader = null;
+        writer = null;
+    }
+    
+    private static boolean isAlive(Process process) {
+        try {
+            process.exitValue();
+            return false;
+        } catch (IllegalThreadStateException ex) {
+            return true;
+        }
+    }
+    
+    /**
+     * Closes the shell. Further commands cannot be executed.
+     */
+    @Override
+    public synchronized void close() {
+        isClosed = true;
+        if (writer != null) try {
+            writer.write("exit\n");
+            writer.flush();
+        } catch (IOException ex) { /* The shell is already gone. */ }
+        destroy();
+    }
+    
+}